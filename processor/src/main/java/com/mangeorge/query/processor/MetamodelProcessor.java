@@ -0,0 +1,350 @@
+package com.mangeorge.query.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Annotation processor, which generates the static metamodel class <code>FooMeta</code>
+ * for every class <code>Foo</code> marked with <code>@javax.persistence.Entity</code>
+ * or having members marked with <code>@org.apache.solr.client.solrj.beans.Field</code>.
+ * The suffix of the metamodel class is set by the processor option {@value #SUFFIX_OPTION}, the default suffix
+ * {@value #DEFAULT_SUFFIX} does not collide with the JPA metamodel <code>Foo_</code> of hibernate-jpamodelgen.
+ * <p>
+ * The metamodel class is generated in the package of the class and contains string constants, so the names are
+ * resolved at compile time instead of the reflection lookups of the query builders:
+ * <ul>
+ * <li>a property path for every persistent field of the class and its superclasses, named like <code>FIELD_NAME</code>,
+ * for the constructors of filters and orders with the field path;</li>
+ * <li><code>ENTITY_ALIAS</code> - alias of the class generated the same way as by the query builders;</li>
+ * <li><code>ID_FIELD</code> - name of the field marked with <code>@javax.persistence.Id</code>;</li>
+ * <li>a Solr field name for every member marked with <code>@org.apache.solr.client.solrj.beans.Field</code>,
+ * named like <code>SOLR_FIELD_NAME</code>;</li>
+ * <li>the nested class <code>Fields</code> with the {@link java.lang.reflect.Field} of every persistent field
+ * for the constructors and methods with the field parameter, such as <code>SolrBuilder.addFacet</code>.
+ * The fields are resolved once on the first use of the nested class.</li>
+ * </ul>
+ * Nested paths are concatenations of the constants, for example <code>BookMeta.AUTHOR + "." + AuthorMeta.NAME</code>.
+ * <p>
+ * The processor is registered as a service, so it is enough to add the module to the annotation processor path:
+ * <pre>
+ * annotationProcessor project(':processor')
+ * </pre>
+ * The suffix is changed by the compiler argument:
+ * <pre>
+ * options.compilerArgs += ['-Aquerybuilder.metamodel.suffix=Metamodel']
+ * </pre>
+ */
+@SupportedAnnotationTypes({MetamodelProcessor.ENTITY, MetamodelProcessor.SOLR_FIELD})
+@SupportedOptions(MetamodelProcessor.SUFFIX_OPTION)
+public class MetamodelProcessor extends AbstractProcessor {
+
+    static final String ENTITY = "javax.persistence.Entity";
+    static final String SOLR_FIELD = "org.apache.solr.client.solrj.beans.Field";
+
+    public static final String SUFFIX_OPTION = "querybuilder.metamodel.suffix";
+    public static final String DEFAULT_SUFFIX = "Meta";
+
+    private static final String ID = "javax.persistence.Id";
+    private static final String TRANSIENT = "javax.persistence.Transient";
+    private static final String CLASS_METADATA = "com.mangeorge.query.helper.ClassMetadata";
+
+    /**
+     * Default value of <code>@org.apache.solr.client.solrj.beans.Field</code>, which means the name of the member
+     */
+    private static final String SOLR_DEFAULT_NAME = "#default";
+
+    private final Set<String> processedClasses = new HashSet<>();
+
+    private String suffix = DEFAULT_SUFFIX;
+
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        String option = processingEnv.getOptions().get(SUFFIX_OPTION);
+        if (option == null) {
+            return;
+        }
+        if (isIdentifierPart(option)) {
+            suffix = option;
+        } else {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Option " + SUFFIX_OPTION + " is not a part of a Java identifier: \"" + option + "\"");
+        }
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element type = element.getKind().isClass() ? element : element.getEnclosingElement();
+                if (type != null && type.getKind().isClass()) {
+                    classes.add((TypeElement) type);
+                }
+            }
+        }
+        for (TypeElement type : classes) {
+            if (processedClasses.add(type.getQualifiedName().toString())) {
+                try {
+                    writeMetamodel(type);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Cannot generate metamodel of " + type.getQualifiedName() + ": " + e.getMessage(), type);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void writeMetamodel(TypeElement type) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String metamodelName = getMetamodelSimpleName(type);
+        String qualifiedName = packageName.isEmpty() ? metamodelName : packageName + "." + metamodelName;
+
+        Map<String, VariableElement> fields = collectFields(type);
+        Map<String, String> solrFieldNames = collectSolrFieldNames(type);
+        String idFieldName = findIdFieldName(fields);
+
+        Set<String> constants = new HashSet<>();
+        try (PrintWriter writer = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())) {
+            if (!packageName.isEmpty()) {
+                writer.println("package " + packageName + ";");
+                writer.println();
+            }
+            writer.println("/**");
+            writer.println(" * Static metamodel of {@link " + type.getQualifiedName() + "}.");
+            writer.println(" */");
+            String generated = getGeneratedAnnotation();
+            if (generated != null) {
+                writer.println("@" + generated + "(\"" + getClass().getName() + "\")");
+            }
+            writer.println("public final class " + metamodelName + " {");
+            writer.println();
+            writeConstant(writer, type, constants, "ENTITY_ALIAS", uncapitalize(type.getSimpleName().toString()));
+            if (idFieldName != null) {
+                writeConstant(writer, type, constants, "ID_FIELD", idFieldName);
+            }
+            writer.println();
+            for (String field : fields.keySet()) {
+                writeConstant(writer, type, constants, toConstantName(field), field);
+            }
+            if (!solrFieldNames.isEmpty()) {
+                writer.println();
+                for (Map.Entry<String, String> solrField : solrFieldNames.entrySet()) {
+                    writeConstant(writer, type, constants, "SOLR_" + toConstantName(solrField.getKey()), solrField.getValue());
+                }
+            }
+            writer.println();
+            writer.println("    private " + metamodelName + "() {");
+            writer.println("    }");
+            if (!fields.isEmpty() && processingEnv.getElementUtils().getTypeElement(CLASS_METADATA) != null) {
+                writeFieldsClass(writer, type, fields.keySet());
+            }
+            writer.println("}");
+        }
+    }
+
+    private void writeFieldsClass(PrintWriter writer, TypeElement type, Set<String> fields) {
+        writer.println();
+        writer.println("    /**");
+        writer.println("     * Fields of {@link " + type.getQualifiedName() + "}, resolved on the first use of this class.");
+        writer.println("     */");
+        writer.println("    public static final class Fields {");
+        writer.println();
+        writer.println("        private static final " + CLASS_METADATA + " metadata = "
+                + CLASS_METADATA + ".of(" + type.getQualifiedName() + ".class);");
+        writer.println();
+        Set<String> constants = new HashSet<>();
+        for (String field : fields) {
+            String constant = toConstantName(field);
+            if (constants.add(constant)) {
+                writer.println("        public static final java.lang.reflect.Field " + constant + " = "
+                        + "metadata.getField(\"" + field + "\");");
+            }
+        }
+        writer.println();
+        writer.println("        private Fields() {");
+        writer.println("        }");
+        writer.println("    }");
+    }
+
+    private void writeConstant(PrintWriter writer, TypeElement type, Set<String> constants, String constant, String value) {
+        if (!constants.add(constant)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Metamodel constant " + constant + " of " + type.getQualifiedName() + " is duplicated, "
+                            + "value \"" + value + "\" is skipped", type);
+            return;
+        }
+        writer.println("    public static final String " + constant + " = \"" + escape(value) + "\";");
+    }
+
+    /**
+     * Collects persistent fields of the class and its superclasses by name, a field of the class hides
+     * a field of a superclass. Static and transient fields are skipped.
+     */
+    private Map<String, VariableElement> collectFields(TypeElement type) {
+        Map<String, VariableElement> fields = new LinkedHashMap<>();
+        for (TypeElement current = type; current != null; current = getSuperclass(current)) {
+            for (Element member : current.getEnclosedElements()) {
+                if (member.getKind() == ElementKind.FIELD
+                        && !member.getModifiers().contains(Modifier.STATIC)
+                        && !member.getModifiers().contains(Modifier.TRANSIENT)
+                        && getAnnotation(member, TRANSIENT) == null) {
+                    fields.putIfAbsent(member.getSimpleName().toString(), (VariableElement) member);
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Collects Solr field names of the fields and setters of the class and its superclasses by the member name.
+     */
+    private Map<String, String> collectSolrFieldNames(TypeElement type) {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (TypeElement current = type; current != null; current = getSuperclass(current)) {
+            for (Element member : current.getEnclosedElements()) {
+                AnnotationMirror solrField = getAnnotation(member, SOLR_FIELD);
+                if (solrField == null) {
+                    continue;
+                }
+                String memberName = getMemberName(member);
+                String name = getAnnotationValue(solrField);
+                names.putIfAbsent(memberName, name == null || SOLR_DEFAULT_NAME.equals(name) ? memberName : name);
+            }
+        }
+        return names;
+    }
+
+    private String findIdFieldName(Map<String, VariableElement> fields) {
+        for (Map.Entry<String, VariableElement> field : fields.entrySet()) {
+            if (getAnnotation(field.getValue(), ID) != null) {
+                return field.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return name of the field or the property name of the setter
+     */
+    private static String getMemberName(Element member) {
+        String name = member.getSimpleName().toString();
+        if (member instanceof ExecutableElement && name.startsWith("set") && name.length() > 3) {
+            return uncapitalize(name.substring(3));
+        }
+        return name;
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return Object.class.getName().equals(element.getQualifiedName().toString()) ? null : element;
+    }
+
+    private static AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            Element annotationType = annotation.getAnnotationType().asElement();
+            if (annotationName.equals(((TypeElement) annotationType).getQualifiedName().toString())) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static String getAnnotationValue(AnnotationMirror annotation) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals("value")) {
+                return String.valueOf(value.getValue().getValue());
+            }
+        }
+        return null;
+    }
+
+    private String getGeneratedAnnotation() {
+        for (String name : new String[]{"javax.annotation.processing.Generated", "javax.annotation.Generated"}) {
+            if (processingEnv.getElementUtils().getTypeElement(name) != null) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return simple name of the metamodel class, names of enclosing classes are joined by underscores:
+     * <code>FooMeta</code> for the class <code>Foo</code> and <code>Outer_FooMeta</code> for the nested class
+     */
+    private String getMetamodelSimpleName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element enclosing = type.getEnclosingElement();
+             enclosing != null && !(enclosing instanceof PackageElement);
+             enclosing = enclosing.getEnclosingElement()) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+        }
+        return name.append(suffix).toString();
+    }
+
+    private static boolean isIdentifierPart(String value) {
+        return !value.isEmpty() && value.chars().allMatch(Character::isJavaIdentifierPart);
+    }
+
+    /**
+     * @return name of the constant in upper case with underscores between words: <code>firstName</code> to
+     * <code>FIRST_NAME</code>, <code>homeURLPath</code> to <code>HOME_URL_PATH</code>
+     */
+    static String toConstantName(String name) {
+        StringBuilder constant = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && name.charAt(i - 1) != '_'
+                    && (!Character.isUpperCase(name.charAt(i - 1))
+                    || i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1)))) {
+                constant.append('_');
+            }
+            constant.append(Character.toUpperCase(c));
+        }
+        return constant.toString();
+    }
+
+    private static String uncapitalize(String name) {
+        return name.isEmpty() ? name : Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
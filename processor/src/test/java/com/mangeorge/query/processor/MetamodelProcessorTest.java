@@ -0,0 +1,110 @@
+package com.mangeorge.query.processor;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class MetamodelProcessorTest {
+
+    private static final JavaFileObject BOOK = JavaFileObjects.forSourceLines("test.Book",
+            "package test;",
+            "",
+            "import javax.persistence.Entity;",
+            "import javax.persistence.Id;",
+            "import javax.persistence.Transient;",
+            "",
+            "@Entity",
+            "public class Book {",
+            "    public static final int MAX_TITLE = 100;",
+            "    @Id",
+            "    private Long id;",
+            "    private String title;",
+            "    private String authorName;",
+            "    @Transient",
+            "    private String cachedTitle;",
+            "    private transient int hash;",
+            "    @org.apache.solr.client.solrj.beans.Field(\"book_title\")",
+            "    private String indexTitle;",
+            "",
+            "    public static class Chapter {",
+            "        @org.apache.solr.client.solrj.beans.Field",
+            "        private String name;",
+            "    }",
+            "}");
+
+    private static final JavaFileObject SOLR_FIELD = JavaFileObjects.forSourceLines(
+            "org.apache.solr.client.solrj.beans.Field",
+            "package org.apache.solr.client.solrj.beans;",
+            "",
+            "public @interface Field {",
+            "    String value() default \"#default\";",
+            "}");
+
+    private static Compilation compile(String... options) {
+        return javac().withProcessors(new MetamodelProcessor()).withOptions((Object[]) options).compile(BOOK, SOLR_FIELD);
+    }
+
+    private static String generated(Compilation compilation, String className) throws IOException {
+        return compilation.generatedSourceFile(className).orElseThrow(AssertionError::new)
+                .getCharContent(true).toString();
+    }
+
+    @Test
+    void metamodelHasConstantsOfPersistentFields() throws IOException {
+        Compilation compilation = compile();
+        assertThat(compilation).succeeded();
+
+        String metamodel = generated(compilation, "test.BookMeta");
+        assertTrue(metamodel.contains("public final class BookMeta {"));
+        assertTrue(metamodel.contains("public static final String ENTITY_ALIAS = \"book\";"));
+        assertTrue(metamodel.contains("public static final String ID_FIELD = \"id\";"));
+        assertTrue(metamodel.contains("public static final String TITLE = \"title\";"));
+        assertTrue(metamodel.contains("public static final String AUTHOR_NAME = \"authorName\";"));
+        assertTrue(metamodel.contains("public static final String SOLR_INDEX_TITLE = \"book_title\";"));
+        assertFalse(metamodel.contains("CACHED_TITLE"));
+        assertFalse(metamodel.contains("HASH"));
+        assertFalse(metamodel.contains("MAX_TITLE"));
+    }
+
+    @Test
+    void nestedClassMetamodelHasNamesOfEnclosingClasses() throws IOException {
+        Compilation compilation = compile();
+        assertThat(compilation).succeeded();
+
+        String metamodel = generated(compilation, "test.Book_ChapterMeta");
+        assertTrue(metamodel.contains("public static final String SOLR_NAME = \"name\";"));
+    }
+
+    @Test
+    void suffixIsSetByOption() {
+        Compilation compilation = compile("-A" + MetamodelProcessor.SUFFIX_OPTION + "=_");
+        assertThat(compilation).succeeded();
+
+        assertTrue(compilation.generatedSourceFile("test.Book_").isPresent());
+        assertFalse(compilation.generatedSourceFile("test.BookMeta").isPresent());
+    }
+
+    @Test
+    void invalidSuffixIsError() {
+        Compilation compilation = compile("-A" + MetamodelProcessor.SUFFIX_OPTION + "=.Meta");
+
+        assertThat(compilation).hadErrorContaining(MetamodelProcessor.SUFFIX_OPTION);
+    }
+
+    @Test
+    void constantNamesAreUpperCaseWords() {
+        assertEquals("FIRST_NAME", MetamodelProcessor.toConstantName("firstName"));
+        assertEquals("HOME_URL_PATH", MetamodelProcessor.toConstantName("homeURLPath"));
+        assertEquals("ID", MetamodelProcessor.toConstantName("id"));
+    }
+}
@@ -0,0 +1,348 @@
+package com.mangeorge.query.benchmark;
+
+import com.mangeorge.query.benchmark.BenchmarkModel.Brand;
+import com.mangeorge.query.benchmark.BenchmarkModel.Category;
+import com.mangeorge.query.benchmark.BenchmarkModel.Product;
+import com.mangeorge.query.benchmark.BenchmarkModel.Region;
+import com.mangeorge.query.benchmark.BenchmarkModel.Vendor;
+import com.mangeorge.query.benchmark.BenchmarkModel.Warehouse;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+
+
+/**
+ * Synthetic catalog of {#size} products, loaded into the H2 database and the embedded Solr core in {#dataDir}.
+ * Values of every product are derived from its id, so the database and the index contain the same products.
+ * The dataset is loaded once and reused by the next runs while its size is the same, because loading of millions
+ * of rows takes minutes, and every benchmark runs in its own fork.
+ * <p>
+ * System properties: <code>benchmark.datasetSize</code> (2 000 000 by default) and
+ * <code>benchmark.dataDir</code> (<code>build/benchmark-data</code> by default).
+ */
+final class BenchmarkDataset {
+
+    static final int CATEGORIES = 200;
+    static final int ROOT_CATEGORIES = 20;
+    static final int BRANDS = 1000;
+    static final int VENDORS = 100;
+    static final int WAREHOUSES = 50;
+    static final int REGIONS = 10;
+
+    static final String[] STATUSES = {"ACTIVE", "ACTIVE", "ACTIVE", "ACTIVE", "ACTIVE", "ACTIVE", "DRAFT", "ARCHIVED"};
+    static final String[] COLORS = {"black", "white", "red", "green", "blue", "yellow", "grey", "brown", "pink",
+            "orange", "purple", "silver"};
+    static final String[] SIZES = {"XS", "S", "M", "L", "XL", "XXL"};
+    static final String[] COUNTRIES = {"DE", "FR", "IT", "US", "CN", "JP", "KR", "PL", "ES", "GB"};
+    static final String[] NOUNS = {"phone", "laptop", "camera", "watch", "tablet", "speaker", "headset", "monitor",
+            "keyboard", "mouse", "printer", "router", "charger", "cable", "lamp", "chair", "desk", "bag", "jacket",
+            "shoe", "shirt", "bottle", "kettle", "blender", "toaster"};
+    static final String[] ADJECTIVES = {"compact", "wireless", "smart", "classic", "premium", "portable", "digital",
+            "ergonomic", "silent", "rugged"};
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final String CORE_NAME = "products";
+    private static final String[] SOLR_RESOURCES = {"solr.xml", "products/core.properties",
+            "products/conf/solrconfig.xml", "products/conf/schema.xml"};
+
+    private static final Logger log = LoggerFactory.getLogger(BenchmarkDataset.class);
+
+
+    private BenchmarkDataset() {
+    }
+
+
+    static int size() {
+        return Integer.getInteger("benchmark.datasetSize", 2_000_000);
+    }
+
+    static Path dataDir() {
+        return Paths.get(System.getProperty("benchmark.dataDir", "build/benchmark-data")).toAbsolutePath();
+    }
+
+    /**
+     * Opens the database, the tables are created and loaded if they do not contain the dataset of {@link #size()}
+     *
+     * @return session factory of the database
+     */
+    static SessionFactory openDatabase() {
+        String url = "jdbc:h2:" + dataDir().resolve("h2").resolve("catalog") + ";CACHE_SIZE=262144";
+        boolean loaded = getLoadedSize(url) == size();
+        SessionFactory sessionFactory = new Configuration()
+                .addAnnotatedClass(Region.class)
+                .addAnnotatedClass(Warehouse.class)
+                .addAnnotatedClass(Vendor.class)
+                .addAnnotatedClass(Brand.class)
+                .addAnnotatedClass(Category.class)
+                .addAnnotatedClass(Product.class)
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.pool_size", "16")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", loaded ? "validate" : "create")
+                .buildSessionFactory();
+        if (!loaded) {
+            try {
+                loadDatabase(url);
+            } catch (RuntimeException e) {
+                sessionFactory.close();
+                throw e;
+            }
+        }
+        return sessionFactory;
+    }
+
+    private static long getLoadedSize(String url) {
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists benchmark_dataset (size bigint)");
+            try (ResultSet resultSet = statement.executeQuery("select max(size) from benchmark_dataset")) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Can not read the benchmark dataset from " + url, e);
+        }
+    }
+
+    private static void loadDatabase(String url) {
+        int size = size();
+        log.info("loading {} products into {}", size, url);
+        long start = System.currentTimeMillis();
+        try (Connection connection = DriverManager.getConnection(url)) {
+            connection.setAutoCommit(false);
+            insertReferences(connection);
+            try (PreparedStatement insert = connection.prepareStatement("insert into Product (id, name, code, status,"
+                    + " price, stock, rating, created, categoryName, brandName, color, size,"
+                    + " category_id, brand_id, vendor_id, warehouse_id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (long id = 1; id <= size; id++) {
+                    ProductRow row = new ProductRow(id);
+                    insert.setLong(1, id);
+                    insert.setString(2, row.name);
+                    insert.setString(3, row.code);
+                    insert.setString(4, row.status);
+                    insert.setBigDecimal(5, row.price);
+                    insert.setInt(6, row.stock);
+                    insert.setDouble(7, row.rating);
+                    insert.setTimestamp(8, new Timestamp(row.created.getTime()));
+                    insert.setString(9, categoryName(row.categoryId));
+                    insert.setString(10, brandName(row.brandId));
+                    insert.setString(11, row.color);
+                    insert.setString(12, row.size);
+                    insert.setLong(13, row.categoryId);
+                    insert.setLong(14, row.brandId);
+                    insert.setLong(15, row.vendorId);
+                    insert.setLong(16, row.warehouseId);
+                    insert.addBatch();
+                    if (id % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                        connection.commit();
+                    }
+                }
+                insert.executeBatch();
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("delete from benchmark_dataset");
+                statement.execute("insert into benchmark_dataset values (" + size + ")");
+                statement.execute("analyze");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Can not load the benchmark dataset into " + url, e);
+        }
+        log.info("loaded {} products in {} ms", size, System.currentTimeMillis() - start);
+    }
+
+    private static void insertReferences(Connection connection) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("insert into Region (id, name) values (?, ?)")) {
+            for (long id = 1; id <= REGIONS; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, "region " + id);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Warehouse (id, city, region_id) values (?, ?, ?)")) {
+            for (long id = 1; id <= WAREHOUSES; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, "city " + id);
+                insert.setLong(3, id % REGIONS + 1);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Vendor (id, name, rank) values (?, ?, ?)")) {
+            for (long id = 1; id <= VENDORS; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, "vendor " + id);
+                insert.setInt(3, (int) (id % 5));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Brand (id, name, country) values (?, ?, ?)")) {
+            for (long id = 1; id <= BRANDS; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, brandName(id));
+                insert.setString(3, COUNTRIES[(int) (id % COUNTRIES.length)]);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Category (id, name, parent_id) values (?, ?, ?)")) {
+            for (long id = 1; id <= CATEGORIES; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, categoryName(id));
+                if (id <= ROOT_CATEGORIES) {
+                    insert.setNull(3, java.sql.Types.BIGINT);
+                } else {
+                    insert.setLong(3, id % ROOT_CATEGORIES + 1);
+                }
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Opens the embedded Solr core, the products are indexed if the core does not contain {@link #size()} documents
+     *
+     * @return client of the core
+     */
+    static EmbeddedSolrServer openIndex() {
+        Path solrHome = dataDir().resolve("solr");
+        try {
+            for (String resource : SOLR_RESOURCES) {
+                Path target = solrHome.resolve(resource);
+                Files.createDirectories(target.getParent());
+                try (InputStream input = BenchmarkDataset.class.getResourceAsStream("/solr/" + resource)) {
+                    Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not create Solr home " + solrHome, e);
+        }
+        EmbeddedSolrServer server = new EmbeddedSolrServer(solrHome, CORE_NAME);
+        try {
+            long numFound = server.query(new SolrQuery("*:*").setRows(0)).getResults().getNumFound();
+            if (numFound != size()) {
+                loadIndex(server);
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Can not load the benchmark dataset into " + solrHome, e);
+        }
+        return server;
+    }
+
+    private static void loadIndex(EmbeddedSolrServer server) throws SolrServerException, IOException {
+        int size = size();
+        log.info("indexing {} products", size);
+        long start = System.currentTimeMillis();
+        server.deleteByQuery("*:*");
+        List<SolrInputDocument> documents = new ArrayList<>(BATCH_SIZE);
+        for (long id = 1; id <= size; id++) {
+            ProductRow row = new ProductRow(id);
+            SolrInputDocument document = new SolrInputDocument();
+            document.addField("id", String.valueOf(id));
+            document.addField("id_l", id);
+            document.addField("name_t", row.name);
+            document.addField("code_s", row.code);
+            document.addField("status", row.status);
+            document.addField("price_d", row.price.doubleValue());
+            document.addField("stock_i", row.stock);
+            document.addField("rating_d", row.rating);
+            document.addField("created_dt", row.created);
+            document.addField("category_s", categoryName(row.categoryId));
+            document.addField("brand_s", brandName(row.brandId));
+            document.addField("color_s", row.color);
+            document.addField("size_s", row.size);
+            documents.add(document);
+            if (documents.size() == BATCH_SIZE) {
+                server.add(documents);
+                documents.clear();
+            }
+        }
+        if (!documents.isEmpty()) {
+            server.add(documents);
+        }
+        server.commit();
+        server.optimize(true, true, 1);
+        log.info("indexed {} products in {} ms", size, System.currentTimeMillis() - start);
+    }
+
+    static String categoryName(long id) {
+        return "category " + id;
+    }
+
+    static String brandName(long id) {
+        return "brand " + id;
+    }
+
+
+    /**
+     * Values of the product, derived from its id
+     */
+    private static final class ProductRow {
+
+        private static final long FIRST_CREATED = 1_577_836_800_000L;
+
+        private final String name;
+        private final String code;
+        private final String status;
+        private final BigDecimal price;
+        private final int stock;
+        private final double rating;
+        private final Date created;
+        private final String color;
+        private final String size;
+        private final long categoryId;
+        private final long brandId;
+        private final long vendorId;
+        private final long warehouseId;
+
+        private ProductRow(long id) {
+            SplittableRandom random = new SplittableRandom(id);
+            name = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + NOUNS[random.nextInt(NOUNS.length)] + " " + id;
+            code = String.format("P%08d", id);
+            status = STATUSES[random.nextInt(STATUSES.length)];
+            price = BigDecimal.valueOf(random.nextInt(100, 100_000), 2);
+            stock = random.nextInt(500);
+            rating = random.nextInt(51) / 10.0;
+            created = new Date(FIRST_CREATED + id * 60_000);
+            color = COLORS[random.nextInt(COLORS.length)];
+            size = SIZES[random.nextInt(SIZES.length)];
+            categoryId = random.nextInt(CATEGORIES) + 1;
+            brandId = random.nextInt(BRANDS) + 1;
+            vendorId = random.nextInt(VENDORS) + 1;
+            warehouseId = random.nextInt(WAREHOUSES) + 1;
+        }
+    }
+}
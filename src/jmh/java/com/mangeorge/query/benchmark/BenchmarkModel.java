@@ -0,0 +1,123 @@
+package com.mangeorge.query.benchmark;
+
+import org.apache.solr.client.solrj.beans.Field;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.util.Date;
+
+
+/**
+ * Entities of the benchmarks, a product of a catalog with its references.
+ * The same classes are used as index entities, see the schema of the <code>products</code> core.
+ */
+@SuppressWarnings("unused")
+public final class BenchmarkModel {
+
+    private BenchmarkModel() {
+    }
+
+
+    @Entity(name = "Product")
+    @Table(indexes = {@Index(columnList = "categoryName,price"), @Index(columnList = "status,price"),
+            @Index(columnList = "price")})
+    public static class Product {
+        /**
+         * The unique key of the core is the string <code>id</code>, the binder cannot set it to the long field
+         */
+        @Id
+        @Field("id_l")
+        private Long id;
+        @Field("name_t")
+        private String name;
+        @Field("code_s")
+        private String code;
+        @Field
+        private String status;
+        @Field("price_d")
+        private BigDecimal price;
+        @Field("stock_i")
+        private Integer stock;
+        @Field("rating_d")
+        private Double rating;
+        @Field("created_dt")
+        private Date created;
+        @Field("category_s")
+        private String categoryName;
+        @Field("brand_s")
+        private String brandName;
+        @Field("color_s")
+        private String color;
+        @Field("size_s")
+        private String size;
+        @ManyToOne
+        private Category category;
+        @ManyToOne
+        private Brand brand;
+        @ManyToOne
+        private Vendor vendor;
+        @ManyToOne
+        private Warehouse warehouse;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public Integer getStock() {
+            return stock;
+        }
+    }
+
+    @Entity(name = "Category")
+    public static class Category {
+        @Id
+        private Long id;
+        private String name;
+        @ManyToOne
+        private Category parent;
+    }
+
+    @Entity(name = "Brand")
+    public static class Brand {
+        @Id
+        private Long id;
+        private String name;
+        private String country;
+    }
+
+    @Entity(name = "Vendor")
+    public static class Vendor {
+        @Id
+        private Long id;
+        private String name;
+        private Integer rank;
+    }
+
+    @Entity(name = "Warehouse")
+    public static class Warehouse {
+        @Id
+        private Long id;
+        private String city;
+        @ManyToOne
+        private Region region;
+    }
+
+    @Entity(name = "Region")
+    public static class Region {
+        @Id
+        private Long id;
+        private String name;
+    }
+}
@@ -0,0 +1,168 @@
+package com.mangeorge.query.benchmark;
+
+import com.mangeorge.query.QueryBuilder;
+import com.mangeorge.query.SolrBuilder;
+import com.mangeorge.query.benchmark.BenchmarkModel.Product;
+import com.mangeorge.query.benchmark.BenchmarkModel.Warehouse;
+import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.filter.group.AndFilter;
+import com.mangeorge.query.filter.group.OrFilter;
+import com.mangeorge.query.filter.single.BetweenFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.filter.single.LikeFilter;
+import com.mangeorge.query.filter.single.NullFilter;
+import com.mangeorge.query.helper.ReflectionHelper;
+import com.mangeorge.query.join.JoinType;
+import com.mangeorge.query.join.QueryJoin;
+import com.mangeorge.query.order.Order;
+import org.hibernate.criterion.MatchMode;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Query shapes of the benchmarks. Every call creates new builders and filters, the same as a request does,
+ * and values depend on the seed, so the shapes are repeated, but the values are not.
+ */
+final class BenchmarkQueries {
+
+    static final String ROOT_ALIAS = "product";
+
+    private static final String[] STRING_FIELDS = {"name", "code", "status", "color", "size"};
+    private static final String[] NUMBER_FIELDS = {"stock", "id"};
+
+
+    private BenchmarkQueries() {
+    }
+
+
+    /**
+     * @param size number of ids
+     * @param seed first id
+     * @return query of products by ids, ordered by name
+     */
+    static QueryBuilder wideInQuery(int size, long seed) {
+        Long[] ids = new Long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = seed + i * 7L;
+        }
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new InFilter<>(ROOT_ALIAS, "id", ids));
+        queryBuilder.setOrder(new Order("name", new Order("id")));
+        queryBuilder.setPageSize(50);
+        return queryBuilder;
+    }
+
+    /**
+     * @param seed seed of the values
+     * @return query with the tree of {@link #mixedTree(String, int, long)} with 100 leaves
+     */
+    static QueryBuilder mixedTreeQuery(long seed) {
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(mixedTree(ROOT_ALIAS, 10, seed));
+        queryBuilder.setOrder(new Order("id", true));
+        queryBuilder.setFirst(100);
+        queryBuilder.setPageSize(50);
+        return queryBuilder;
+    }
+
+    /**
+     * @param seed seed of the values
+     * @return query of products joined with the category and its parent, the brand, the vendor and the warehouse
+     */
+    static QueryBuilder fiveJoinQuery(long seed) {
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.addQueryJoins(
+                new QueryJoin(ROOT_ALIAS, "category", "c"),
+                new QueryJoin("c", "parent", "pc"),
+                new QueryJoin(ROOT_ALIAS, "brand", "b"),
+                new QueryJoin(ROOT_ALIAS, "vendor", "v"),
+                new QueryJoin(ROOT_ALIAS, Warehouse.class, "warehouse", "id", JoinType.INNER));
+        queryBuilder.setQueryFilter(new AndFilter(
+                new EqualsFilter<>("pc", "name", "category " + seed % 10),
+                new LikeFilter("b", "name", "brand" + seed % 100, MatchMode.START),
+                new BetweenFilter<>("v", "rank", (int) (seed % 5), (int) (seed % 5) + 3),
+                new InFilter<>("warehouse", "city", "city" + seed % 3, "city" + seed % 7, "city" + seed % 11),
+                new EqualsFilter<>(ROOT_ALIAS, "status", "ACTIVE")));
+        queryBuilder.setOrder(new Order("name", "b", false, new Order("id")));
+        queryBuilder.setPageSize(20);
+        return queryBuilder;
+    }
+
+    /**
+     * @param seed seed of the values
+     * @return query to the index with the tree of 93 leaves, field facets excluding their filters,
+     * facet queries and pivot facets
+     */
+    static SolrBuilder<Product> facetedIndexQuery(long seed) {
+        QueryFilter statusFilter = new EqualsFilter<>(field("status"), "ACTIVE");
+        QueryFilter colorFilter = new InFilter<>(field("color"), "red", "green", "blue" + seed % 5);
+        QueryFilter priceFilter = new BetweenFilter<>(field("price"),
+                BigDecimal.valueOf(seed % 100), BigDecimal.valueOf(seed % 100 + 50));
+        SolrBuilder<Product> solrBuilder = new SolrBuilder<>(Product.class)
+                .setQuery("name_t:phone*")
+                .setQueryFilter(new AndFilter(statusFilter, colorFilter, priceFilter, mixedTree(null, 9, seed)))
+                .addFacet(field("color"), colorFilter)
+                .addFacet(field("status"), statusFilter)
+                .addFacet(field("brandName"), null)
+                .addFacet(field("categoryName"), null)
+                .addFacet(field("size"), colorFilter)
+                .addFacetQuery("price_d:[0 TO 100]", priceFilter)
+                .addFacetQuery("price_d:[100 TO *]", priceFilter)
+                .addPivotFacet(field("categoryName"), field("brandName"))
+                .addPivotFacet(field("color"), field("size"), field("status"))
+                .addOrder(new Order(field("rating"), true))
+                .addOrder(new Order(field("id")))
+                .setFirst(0)
+                .setPageSize(24)
+                .setFacetLimit(20);
+        solrBuilder.addField(field("id"));
+        solrBuilder.addField(field("name"));
+        return solrBuilder;
+    }
+
+    /**
+     * Tree of groups alternating And and Or, with 10 leaves each: equality, like, between, in and null filters
+     *
+     * @param alias  alias of the leaves
+     * @param groups number of groups
+     * @param seed   seed of the values
+     * @return tree with <code>groups * 10</code> leaves
+     */
+    static QueryFilter mixedTree(String alias, int groups, long seed) {
+        List<QueryFilter> children = new ArrayList<>(groups);
+        for (int g = 0; g < groups; g++) {
+            List<QueryFilter> leaves = new ArrayList<>(10);
+            for (int i = 0; i < 10; i++) {
+                leaves.add(leaf(alias, g * 10 + i, seed));
+            }
+            children.add(g % 2 == 0 ? new OrFilter(leaves) : new AndFilter(leaves));
+        }
+        return new AndFilter(children);
+    }
+
+    private static QueryFilter leaf(String alias, int index, long seed) {
+        String stringField = STRING_FIELDS[index % STRING_FIELDS.length];
+        String numberField = NUMBER_FIELDS[index % NUMBER_FIELDS.length];
+        switch (index % 5) {
+            case 0:
+                return new EqualsFilter<>(alias, stringField, "value" + (seed + index) % 1000);
+            case 1:
+                return new LikeFilter(alias, stringField, "v" + (seed + index) % 100, MatchMode.ANYWHERE);
+            case 2:
+                return new BetweenFilter<>(alias, numberField, seed % 1000 + index, seed % 1000 + index + 100);
+            case 3:
+                return new InFilter<>(alias, stringField, "a" + seed % 10, "b" + seed % 20, "c" + index);
+            default:
+                return new NullFilter(alias, stringField);
+        }
+    }
+
+    static Field field(String name) {
+        return ReflectionHelper.getFieldByFieldName(name, Product.class);
+    }
+}
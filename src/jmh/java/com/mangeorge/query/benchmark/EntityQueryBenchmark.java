@@ -0,0 +1,229 @@
+package com.mangeorge.query.benchmark;
+
+import com.mangeorge.query.EntityQueryExecutor;
+import com.mangeorge.query.EntityQueryResult;
+import com.mangeorge.query.QueryBuilder;
+import com.mangeorge.query.benchmark.BenchmarkModel.Product;
+import com.mangeorge.query.benchmark.BenchmarkModel.Region;
+import com.mangeorge.query.cache.QueryResultCache;
+import com.mangeorge.query.filter.group.AndFilter;
+import com.mangeorge.query.filter.single.BetweenFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.join.JoinType;
+import com.mangeorge.query.join.QueryJoin;
+import com.mangeorge.query.order.Order;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Queries of {@link QueryBuilder} executed against the H2 database with the {@link BenchmarkDataset}.
+ * Every operation opens a new session, the same as a request does, so the first level cache is empty.
+ * Operations are sampled, so the results contain the latency percentiles of every workload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntityQueryBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int DEEP_OFFSET = 10_000;
+    private static final int TOKEN_COUNT = 100;
+
+    private final AtomicLong seed = new AtomicLong();
+
+    private SessionFactory sessionFactory;
+    private QueryResultCache resultCache;
+
+    /**
+     * Continuation tokens of products spread over the dataset, for the order by price
+     */
+    private final List<String> continuationTokens = new ArrayList<>();
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = BenchmarkDataset.openDatabase();
+        resultCache = new QueryResultCache();
+        Long[] ids = new Long[TOKEN_COUNT];
+        for (int i = 0; i < TOKEN_COUNT; i++) {
+            ids[i] = (long) i * BenchmarkDataset.size() / TOKEN_COUNT + 1;
+        }
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new InFilter<>("id", ids));
+        try (Session session = sessionFactory.openSession()) {
+            QueryBuilder keysetQuery = keysetQuery(null);
+            for (Object product : new EntityQueryExecutor(session).list(queryBuilder)) {
+                continuationTokens.add(keysetQuery.createContinuationToken(product));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    private long nextSeed() {
+        return seed.incrementAndGet();
+    }
+
+    private EntityQueryExecutor executor(Session session) {
+        return new EntityQueryExecutor(session).setReadOnly(true);
+    }
+
+    private static QueryBuilder categoryQuery(long seed) {
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new EqualsFilter<>("categoryName",
+                BenchmarkDataset.categoryName(seed % BenchmarkDataset.CATEGORIES + 1)));
+        queryBuilder.setOrder(new Order("price", new Order("id")));
+        queryBuilder.setPageSize(PAGE_SIZE);
+        return queryBuilder;
+    }
+
+    private static QueryBuilder keysetQuery(String continuationToken) {
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new EqualsFilter<>("status", "ACTIVE"));
+        queryBuilder.setOrder(new Order("price"));
+        queryBuilder.setKeysetPagination(true);
+        queryBuilder.setContinuationToken(continuationToken);
+        queryBuilder.setPageSize(PAGE_SIZE);
+        return queryBuilder;
+    }
+
+    private static BigDecimal price(long seed) {
+        return BigDecimal.valueOf(seed % 900 + 1);
+    }
+
+    @Benchmark
+    public List<Product> categoryPage() {
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).list(categoryQuery(nextSeed()));
+        }
+    }
+
+    @Benchmark
+    public EntityQueryResult<Product> categoryPageWithCount() {
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).page(categoryQuery(nextSeed()));
+        }
+    }
+
+    @Benchmark
+    public List<Product> categoryPageSQL() {
+        QueryBuilder queryBuilder = categoryQuery(nextSeed());
+        queryBuilder.setUseSQLQuery(true);
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).list(queryBuilder);
+        }
+    }
+
+    /**
+     * The result cache is shared by all operations, so the pages of the 200 categories are selected by ids
+     * after the first operations
+     */
+    @Benchmark
+    public List<Product> categoryPageCached() {
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).setResultCache(resultCache).list(categoryQuery(nextSeed()));
+        }
+    }
+
+    @Benchmark
+    public int priceRangeCount() {
+        long seed = nextSeed();
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new BetweenFilter<>("price", price(seed), price(seed).add(BigDecimal.TEN)));
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).count(queryBuilder);
+        }
+    }
+
+    @Benchmark
+    public EntityQueryResult<Product> statusPageWithCappedCount() {
+        long seed = nextSeed();
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new AndFilter(new EqualsFilter<>("status", "ACTIVE"),
+                new BetweenFilter<>("price", price(seed), price(seed).add(BigDecimal.valueOf(100)))));
+        queryBuilder.setOrder(new Order("price", new Order("id")));
+        queryBuilder.setPageSize(PAGE_SIZE);
+        queryBuilder.setCountLimit(1000);
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).page(queryBuilder);
+        }
+    }
+
+    @Benchmark
+    public List<Product> idsIn() {
+        long seed = nextSeed();
+        Long[] ids = new Long[500];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (seed * 31 + i * 997L) % BenchmarkDataset.size() + 1;
+        }
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new InFilter<>("id", ids));
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).list(queryBuilder);
+        }
+    }
+
+    @Benchmark
+    public List<Product> joinedFilter() {
+        long seed = nextSeed();
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        String rootAlias = queryBuilder.getRootAlias();
+        queryBuilder.addQueryJoins(
+                new QueryJoin(rootAlias, "brand", "b"),
+                new QueryJoin(rootAlias, "warehouse", "w"),
+                new QueryJoin("w", Region.class, "region", "id", JoinType.INNER));
+        queryBuilder.setQueryFilter(new AndFilter(
+                new EqualsFilter<>("b", "country", BenchmarkDataset.COUNTRIES[(int) (seed % 10)]),
+                new EqualsFilter<>("region", "name", "region " + (seed % BenchmarkDataset.REGIONS + 1)),
+                new EqualsFilter<>(rootAlias, "categoryName",
+                        BenchmarkDataset.categoryName(seed % BenchmarkDataset.CATEGORIES + 1))));
+        queryBuilder.setOrder(new Order("price", new Order("id")));
+        queryBuilder.setPageSize(PAGE_SIZE);
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).list(queryBuilder);
+        }
+    }
+
+    /**
+     * Pages of the order of {@link #offsetPage()} spread over the dataset, selected by the continuation token
+     */
+    @Benchmark
+    public List<Product> keysetPage() {
+        String continuationToken = continuationTokens.get((int) (nextSeed() % continuationTokens.size()));
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).list(keysetQuery(continuationToken));
+        }
+    }
+
+    @Benchmark
+    public List<Product> offsetPage() {
+        QueryBuilder queryBuilder = new QueryBuilder(Product.class);
+        queryBuilder.setQueryFilter(new EqualsFilter<>("status", "ACTIVE"));
+        queryBuilder.setOrder(new Order("price", new Order("id")));
+        queryBuilder.setFirst(DEEP_OFFSET + (int) (nextSeed() % 100) * PAGE_SIZE);
+        queryBuilder.setPageSize(PAGE_SIZE);
+        try (Session session = sessionFactory.openSession()) {
+            return executor(session).list(queryBuilder);
+        }
+    }
+}
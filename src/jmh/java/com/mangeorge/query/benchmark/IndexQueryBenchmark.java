@@ -0,0 +1,194 @@
+package com.mangeorge.query.benchmark;
+
+import com.mangeorge.query.IndexQueryExecutor;
+import com.mangeorge.query.IndexQueryResult;
+import com.mangeorge.query.SolrBuilder;
+import com.mangeorge.query.benchmark.BenchmarkModel.Product;
+import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.filter.single.BetweenFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.order.Order;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.mangeorge.query.benchmark.BenchmarkQueries.field;
+
+
+/**
+ * Queries of {@link SolrBuilder} executed against the embedded Solr core with the {@link BenchmarkDataset}.
+ * Every operation builds the query and executes it by {@link IndexQueryExecutor},
+ * so the latency includes the work of the client. Filter expressions use the Solr names of the fields.
+ * Operations are sampled, so the results contain the latency percentiles of every workload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IndexQueryBenchmark {
+
+    private static final int PAGE_SIZE = 24;
+    private static final int DEEP_OFFSET = 10_000;
+
+    /**
+     * Returned fields, the price is not returned, because the binder cannot set the double value to the decimal field
+     */
+    private static final String[] FIELDS = {"id", "name", "code", "status", "stock", "rating", "created",
+            "categoryName", "brandName", "color", "size"};
+
+    /**
+     * Returned fields of the scans, the fields with docValues, which the export handler can return
+     */
+    private static final String[] SCAN_FIELDS = {"id", "status", "stock", "rating", "created", "categoryName",
+            "brandName", "color", "size"};
+
+    private final AtomicLong seed = new AtomicLong();
+
+    private EmbeddedSolrServer server;
+    private IndexQueryExecutor executor;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = BenchmarkDataset.openIndex();
+        executor = new IndexQueryExecutor(server);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    private long nextSeed() {
+        return seed.incrementAndGet();
+    }
+
+    private static SolrBuilder<Product> searchQuery(long seed) {
+        SolrBuilder<Product> solrBuilder = new SolrBuilder<>(Product.class)
+                .setQuery("name_t:" + BenchmarkDataset.NOUNS[(int) (seed % BenchmarkDataset.NOUNS.length)])
+                .setQueryFilter(new EqualsFilter<>("status", "ACTIVE"))
+                .addOrder(new Order(field("rating"), true))
+                .addOrder(new Order(field("id")))
+                .setPageSize(PAGE_SIZE);
+        for (String name : FIELDS) {
+            solrBuilder.addField(field(name));
+        }
+        return solrBuilder;
+    }
+
+    private static SolrBuilder<Product> scanQuery(long seed) {
+        SolrBuilder<Product> solrBuilder = new SolrBuilder<>(Product.class)
+                .setQuery("name_t:" + BenchmarkDataset.NOUNS[(int) (seed % BenchmarkDataset.NOUNS.length)])
+                .setQueryFilter(new EqualsFilter<>("status", "ACTIVE"));
+        for (String name : SCAN_FIELDS) {
+            solrBuilder.addField(field(name));
+        }
+        return solrBuilder;
+    }
+
+    private static SolrBuilder<Product> facetedQuery(long seed) {
+        QueryFilter colorFilter = new InFilter<>("color_s", new String[]{BenchmarkDataset.COLORS[(int) (seed % 12)],
+                BenchmarkDataset.COLORS[(int) ((seed + 5) % 12)]});
+        QueryFilter sizeFilter = new EqualsFilter<>("size_s", BenchmarkDataset.SIZES[(int) (seed % 6)]);
+        QueryFilter priceFilter = new BetweenFilter<>("price_d", seed % 500, seed % 500 + 300);
+        return searchQuery(seed)
+                .addQueryFilter(colorFilter)
+                .addQueryFilter(sizeFilter)
+                .addQueryFilter(priceFilter)
+                .addFacet(field("color"), colorFilter)
+                .addFacet(field("size"), sizeFilter)
+                .addFacet(field("brandName"), null)
+                .addFacet(field("categoryName"), null)
+                .addFacetQuery("price_d:[0 TO 100]", priceFilter)
+                .addFacetQuery("price_d:[100 TO 500]", priceFilter)
+                .addFacetQuery("price_d:[500 TO *]", priceFilter)
+                .setFacetLimit(20);
+    }
+
+
+    @Benchmark
+    public IndexQueryResult<Product> searchPage() {
+        return executor.execute(searchQuery(nextSeed()));
+    }
+
+    @Benchmark
+    public IndexQueryResult<Product> searchPageCompiled() {
+        return executor.execute(searchQuery(nextSeed()).compile());
+    }
+
+    @Benchmark
+    public IndexQueryResult<Product> deepPage() {
+        long seed = nextSeed();
+        return executor.execute(searchQuery(seed).setFirst(DEEP_OFFSET + (int) (seed % 100) * PAGE_SIZE));
+    }
+
+    /**
+     * All results of the search, requested by the cursor mark
+     */
+    @Benchmark
+    public long cursorScan() {
+        try (Stream<Product> stream = executor.stream(scanQuery(nextSeed()).setUseCursor(true))) {
+            return stream.count();
+        }
+    }
+
+    /**
+     * All results of the search of {@link #cursorScan()}, exported by the export handler
+     */
+    @Benchmark
+    public long exportScan() {
+        return executor.export(scanQuery(nextSeed()).setUseExport(true), product -> {
+        });
+    }
+
+    @Benchmark
+    public IndexQueryResult<Product> facets() {
+        return executor.execute(facetedQuery(nextSeed()));
+    }
+
+    @Benchmark
+    public IndexQueryResult<Product> pivots() {
+        return executor.execute(facetedQuery(nextSeed())
+                .addPivotFacet(field("categoryName"), field("brandName"))
+                .addPivotFacet(field("color"), field("size"), field("status"))
+                .setPageSize(0));
+    }
+
+    @Benchmark
+    public IndexQueryResult<Product> facetsJson() {
+        return executor.execute(facetedQuery(nextSeed()).setUseJsonFacet(true));
+    }
+
+    /**
+     * Pivots of {@link #pivots()} by the nested terms facets, with the same limit of every field
+     */
+    @Benchmark
+    public IndexQueryResult<Product> pivotsJson() {
+        return executor.execute(facetedQuery(nextSeed())
+                .addPivotFacet(field("categoryName"), field("brandName"))
+                .addPivotFacet(field("color"), field("size"), field("status"))
+                .setUseJsonFacet(true)
+                .setPageSize(0));
+    }
+
+    @Benchmark
+    public IndexQueryResult<Product> grouping() {
+        SolrBuilder<Product> solrBuilder = searchQuery(nextSeed())
+                .addGroupField(field("brandName"))
+                .setGroupLimit(3);
+        solrBuilder.setGroupOrder(new Order(field("price"), true));
+        return executor.execute(solrBuilder);
+    }
+}
@@ -0,0 +1,93 @@
+package com.mangeorge.query.benchmark;
+
+import com.mangeorge.query.CompiledEntityQuery;
+import com.mangeorge.query.QueryBuilder;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.cache.QueryTemplateCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Building and rendering of HQL queries, the work done by {@link QueryBuilder} for every request.
+ * Every operation creates a new builder with new values, so filters are prepared and fingerprinted every time.
+ * With {#templateCache} disabled every operation renders the query string, with it enabled the string is
+ * taken from the {@link QueryBuilder#getTemplateCache()} after the first operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueryBuilderBenchmark {
+
+    @Param({"true", "false"})
+    public boolean templateCache;
+
+    /**
+     * Number of values of the wide {@link com.mangeorge.query.filter.single.InFilter}
+     */
+    @Param({"1000"})
+    public int inSize;
+
+    private long seed;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        QueryBuilder.getTemplateCache().setMaxSize(templateCache ? QueryTemplateCache.DEFAULT_MAX_SIZE : 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        QueryBuilder.getTemplateCache().setMaxSize(QueryTemplateCache.DEFAULT_MAX_SIZE);
+    }
+
+    private long nextSeed() {
+        seed = (seed + 1) % 10_000;
+        return seed;
+    }
+
+    @Benchmark
+    public String wideInHQL() {
+        return BenchmarkQueries.wideInQuery(inSize, nextSeed()).getHQLQuery();
+    }
+
+    @Benchmark
+    public CompiledEntityQuery wideInCompile() {
+        return BenchmarkQueries.wideInQuery(inSize, nextSeed()).compile();
+    }
+
+    @Benchmark
+    public String mixedTreeHQL() {
+        return BenchmarkQueries.mixedTreeQuery(nextSeed()).getHQLQuery();
+    }
+
+    @Benchmark
+    public CompiledEntityQuery mixedTreeCompile() {
+        return BenchmarkQueries.mixedTreeQuery(nextSeed()).compile();
+    }
+
+    @Benchmark
+    public QueryFingerprint mixedTreeShapeFingerprint() {
+        return BenchmarkQueries.mixedTreeQuery(nextSeed()).getShapeFingerprint();
+    }
+
+    @Benchmark
+    public String fiveJoinHQL() {
+        return BenchmarkQueries.fiveJoinQuery(nextSeed()).getHQLQuery();
+    }
+
+    @Benchmark
+    public CompiledEntityQuery fiveJoinCompile() {
+        return BenchmarkQueries.fiveJoinQuery(nextSeed()).compile();
+    }
+}
@@ -0,0 +1,71 @@
+package com.mangeorge.query.benchmark;
+
+import com.mangeorge.query.benchmark.BenchmarkModel.Product;
+import com.mangeorge.query.helper.IndexHelper;
+import com.mangeorge.query.helper.ReflectionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Reflection lookups done while queries are built, through the cached metadata of {@link ReflectionHelper} and
+ * {@link IndexHelper}, and the same lookups through plain reflection as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReflectionBenchmark {
+
+    @Param({"name", "warehouse"})
+    public String fieldName;
+
+    private Field field;
+
+
+    @Setup
+    public void setUp() throws NoSuchFieldException {
+        field = Product.class.getDeclaredField(fieldName);
+    }
+
+    @Benchmark
+    public Field fieldByName() {
+        return ReflectionHelper.getFieldByFieldName(fieldName, Product.class);
+    }
+
+    @Benchmark
+    public Field fieldByNameUncached() throws NoSuchFieldException {
+        return Product.class.getDeclaredField(fieldName);
+    }
+
+    @Benchmark
+    public String idFieldName() {
+        return ReflectionHelper.getIdFieldName(Product.class);
+    }
+
+    @Benchmark
+    public List<Field> fieldsWithAnnotation() {
+        return ReflectionHelper.getFieldsWithAnnotation(Product.class, org.apache.solr.client.solrj.beans.Field.class);
+    }
+
+    @Benchmark
+    public String solrFieldName() {
+        return IndexHelper.getSolrFieldName(field);
+    }
+
+    @Benchmark
+    public String solrFieldNameUncached() {
+        org.apache.solr.client.solrj.beans.Field annotation =
+                field.getAnnotation(org.apache.solr.client.solrj.beans.Field.class);
+        return annotation == null ? null : annotation.value();
+    }
+}
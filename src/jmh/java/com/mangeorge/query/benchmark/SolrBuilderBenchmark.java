@@ -0,0 +1,63 @@
+package com.mangeorge.query.benchmark;
+
+import com.mangeorge.query.CompiledIndexQuery;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.SolrBuilder;
+import com.mangeorge.query.benchmark.BenchmarkModel.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Rendering of Solr queries with tagged filters, facets excluding the filters and pivot facets.
+ * Every operation creates a new builder, {@link #build()} measures the creation alone,
+ * so the cost of rendering is the difference with it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SolrBuilderBenchmark {
+
+    private long seed;
+
+
+    private long nextSeed() {
+        seed = (seed + 1) % 10_000;
+        return seed;
+    }
+
+    @Benchmark
+    public SolrBuilder<Product> build() {
+        return BenchmarkQueries.facetedIndexQuery(nextSeed());
+    }
+
+    @Benchmark
+    public List<String> filterQueries() {
+        return BenchmarkQueries.facetedIndexQuery(nextSeed()).getFilterQueries();
+    }
+
+    @Benchmark
+    public List<String> facets() {
+        SolrBuilder<Product> solrBuilder = BenchmarkQueries.facetedIndexQuery(nextSeed());
+        List<String> facets = solrBuilder.getFacets();
+        facets.addAll(solrBuilder.getFacetQueries());
+        return facets;
+    }
+
+    @Benchmark
+    public QueryFingerprint shapeFingerprint() {
+        return BenchmarkQueries.facetedIndexQuery(nextSeed()).getShapeFingerprint();
+    }
+
+    @Benchmark
+    public CompiledIndexQuery<Product> compile() {
+        return BenchmarkQueries.facetedIndexQuery(nextSeed()).compile();
+    }
+}
@@ -0,0 +1,128 @@
+package com.mangeorge.query;
+
+import org.hibernate.query.Query;
+
+
+/**
+ * Query to the database, compiled by {@link QueryBuilder#compile()}.
+ * Contains rendered HQL queries and their parameters with the values taken at compile time, so the compiled query
+ * is immutable and is not changed by later changes of the builder or its filters. It can be cached and bound again
+ * with other values of the same shape, which are given explicitly.
+ */
+@SuppressWarnings("unused")
+public final class CompiledEntityQuery {
+
+    private final Class<?> rootClass;
+    private final String hqlQuery;
+    private final String countHQLQuery;
+    private final HQLParameters parameters;
+    private final HQLParameters countParameters;
+    private final Integer first;
+    private final Integer pageSize;
+    private final Integer countLimit;
+    private final Boolean useCache;
+    private final boolean useDistinctResult;
+
+
+    CompiledEntityQuery(Class<?> rootClass, String hqlQuery, String countHQLQuery,
+                        HQLParameters parameters, HQLParameters countParameters,
+                        Integer first, Integer pageSize, Integer countLimit,
+                        Boolean useCache, boolean useDistinctResult) {
+        this.rootClass = rootClass;
+        this.hqlQuery = hqlQuery;
+        this.countHQLQuery = countHQLQuery;
+        this.parameters = parameters;
+        this.countParameters = countParameters;
+        this.first = first;
+        this.pageSize = pageSize;
+        this.countLimit = countLimit;
+        this.useCache = useCache;
+        this.useDistinctResult = useDistinctResult;
+    }
+
+
+    /**
+     * Set the values taken at compile time to HQL Query
+     *
+     * @param query Hibernate query created from {@link #getHQLQuery()}
+     */
+    public void setHQLParams(Query<?> query) {
+        parameters.apply(query);
+    }
+
+    /**
+     * Set the values to the parameters of HQL Query
+     *
+     * @param query  Hibernate query created from {@link #getHQLQuery()}
+     * @param values values in the order of {@link #getParameters()}
+     */
+    public void setHQLParams(Query<?> query, Object... values) {
+        parameters.apply(query, values);
+    }
+
+    /**
+     * Set the values taken at compile time to HQL Query
+     *
+     * @param query Hibernate query created from {@link #getCountHQLQuery()}
+     */
+    public void setCountHQLParams(Query<?> query) {
+        countParameters.apply(query);
+    }
+
+    /**
+     * Set the values to the parameters of HQL Query
+     *
+     * @param query  Hibernate query created from {@link #getCountHQLQuery()}
+     * @param values values in the order of {@link #getCountParameters()}
+     */
+    public void setCountHQLParams(Query<?> query, Object... values) {
+        countParameters.apply(query, values);
+    }
+
+    public Class<?> getRootClass() {
+        return rootClass;
+    }
+
+    /**
+     * @return query based on hql
+     */
+    public String getHQLQuery() {
+        return hqlQuery;
+    }
+
+    /**
+     * @return query based on hql to get the number of rows,
+     *         or ids of no more than {@link #getCountLimit()} + 1 rows if the count limit is set
+     */
+    public String getCountHQLQuery() {
+        return countHQLQuery;
+    }
+
+    public HQLParameters getParameters() {
+        return parameters;
+    }
+
+    public HQLParameters getCountParameters() {
+        return countParameters;
+    }
+
+    public Integer getFirst() {
+        return first;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public Integer getCountLimit() {
+        return countLimit;
+    }
+
+    public Boolean getUseCache() {
+        return useCache;
+    }
+
+    public boolean isUseDistinctResult() {
+        return useDistinctResult;
+    }
+}
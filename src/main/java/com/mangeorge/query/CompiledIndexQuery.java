@@ -0,0 +1,210 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.metrics.QueryEngine;
+import com.mangeorge.query.metrics.QueryEvent;
+import org.apache.solr.client.solrj.SolrQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * Immutable query to the index application, compiled by {@link SolrBuilder#compile()}.
+ * All expressions are rendered once, so the query can be shared across threads and cached.
+ * The query keeps the fingerprint of its shape and the time of compiling, which are published as the identity and
+ * the build time of the query event by the executor of the query, see {@link #createEvent()}.
+ *
+ * @param <T> index entity type
+ */
+public final class CompiledIndexQuery<T> implements IndexQuery<T> {
+
+    private final Class<T> entityClass;
+    private final String query;
+    private final List<String> filterQueries;
+    private final List<SolrQuery.SortClause> sorts;
+    private final List<SolrQuery.SortClause> groupSorts;
+    private final List<String> facets;
+    private final List<List<String>> pivotFacets;
+    private final List<String> facetQueries;
+    private final List<String> fields;
+    private final Integer first;
+    private final Integer pageSize;
+    private final Integer facetLimit;
+    private final boolean useJsonFacet;
+    private final String facetSort;
+    private final List<List<Integer>> pivotFacetLimits;
+    private final boolean useHighlight;
+    private final boolean useSpellcheck;
+    private final Set<String> groupFields;
+    private final Set<String> groupQueries;
+    private final Integer groupLimit;
+    private final QueryFingerprint shapeFingerprint;
+    private final long compileNanos;
+
+
+    CompiledIndexQuery(IndexQuery<T> indexQuery, QueryFingerprint shapeFingerprint) {
+        long start = System.nanoTime();
+        entityClass = indexQuery.getEntityClass();
+        query = indexQuery.getQuery();
+        filterQueries = copyOf(indexQuery.getFilterQueries());
+        sorts = copyOf(indexQuery.getSorts());
+        groupSorts = copyOf(indexQuery.getGroupSorts());
+        facets = copyOf(indexQuery.getFacets());
+        pivotFacets = indexQuery.getPivotFacets() == null ? null : Collections.unmodifiableList(
+                indexQuery.getPivotFacets().stream().map(CompiledIndexQuery::copyOf).collect(Collectors.toList()));
+        facetQueries = copyOf(indexQuery.getFacetQueries());
+        fields = copyOf(indexQuery.getFields());
+        first = indexQuery.getFirst();
+        pageSize = indexQuery.getPageSize();
+        facetLimit = indexQuery.getFacetLimit();
+        useJsonFacet = indexQuery.isUseJsonFacet();
+        facetSort = indexQuery.getFacetSort();
+        pivotFacetLimits = indexQuery.getPivotFacetLimits() == null ? null : Collections.unmodifiableList(
+                indexQuery.getPivotFacetLimits().stream().map(CompiledIndexQuery::copyOf).collect(Collectors.toList()));
+        useHighlight = indexQuery.isUseHighlight();
+        useSpellcheck = indexQuery.isUseSpellcheck();
+        groupFields = copyOf(indexQuery.getGroupFields());
+        groupQueries = copyOf(indexQuery.getGroupQueries());
+        groupLimit = indexQuery.getGroupLimit();
+        this.shapeFingerprint = shapeFingerprint;
+        compileNanos = System.nanoTime() - start;
+    }
+
+    private static <E> List<E> copyOf(List<E> list) {
+        return list == null ? null : Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    private static <E> Set<E> copyOf(Collection<E> set) {
+        return set == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(set));
+    }
+
+
+    @Override
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    @Override
+    public String getQuery() {
+        return query;
+    }
+
+    @Override
+    public List<String> getFilterQueries() {
+        return filterQueries;
+    }
+
+    @Override
+    public List<SolrQuery.SortClause> getSorts() {
+        return sorts;
+    }
+
+    @Override
+    public List<SolrQuery.SortClause> getGroupSorts() {
+        return groupSorts;
+    }
+
+    @Override
+    public List<String> getFacets() {
+        return facets;
+    }
+
+    @Override
+    public List<List<String>> getPivotFacets() {
+        return pivotFacets;
+    }
+
+    @Override
+    public List<String> getFacetQueries() {
+        return facetQueries;
+    }
+
+    @Override
+    public List<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public Integer getFirst() {
+        return first;
+    }
+
+    @Override
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public Integer getFacetLimit() {
+        return facetLimit;
+    }
+
+    @Override
+    public boolean isUseJsonFacet() {
+        return useJsonFacet;
+    }
+
+    @Override
+    public String getFacetSort() {
+        return facetSort;
+    }
+
+    @Override
+    public List<List<Integer>> getPivotFacetLimits() {
+        return pivotFacetLimits;
+    }
+
+    @Override
+    public boolean isUseHighlight() {
+        return useHighlight;
+    }
+
+    @Override
+    public boolean isUseSpellcheck() {
+        return useSpellcheck;
+    }
+
+    @Override
+    public Set<String> getGroupFields() {
+        return groupFields;
+    }
+
+    @Override
+    public Set<String> getGroupQueries() {
+        return groupQueries;
+    }
+
+    @Override
+    public Integer getGroupLimit() {
+        return groupLimit;
+    }
+
+    /**
+     * @return fingerprint of the shape of the builder, from which the query was compiled
+     */
+    public QueryFingerprint getShapeFingerprint() {
+        return shapeFingerprint;
+    }
+
+    /**
+     * @return time of rendering the expressions of the query
+     */
+    public long getCompileNanos() {
+        return compileNanos;
+    }
+
+    /**
+     * @return event of the query execution with the fingerprint and the compile time as the build time.
+     * The filter queries are not published as the query string, because they contain parameter values.
+     */
+    public QueryEvent.Builder createEvent() {
+        return QueryEvent.builder(QueryEngine.SOLR)
+                .setFingerprint(shapeFingerprint)
+                .addBuildNanos(compileNanos);
+    }
+}
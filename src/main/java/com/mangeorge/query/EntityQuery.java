@@ -1,8 +1,13 @@
 package com.mangeorge.query;
 
+import org.hibernate.SessionFactory;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.query.Query;
 
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaQuery;
+import java.util.Set;
+
 
 /**
  * Interface for sending an arbitrary query to the database
@@ -21,6 +26,23 @@ public interface EntityQuery {
      */
     DetachedCriteria getDetachedCriteria();
 
+    /**
+     * @param entityManagerFactory factory whose criteria builder builds the query
+     * @return query based on JPA criteria, its parameters are set by {@link #setHQLParams(Query)}
+     */
+    default CriteriaQuery<?> getJpaCriteriaQuery(EntityManagerFactory entityManagerFactory) {
+        throw new RuntimeException("JPA criteria query not support " + getClass().getSimpleName());
+    }
+
+    /**
+     * @param sessionFactory factory whose column mappings are used to render the query
+     * @return native SQL query, its parameters are set by {@link #setHQLParams(Query)},
+     * or <code>null</code> if the query cannot be rendered as native SQL
+     */
+    default String getSQLQuery(SessionFactory sessionFactory) {
+        return null;
+    }
+
     /**
      * @return query based on hql
      */
@@ -31,6 +53,22 @@ public interface EntityQuery {
      */
     void setHQLParams(Query<?> query);
 
+    /**
+     * @return slots of the parameters set by {@link #setHQLParams(Query)}, or <code>null</code> if the query
+     * does not expose them, then results of the query are not cached
+     */
+    default HQLParameters getHQLParameters() {
+        return null;
+    }
+
+    /**
+     * @param lastEntity the last entity of the page
+     * @return token to select the next page or <code>null</code> if keyset pagination is not used
+     */
+    default String createContinuationToken(Object lastEntity) {
+        return null;
+    }
+
     /**
      * @return the beginning of the position with which you want to select objects (numbering from scratch)
      */
@@ -56,13 +94,82 @@ public interface EntityQuery {
      */
     void setCountQuery(boolean countQuery);
 
+    /**
+     * If the limit is set, the count query returns ids of no more than limit + 1 rows instead of the number of rows.
+     *
+     * @return maximum number of rows counted by the count query, or <code>null</code> to count all rows
+     */
+    default Integer getCountLimit() {
+        return null;
+    }
+
     /**
      * @return <code>true</code> if you need use query based on criteria
      */
     boolean isUseCriteriaQuery();
 
+    /**
+     * @return <code>true</code> if you need use query based on JPA criteria
+     */
+    default boolean isUseJpaCriteriaQuery() {
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if you need use native SQL query, if it can be rendered
+     */
+    default boolean isUseSQLQuery() {
+        return false;
+    }
+
     /**
      * @return <code>true</code> if only different values are needed
      */
     boolean isUseDistinctResult();
+
+    /**
+     * Appends to the key a description of the query structure without parameter values.
+     * The rendered HQL query is used by default.
+     *
+     * @param key builder of the query shape key
+     */
+    default void appendShapeKey(StringBuilder key) {
+        key.append(getClass().getName()).append('{').append(getHQLQuery()).append('}');
+    }
+
+    /**
+     * @return fingerprint of the query structure without parameter values
+     */
+    default QueryFingerprint getShapeFingerprint() {
+        StringBuilder key = new StringBuilder();
+        appendShapeKey(key);
+        return QueryFingerprint.of(key);
+    }
+
+    /**
+     * Parameter values are taken from {@link #getHQLParameters()}, if the query exposes them.
+     *
+     * @return fingerprint of the query structure, parameter values and the page
+     */
+    default QueryFingerprint getFingerprint() {
+        QueryFingerprint.Hasher hasher = QueryFingerprint.hasher().putFingerprint(getShapeFingerprint());
+        HQLParameters parameters = getHQLParameters();
+        if (parameters != null) {
+            for (int i = 0; i < parameters.size(); i++) {
+                hasher.putValue(parameters.getValue(i));
+            }
+        }
+        return hasher.putInteger(getFirst()).putInteger(getPageSize()).putInteger(getCountLimit()).build();
+    }
+
+    /**
+     * Adds names of the entities read by the query, the class name for the root entity.
+     * Cached results of the query are invalidated when these entities are changed.
+     * Only the root entity is added by default.
+     *
+     * @param entityNames names of the entities read by the query
+     */
+    default void collectEntityNames(Set<String> entityNames) {
+        entityNames.add(getRootClass().getName());
+    }
 }
@@ -0,0 +1,504 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.cache.QueryResultCache;
+import com.mangeorge.query.metrics.CacheOutcome;
+import com.mangeorge.query.metrics.QueryEngine;
+import com.mangeorge.query.metrics.QueryEvent;
+import com.mangeorge.query.metrics.QueryMetrics;
+import com.mangeorge.query.metrics.QueryMetricsListener;
+import com.mangeorge.query.sql.SqlQueryContext;
+import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Projections;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
+
+import javax.persistence.criteria.CriteriaQuery;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Executes queries in the Hibernate session. Pages are counted exactly, or up to {@link EntityQuery#getCountLimit()}.
+ *
+ * Results can be streamed through {@link ScrollableResults}: rows are fetched from the database by
+ * {#fetchSize} and the streamed entities are evicted from the session every {#clearInterval} rows,
+ * so memory does not grow with the result size.
+ *
+ * If {#resultCache} is set, ids of listed entities and counts are cached, unless {@link EntityQuery#getUseCache()}
+ * is <code>false</code> or the session has queued inserts, deletes or collection changes. Flushed changes are not
+ * cached until their transaction completes, but changes of loaded entities are found only by the flush, so flush
+ * the session before a cached query should see them. Entities of the cached ids are loaded in the session,
+ * so they are taken from the session or the second-level cache when possible.
+ *
+ * While a {@link QueryMetricsListener} is registered in {@link QueryMetrics}, every executed query is published as
+ * a {@link QueryEvent} with the build, render and execution times, the row count and the cache outcome.
+ * A streamed query is published when its iterator is closed, its execution time includes fetching of all rows.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class EntityQueryExecutor {
+
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    public static final int DEFAULT_CLEAR_INTERVAL = 1000;
+
+
+    private final Session session;
+
+    /**
+     * Number of rows fetched from the database in one round trip
+     */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * Number of streamed rows after which the streamed entities are evicted from the session.
+     * If <code>0</code>, they are not evicted.
+     */
+    private int clearInterval = DEFAULT_CLEAR_INTERVAL;
+
+    /**
+     * Load streamed entities in read-only mode, without snapshots for dirty checking
+     */
+    private boolean readOnly = true;
+
+    /**
+     * Cache of ids and counts, shared by executors. If <code>null</code>, results are not cached.
+     */
+    private QueryResultCache resultCache;
+
+
+    /**
+     * @param session session in which queries are executed
+     */
+    public EntityQueryExecutor(Session session) {
+        this.session = session;
+    }
+
+
+    /**
+     * Executes the query and iterates over its results. The iterator must be closed, for example:
+     * <pre>
+     * try (EntityQueryIterator&lt;Foo&gt; iterator = executor.iterate(query)) {
+     *     while (iterator.hasNext()) { ... }
+     * }
+     * </pre>
+     *
+     * @param entityQuery query to execute
+     * @param <T>         entity type
+     * @return iterator over the results
+     */
+    public <T> EntityQueryIterator<T> iterate(EntityQuery entityQuery) {
+        if (entityQuery.isCountQuery()) {
+            throw new IllegalArgumentException("Count query can not be streamed");
+        }
+        QueryEvent.Builder event = createEvent(entityQuery);
+        ScrollableResults results;
+        try {
+            results = scroll(entityQuery, event);
+        } catch (RuntimeException e) {
+            event.setFailed(true);
+            publish(entityQuery, event);
+            throw e;
+        }
+        if (QueryMetrics.isEnabled()) {
+            event.setFingerprint(entityQuery.getShapeFingerprint());
+            return new EntityQueryIterator<>(results, session, clearInterval, event);
+        }
+        return new EntityQueryIterator<>(results, session, clearInterval, null);
+    }
+
+    /**
+     * Executes the query and streams its results. The stream must be closed, for example:
+     * <pre>
+     * try (Stream&lt;Foo&gt; stream = executor.stream(query)) {
+     *     stream.forEach(...);
+     * }
+     * </pre>
+     *
+     * @param entityQuery query to execute
+     * @param <T>         entity type
+     * @return stream of the results
+     */
+    public <T> Stream<T> stream(EntityQuery entityQuery) {
+        EntityQueryIterator<T> iterator = iterate(entityQuery);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Executes the query and returns its results
+     *
+     * @param entityQuery query to execute
+     * @param <T>         entity type
+     * @return list of the results
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> list(EntityQuery entityQuery) {
+        if (entityQuery.isCountQuery()) {
+            throw new IllegalArgumentException("Count query can not be listed");
+        }
+        QueryEvent.Builder event = createEvent(entityQuery);
+        try {
+            List<T> entities = isResultCacheUsed(entityQuery)
+                    ? listCached(entityQuery, event)
+                    : executeList(entityQuery, event);
+            event.setRowCount(entities.size());
+            return entities;
+        } catch (RuntimeException e) {
+            event.setFailed(true);
+            throw e;
+        } finally {
+            publish(entityQuery, event);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> executeList(EntityQuery entityQuery, QueryEvent.Builder event) {
+        if (entityQuery.isUseCriteriaQuery()) {
+            Criteria criteria = createCriteria(entityQuery, event);
+            long start = System.nanoTime();
+            List<T> entities = criteria.list();
+            event.addExecuteNanos(System.nanoTime() - start);
+            return entities;
+        }
+        Query<?> query = createQuery(entityQuery, event);
+        long start = System.nanoTime();
+        List<T> entities = (List<T>) query.list();
+        event.addExecuteNanos(System.nanoTime() - start);
+        return entities;
+    }
+
+    /**
+     * Executes the query in the count mode. If the count limit is set, no more than limit + 1 rows are counted.
+     *
+     * @param entityQuery query to execute
+     * @return number of found objects, or limit + 1 if more than limit objects are found
+     */
+    public int count(EntityQuery entityQuery) {
+        boolean countQuery = entityQuery.isCountQuery();
+        entityQuery.setCountQuery(true);
+        QueryEvent.Builder event = createEvent(entityQuery);
+        try {
+            int count = isResultCacheUsed(entityQuery)
+                    ? countCached(entityQuery, event)
+                    : executeCount(entityQuery, event);
+            event.setRowCount(count);
+            return count;
+        } catch (RuntimeException e) {
+            event.setFailed(true);
+            throw e;
+        } finally {
+            publish(entityQuery, event);
+            entityQuery.setCountQuery(countQuery);
+        }
+    }
+
+    private int countCached(EntityQuery entityQuery, QueryEvent.Builder event) {
+        QueryResultCache.Key key = createResultCacheKey(entityQuery);
+        Integer count = (Integer) resultCache.get(key);
+        if (count != null) {
+            event.setCacheOutcome(CacheOutcome.HIT);
+            return count;
+        }
+        event.setCacheOutcome(CacheOutcome.MISS);
+        long generation = resultCache.getGeneration();
+        count = executeCount(entityQuery, event);
+        resultCache.put(key, count, generation);
+        return count;
+    }
+
+    private int executeCount(EntityQuery entityQuery, QueryEvent.Builder event) {
+        int count;
+        if (entityQuery.isUseCriteriaQuery()) {
+            Criteria criteria = createCriteria(entityQuery, event);
+            long start = System.nanoTime();
+            if (entityQuery.getCountLimit() != null) {
+                count = criteria.setProjection(Projections.id()).list().size();
+            } else {
+                count = ((Number) criteria.setProjection(Projections.rowCount()).uniqueResult()).intValue();
+            }
+            event.addExecuteNanos(System.nanoTime() - start);
+            return count;
+        }
+        Query<?> query = createQuery(entityQuery, event);
+        long start = System.nanoTime();
+        if (entityQuery.getCountLimit() != null) {
+            count = query.list().size();
+        } else {
+            count = ((Number) query.uniqueResult()).intValue();
+        }
+        event.addExecuteNanos(System.nanoTime() - start);
+        return count;
+    }
+
+    /**
+     * Executes the query and the count query. If the count limit is set and more than limit objects are found,
+     * the count of the result is the limit and {@link EntityQueryResult#isCountExact()} is <code>false</code>.
+     *
+     * @param entityQuery query to execute
+     * @param <T>         entity type
+     * @return entities of the page and the number of found objects
+     */
+    public <T> EntityQueryResult<T> page(EntityQuery entityQuery) {
+        List<T> entities = list(entityQuery);
+        int count = count(entityQuery);
+        Integer countLimit = entityQuery.getCountLimit();
+        if (countLimit != null && count > countLimit) {
+            return EntityQueryResult.forPage(entityQuery, entities, countLimit, false);
+        }
+        return EntityQueryResult.forPage(entityQuery, entities, count, true);
+    }
+
+    /**
+     * Ids are stored instead of entities, because entities belong to the session, in which they were loaded.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> listCached(EntityQuery entityQuery, QueryEvent.Builder event) {
+        QueryResultCache.Key key = createResultCacheKey(entityQuery);
+        List<Serializable> ids = (List<Serializable>) resultCache.get(key);
+        if (ids != null) {
+            event.setCacheOutcome(CacheOutcome.HIT);
+            long start = System.nanoTime();
+            List<T> entities = (List<T>) session.byMultipleIds(entityQuery.getRootClass()).multiLoad(ids);
+            entities.removeIf(Objects::isNull);
+            event.addExecuteNanos(System.nanoTime() - start);
+            return entities;
+        }
+        event.setCacheOutcome(CacheOutcome.MISS);
+        long generation = resultCache.getGeneration();
+        List<T> entities = executeList(entityQuery, event);
+        List<Serializable> entityIds = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            entityIds.add(session.getIdentifier(entity));
+        }
+        resultCache.put(key, Collections.unmodifiableList(entityIds), generation);
+        return entities;
+    }
+
+    private boolean isResultCacheUsed(EntityQuery entityQuery) {
+        return resultCache != null && !Boolean.FALSE.equals(entityQuery.getUseCache()) && !hasQueuedActions()
+                && entityQuery.getHQLParameters() != null;
+    }
+
+    /**
+     * Checks the action queue of the session instead of {@link Session#isDirty()}, which dirty-checks every loaded entity
+     */
+    private boolean hasQueuedActions() {
+        if (session instanceof SessionImplementor) {
+            return ((SessionImplementor) session).getActionQueue().hasAnyQueuedActions();
+        }
+        return session.isDirty();
+    }
+
+    /**
+     * The key contains the query shape, the values of parameters in the order they are set and the page.
+     * Values are compared by equality, not by their fingerprint, so different values never share the result.
+     * The count limit changes the result of the count query, so it is added to the shape.
+     */
+    private static QueryResultCache.Key createResultCacheKey(EntityQuery entityQuery) {
+        QueryFingerprint shape = entityQuery.getShapeFingerprint();
+        if (entityQuery.isCountQuery() && entityQuery.getCountLimit() != null) {
+            shape = QueryFingerprint.hasher().putFingerprint(shape).putInt(entityQuery.getCountLimit()).build();
+        }
+        Object[] parameterValues = entityQuery.getHQLParameters().getValues();
+        Set<String> entityNames = new HashSet<>();
+        entityQuery.collectEntityNames(entityNames);
+        return new QueryResultCache.Key(shape, parameterValues,
+                entityQuery.getFirst(), entityQuery.getPageSize(), entityNames);
+    }
+
+    /**
+     * The engine is taken from the flags of the query, the same as in {@link #createQuery}.
+     * It is corrected when the query is created, if the native SQL query cannot be rendered.
+     */
+    private static QueryEvent.Builder createEvent(EntityQuery entityQuery) {
+        QueryEngine engine;
+        if (entityQuery.isUseCriteriaQuery()) {
+            engine = QueryEngine.CRITERIA;
+        } else if (entityQuery.isUseSQLQuery()) {
+            engine = QueryEngine.SQL;
+        } else if (entityQuery.isUseJpaCriteriaQuery()) {
+            engine = QueryEngine.JPA_CRITERIA;
+        } else {
+            engine = QueryEngine.HQL;
+        }
+        return QueryEvent.builder(engine).setCountQuery(entityQuery.isCountQuery());
+    }
+
+    /**
+     * The fingerprint is computed only if there are listeners, so metrics cost nothing without them
+     */
+    private static void publish(EntityQuery entityQuery, QueryEvent.Builder event) {
+        if (QueryMetrics.isEnabled()) {
+            QueryMetrics.publish(event.setFingerprint(entityQuery.getShapeFingerprint()).build());
+        }
+    }
+
+    /**
+     * The count query returns one row, so the page would skip it. Only the count query with the count limit,
+     * which selects ids, is limited.
+     */
+    private static boolean isPaged(EntityQuery entityQuery) {
+        return !entityQuery.isCountQuery() || entityQuery.getCountLimit() != null;
+    }
+
+    /**
+     * The query string of the criteria is not published, because it contains parameter values
+     */
+    private Criteria createCriteria(EntityQuery entityQuery, QueryEvent.Builder event) {
+        long start = System.nanoTime();
+        DetachedCriteria detachedCriteria = entityQuery.getDetachedCriteria();
+        long built = System.nanoTime();
+        Criteria criteria = detachedCriteria.getExecutableCriteria(session);
+        if (isPaged(entityQuery)) {
+            if (entityQuery.getFirst() != null) {
+                criteria.setFirstResult(entityQuery.getFirst());
+            }
+            if (entityQuery.getPageSize() != null) {
+                criteria.setMaxResults(entityQuery.getPageSize());
+            }
+        }
+        event.setEngine(QueryEngine.CRITERIA)
+                .addBuildNanos(built - start)
+                .addRenderNanos(System.nanoTime() - built);
+        return criteria;
+    }
+
+    /**
+     * The native SQL query is used, if it is requested and the query can be rendered as native SQL,
+     * otherwise the JPA criteria or the HQL query is used.
+     * Filters enabled in the session are not applied to the native SQL query, so it is not used with them.
+     */
+    private Query<?> createQuery(EntityQuery entityQuery, QueryEvent.Builder event) {
+        long start = System.nanoTime();
+        String sql = entityQuery.isUseSQLQuery() && !hasEnabledFilters()
+                ? entityQuery.getSQLQuery(session.getSessionFactory()) : null;
+        CriteriaQuery<?> criteriaQuery = null;
+        String hql = null;
+        if (sql != null) {
+            event.setEngine(QueryEngine.SQL).setQuery(sql);
+        } else if (entityQuery.isUseJpaCriteriaQuery()) {
+            criteriaQuery = entityQuery.getJpaCriteriaQuery(session.getSessionFactory());
+            event.setEngine(QueryEngine.JPA_CRITERIA);
+        } else {
+            hql = entityQuery.getHQLQuery();
+            event.setEngine(QueryEngine.HQL).setQuery(hql);
+        }
+        long built = System.nanoTime();
+
+        Query<?> query;
+        if (sql != null) {
+            query = createSQLQuery(entityQuery, sql);
+        } else if (criteriaQuery != null) {
+            query = session.createQuery(criteriaQuery);
+        } else {
+            query = session.createQuery(hql);
+        }
+        entityQuery.setHQLParams(query);
+        if (isPaged(entityQuery)) {
+            if (entityQuery.getFirst() != null) {
+                query.setFirstResult(entityQuery.getFirst());
+            }
+            if (entityQuery.getPageSize() != null) {
+                query.setMaxResults(entityQuery.getPageSize());
+            }
+        }
+        event.addBuildNanos(built - start).addRenderNanos(System.nanoTime() - built);
+        return query;
+    }
+
+    private boolean hasEnabledFilters() {
+        return session instanceof SharedSessionContractImplementor
+                && ((SharedSessionContractImplementor) session).getLoadQueryInfluencers().hasEnabledFilters();
+    }
+
+    /**
+     * Rows of the select query are mapped to the root entity, so the entities are managed by the session
+     * the same as entities of the HQL query. The count query is synchronized with the root entity,
+     * so pending changes of the session are flushed before it.
+     */
+    private NativeQuery<?> createSQLQuery(EntityQuery entityQuery, String sql) {
+        NativeQuery<?> query = session.createNativeQuery(sql);
+        if (entityQuery.isCountQuery()) {
+            query.addSynchronizedEntityClass(entityQuery.getRootClass());
+        } else {
+            query.addEntity(SqlQueryContext.ROOT_TABLE_ALIAS, entityQuery.getRootClass());
+        }
+        return query;
+    }
+
+    private ScrollableResults scroll(EntityQuery entityQuery, QueryEvent.Builder event) {
+        ScrollableResults results;
+        if (entityQuery.isUseCriteriaQuery()) {
+            Criteria criteria = createCriteria(entityQuery, event);
+            criteria.setFetchSize(fetchSize);
+            criteria.setReadOnly(readOnly);
+            long start = System.nanoTime();
+            results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+            event.addExecuteNanos(System.nanoTime() - start);
+            return results;
+        }
+
+        Query<?> query = createQuery(entityQuery, event);
+        query.setFetchSize(fetchSize);
+        query.setReadOnly(readOnly);
+        long start = System.nanoTime();
+        results = query.scroll(ScrollMode.FORWARD_ONLY);
+        event.addExecuteNanos(System.nanoTime() - start);
+        return results;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public EntityQueryExecutor setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public int getClearInterval() {
+        return clearInterval;
+    }
+
+    public EntityQueryExecutor setClearInterval(int clearInterval) {
+        this.clearInterval = clearInterval;
+        return this;
+    }
+
+    public QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public EntityQueryExecutor setResultCache(QueryResultCache resultCache) {
+        this.resultCache = resultCache;
+        return this;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public EntityQueryExecutor setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        return this;
+    }
+}
@@ -0,0 +1,127 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.metrics.QueryEvent;
+import com.mangeorge.query.metrics.QueryMetrics;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Iterator over the scrollable results of the query.
+ * Every {#clearInterval} rows the entities returned by the iterator are evicted from the session,
+ * so they do not accumulate in the session. Evicted entities become detached, other entities of the session
+ * are kept. If the session has unflushed changes, the entities are not evicted until the changes are flushed,
+ * so changes of the caller are never discarded.
+ * Must be closed to release the database cursor.
+ * If the query event is set, it is published when the iterator is closed, with the number of returned rows,
+ * and the time of fetching the rows is added to the execution time.
+ *
+ * @param <T> entity type
+ */
+public class EntityQueryIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final ScrollableResults results;
+    private final Session session;
+    private final int clearInterval;
+    private final QueryEvent.Builder event;
+
+    /**
+     * Entities returned since they were evicted last time
+     */
+    private final List<Object> returned = new ArrayList<>();
+
+    private long rowCount;
+    private boolean advanced;
+    private boolean hasRow;
+    private boolean closed;
+    private long fetchNanos;
+
+
+    /**
+     * @param results       scrollable results of the query
+     * @param session       session that executes the query
+     * @param clearInterval number of rows after which the returned entities are evicted, <code>0</code> to never evict them
+     * @param event         event of the query with the fingerprint, or <code>null</code> to not publish it
+     */
+    EntityQueryIterator(ScrollableResults results, Session session, int clearInterval, QueryEvent.Builder event) {
+        this.results = results;
+        this.session = session;
+        this.clearInterval = clearInterval;
+        this.event = event;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        if (!advanced) {
+            if (closed) {
+                return false;
+            }
+            if (clearInterval > 0 && returned.size() >= clearInterval) {
+                evictReturned();
+            }
+            if (event != null) {
+                long start = System.nanoTime();
+                hasRow = results.next();
+                fetchNanos += System.nanoTime() - start;
+            } else {
+                hasRow = results.next();
+            }
+            advanced = true;
+            if (!hasRow) {
+                close();
+            }
+        }
+        return hasRow;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        advanced = false;
+        rowCount++;
+        T entity = (T) results.get(0);
+        if (clearInterval > 0) {
+            returned.add(entity);
+        }
+        return entity;
+    }
+
+    private void evictReturned() {
+        if (session.isDirty()) {
+            return;
+        }
+        for (Object entity : returned) {
+            if (session.contains(entity)) {
+                session.evict(entity);
+            }
+        }
+        returned.clear();
+    }
+
+    /**
+     * @return number of rows returned by the iterator
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            results.close();
+            if (event != null) {
+                QueryMetrics.publish(event.addExecuteNanos(fetchNanos).setRowCount(rowCount).build());
+            }
+        }
+    }
+}
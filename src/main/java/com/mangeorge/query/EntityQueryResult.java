@@ -12,6 +12,8 @@ public class EntityQueryResult<T> {
 
     private final List<T> entities;
     private final Integer count;
+    private final String continuationToken;
+    private final boolean countExact;
 
 
     /**
@@ -19,8 +21,47 @@ public class EntityQueryResult<T> {
      * @param count number of found objects in the database
      */
     EntityQueryResult(List<T> entities, Integer count) {
+        this(entities, count, null);
+    }
+
+    /**
+     * @param entities list of entities
+     * @param count number of found objects in the database
+     * @param continuationToken token to select the next page
+     */
+    EntityQueryResult(List<T> entities, Integer count, String continuationToken) {
+        this(entities, count, true, continuationToken);
+    }
+
+    /**
+     * @param entities list of entities
+     * @param count number of found objects in the database
+     * @param countExact <code>false</code> if more than {#count} objects are found
+     * @param continuationToken token to select the next page
+     */
+    EntityQueryResult(List<T> entities, Integer count, boolean countExact, String continuationToken) {
         this.entities = entities;
         this.count = count;
+        this.countExact = countExact;
+        this.continuationToken = continuationToken;
+    }
+
+    /**
+     * Creates the result of the page query. If the page is full, the result contains a token to select the next page.
+     *
+     * @param query query of the page
+     * @param entities entities of the page
+     * @param count number of found objects in the database
+     * @param countExact <code>false</code> if more than {#count} objects are found
+     * @return result of the query
+     */
+    static <T> EntityQueryResult<T> forPage(EntityQuery query, List<T> entities, Integer count, boolean countExact) {
+        String continuationToken = null;
+        if (entities != null && !entities.isEmpty()
+                && query.getPageSize() != null && entities.size() >= query.getPageSize()) {
+            continuationToken = query.createContinuationToken(entities.get(entities.size() - 1));
+        }
+        return new EntityQueryResult<>(entities, count, countExact, continuationToken);
     }
 
     public List<T> getEntities() {
@@ -30,4 +71,20 @@ public class EntityQueryResult<T> {
     public Integer getCount() {
         return count;
     }
+
+    /**
+     * @return <code>true</code> if {@link #getCount()} is the exact number of found objects,
+     *         <code>false</code> if more objects are found and the count is the lower bound
+     */
+    public boolean isCountExact() {
+        return countExact;
+    }
+
+    /**
+     * @return token to select the next page, or <code>null</code> if there is no next page
+     *         or keyset pagination is not used
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
 }
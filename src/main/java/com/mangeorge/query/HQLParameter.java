@@ -0,0 +1,78 @@
+package com.mangeorge.query;
+
+import org.hibernate.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+
+/**
+ * Slot of a named HQL parameter: the name of the parameter in the query and the accessor of its value.
+ * The value is read from the filter when the parameter is bound, so the rendered query can be bound again
+ * after the value of the filter is changed.
+ */
+public final class HQLParameter {
+
+    private final String name;
+    private final Supplier<?> value;
+
+
+    /**
+     * @param name  name of the parameter in the query
+     * @param value accessor of the value, for parameter lists a collection of values
+     */
+    public HQLParameter(String name, Supplier<?> value) {
+        this.name = name;
+        this.value = value;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return current value of the parameter
+     */
+    public Object getValue() {
+        return value.get();
+    }
+
+    /**
+     * @return slot with the current value, which is not changed when the filter is changed,
+     * collections are copied
+     */
+    public HQLParameter snapshot() {
+        Object value = getValue();
+        Object snapshot = value instanceof Collection
+                ? Collections.unmodifiableList(new ArrayList<>((Collection<?>) value)) : value;
+        return new HQLParameter(name, () -> snapshot);
+    }
+
+    /**
+     * Sets the current value of the parameter to the query
+     *
+     * @param query Hibernate query
+     */
+    public void bind(Query<?> query) {
+        bind(query, getValue());
+    }
+
+    /**
+     * Collections are bound by {@link Query#setParameter(String, Object)}, the same as the values,
+     * because queries created from JPA criteria do not support {@link Query#setParameterList(String, Object[])}.
+     *
+     * @param query Hibernate query
+     * @param value value of the parameter
+     */
+    public void bind(Query<?> query, Object value) {
+        query.setParameter(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return ":" + name;
+    }
+}
@@ -0,0 +1,113 @@
+package com.mangeorge.query;
+
+import org.hibernate.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Immutable list of HQL parameter slots, in the order they are set to the query.
+ * Values are read from the slots when the parameters are bound, or are given explicitly to
+ * {@link #apply(Query, Object...)}, so one list of slots can be bound to any number of queries.
+ */
+public final class HQLParameters {
+
+    public static final HQLParameters EMPTY = new HQLParameters(Collections.emptyList());
+
+
+    private final List<HQLParameter> parameters;
+
+
+    /**
+     * @param parameters slots of the parameters
+     */
+    public HQLParameters(List<HQLParameter> parameters) {
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+    }
+
+
+    /**
+     * Set current values of the parameters to HQL Query
+     *
+     * @param query Hibernate query
+     */
+    public void apply(Query<?> query) {
+        for (HQLParameter parameter : parameters) {
+            parameter.bind(query);
+        }
+    }
+
+    /**
+     * Set the values to the parameters of HQL Query, the values of the slots are not read
+     *
+     * @param query  Hibernate query
+     * @param values values in the order of the parameters
+     */
+    public void apply(Query<?> query, Object... values) {
+        if (values.length != parameters.size()) {
+            throw new IllegalArgumentException("Expected " + parameters.size() + " parameter values, but got "
+                    + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            parameters.get(i).bind(query, values[i]);
+        }
+    }
+
+    /**
+     * @return parameters with the current values, see {@link HQLParameter#snapshot()}
+     */
+    public HQLParameters snapshot() {
+        if (parameters.isEmpty()) {
+            return this;
+        }
+        List<HQLParameter> snapshot = new ArrayList<>(parameters.size());
+        for (HQLParameter parameter : parameters) {
+            snapshot.add(parameter.snapshot());
+        }
+        return new HQLParameters(snapshot);
+    }
+
+    /**
+     * @return number of parameters
+     */
+    public int size() {
+        return parameters.size();
+    }
+
+    /**
+     * @param index index of the parameter
+     * @return slot of the parameter
+     */
+    public HQLParameter get(int index) {
+        return parameters.get(index);
+    }
+
+    /**
+     * @param index index of the parameter
+     * @return name of the parameter
+     */
+    public String getName(int index) {
+        return parameters.get(index).getName();
+    }
+
+    /**
+     * @param index index of the parameter
+     * @return current value of the parameter, for parameter lists a collection of values
+     */
+    public Object getValue(int index) {
+        return parameters.get(index).getValue();
+    }
+
+    /**
+     * @return current values of the parameters in their order
+     */
+    public Object[] getValues() {
+        Object[] values = new Object[parameters.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = parameters.get(i).getValue();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,328 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.helper.HQLBuilderHelper;
+import com.mangeorge.query.helper.ReflectionHelper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+
+/**
+ * Loader of entities by id, which coalesces lookups from different threads.
+ * Ids requested within {#windowMillis} are collected into one batch (no more than {#batchSize} ids),
+ * which is loaded by one query with {@link InFilter}. Every caller receives its own future, so cancelling or
+ * completing it does not affect other callers. A repeated id of the pending batch is loaded once for all its callers.
+ * <p>
+ * The scheduler only starts the batches after the window, batches are loaded by the load executor,
+ * so a slow query does not delay the windows of the next batches.
+ * Every batch is loaded in a new session of the session factory, so loaded entities are detached.
+ * Ids must have the type of the id field of the entity, otherwise they are not matched with the loaded entities.
+ *
+ * @param <T> entity type
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class IdBatchLoader<T> implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_WINDOW_MILLIS = 2;
+    public static final int DEFAULT_LOAD_THREADS = 4;
+
+    private static final Logger log = LoggerFactory.getLogger(IdBatchLoader.class);
+
+
+    private final SessionFactory sessionFactory;
+    private final Class<T> entityClass;
+    private final String idFieldName;
+    private final ScheduledExecutorService scheduler;
+    private final Executor loadExecutor;
+    private final boolean ownExecutors;
+
+    /**
+     * Maximum number of ids in one batch
+     */
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Time during which ids are collected into the batch
+     */
+    private volatile long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+    private final Object lock = new Object();
+    private Map<Object, CompletableFuture<T>> pending = new LinkedHashMap<>();
+    private long pendingSince;
+    private boolean closed;
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder loadedIdCount = new LongAdder();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAdder waitNanos = new LongAdder();
+
+
+    /**
+     * Creates the loader with its own scheduler thread and {@value #DEFAULT_LOAD_THREADS} load threads,
+     * which are stopped by {@link #close()}
+     *
+     * @param sessionFactory factory of sessions in which batches are loaded
+     * @param entityClass    entity class
+     */
+    public IdBatchLoader(SessionFactory sessionFactory, Class<T> entityClass) {
+        this(sessionFactory, entityClass,
+                Executors.newSingleThreadScheduledExecutor(threadFactory(entityClass, "scheduler")),
+                Executors.newFixedThreadPool(DEFAULT_LOAD_THREADS, threadFactory(entityClass, "load")), true);
+    }
+
+    /**
+     * @param sessionFactory factory of sessions in which batches are loaded
+     * @param entityClass    entity class
+     * @param scheduler      scheduler and executor of batches, it is not stopped by {@link #close()}
+     */
+    public IdBatchLoader(SessionFactory sessionFactory, Class<T> entityClass, ScheduledExecutorService scheduler) {
+        this(sessionFactory, entityClass, scheduler, scheduler, false);
+    }
+
+    /**
+     * @param sessionFactory factory of sessions in which batches are loaded
+     * @param entityClass    entity class
+     * @param scheduler      scheduler of batches, it is not stopped by {@link #close()}
+     * @param loadExecutor   executor of batches, it is not stopped by {@link #close()}
+     */
+    public IdBatchLoader(SessionFactory sessionFactory, Class<T> entityClass, ScheduledExecutorService scheduler,
+                         Executor loadExecutor) {
+        this(sessionFactory, entityClass, scheduler, loadExecutor, false);
+    }
+
+    private IdBatchLoader(SessionFactory sessionFactory, Class<T> entityClass, ScheduledExecutorService scheduler,
+                          Executor loadExecutor, boolean ownExecutors) {
+        this.sessionFactory = sessionFactory;
+        this.entityClass = entityClass;
+        this.idFieldName = ReflectionHelper.getIdFieldName(entityClass);
+        this.scheduler = scheduler;
+        this.loadExecutor = loadExecutor;
+        this.ownExecutors = ownExecutors;
+    }
+
+    private static ThreadFactory threadFactory(Class<?> entityClass, String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "id-batch-loader-" + entityClass.getSimpleName() + "-" + name
+                    + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+
+    /**
+     * @param id id of the entity
+     * @return future of the entity, completed with <code>null</code> if the entity is not found
+     */
+    public CompletableFuture<T> load(Object id) {
+        if (id == null) {
+            throw new IllegalArgumentException("You must specify an id");
+        }
+        requestCount.increment();
+        Map<Object, CompletableFuture<T>> batch = null;
+        CompletableFuture<T> shared;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Loader is closed");
+            }
+            shared = pending.get(id);
+            if (shared != null) {
+                coalescedCount.increment();
+                return shared.thenApply(Function.identity());
+            }
+            shared = new CompletableFuture<>();
+            if (pending.isEmpty()) {
+                pendingSince = System.nanoTime();
+                Map<Object, CompletableFuture<T>> scheduled = pending;
+                scheduler.schedule(() -> flush(scheduled), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            pending.put(id, shared);
+            if (pending.size() >= batchSize) {
+                batch = takePending();
+            }
+        }
+        if (batch != null) {
+            submitBatch(batch);
+        }
+        return shared.thenApply(Function.identity());
+    }
+
+    /**
+     * Loads the pending batch immediately
+     */
+    public void flush() {
+        Map<Object, CompletableFuture<T>> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        loadBatch(batch);
+    }
+
+    private void flush(Map<Object, CompletableFuture<T>> scheduled) {
+        Map<Object, CompletableFuture<T>> batch;
+        synchronized (lock) {
+            if (pending != scheduled) {
+                // the batch was already taken because it became full
+                return;
+            }
+            batch = takePending();
+        }
+        submitBatch(batch);
+    }
+
+    private void submitBatch(Map<Object, CompletableFuture<T>> batch) {
+        try {
+            loadExecutor.execute(() -> loadBatch(batch));
+        } catch (RejectedExecutionException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private Map<Object, CompletableFuture<T>> takePending() {
+        Map<Object, CompletableFuture<T>> batch = pending;
+        if (!batch.isEmpty()) {
+            waitNanos.add(System.nanoTime() - pendingSince);
+            pending = new LinkedHashMap<>();
+        }
+        return batch;
+    }
+
+    private void loadBatch(Map<Object, CompletableFuture<T>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchCount.increment();
+        loadedIdCount.add(batch.size());
+        maxBatchSize.accumulate(batch.size());
+        try {
+            Map<Object, T> entities = loadEntities(new ArrayList<>(batch.keySet()));
+            batch.forEach((id, future) -> future.complete(entities.get(id)));
+        } catch (RuntimeException e) {
+            log.warn("batch of {} {} was not loaded", batch.size(), entityClass.getSimpleName(), e);
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private Map<Object, T> loadEntities(List<Object> ids) {
+        QueryBuilder queryBuilder = new QueryBuilder(entityClass);
+        queryBuilder.setQueryFilter(new InFilter<>(HQLBuilderHelper.generateAliasForClass(entityClass),
+                idFieldName, ids.toArray()));
+        try (Session session = sessionFactory.openSession()) {
+            session.setDefaultReadOnly(true);
+            List<T> list = new EntityQueryExecutor(session).list(queryBuilder);
+            Map<Object, T> entities = new HashMap<>();
+            for (T entity : list) {
+                entities.put(session.getIdentifier(entity), entity);
+            }
+            return entities;
+        }
+    }
+
+    /**
+     * Loads the pending batch and stops the own scheduler and load threads, started batches are loaded
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+        if (ownExecutors) {
+            scheduler.shutdown();
+            ((ExecutorService) loadExecutor).shutdown();
+        }
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @return number of {@link #load(Object)} calls
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return number of calls that joined the future of the same id in the pending batch
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * @return share of calls that did not add an id to the batch
+     */
+    public double getHitRatio() {
+        long requests = requestCount.sum();
+        return requests == 0 ? 0 : (double) coalescedCount.sum() / requests;
+    }
+
+    /**
+     * @return number of executed queries
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : (double) loadedIdCount.sum() / batches;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * @return average time in milliseconds from the first id of the batch to the start of its loading
+     */
+    public double getAverageWaitMillis() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : waitNanos.sum() / 1_000_000.0 / batches;
+    }
+}
@@ -0,0 +1,132 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.metrics.QueryEvent;
+import com.mangeorge.query.metrics.QueryMetrics;
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.client.solrj.io.stream.TupleStreamParser;
+import org.apache.solr.common.SolrDocument;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Iterator over the results of the index query exported by the <code>/export</code> handler.
+ * Tuples are read from the response one by one, when the previous entity is returned, so the response is not buffered.
+ * Must be closed, if it is not iterated to the end, to close the response.
+ * If the query event is set, it is published when the iterator is closed, with the number of returned entities,
+ * and the time of reading the tuples is added to the execution time.
+ *
+ * @param <T> index entity type
+ */
+public class IndexExportIterator<T> implements Iterator<T>, AutoCloseable {
+
+    /**
+     * Key of the tuple with the error, which the handler writes instead of the next tuple
+     */
+    private static final String EXCEPTION = "EXCEPTION";
+
+    private final TupleStreamParser tupleParser;
+    private final DocumentObjectBinder binder;
+    private final Class<T> entityClass;
+    private final long limit;
+    private final QueryEvent.Builder event;
+
+    private Map<String, Object> tuple;
+    private long rowCount;
+    private long readNanos;
+    private boolean closed;
+
+
+    /**
+     * @param tupleParser parser of the tuples of the response
+     * @param binder      binder of the tuples to entities
+     * @param entityClass index entity class
+     * @param limit       maximum number of returned entities
+     * @param event       event of the query, or <code>null</code> to not publish it
+     */
+    IndexExportIterator(TupleStreamParser tupleParser, DocumentObjectBinder binder, Class<T> entityClass, long limit,
+                        QueryEvent.Builder event) {
+        this.tupleParser = tupleParser;
+        this.binder = binder;
+        this.entityClass = entityClass;
+        this.limit = limit;
+        this.event = event;
+        if (limit <= 0) {
+            close();
+        }
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        if (tuple == null && !closed) {
+            long start = System.nanoTime();
+            try {
+                tuple = tupleParser.next();
+            } catch (IOException e) {
+                fail();
+                throw new RuntimeException("Can not read the exported tuple", e);
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+            if (tuple == null) {
+                close();
+            } else if (tuple.containsKey(EXCEPTION)) {
+                fail();
+                throw new RuntimeException("Can not export the index query: " + tuple.get(EXCEPTION));
+            }
+        }
+        return tuple != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T entity = binder.getBean(entityClass, new SolrDocument(tuple));
+        tuple = null;
+        if (++rowCount == limit) {
+            close();
+        }
+        return entity;
+    }
+
+    private void fail() {
+        if (event != null) {
+            event.setFailed(true);
+        }
+        close();
+    }
+
+    /**
+     * @return number of entities returned by the iterator
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * The rest of the response is not read
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            tuple = null;
+            try {
+                tupleParser.close();
+            } catch (IOException e) {
+                if (event != null) {
+                    event.setFailed(true);
+                }
+            }
+            if (event != null) {
+                QueryMetrics.publish(event.addExecuteNanos(readNanos).setRowCount(rowCount).build());
+            }
+        }
+    }
+}
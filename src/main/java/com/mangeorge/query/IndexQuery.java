@@ -80,6 +80,32 @@ public interface IndexQuery<T> {
      */
     Integer getFacetLimit();
 
+    /**
+     * @return <code>true</code> to request facets, facet queries and pivot facets by one JSON facet request
+     * instead of the facet parameters
+     */
+    default boolean isUseJsonFacet() {
+        return false;
+    }
+
+    /**
+     * @return sort of the values of the JSON facets and pivot facets, for example <code>count desc</code>
+     * or <code>index asc</code>. Default is by count
+     */
+    default String getFacetSort() {
+        return null;
+    }
+
+    /**
+     * Limits of the pivot facets are used by the JSON facets, the legacy pivot facets can not be limited per field.
+     *
+     * @return limits of the fields of every pivot facet, in the order of {@link #getPivotFacets()},
+     * or <code>null</code> to use the facet limit
+     */
+    default List<List<Integer>> getPivotFacetLimits() {
+        return null;
+    }
+
     /**
      * @return <code>true</code> if you need to use highlighting
      */
@@ -0,0 +1,1038 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.metrics.QueryEngine;
+import com.mangeorge.query.metrics.QueryEvent;
+import com.mangeorge.query.metrics.QueryMetrics;
+import com.mangeorge.query.metrics.QueryMetricsListener;
+import com.mangeorge.query.solr.PivotFacetResult;
+import com.mangeorge.query.solr.PivotFacetValue;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.impl.InputStreamResponseParser;
+import org.apache.solr.client.solrj.io.stream.JavabinTupleStreamParser;
+import org.apache.solr.client.solrj.io.stream.TupleStreamParser;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.json.DomainMap;
+import org.apache.solr.client.solrj.request.json.JsonFacetMap;
+import org.apache.solr.client.solrj.request.json.QueryFacetMap;
+import org.apache.solr.client.solrj.request.json.TermsFacetMap;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.SpellingParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.QueryResponseWriter;
+import org.apache.solr.response.QueryResponseWriterUtil;
+import org.apache.solr.response.SolrQueryResponse;
+import org.noggit.JSONUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Executes queries in the index application through the Solr client.
+ *
+ * Every parameter of the request is set once from the {@link IndexQuery}, without the helpers of {@link SolrQuery},
+ * which remove and add values on every call. The response is requested in the javabin format, whatever the parser
+ * of the client is, and is read from the named list of the response: documents are bound to entities by
+ * the binder of the entity class, and facets, pivots, groups, highlighting and spellcheck are written directly
+ * into the {@link IndexQueryResult}, without the intermediate objects of
+ * {@link org.apache.solr.client.solrj.response.QueryResponse}.
+ * If the query uses JSON facets, facets, facet queries and pivots are requested by one <code>json.facet</code>
+ * parameter, and the JSON facets of the response are read into the same facets, facet queries and pivots.
+ *
+ * All results of the query can be iterated by the cursor mark: pages of {#fetchSize} entities are requested by
+ * the cursor mark of the previous page, so the cost of a page does not grow with its position in the results.
+ * If {#prefetchExecutor} is set, the next page is requested in the background while the previous page is iterated.
+ * The results can be exported by the <code>/export</code> handler too: the handler streams the docValues of
+ * the documents without stored fields and scoring, and tuples are bound to entities while the response is read.
+ *
+ * While a {@link QueryMetricsListener} is registered in {@link QueryMetrics}, every executed {@link SolrBuilder}
+ * and {@link CompiledIndexQuery} is published as a {@link QueryEvent}. The render time is the time of creating the
+ * request, the execution time includes reading of the response.
+ * An iterated or exported query is published when its iterator is closed, its execution time includes requesting
+ * of all pages or reading of all tuples.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class IndexQueryExecutor {
+
+    /**
+     * Key of the groups of {@link IndexQuery#getGroupQueries()} in {@link IndexQueryResult#getGroups()},
+     * the groups of the queries are mapped by the query
+     */
+    public static final String GROUP_QUERIES = GroupParams.GROUP_QUERY;
+
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    public static final String EXPORT_HANDLER = "/export";
+
+    /**
+     * Limit of the values of the JSON facets without the facet limit, the same as the default of the facet parameters
+     */
+    public static final int DEFAULT_FACET_LIMIT = 100;
+
+    private static final String ALL_DOCUMENTS = "*:*";
+    private static final String SPELLCHECK = "spellcheck";
+    private static final String STREAM = "stream";
+    private static final String SHOW_DEFAULTS = "showDefaults";
+    private static final String JSON_FACET = "json.facet";
+    private static final String JSON_FACETS = "facets";
+    private static final String JSON_FACET_QUERY = "facet_query_";
+    private static final String JSON_FACET_PIVOT = "facet_pivot_";
+    private static final String EXCLUDE_TAGS = "{!ex=";
+
+    /**
+     * Binders cache the field metadata of the entity class, so they are shared by all executors
+     */
+    private static final Map<Class<?>, DocumentObjectBinder> binders = new ConcurrentHashMap<>();
+
+
+    private final SolrClient solrClient;
+
+    /**
+     * Collection or core of the requests, or <code>null</code> to use the default collection of the client
+     */
+    private String collection;
+
+    /**
+     * Method of the requests, POST is used for long filter queries, which exceed the limit of the URL length
+     */
+    private SolrRequest.METHOD method = SolrRequest.METHOD.GET;
+
+    /**
+     * Minimum count of the facet values returned by field facets
+     */
+    private int facetMinCount = 1;
+
+    /**
+     * Number of entities requested by the cursor mark in one request
+     */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * Executor of the prefetching of the next page while iterating, or <code>null</code> to not prefetch pages
+     */
+    private Executor prefetchExecutor;
+
+    private final BinaryResponseParser responseParser = new BinaryResponseParser();
+
+    /**
+     * Fields and dynamic fields of the schema mapped to their docValues property, by the collection
+     */
+    private final Map<String, Map<String, Boolean>> docValuesFields = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param solrClient client of the index application
+     */
+    public IndexQueryExecutor(SolrClient solrClient) {
+        this.solrClient = solrClient;
+    }
+
+
+    /**
+     * Executes the query. If the query is grouped, entities are in {@link IndexQueryResult#getGroups()},
+     * and the count is the number of the matched documents of the first group.
+     *
+     * @param indexQuery query to execute
+     * @param <T>        index entity type
+     * @return found entities, their number, facets, pivots, groups, highlighting and spellcheck suggestion
+     */
+    public <T> IndexQueryResult<T> execute(IndexQuery<T> indexQuery) {
+        QueryEvent.Builder event = createEvent(indexQuery);
+        long start = System.nanoTime();
+        QueryRequest request = new QueryRequest(createSolrQuery(indexQuery), method);
+        request.setResponseParser(responseParser);
+        long rendered = System.nanoTime();
+        event.addRenderNanos(rendered - start);
+        try {
+            IndexQueryResult<T> result = createResult(indexQuery, solrClient.request(request, collection));
+            event.addExecuteNanos(System.nanoTime() - rendered);
+            if (result.getEntities() != null) {
+                event.setRowCount(result.getEntities().size());
+            }
+            return result;
+        } catch (SolrServerException | IOException e) {
+            event.setFailed(true);
+            throw new RuntimeException("Can not execute the index query " + indexQuery.getQuery(), e);
+        } catch (RuntimeException e) {
+            event.setFailed(true);
+            throw e;
+        } finally {
+            publish(indexQuery, event);
+        }
+    }
+
+    /**
+     * Iterates over all results of the query by the cursor mark. The iterator must be closed, for example:
+     * <pre>
+     * try (IndexQueryIterator&lt;Foo&gt; iterator = executor.iterate(query)) {
+     *     while (iterator.hasNext()) { ... }
+     * }
+     * </pre>
+     * The sorts of the query must end with the unique key, see {@link SolrBuilder#setUseCursor(boolean)}.
+     * The page size of the query limits the number of returned entities. Facets, highlighting and spellcheck
+     * are not requested.
+     *
+     * @param indexQuery query to execute, without the first position and groups
+     * @param <T>        index entity type
+     * @return iterator over the results, the first page is requested
+     */
+    public <T> IndexQueryIterator<T> iterate(IndexQuery<T> indexQuery) {
+        if (indexQuery.getFirst() != null && indexQuery.getFirst() > 0) {
+            throw new IllegalArgumentException("Cursor mark not support the first position " + indexQuery.getFirst());
+        }
+        if (isNotEmpty(indexQuery.getGroupFields()) || isNotEmpty(indexQuery.getGroupQueries())) {
+            throw new IllegalArgumentException("Cursor mark not support grouping");
+        }
+        QueryEvent.Builder event = null;
+        if (QueryMetrics.isEnabled()) {
+            event = createEvent(indexQuery);
+            if (!setFingerprint(indexQuery, event)) {
+                event = null;
+            }
+        }
+        long start = System.nanoTime();
+        SolrQuery solrQuery = createSolrQuery(indexQuery);
+        solrQuery.remove(CommonParams.START);
+        solrQuery.remove(FacetParams.FACET);
+        solrQuery.remove(JSON_FACET);
+        solrQuery.remove(HighlightParams.HIGHLIGHT);
+        solrQuery.remove(SPELLCHECK);
+        solrQuery.set(CommonParams.ROWS, fetchSize);
+        if (event != null) {
+            event.addRenderNanos(System.nanoTime() - start);
+        }
+        Class<T> entityClass = indexQuery.getEntityClass();
+        long limit = indexQuery.getPageSize() != null ? indexQuery.getPageSize() : Long.MAX_VALUE;
+        return new IndexQueryIterator<>(cursorMark -> requestPage(solrQuery, entityClass, cursorMark),
+                prefetchExecutor, limit, event);
+    }
+
+    /**
+     * Iterates over all results of the query by the cursor mark, see {@link #iterate(IndexQuery)}.
+     * The stream must be closed, for example:
+     * <pre>
+     * try (Stream&lt;Foo&gt; stream = executor.stream(query)) {
+     *     stream.forEach(...);
+     * }
+     * </pre>
+     *
+     * @param indexQuery query to execute, without the first position and groups
+     * @param <T>        index entity type
+     * @return stream of the results
+     */
+    public <T> Stream<T> stream(IndexQuery<T> indexQuery) {
+        IndexQueryIterator<T> iterator = iterate(indexQuery);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Exports all results of the query by the <code>/export</code> handler. The iterator must be closed, for example:
+     * <pre>
+     * try (IndexExportIterator&lt;Foo&gt; iterator = executor.iterateExport(query)) {
+     *     while (iterator.hasNext()) { ... }
+     * }
+     * </pre>
+     * The query must have fields and sorts, and all of them must have docValues, which is checked by the schema
+     * of the collection, see {@link SolrBuilder#setUseExport(boolean)}. The page size of the query limits the number
+     * of returned entities, the rest of the response is not read. Facets, groups, highlighting and spellcheck
+     * are not requested.
+     * <p>
+     * The response is requested as a stream and tuples are read while the iterator is iterated.
+     * {@link EmbeddedSolrServer} does not return the stream of the export, so the export handler of its core
+     * is executed directly, and the response is written to the memory before it is read.
+     *
+     * @param indexQuery query to export, without the first position
+     * @param <T>        index entity type
+     * @return iterator over the results, the response is requested
+     */
+    public <T> IndexExportIterator<T> iterateExport(IndexQuery<T> indexQuery) {
+        if (indexQuery.getFirst() != null && indexQuery.getFirst() > 0) {
+            throw new IllegalArgumentException("Export not support the first position " + indexQuery.getFirst());
+        }
+        checkDocValues(indexQuery);
+        QueryEvent.Builder event = null;
+        if (QueryMetrics.isEnabled()) {
+            event = createEvent(indexQuery);
+            if (!setFingerprint(indexQuery, event)) {
+                event = null;
+            }
+        }
+        long start = System.nanoTime();
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(CommonParams.Q, StringUtils.isEmpty(indexQuery.getQuery()) ? ALL_DOCUMENTS : indexQuery.getQuery());
+        List<String> filterQueries = indexQuery.getFilterQueries();
+        if (filterQueries != null && !filterQueries.isEmpty()) {
+            params.set(CommonParams.FQ, filterQueries.toArray(new String[0]));
+        }
+        params.set(CommonParams.SORT, toSortString(indexQuery.getSorts()));
+        params.set(CommonParams.FL, String.join(",", indexQuery.getFields()));
+        long rendered = System.nanoTime();
+        if (event != null) {
+            event.addRenderNanos(rendered - start);
+        }
+        TupleStreamParser tupleParser = null;
+        try {
+            tupleParser = new JavabinTupleStreamParser(requestExport(params), false);
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Can not export the index query " + indexQuery.getQuery(), e);
+        } finally {
+            if (event != null) {
+                event.addExecuteNanos(System.nanoTime() - rendered);
+                if (tupleParser == null) {
+                    QueryMetrics.publish(event.setFailed(true).build());
+                }
+            }
+        }
+        long limit = indexQuery.getPageSize() != null ? indexQuery.getPageSize() : Long.MAX_VALUE;
+        Class<T> entityClass = indexQuery.getEntityClass();
+        return new IndexExportIterator<>(tupleParser, getBinder(entityClass), entityClass, limit, event);
+    }
+
+    /**
+     * Exports all results of the query by the <code>/export</code> handler, see {@link #iterateExport(IndexQuery)}.
+     * The stream must be closed, for example:
+     * <pre>
+     * try (Stream&lt;Foo&gt; stream = executor.streamExport(query)) {
+     *     stream.forEach(...);
+     * }
+     * </pre>
+     *
+     * @param indexQuery query to export, without the first position
+     * @param <T>        index entity type
+     * @return stream of the results
+     */
+    public <T> Stream<T> streamExport(IndexQuery<T> indexQuery) {
+        IndexExportIterator<T> iterator = iterateExport(indexQuery);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Exports all results of the query by the <code>/export</code> handler, see {@link #iterateExport(IndexQuery)}.
+     *
+     * @param indexQuery query to export, without the first position
+     * @param consumer   consumer of the exported entities
+     * @param <T>        index entity type
+     * @return number of the exported entities
+     */
+    public <T> long export(IndexQuery<T> indexQuery, Consumer<? super T> consumer) {
+        try (IndexExportIterator<T> iterator = iterateExport(indexQuery)) {
+            iterator.forEachRemaining(consumer);
+            return iterator.getRowCount();
+        }
+    }
+
+    /**
+     * @return stream of the response in the javabin format
+     */
+    private InputStream requestExport(ModifiableSolrParams params) throws SolrServerException, IOException {
+        if (solrClient instanceof EmbeddedSolrServer) {
+            return requestEmbeddedExport(((EmbeddedSolrServer) solrClient).getCoreContainer(), params);
+        }
+        QueryRequest request = new QueryRequest(params, method);
+        request.setPath(EXPORT_HANDLER);
+        request.setResponseParser(new InputStreamResponseParser(responseParser.getWriterType()));
+        Object stream = solrClient.request(request, collection).get(STREAM);
+        if (!(stream instanceof InputStream)) {
+            throw new RuntimeException("Can not export by the client " + solrClient.getClass().getName()
+                    + ", it does not return the stream of the response");
+        }
+        return (InputStream) stream;
+    }
+
+    /**
+     * The export handler writes the tuples by its own response writer, which the embedded server does not use.
+     * The core is the collection, or the only core of the container.
+     */
+    private InputStream requestEmbeddedExport(CoreContainer coreContainer, ModifiableSolrParams params) throws IOException {
+        String coreName = collection;
+        if (coreName == null) {
+            Collection<String> coreNames = coreContainer.getAllCoreNames();
+            if (coreNames.size() != 1) {
+                throw new RuntimeException("Can not export from the embedded server without the collection");
+            }
+            coreName = coreNames.iterator().next();
+        }
+        params.set(CommonParams.WT, responseParser.getWriterType());
+        try (SolrCore core = coreContainer.getCore(coreName)) {
+            if (core == null) {
+                throw new RuntimeException("Can not find the core " + coreName);
+            }
+            SolrQueryRequest request = new LocalSolrQueryRequest(core, params);
+            SolrQueryResponse response = new SolrQueryResponse();
+            SolrRequestInfo.setRequestInfo(new SolrRequestInfo(request, response));
+            try {
+                core.execute(core.getRequestHandler(EXPORT_HANDLER), request, response);
+                if (response.getException() != null) {
+                    throw new RuntimeException("Can not export the index query " + params.get(CommonParams.Q),
+                            response.getException());
+                }
+                QueryResponseWriter writer = core.getQueryResponseWriter(request);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                QueryResponseWriterUtil.writeQueryResponse(out, writer, request, response,
+                        writer.getContentType(request, response));
+                return new ByteArrayInputStream(out.toByteArray());
+            } finally {
+                SolrRequestInfo.clearRequestInfo();
+                request.close();
+            }
+        }
+    }
+
+    /**
+     * The export handler returns only the fields and sorts by the fields with docValues,
+     * so they are checked before the request to fail with the name of the field
+     */
+    private void checkDocValues(IndexQuery<?> indexQuery) {
+        List<String> fields = indexQuery.getFields();
+        if (fields == null || fields.isEmpty()) {
+            throw new IllegalArgumentException("Can not export the index query without fields");
+        }
+        List<SolrQuery.SortClause> sorts = indexQuery.getSorts();
+        if (sorts == null || sorts.isEmpty()) {
+            throw new IllegalArgumentException("Can not export the index query without sorts");
+        }
+        Map<String, Boolean> schemaFields = docValuesFields.computeIfAbsent(Objects.toString(collection, ""),
+                c -> loadDocValuesFields());
+        for (String field : fields) {
+            if (!hasDocValues(schemaFields, field)) {
+                throw new IllegalArgumentException("Can not export the field " + field + " without docValues");
+            }
+        }
+        for (SolrQuery.SortClause sort : sorts) {
+            if (!hasDocValues(schemaFields, sort.getItem())) {
+                throw new IllegalArgumentException("Can not export the sort " + sort.getItem() + " without docValues");
+            }
+        }
+    }
+
+    /**
+     * Fields are requested with the defaults of their types, which contain the docValues property
+     */
+    private Map<String, Boolean> loadDocValuesFields() {
+        SolrParams params = new ModifiableSolrParams().set(SHOW_DEFAULTS, true);
+        Map<String, Boolean> schemaFields = new HashMap<>();
+        try {
+            for (Map<String, Object> field : new SchemaRequest.Fields(params).process(solrClient, collection)
+                    .getFields()) {
+                schemaFields.put((String) field.get("name"), Boolean.TRUE.equals(field.get("docValues")));
+            }
+            for (Map<String, Object> field : new SchemaRequest.DynamicFields(params).process(solrClient, collection)
+                    .getDynamicFields()) {
+                schemaFields.put((String) field.get("name"), Boolean.TRUE.equals(field.get("docValues")));
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Can not read the schema of the collection " + collection, e);
+        }
+        return schemaFields;
+    }
+
+    /**
+     * A field without the schema field is matched by the longest pattern of the dynamic fields, as Solr does
+     */
+    private static boolean hasDocValues(Map<String, Boolean> schemaFields, String field) {
+        Boolean docValues = schemaFields.get(field);
+        if (docValues != null) {
+            return docValues;
+        }
+        String pattern = null;
+        for (String name : schemaFields.keySet()) {
+            boolean matches = name.startsWith("*") && field.endsWith(name.substring(1))
+                    || name.endsWith("*") && field.startsWith(name.substring(0, name.length() - 1));
+            if (matches && (pattern == null || name.length() > pattern.length())) {
+                pattern = name;
+            }
+        }
+        return pattern != null && schemaFields.get(pattern);
+    }
+
+    /**
+     * The parameters of the query are copied, because pages may be requested by the prefetch executor
+     */
+    private <T> IndexQueryIterator.Page<T> requestPage(SolrQuery solrQuery, Class<T> entityClass, String cursorMark) {
+        long start = System.nanoTime();
+        ModifiableSolrParams params = new ModifiableSolrParams(solrQuery);
+        params.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+        QueryRequest request = new QueryRequest(params, method);
+        request.setResponseParser(responseParser);
+        try {
+            NamedList<Object> response = solrClient.request(request, collection);
+            List<T> entities = bind(getBinder(entityClass), entityClass, (SolrDocumentList) response.get("response"));
+            return new IndexQueryIterator.Page<>(entities, cursorMark,
+                    (String) response.get(CursorMarkParams.CURSOR_MARK_NEXT), fetchSize, System.nanoTime() - start);
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Can not execute the index query " + solrQuery.getQuery(), e);
+        }
+    }
+
+    private static boolean isNotEmpty(Collection<?> collection) {
+        return collection != null && !collection.isEmpty();
+    }
+
+    /**
+     * Creates the request parameters of the query, every parameter is set once.
+     * Facet parameters are set if the query has facets, and group parameters are set if it has groups.
+     *
+     * @param indexQuery query to convert
+     * @return parameters of the request
+     */
+    public SolrQuery createSolrQuery(IndexQuery<?> indexQuery) {
+        SolrQuery solrQuery = new SolrQuery();
+        solrQuery.set(CommonParams.Q, StringUtils.isEmpty(indexQuery.getQuery()) ? ALL_DOCUMENTS : indexQuery.getQuery());
+        List<String> filterQueries = indexQuery.getFilterQueries();
+        if (filterQueries != null && !filterQueries.isEmpty()) {
+            solrQuery.set(CommonParams.FQ, filterQueries.toArray(new String[0]));
+        }
+        List<SolrQuery.SortClause> sorts = indexQuery.getSorts();
+        if (sorts != null && !sorts.isEmpty()) {
+            solrQuery.set(CommonParams.SORT, toSortString(sorts));
+        }
+        List<String> fields = indexQuery.getFields();
+        if (fields != null && !fields.isEmpty()) {
+            solrQuery.set(CommonParams.FL, String.join(",", fields));
+        }
+        if (indexQuery.getFirst() != null) {
+            solrQuery.set(CommonParams.START, indexQuery.getFirst());
+        }
+        if (indexQuery.getPageSize() != null) {
+            solrQuery.set(CommonParams.ROWS, indexQuery.getPageSize());
+        }
+        if (indexQuery.isUseJsonFacet()) {
+            setJsonFacetParams(solrQuery, indexQuery);
+        } else {
+            setFacetParams(solrQuery, indexQuery);
+        }
+        setGroupParams(solrQuery, indexQuery);
+        if (indexQuery.isUseHighlight()) {
+            solrQuery.set(HighlightParams.HIGHLIGHT, true);
+        }
+        if (indexQuery.isUseSpellcheck()) {
+            solrQuery.set(SPELLCHECK, true);
+            solrQuery.set(SpellingParams.SPELLCHECK_COLLATE, true);
+        }
+        return solrQuery;
+    }
+
+    private void setFacetParams(SolrQuery solrQuery, IndexQuery<?> indexQuery) {
+        boolean facet = false;
+        List<String> facets = indexQuery.getFacets();
+        if (facets != null && !facets.isEmpty()) {
+            solrQuery.set(FacetParams.FACET_FIELD, facets.toArray(new String[0]));
+            solrQuery.set(FacetParams.FACET_MINCOUNT, facetMinCount);
+            facet = true;
+        }
+        List<String> facetQueries = indexQuery.getFacetQueries();
+        if (facetQueries != null && !facetQueries.isEmpty()) {
+            solrQuery.set(FacetParams.FACET_QUERY, facetQueries.toArray(new String[0]));
+            facet = true;
+        }
+        List<List<String>> pivotFacets = indexQuery.getPivotFacets();
+        if (pivotFacets != null && !pivotFacets.isEmpty()) {
+            String[] pivots = new String[pivotFacets.size()];
+            for (int i = 0; i < pivots.length; i++) {
+                pivots[i] = String.join(",", pivotFacets.get(i));
+            }
+            solrQuery.set(FacetParams.FACET_PIVOT, pivots);
+            facet = true;
+        }
+        if (facet) {
+            solrQuery.set(FacetParams.FACET, true);
+            if (indexQuery.getFacetLimit() != null) {
+                solrQuery.set(FacetParams.FACET_LIMIT, indexQuery.getFacetLimit());
+            }
+        }
+    }
+
+    /**
+     * Facets are terms facets named by the field, facet queries and pivots are named by their position.
+     * A pivot is the terms facet of its first field with the nested terms facets of the next fields.
+     * The excluded tags of a facet are moved from its local params to its domain.
+     */
+    private void setJsonFacetParams(SolrQuery solrQuery, IndexQuery<?> indexQuery) {
+        Map<String, JsonFacetMap<?>> jsonFacets = new LinkedHashMap<>();
+        int facetLimit = indexQuery.getFacetLimit() != null ? indexQuery.getFacetLimit() : DEFAULT_FACET_LIMIT;
+        List<String> facets = indexQuery.getFacets();
+        if (facets != null) {
+            for (String facet : facets) {
+                TermsFacetMap termsFacet = createTermsFacet(removeLocalParams(facet), facetLimit,
+                        indexQuery.getFacetSort()).setMinCount(facetMinCount);
+                setExcludeTags(termsFacet, facet);
+                jsonFacets.put(removeLocalParams(facet), termsFacet);
+            }
+        }
+        List<String> facetQueries = indexQuery.getFacetQueries();
+        if (facetQueries != null) {
+            for (int i = 0; i < facetQueries.size(); i++) {
+                QueryFacetMap queryFacet = new QueryFacetMap(removeLocalParams(facetQueries.get(i)));
+                setExcludeTags(queryFacet, facetQueries.get(i));
+                jsonFacets.put(JSON_FACET_QUERY + i, queryFacet);
+            }
+        }
+        List<List<String>> pivotFacets = indexQuery.getPivotFacets();
+        if (pivotFacets != null) {
+            List<List<Integer>> pivotFacetLimits = indexQuery.getPivotFacetLimits();
+            for (int i = 0; i < pivotFacets.size(); i++) {
+                List<String> fields = pivotFacets.get(i);
+                List<Integer> fieldLimits = pivotFacetLimits != null && i < pivotFacetLimits.size()
+                        ? pivotFacetLimits.get(i) : null;
+                TermsFacetMap pivot = null;
+                for (int j = fields.size() - 1; j >= 0; j--) {
+                    int limit = fieldLimits != null && j < fieldLimits.size() && fieldLimits.get(j) != null
+                            ? fieldLimits.get(j) : facetLimit;
+                    TermsFacetMap termsFacet = createTermsFacet(fields.get(j), limit, indexQuery.getFacetSort());
+                    if (pivot != null) {
+                        termsFacet.withSubFacet(fields.get(j + 1), pivot);
+                    }
+                    pivot = termsFacet;
+                }
+                if (pivot != null) {
+                    jsonFacets.put(JSON_FACET_PIVOT + i, pivot);
+                }
+            }
+        }
+        if (!jsonFacets.isEmpty()) {
+            solrQuery.set(JSON_FACET, JSONUtil.toJSON(jsonFacets, -1));
+        }
+    }
+
+    private static TermsFacetMap createTermsFacet(String field, int limit, String sort) {
+        TermsFacetMap termsFacet = new TermsFacetMap(field).setLimit(limit);
+        if (sort != null) {
+            termsFacet.setSort(sort);
+        }
+        return termsFacet;
+    }
+
+    /**
+     * Filters may have the same tag, every tag is excluded once
+     */
+    private static void setExcludeTags(JsonFacetMap<?> jsonFacet, String facet) {
+        if (facet.startsWith(EXCLUDE_TAGS)) {
+            int end = facet.indexOf('}');
+            if (end > 0) {
+                DomainMap domain = new DomainMap();
+                for (String tag : new LinkedHashSet<>(Arrays.asList(
+                        facet.substring(EXCLUDE_TAGS.length(), end).split(",")))) {
+                    domain.withTagsToExclude(tag);
+                }
+                jsonFacet.withDomain(domain);
+            }
+        }
+    }
+
+    private void setGroupParams(SolrQuery solrQuery, IndexQuery<?> indexQuery) {
+        boolean group = false;
+        Collection<String> groupFields = indexQuery.getGroupFields();
+        if (groupFields != null && !groupFields.isEmpty()) {
+            solrQuery.set(GroupParams.GROUP_FIELD, groupFields.toArray(new String[0]));
+            group = true;
+        }
+        Collection<String> groupQueries = indexQuery.getGroupQueries();
+        if (groupQueries != null && !groupQueries.isEmpty()) {
+            solrQuery.set(GroupParams.GROUP_QUERY, groupQueries.toArray(new String[0]));
+            group = true;
+        }
+        if (group) {
+            solrQuery.set(GroupParams.GROUP, true);
+            if (indexQuery.getGroupLimit() != null) {
+                solrQuery.set(GroupParams.GROUP_LIMIT, indexQuery.getGroupLimit());
+            }
+            List<SolrQuery.SortClause> groupSorts = indexQuery.getGroupSorts();
+            if (groupSorts != null && !groupSorts.isEmpty()) {
+                solrQuery.set(GroupParams.GROUP_SORT, toSortString(groupSorts));
+            }
+        }
+    }
+
+    private static String toSortString(List<SolrQuery.SortClause> sorts) {
+        StringBuilder sort = new StringBuilder();
+        for (SolrQuery.SortClause sortClause : sorts) {
+            if (sort.length() > 0) {
+                sort.append(',');
+            }
+            sort.append(sortClause.getItem()).append(' ').append(sortClause.getOrder());
+        }
+        return sort.toString();
+    }
+
+    /**
+     * The query event of the compiled query has the compile time as the build time.
+     * The fingerprint of the builder is computed only if there are listeners.
+     */
+    private static QueryEvent.Builder createEvent(IndexQuery<?> indexQuery) {
+        if (indexQuery instanceof CompiledIndexQuery) {
+            return ((CompiledIndexQuery<?>) indexQuery).createEvent();
+        }
+        return QueryEvent.builder(QueryEngine.SOLR);
+    }
+
+    /**
+     * Queries of other implementations are not published, because their shape is unknown
+     */
+    private static void publish(IndexQuery<?> indexQuery, QueryEvent.Builder event) {
+        if (QueryMetrics.isEnabled() && setFingerprint(indexQuery, event)) {
+            QueryMetrics.publish(event.build());
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the fingerprint of the query is unknown
+     */
+    private static boolean setFingerprint(IndexQuery<?> indexQuery, QueryEvent.Builder event) {
+        if (event.getFingerprint() == null) {
+            if (!(indexQuery instanceof SolrBuilder)) {
+                return false;
+            }
+            event.setFingerprint(((SolrBuilder<?>) indexQuery).getShapeFingerprint());
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> IndexQueryResult<T> createResult(IndexQuery<T> indexQuery, NamedList<Object> response) {
+        IndexQueryResult<T> result = new IndexQueryResult<>();
+        DocumentObjectBinder binder = getBinder(indexQuery.getEntityClass());
+        SolrDocumentList documents = (SolrDocumentList) response.get("response");
+        if (documents != null) {
+            result.setCount(documents.getNumFound());
+            result.setEntities(bind(binder, indexQuery.getEntityClass(), documents));
+        }
+        NamedList<Object> grouped = (NamedList<Object>) response.get("grouped");
+        if (grouped != null) {
+            readGroups(result, binder, indexQuery.getEntityClass(), grouped);
+        }
+        NamedList<Object> facetCounts = (NamedList<Object>) response.get("facet_counts");
+        if (facetCounts != null) {
+            readFacets(result, facetCounts);
+        }
+        NamedList<Object> jsonFacets = (NamedList<Object>) response.get(JSON_FACETS);
+        if (jsonFacets != null) {
+            readJsonFacets(result, indexQuery, jsonFacets);
+        }
+        NamedList<NamedList<List<String>>> highlighting =
+                (NamedList<NamedList<List<String>>>) response.get("highlighting");
+        if (highlighting != null) {
+            readHighlighting(result, highlighting);
+        }
+        NamedList<Object> spellcheck = (NamedList<Object>) response.get(SPELLCHECK);
+        if (spellcheck != null) {
+            result.setSpellcheckSuggestion(readSpellcheckSuggestion(spellcheck));
+        }
+        return result;
+    }
+
+    private static DocumentObjectBinder getBinder(Class<?> entityClass) {
+        return binders.computeIfAbsent(entityClass, c -> new DocumentObjectBinder());
+    }
+
+    private static <T> List<T> bind(DocumentObjectBinder binder, Class<T> entityClass, SolrDocumentList documents) {
+        List<T> entities = new ArrayList<>(documents.size());
+        for (SolrDocument document : documents) {
+            entities.add(binder.getBean(entityClass, document));
+        }
+        return entities;
+    }
+
+    /**
+     * Groups of a field contain the list of groups, and the group of a query contains the documents
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void readGroups(IndexQueryResult<T> result, DocumentObjectBinder binder, Class<T> entityClass,
+                                       NamedList<Object> grouped) {
+        for (int i = 0; i < grouped.size(); i++) {
+            String name = grouped.getName(i);
+            NamedList<Object> command = (NamedList<Object>) grouped.getVal(i);
+            if (result.getCount() == null) {
+                result.setCount(((Number) command.get("matches")).longValue());
+            }
+            List<NamedList<Object>> groups = (List<NamedList<Object>>) command.get("groups");
+            if (groups != null) {
+                for (NamedList<Object> group : groups) {
+                    result.addGroup(name, Objects.toString(group.get("groupValue"), null),
+                            bind(binder, entityClass, (SolrDocumentList) group.get("doclist")));
+                }
+            } else {
+                result.addGroup(GROUP_QUERIES, name, bind(binder, entityClass, (SolrDocumentList) command.get("doclist")));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void readFacets(IndexQueryResult<?> result, NamedList<Object> facetCounts) {
+        NamedList<Number> facetQueries = (NamedList<Number>) facetCounts.get("facet_queries");
+        if (facetQueries != null) {
+            for (int i = 0; i < facetQueries.size(); i++) {
+                result.addFacetQuery(removeLocalParams(facetQueries.getName(i)), facetQueries.getVal(i).longValue());
+            }
+        }
+        NamedList<NamedList<Number>> facetFields = (NamedList<NamedList<Number>>) facetCounts.get("facet_fields");
+        if (facetFields != null) {
+            for (int i = 0; i < facetFields.size(); i++) {
+                NamedList<Number> counts = facetFields.getVal(i);
+                Map<String, Long> values = new LinkedHashMap<>(counts.size() * 4 / 3 + 1);
+                for (int j = 0; j < counts.size(); j++) {
+                    values.put(counts.getName(j), counts.getVal(j).longValue());
+                }
+                result.addFacet(facetFields.getName(i), values);
+            }
+        }
+        NamedList<List<NamedList<Object>>> facetPivots =
+                (NamedList<List<NamedList<Object>>>) facetCounts.get("facet_pivot");
+        if (facetPivots != null) {
+            for (int i = 0; i < facetPivots.size(); i++) {
+                PivotFacetResult pivotFacetResult = new PivotFacetResult();
+                pivotFacetResult.setName(facetPivots.getName(i));
+                List<PivotFacetValue> values = new ArrayList<>();
+                readPivotValues(values, facetPivots.getVal(i), Collections.emptyMap());
+                pivotFacetResult.setValues(values);
+                result.addPivotFacet(pivotFacetResult);
+            }
+        }
+    }
+
+    /**
+     * Values of all levels of the pivot are added in the depth-first order, the values of a pivot value are
+     * the values of the fields from the first field of the pivot to the field of the value
+     */
+    @SuppressWarnings("unchecked")
+    private static void readPivotValues(List<PivotFacetValue> values, List<NamedList<Object>> pivot,
+                                        Map<String, Object> parentValues) {
+        for (NamedList<Object> node : pivot) {
+            Map<String, Object> nodeValues = new LinkedHashMap<>(parentValues);
+            nodeValues.put((String) node.get("field"), node.get("value"));
+            PivotFacetValue value = new PivotFacetValue();
+            value.setCount(((Number) node.get("count")).intValue());
+            value.setValues(nodeValues);
+            values.add(value);
+            List<NamedList<Object>> children = (List<NamedList<Object>>) node.get("pivot");
+            if (children != null) {
+                readPivotValues(values, children, nodeValues);
+            }
+        }
+    }
+
+    /**
+     * The JSON facets are read by the names of {@link #setJsonFacetParams(SolrQuery, IndexQuery)}.
+     * Values of the facets are strings, dates are in the ISO format as the values of the facet parameters,
+     * and the name of a pivot is its fields joined by the comma, as the name of the legacy pivot.
+     */
+    @SuppressWarnings("unchecked")
+    private static void readJsonFacets(IndexQueryResult<?> result, IndexQuery<?> indexQuery,
+                                       NamedList<Object> jsonFacets) {
+        List<String> facets = indexQuery.getFacets();
+        if (facets != null) {
+            for (String facet : facets) {
+                String field = removeLocalParams(facet);
+                NamedList<Object> termsFacet = (NamedList<Object>) jsonFacets.get(field);
+                if (termsFacet != null) {
+                    List<NamedList<Object>> buckets = (List<NamedList<Object>>) termsFacet.get("buckets");
+                    Map<String, Long> values = new LinkedHashMap<>(buckets.size() * 4 / 3 + 1);
+                    for (NamedList<Object> bucket : buckets) {
+                        Object value = bucket.get("val");
+                        values.put(value instanceof Date ? ((Date) value).toInstant().toString() : value.toString(),
+                                ((Number) bucket.get("count")).longValue());
+                    }
+                    result.addFacet(field, values);
+                }
+            }
+        }
+        List<String> facetQueries = indexQuery.getFacetQueries();
+        if (facetQueries != null) {
+            for (int i = 0; i < facetQueries.size(); i++) {
+                NamedList<Object> queryFacet = (NamedList<Object>) jsonFacets.get(JSON_FACET_QUERY + i);
+                if (queryFacet != null) {
+                    result.addFacetQuery(removeLocalParams(facetQueries.get(i)),
+                            ((Number) queryFacet.get("count")).longValue());
+                }
+            }
+        }
+        List<List<String>> pivotFacets = indexQuery.getPivotFacets();
+        if (pivotFacets != null) {
+            for (int i = 0; i < pivotFacets.size(); i++) {
+                NamedList<Object> pivot = (NamedList<Object>) jsonFacets.get(JSON_FACET_PIVOT + i);
+                if (pivot != null) {
+                    PivotFacetResult pivotFacetResult = new PivotFacetResult();
+                    pivotFacetResult.setName(String.join(",", pivotFacets.get(i)));
+                    List<PivotFacetValue> values = new ArrayList<>();
+                    readJsonPivotValues(values, pivot, pivotFacets.get(i), 0, Collections.emptyMap());
+                    pivotFacetResult.setValues(values);
+                    result.addPivotFacet(pivotFacetResult);
+                }
+            }
+        }
+    }
+
+    /**
+     * Values are added in the same order and with the same values as the values of the legacy pivot,
+     * see {@link #readPivotValues(List, List, Map)}
+     */
+    @SuppressWarnings("unchecked")
+    private static void readJsonPivotValues(List<PivotFacetValue> values, NamedList<Object> termsFacet,
+                                            List<String> fields, int level, Map<String, Object> parentValues) {
+        for (NamedList<Object> bucket : (List<NamedList<Object>>) termsFacet.get("buckets")) {
+            Map<String, Object> bucketValues = new LinkedHashMap<>(parentValues);
+            bucketValues.put(fields.get(level), bucket.get("val"));
+            PivotFacetValue value = new PivotFacetValue();
+            value.setCount(((Number) bucket.get("count")).intValue());
+            value.setValues(bucketValues);
+            values.add(value);
+            if (level + 1 < fields.size()) {
+                NamedList<Object> children = (NamedList<Object>) bucket.get(fields.get(level + 1));
+                if (children != null) {
+                    readJsonPivotValues(values, children, fields, level + 1, bucketValues);
+                }
+            }
+        }
+    }
+
+    /**
+     * Solr returns a facet query with its local params, for example <code>{!ex=p}price:[0 TO 10]</code>,
+     * they are removed, so the name is the query
+     */
+    private static String removeLocalParams(String facetQuery) {
+        if (facetQuery.startsWith("{!")) {
+            int end = facetQuery.indexOf('}');
+            if (end > 0) {
+                return facetQuery.substring(end + 1);
+            }
+        }
+        return facetQuery;
+    }
+
+    /**
+     * Snippets of all highlighted fields of the document are joined in the order of fields
+     */
+    private static void readHighlighting(IndexQueryResult<?> result, NamedList<NamedList<List<String>>> highlighting) {
+        Map<String, List<String>> snippets = new LinkedHashMap<>(highlighting.size() * 4 / 3 + 1);
+        for (int i = 0; i < highlighting.size(); i++) {
+            NamedList<List<String>> fields = highlighting.getVal(i);
+            if (fields.size() == 1) {
+                snippets.put(highlighting.getName(i), fields.getVal(0));
+                continue;
+            }
+            List<String> documentSnippets = new ArrayList<>();
+            for (int j = 0; j < fields.size(); j++) {
+                documentSnippets.addAll(fields.getVal(j));
+            }
+            snippets.put(highlighting.getName(i), documentSnippets);
+        }
+        result.setHighlighting(snippets);
+    }
+
+    /**
+     * The suggestion is the first collation or, if there are no collations, the first suggestion of the first word
+     */
+    @SuppressWarnings("unchecked")
+    private static String readSpellcheckSuggestion(NamedList<Object> spellcheck) {
+        NamedList<Object> collations = (NamedList<Object>) spellcheck.get("collations");
+        if (collations != null && collations.size() > 0) {
+            Object collation = collations.getVal(0);
+            if (collation instanceof NamedList) {
+                return (String) ((NamedList<Object>) collation).get("collationQuery");
+            }
+            return (String) collation;
+        }
+        NamedList<Object> suggestions = (NamedList<Object>) spellcheck.get("suggestions");
+        if (suggestions != null && suggestions.size() > 0 && suggestions.getVal(0) instanceof NamedList) {
+            List<Object> words = (List<Object>) ((NamedList<Object>) suggestions.getVal(0)).get("suggestion");
+            if (words != null && !words.isEmpty()) {
+                Object word = words.get(0);
+                return word instanceof NamedList ? (String) ((NamedList<Object>) word).get("word") : (String) word;
+            }
+        }
+        return null;
+    }
+
+    public SolrClient getSolrClient() {
+        return solrClient;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public IndexQueryExecutor setCollection(String collection) {
+        this.collection = collection;
+        return this;
+    }
+
+    public SolrRequest.METHOD getMethod() {
+        return method;
+    }
+
+    public IndexQueryExecutor setMethod(SolrRequest.METHOD method) {
+        this.method = method;
+        return this;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public IndexQueryExecutor setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    public IndexQueryExecutor setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+        return this;
+    }
+
+    public int getFacetMinCount() {
+        return facetMinCount;
+    }
+
+    public IndexQueryExecutor setFacetMinCount(int facetMinCount) {
+        this.facetMinCount = facetMinCount;
+        return this;
+    }
+}
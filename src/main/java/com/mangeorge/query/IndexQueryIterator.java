@@ -0,0 +1,187 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.metrics.QueryEvent;
+import com.mangeorge.query.metrics.QueryMetrics;
+import org.apache.solr.common.params.CursorMarkParams;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+
+/**
+ * Iterator over all results of the index query, pages are requested by the cursor mark of the previous page.
+ * A page is requested when the entities of the previous page are returned, so the iterator is lazy.
+ * If the prefetch executor is set, the next page is requested in the executor as soon as the previous page is received,
+ * so the request runs while the entities of the previous page are processed.
+ * Must be closed, if it is not iterated to the end, to stop the prefetching.
+ * If the query event is set, it is published when the iterator is closed, with the number of returned entities,
+ * and the time of requesting the pages is added to the execution time.
+ *
+ * @param <T> index entity type
+ */
+public class IndexQueryIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final Function<String, Page<T>> pageLoader;
+    private final Executor prefetchExecutor;
+    private final long limit;
+    private final QueryEvent.Builder event;
+
+    private Page<T> page;
+    private int index;
+    private CompletableFuture<Page<T>> nextPage;
+    private long rowCount;
+    private long fetchNanos;
+    private boolean closed;
+
+
+    /**
+     * @param pageLoader       loader of the page by the cursor mark
+     * @param prefetchExecutor executor of the prefetching, or <code>null</code> to request pages in the iterating thread
+     * @param limit            maximum number of returned entities
+     * @param event            event of the query, or <code>null</code> to not publish it
+     */
+    IndexQueryIterator(Function<String, Page<T>> pageLoader, Executor prefetchExecutor, long limit,
+                       QueryEvent.Builder event) {
+        this.pageLoader = pageLoader;
+        this.prefetchExecutor = prefetchExecutor;
+        this.limit = limit;
+        this.event = event;
+        if (limit > 0) {
+            setPage(load(CursorMarkParams.CURSOR_MARK_START));
+        } else {
+            close();
+        }
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        while (!closed && index == page.entities.size()) {
+            if (page.isLast()) {
+                close();
+                return false;
+            }
+            setPage(takeNextPage());
+        }
+        return !closed;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T entity = page.entities.get(index++);
+        if (++rowCount == limit) {
+            close();
+        }
+        return entity;
+    }
+
+    private void setPage(Page<T> page) {
+        this.page = page;
+        index = 0;
+        fetchNanos += page.nanos;
+        if (prefetchExecutor != null && !page.isLast() && rowCount + page.entities.size() < limit) {
+            nextPage = CompletableFuture.supplyAsync(() -> pageLoader.apply(page.nextCursorMark), prefetchExecutor);
+        }
+    }
+
+    private Page<T> takeNextPage() {
+        if (nextPage == null) {
+            return load(page.nextCursorMark);
+        }
+        try {
+            return nextPage.join();
+        } catch (CompletionException e) {
+            fail();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            nextPage = null;
+        }
+    }
+
+    private Page<T> load(String cursorMark) {
+        try {
+            return pageLoader.apply(cursorMark);
+        } catch (RuntimeException e) {
+            fail();
+            throw e;
+        }
+    }
+
+    private void fail() {
+        if (event != null) {
+            event.setFailed(true);
+        }
+        close();
+    }
+
+    /**
+     * @return number of entities returned by the iterator
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * The prefetched page is discarded, its request is not interrupted
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (nextPage != null) {
+                nextPage.cancel(false);
+                nextPage = null;
+            }
+            if (event != null) {
+                QueryMetrics.publish(event.addExecuteNanos(fetchNanos).setRowCount(rowCount).build());
+            }
+        }
+    }
+
+
+    /**
+     * Entities of the page and the cursor mark of the next page
+     */
+    static final class Page<T> {
+
+        private final List<T> entities;
+        private final String cursorMark;
+        private final String nextCursorMark;
+        private final int pageSize;
+        private final long nanos;
+
+        /**
+         * @param entities       entities of the page
+         * @param cursorMark     cursor mark of the page
+         * @param nextCursorMark cursor mark of the next page
+         * @param pageSize       requested number of entities
+         * @param nanos          time of requesting the page
+         */
+        Page(List<T> entities, String cursorMark, String nextCursorMark, int pageSize, long nanos) {
+            this.entities = entities;
+            this.cursorMark = cursorMark;
+            this.nextCursorMark = nextCursorMark;
+            this.pageSize = pageSize;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Solr returns the same cursor mark after the last page. A page with fewer entities than requested is
+         * the last one too, so the request of the empty page is not sent.
+         */
+        private boolean isLast() {
+            return nextCursorMark == null || nextCursorMark.equals(cursorMark) || entities.size() < pageSize;
+        }
+    }
+}
@@ -41,6 +41,16 @@ public class IndexQueryResult<T> {
         facets.get(facetName).put(value, count);
     }
 
+    /**
+     * @param facetName name of the facet field
+     * @param values    counts of the values, the map is kept by the result
+     */
+    public void addFacet(String facetName, Map<String, Long> values) {
+        if (facets == null)
+            facets = new LinkedHashMap<>();
+        facets.put(facetName, values);
+    }
+
     public void addFacetQuery(String name, Long count) {
         if (facetQueries == null)
             facetQueries = new LinkedHashMap<>();
@@ -1,19 +1,42 @@
 package com.mangeorge.query;
 
+import com.mangeorge.query.cache.CriteriaQueryCache;
+import com.mangeorge.query.cache.QueryTemplateCache;
+import com.mangeorge.query.cache.SqlQueryCache;
+import com.mangeorge.query.filter.QueryFilterOptimizer;
 import com.mangeorge.query.helper.HQLBuilderHelper;
+import com.mangeorge.query.helper.ReflectionHelper;
 import com.mangeorge.query.filter.QueryFilter;
 import com.mangeorge.query.join.JoinType;
 import com.mangeorge.query.join.QueryJoin;
+import com.mangeorge.query.jpa.JpaQueryContext;
 import com.mangeorge.query.order.Order;
+import com.mangeorge.query.sql.SqlQueryContext;
+import com.mangeorge.query.sql.UnsupportedSqlException;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.SessionFactory;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.query.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.AttributeNotFoundException;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 
 
 /**
@@ -28,14 +51,40 @@ public class QueryBuilder implements EntityQuery {
 
     public static final char ALIAS_PREFIX_SYMBOL = '_';
 
+    /**
+     * Prefix of the parameter names of the keyset pagination
+     */
+    public static final String KEYSET_PARAMETER_PREFIX = "k";
+
+    /**
+     * Prefix of the root alias in the outer query of the count query
+     */
+    public static final String COUNT_ALIAS_PREFIX = "count";
+
+    /**
+     * Rendered HQL queries by the query shape
+     */
+    private static final QueryTemplateCache HQL_TEMPLATES = new QueryTemplateCache();
+
+    /**
+     * Built JPA criteria queries by the query shape
+     */
+    private static final CriteriaQueryCache JPA_QUERIES = new CriteriaQueryCache();
+
+    /**
+     * Rendered native SQL queries by the query shape
+     */
+    private static final SqlQueryCache SQL_QUERIES = new SqlQueryCache();
+
 
     private final Class<?> rootClass;
     private String rootAlias;
 
     /**
-     * Joins that need to be added to the query
+     * Joins that need to be added to the query, in the order they were added.
+     * Joins are rendered in the order of {@link HQLBuilderHelper#sortJoins}.
      */
-    private Set<QueryJoin> queryJoins = new HashSet<>();
+    private Set<QueryJoin> queryJoins = new LinkedHashSet<>();
 
     /**
      * Filter that need to be added to the query
@@ -52,23 +101,69 @@ public class QueryBuilder implements EntityQuery {
     private Boolean useCache = true;
     private boolean countQuery;
     private boolean useCriteriaQuery;
+    private boolean useJpaCriteriaQuery;
+    private boolean useSQLQuery;
     private boolean useDistinctResult;
 
+    /**
+     * Use keyset (seek) pagination instead of {@link #first}
+     */
+    private boolean keysetPagination;
+
+    /**
+     * Maximum number of rows counted by the count query
+     */
+    private Integer countLimit;
+
+    /**
+     * Values of the sort fields of the last entity of the previous page, for keyset pagination
+     */
+    private Object[] keysetValues;
+
 
     public QueryBuilder(Class<?> rootClass) {
         this.rootClass = rootClass;
         rootAlias = HQLBuilderHelper.generateAliasForClass(rootClass);
     }
 
+    /**
+     * Copy of the builder for rendering, the filter and the orders are shared with the source
+     *
+     * @param source     copied builder
+     * @param countQuery whether the copy renders the count query
+     */
+    private QueryBuilder(QueryBuilder source, boolean countQuery) {
+        rootClass = source.rootClass;
+        rootAlias = source.rootAlias;
+        queryJoins = new LinkedHashSet<>(source.queryJoins);
+        queryFilter = source.queryFilter;
+        order = source.order;
+        first = source.first;
+        pageSize = source.pageSize;
+        useCache = source.useCache;
+        this.countQuery = countQuery;
+        useCriteriaQuery = source.useCriteriaQuery;
+        useJpaCriteriaQuery = source.useJpaCriteriaQuery;
+        useSQLQuery = source.useSQLQuery;
+        useDistinctResult = source.useDistinctResult;
+        keysetPagination = source.keysetPagination;
+        countLimit = source.countLimit;
+        keysetValues = source.keysetValues == null ? null : source.keysetValues.clone();
+    }
+
 
+    /**
+     * The root entity has the root alias, the same as in the HQL query, because the filter gets the root alias
+     * when it is set.
+     */
     @Override
     public DetachedCriteria getDetachedCriteria() {
-        DetachedCriteria criteria = DetachedCriteria.forClass(rootClass);
+        DetachedCriteria criteria = DetachedCriteria.forClass(rootClass, rootAlias);
         criteria.add(queryFilter.getCriteriaExpression());
         if (order != null)
             order.addToCriteria(criteria);
 
-        for (QueryJoin alias : queryJoins) {
+        for (QueryJoin alias : getSortedQueryJoins()) {
             criteria = alias.addCriteriaAlias(criteria);
         }
         return criteria;
@@ -78,24 +173,664 @@ public class QueryBuilder implements EntityQuery {
         return rootClass;
     }
 
+    /**
+     * The query is rendered once per query shape, repeated shapes are taken from the {@link #getTemplateCache()}.
+     * Rendering does not change the filters, parameter names are assigned when the filters are added to groups.
+     */
     @Override
     public String getHQLQuery() {
-        String select = getHQLQueryWithoutOrderBy();
+        return HQL_TEMPLATES.get(getShapeFingerprint(), this::buildHQLQuery);
+    }
+
+    private String buildHQLQuery() {
+        StringBuilder query = new StringBuilder(256);
+        if (countQuery) {
+            appendCountQuery(query);
+        } else {
+            appendHQLQueryWithoutOrderBy(query);
+            appendOrder(query);
+        }
+        log.debug("query built: {}", query);
+        return query.toString();
+    }
+
+    /**
+     * The query is built once per query shape and factory, repeated shapes are taken from the
+     * {@link #getCriteriaQueryCache()}. Parameters of the query have the same names as in the HQL query,
+     * so they are set by {@link #setHQLParams(Query)}.
+     */
+    @Override
+    public CriteriaQuery<?> getJpaCriteriaQuery(EntityManagerFactory entityManagerFactory) {
+        QueryFingerprint shape = getShapeFingerprint();
+        return JPA_QUERIES.get(entityManagerFactory, shape, () -> buildJpaCriteriaQuery(entityManagerFactory, shape));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private CriteriaQuery<?> buildJpaCriteriaQuery(EntityManagerFactory entityManagerFactory, QueryFingerprint shape) {
+        CriteriaBuilder criteriaBuilder = entityManagerFactory.getCriteriaBuilder();
+        CriteriaQuery<Object> query = criteriaBuilder.createQuery();
+        JpaQueryContext context = new JpaQueryContext(criteriaBuilder, entityManagerFactory.getMetamodel(), query);
+        List<Predicate> predicates = new ArrayList<>();
+        if (countQuery) {
+            List<QueryJoin> joins = HQLBuilderHelper.getCountQueryJoins(getSortedQueryJoins(), queryFilter,
+                    rootClass, rootAlias, useDistinctResult);
+            if (useDistinctResult && HQLBuilderHelper.canMultiplyRows(joins, rootClass, rootAlias)) {
+                Root<?> countRoot = query.from(rootClass);
+                context.addFrom(COUNT_ALIAS_PREFIX + ALIAS_PREFIX_SYMBOL + rootAlias, countRoot);
+                Subquery<Object> subquery = (Subquery<Object>) query.subquery(rootClass);
+                Root<?> root = addJpaRoot(context.createSubqueryContext(subquery), joins, predicates);
+                predicates.add(criteriaBuilder.equal(root, countRoot));
+                subquery.select((Expression) root).where(predicates.toArray(new Predicate[0]));
+                query.select(getJpaCountExpression(criteriaBuilder, countRoot)).where(criteriaBuilder.exists(subquery));
+            } else {
+                Root<?> root = addJpaRoot(context, joins, predicates);
+                query.select(getJpaCountExpression(criteriaBuilder, root)).where(predicates.toArray(new Predicate[0]));
+            }
+        } else {
+            Root<?> root = addJpaRoot(context, getSortedQueryJoins(), predicates);
+            query.select((Expression) root).distinct(useDistinctResult).where(predicates.toArray(new Predicate[0]));
+            List<javax.persistence.criteria.Order> orders = new ArrayList<>();
+            if (keysetPagination) {
+                for (Order keysetOrder : getKeysetOrders()) {
+                    keysetOrder.addToJpaOrders(context, rootAlias, orders);
+                }
+            } else if (order != null) {
+                order.addToJpaOrders(context, rootAlias, orders);
+            }
+            query.orderBy(orders);
+        }
+        log.debug("criteria query built: {}", shape);
+        return query;
+    }
+
+    /**
+     * Creates the subquery of the JPA criteria query, which selects the root of this builder.
+     * Aliases of the outer query can be used in the filter of this builder.
+     *
+     * @param context context of the outer query
+     * @return subquery
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Subquery<?> toJpaSubquery(JpaQueryContext context) {
+        Subquery<Object> subquery = (Subquery<Object>) context.getQuery().subquery(rootClass);
+        List<Predicate> predicates = new ArrayList<>();
+        Root<?> root = addJpaRoot(context.createSubqueryContext(subquery), getSortedQueryJoins(), predicates);
+        subquery.select((Expression) root).where(predicates.toArray(new Predicate[0]));
+        return subquery;
+    }
+
+    /**
+     * Adds the root, the joins and the conditions of the filter and of the keyset pagination to the JPA criteria query.
+     *
+     * @param context    context of the query
+     * @param joins      joins in the order of {@link #getSortedQueryJoins()}
+     * @param predicates conditions of the query, to which the conditions are added
+     * @return root of the query
+     */
+    private Root<?> addJpaRoot(JpaQueryContext context, List<QueryJoin> joins, List<Predicate> predicates) {
+        Root<?> root = context.getQuery().from(rootClass);
+        context.addFrom(rootAlias, root);
+        for (QueryJoin join : joins) {
+            Predicate predicate = join.addToJpaQuery(context);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        if (queryFilter != null) {
+            Predicate predicate = queryFilter.toJpaPredicate(context);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        if (isKeysetSeek()) {
+            predicates.add(getJpaKeysetPredicate(context));
+        }
+        return root;
+    }
+
+    private Expression<?> getJpaCountExpression(CriteriaBuilder criteriaBuilder, Root<?> root) {
+        if (countLimit != null) {
+            return root.get(ReflectionHelper.getIdFieldName(rootClass));
+        }
+        return criteriaBuilder.count(root);
+    }
+
+    /**
+     * Creates the seek predicate of the keyset pagination, the same as {@link #appendKeysetWhere(StringBuilder)}.
+     *
+     * @param context context of the query
+     * @return seek predicate
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate getJpaKeysetPredicate(JpaQueryContext context) {
+        CriteriaBuilder criteriaBuilder = context.getCriteriaBuilder();
+        List<Order> keysetOrders = getKeysetOrders();
+        if (keysetOrders.size() != keysetValues.length) {
+            throw new IllegalArgumentException("Continuation token does not match the order of the query");
+        }
+        Expression<Comparable>[] fields = new Expression[keysetOrders.size()];
+        Expression<Comparable>[] parameters = new Expression[keysetOrders.size()];
+        Predicate[] predicates = new Predicate[keysetOrders.size()];
+        for (int i = 0; i < keysetOrders.size(); i++) {
+            Order keysetOrder = keysetOrders.get(i);
+            fields[i] = (Expression<Comparable>) context.getPath(keysetOrder.getAlias() != null
+                    ? keysetOrder.getAlias() : rootAlias, keysetOrder.getField());
+            parameters[i] = (Expression<Comparable>) context.parameter(keysetValues[i].getClass(),
+                    KEYSET_PARAMETER_PREFIX + i);
+            Predicate[] conditions = new Predicate[i + 1];
+            for (int j = 0; j < i; j++) {
+                conditions[j] = criteriaBuilder.equal(fields[j], parameters[j]);
+            }
+            conditions[i] = keysetOrder.isReverse() ? criteriaBuilder.lessThan(fields[i], parameters[i])
+                    : criteriaBuilder.greaterThan(fields[i], parameters[i]);
+            predicates[i] = criteriaBuilder.and(conditions);
+        }
+        return criteriaBuilder.or(predicates);
+    }
+
+    /**
+     * The query is rendered once per query shape and factory, repeated shapes are taken from the
+     * {@link #getSqlQueryCache()}. The root entity has the table alias {@value SqlQueryContext#ROOT_TABLE_ALIAS}
+     * in the select query. Parameters of the query have the same names as in the HQL query,
+     * so they are set by {@link #setHQLParams(Query)}.
+     */
+    @Override
+    public String getSQLQuery(SessionFactory sessionFactory) {
+        QueryFingerprint shape = getShapeFingerprint();
+        return SQL_QUERIES.get(sessionFactory, shape, () -> buildSQLQuery(sessionFactory, shape));
+    }
+
+    private String buildSQLQuery(SessionFactory sessionFactory, QueryFingerprint shape) {
+        SqlQueryContext context = new SqlQueryContext(sessionFactory.unwrap(SessionFactoryImplementor.class));
+        StringBuilder query = new StringBuilder(256);
+        try {
+            if (countQuery) {
+                appendSQLCountQuery(query, context);
+            } else {
+                StringBuilder from = new StringBuilder(256);
+                appendSQLFromWhere(from, context, getSortedQueryJoins(), null);
+                query.append(useDistinctResult ? "select distinct {" : "select {")
+                        .append(context.getTableAlias(rootAlias)).append(".*}").append(from);
+                appendSQLOrder(query, context);
+            }
+        } catch (UnsupportedSqlException e) {
+            log.debug("query is executed as HQL, native SQL not supported: {}: {}", shape, e.getMessage());
+            return null;
+        }
+        log.debug("SQL query built: {}", query);
+        return query.toString();
+    }
+
+    /**
+     * Constructs the native SQL query to get the number of rows, the same as {@link #appendCountQuery(StringBuilder)}.
+     *
+     * @param query   builder of the SQL string
+     * @param context context of the query
+     */
+    private void appendSQLCountQuery(StringBuilder query, SqlQueryContext context) {
+        List<QueryJoin> joins = HQLBuilderHelper.getCountQueryJoins(getSortedQueryJoins(), queryFilter,
+                rootClass, rootAlias, useDistinctResult);
+        if (useDistinctResult && HQLBuilderHelper.canMultiplyRows(joins, rootClass, rootAlias)) {
+            String countAlias = COUNT_ALIAS_PREFIX + ALIAS_PREFIX_SYMBOL + rootAlias;
+            String countTableAlias = context.addEntity(countAlias, rootClass);
+            query.append("select ");
+            appendSQLCountExpression(query, context, countAlias);
+            query.append(" from ").append(context.getTableName(countAlias)).append(' ').append(countTableAlias)
+                    .append(" where exists (select 1");
+            SqlQueryContext subqueryContext = context.createSubqueryContext();
+            String[] countIdColumns = context.getIdColumns(countAlias);
+            // the root table is added to the context by appendSQLFromWhere, so the condition is rendered lazily
+            appendSQLFromWhere(query, subqueryContext, joins, () -> {
+                String[] idColumns = subqueryContext.getIdColumns(rootAlias);
+                StringBuilder condition = new StringBuilder();
+                for (int i = 0; i < idColumns.length; i++) {
+                    if (i > 0) {
+                        condition.append(" AND ");
+                    }
+                    condition.append(idColumns[i]).append(" = ").append(countIdColumns[i]);
+                }
+                return condition.toString();
+            });
+            query.append(")");
+        } else {
+            StringBuilder from = new StringBuilder(256);
+            appendSQLFromWhere(from, context, joins, null);
+            query.append("select ");
+            appendSQLCountExpression(query, context, rootAlias);
+            query.append(from);
+        }
+    }
+
+    private void appendSQLCountExpression(StringBuilder query, SqlQueryContext context, String alias) {
+        if (countLimit != null) {
+            String[] idColumns = context.getIdColumns(alias);
+            if (idColumns.length != 1) {
+                throw new UnsupportedSqlException("Native SQL count limit not support composite id of " + rootClass.getName());
+            }
+            query.append(idColumns[0]);
+        } else {
+            query.append("count(*)");
+        }
+    }
+
+    /**
+     * Appends the native SQL subquery, which selects rows of the root of this builder.
+     * Aliases of the outer query can be used in the filter of this builder.
+     *
+     * @param query   builder of the SQL string
+     * @param context context of the outer query
+     */
+    public void appendSQLSubquery(StringBuilder query, SqlQueryContext context) {
+        query.append("select 1");
+        appendSQLFromWhere(query, context.createSubqueryContext(), getSortedQueryJoins(), null);
+    }
+
+    /**
+     * Appends the blocks <code>from</code> and <code>where</code> of the native SQL query.
+     *
+     * @param query     builder of the SQL string
+     * @param context   context of the query, to which the root and the joins are added
+     * @param joins     joins in the order of {@link #getSortedQueryJoins()}
+     * @param condition additional condition of the block <code>where</code>, or <code>null</code>
+     */
+    private void appendSQLFromWhere(StringBuilder query, SqlQueryContext context, List<QueryJoin> joins,
+                                    Supplier<String> condition) {
+        String tableAlias = context.addEntity(rootAlias, rootClass);
+        query.append(" from ").append(context.getTableName(rootAlias)).append(' ').append(tableAlias);
+        List<String> conditions = new ArrayList<>();
+        for (QueryJoin join : joins) {
+            String joinCondition = join.appendSQLJoin(query, context);
+            if (joinCondition != null) {
+                conditions.add(joinCondition);
+            }
+        }
+        if (condition != null) {
+            conditions.add(condition.get());
+        }
+        int start = query.length();
+        query.append(" where ");
+        int whereStart = query.length();
+        for (String joinCondition : conditions) {
+            if (query.length() > whereStart) {
+                query.append(" AND ");
+            }
+            query.append(joinCondition);
+        }
+        if (queryFilter != null) {
+            int filterStart = query.length();
+            if (filterStart > whereStart) {
+                query.append(" AND ");
+            }
+            int expressionStart = query.length();
+            queryFilter.appendSQLExpression(query, context);
+            if (query.length() == expressionStart) {
+                query.setLength(filterStart);
+            }
+        }
+        if (isKeysetSeek()) {
+            if (query.length() > whereStart) {
+                query.append(" AND ");
+            }
+            appendSQLKeysetWhere(query, context);
+        }
+        if (query.length() == whereStart) {
+            query.setLength(start);
+        }
+    }
+
+    /**
+     * Constructs the seek predicate of the keyset pagination, the same as {@link #appendKeysetWhere(StringBuilder)}.
+     *
+     * @param query   builder of the SQL string
+     * @param context context of the query
+     */
+    private void appendSQLKeysetWhere(StringBuilder query, SqlQueryContext context) {
+        List<Order> keysetOrders = getKeysetOrders();
+        query.append("(");
+        for (int i = 0; i < keysetOrders.size(); i++) {
+            if (i > 0) {
+                query.append(" OR (");
+            }
+            for (int j = 0; j < i; j++) {
+                appendSQLKeysetField(query, context, keysetOrders.get(j));
+                query.append(" = :").append(KEYSET_PARAMETER_PREFIX).append(j).append(" AND ");
+            }
+            Order keysetOrder = keysetOrders.get(i);
+            appendSQLKeysetField(query, context, keysetOrder);
+            query.append(keysetOrder.isReverse() ? " < :" : " > :").append(KEYSET_PARAMETER_PREFIX).append(i);
+            if (i > 0) {
+                query.append(")");
+            }
+        }
+        query.append(")");
+    }
+
+    private void appendSQLKeysetField(StringBuilder query, SqlQueryContext context, Order keysetOrder) {
+        context.appendColumn(query, keysetOrder.getAlias() != null ? keysetOrder.getAlias() : rootAlias,
+                keysetOrder.getField());
+    }
+
+    private void appendSQLOrder(StringBuilder query, SqlQueryContext context) {
+        if (keysetPagination) {
+            query.append(" order by ");
+            List<Order> keysetOrders = getKeysetOrders();
+            for (int i = 0; i < keysetOrders.size(); i++) {
+                if (i > 0) {
+                    query.append(", ");
+                }
+                appendSQLKeysetField(query, context, keysetOrders.get(i));
+                query.append(" ").append(keysetOrders.get(i).isReverse() ? Order.ORDER_REVERSE : Order.ORDER_DIRECT);
+            }
+        } else if (order != null) {
+            query.append(" order by ");
+            order.appendSQLExpression(query, context, rootAlias);
+        }
+    }
+
+    /**
+     * Renders the select and the count queries and takes the values of their parameters.
+     * The queries are rendered by copies of the builder, so neither the builder nor the filters are changed.
+     * Values, the chunk layout of the lists and the continuation token are taken at compile time,
+     * so later changes of the builder do not change the compiled query. It can be bound again with other values
+     * of the same shape by {@link CompiledEntityQuery#setHQLParams(Query, Object...)}.
+     *
+     * @return compiled query
+     */
+    public CompiledEntityQuery compile() {
+        QueryBuilder select = new QueryBuilder(this, false);
+        QueryBuilder count = new QueryBuilder(this, true);
+        return new CompiledEntityQuery(rootClass, select.getHQLQuery(), count.getHQLQuery(),
+                select.getHQLParameters().snapshot(), count.getHQLParameters().snapshot(),
+                select.getFirst(), select.pageSize, countLimit, useCache, useDistinctResult);
+    }
+
+    /**
+     * Appends to the key a description of the query structure: root class, joins, filter, order and flags.
+     * Parameter values are not included, so queries that differ only in values have the same key.
+     *
+     * @param key builder of the query shape key
+     */
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        key.append(rootClass.getName()).append(' ').append(rootAlias);
+        if (useDistinctResult) {
+            key.append(" distinct");
+        }
         if (countQuery) {
-            return select;
+            key.append(" count");
+        }
+        if (keysetPagination) {
+            key.append(keysetValues == null ? " keyset" : " keyset seek");
+        }
+        if (countLimit != null) {
+            key.append(" limit");
+        }
+        for (QueryJoin join : queryJoins) {
+            key.append(' ').append(join.getHQLExpression()).append(' ').append(join.getHQLWhereExpression());
+        }
+        if (queryFilter != null) {
+            key.append(" :").append(queryFilter.getParameterName()).append(' ');
+            queryFilter.appendShapeKey(key);
+        }
+        if (order != null) {
+            key.append(" order ").append(order.getExpression(rootAlias));
+        }
+    }
+
+    /**
+     * Fingerprint of the same description of the query structure as {@link #appendShapeKey(StringBuilder)}.
+     * Joins are combined independently of the order they were added in, because they are rendered in the
+     * order of {@link HQLBuilderHelper#sortJoins}.
+     *
+     * @return fingerprint of the query shape
+     */
+    @Override
+    public QueryFingerprint getShapeFingerprint() {
+        QueryFingerprint.Hasher hasher = QueryFingerprint.hasher()
+                .putString(rootClass.getName())
+                .putString(rootAlias)
+                .putBoolean(useDistinctResult)
+                .putBoolean(countQuery)
+                .putInt(keysetPagination ? (keysetValues == null ? 1 : 2) : 0)
+                .putBoolean(countLimit != null);
+        QueryFingerprint joins = QueryFingerprint.EMPTY;
+        for (QueryJoin join : queryJoins) {
+            joins = joins.plus(join.getFingerprint());
+        }
+        hasher.putInt(queryJoins.size()).putFingerprint(joins);
+        if (queryFilter != null) {
+            hasher.putString(queryFilter.getParameterName()).putFingerprint(queryFilter.getShapeFingerprint());
+        } else {
+            hasher.putNull();
+        }
+        for (Order tmpOrder = order; tmpOrder != null; tmpOrder = tmpOrder.getAdditionalOrder()) {
+            hasher.putString(tmpOrder.getAlias() != null ? tmpOrder.getAlias() : rootAlias)
+                    .putString(tmpOrder.getField())
+                    .putBoolean(tmpOrder.isReverse());
+        }
+        return hasher.build();
+    }
+
+    /**
+     * @return fingerprint of the query shape, parameter values and the page
+     */
+    @Override
+    public QueryFingerprint getFingerprint() {
+        QueryFingerprint.Hasher hasher = QueryFingerprint.hasher()
+                .putFingerprint(getShapeFingerprint())
+                .putFingerprint(queryFilter != null ? queryFilter.getFingerprint() : null)
+                .putInteger(keysetPagination ? null : first)
+                .putInteger(pageSize)
+                .putInteger(countLimit);
+        if (isKeysetSeek()) {
+            hasher.putValue(keysetValues);
+        }
+        return hasher.build();
+    }
+
+    /**
+     * Adds names of the entities read by the query: the root class, joined classes and classes of subqueries.
+     *
+     * @param entityNames names of the entities read by the query
+     */
+    @Override
+    public void collectEntityNames(Set<String> entityNames) {
+        entityNames.add(rootClass.getName());
+        for (QueryJoin join : queryJoins) {
+            entityNames.add(join.getAdjoiningClassName());
         }
-        return select + buildOrder();
+        if (queryFilter != null) {
+            queryFilter.collectEntityNames(entityNames);
+        }
+    }
+
+    /**
+     * @return cache of rendered HQL queries, shared by all builders
+     */
+    public static QueryTemplateCache getTemplateCache() {
+        return HQL_TEMPLATES;
+    }
+
+    /**
+     * @return cache of built JPA criteria queries, shared by all builders
+     */
+    public static CriteriaQueryCache getCriteriaQueryCache() {
+        return JPA_QUERIES;
+    }
+
+    /**
+     * @return cache of rendered native SQL queries, shared by all builders
+     */
+    public static SqlQueryCache getSqlQueryCache() {
+        return SQL_QUERIES;
     }
 
     public String getHQLQueryWithoutOrderBy() {
-        return buildSelect() + buildFrom() + buildJoin() + buildWhere();
+        StringBuilder query = new StringBuilder(256);
+        appendHQLQueryWithoutOrderBy(query);
+        return query.toString();
+    }
+
+    /**
+     * @param query builder of the query string, to which the query without block <code>order by</code> is appended
+     */
+    public void appendHQLQueryWithoutOrderBy(StringBuilder query) {
+        List<QueryJoin> joins = getSortedQueryJoins();
+        appendSelect(query);
+        appendFrom(query);
+        appendJoin(query, joins);
+        appendWhere(query, joins);
+    }
+
+    /**
+     * Constructs the query to get the number of rows.
+     * Outer joins that are not used by the filter and do not change the number of rows are not added.
+     * If distinct results are counted over joins that can multiply rows, the count is taken over the root table
+     * with the semi-join <code>exists</code>, instead of <code>count(distinct ...)</code> over the joins:
+     * <code>select count(count_a) from A count_a where exists (select a from A a ... where ... AND a = count_a)</code>.
+     * If the {@link #countLimit} is set, ids of the rows are selected instead of <code>count(...)</code>,
+     * so the database stops after {@link #getPageSize()} rows.
+     *
+     * @param query builder of the query string
+     */
+    private void appendCountQuery(StringBuilder query) {
+        List<QueryJoin> joins = HQLBuilderHelper.getCountQueryJoins(getSortedQueryJoins(), queryFilter,
+                rootClass, rootAlias, useDistinctResult);
+        if (useDistinctResult && HQLBuilderHelper.canMultiplyRows(joins, rootClass, rootAlias)) {
+            String countAlias = COUNT_ALIAS_PREFIX + ALIAS_PREFIX_SYMBOL + rootAlias;
+            query.append("select ");
+            appendCountExpression(query, countAlias);
+            query.append(" from ")
+                    .append(rootClass.getSimpleName()).append(" ").append(countAlias)
+                    .append(" where exists (select ").append(rootAlias);
+            appendFrom(query);
+            appendJoin(query, joins);
+            query.append(appendWhere(query, joins) ? " AND " : " where ")
+                    .append(rootAlias).append(" = ").append(countAlias).append(")");
+        } else {
+            query.append("select ");
+            appendCountExpression(query, rootAlias);
+            appendFrom(query);
+            appendJoin(query, joins);
+            appendWhere(query, joins);
+        }
     }
 
     @Override
     public void setHQLParams(Query<?> query) {
+        getHQLParameters().apply(query);
+    }
+
+    /**
+     * Slots of the filter parameters are followed by the values of the continuation token.
+     */
+    @Override
+    public HQLParameters getHQLParameters() {
+        List<HQLParameter> parameters = new ArrayList<>();
         if (queryFilter != null) {
-            queryFilter.setHQLParams(query);
+            queryFilter.collectHQLParameters(parameters);
+        }
+        if (isKeysetSeek()) {
+            List<Order> keysetOrders = getKeysetOrders();
+            if (keysetOrders.size() != keysetValues.length) {
+                throw new IllegalArgumentException("Continuation token does not match the order of the query");
+            }
+            for (int i = 0; i < keysetValues.length; i++) {
+                int index = i;
+                parameters.add(new HQLParameter(KEYSET_PARAMETER_PREFIX + i, () -> keysetValues[index]));
+            }
+        }
+        return parameters.isEmpty() ? HQLParameters.EMPTY : new HQLParameters(parameters);
+    }
+
+    /**
+     * The token contains values of the sort fields and the id of the entity.
+     * Sort fields must belong to the root entity and must not be <code>null</code>.
+     */
+    @Override
+    public String createContinuationToken(Object lastEntity) {
+        if (!keysetPagination || lastEntity == null) {
+            return null;
+        }
+        List<Order> keysetOrders = getKeysetOrders();
+        Object[] values = new Object[keysetOrders.size()];
+        for (int i = 0; i < values.length; i++) {
+            Order keysetOrder = keysetOrders.get(i);
+            if (keysetOrder.getAlias() != null && !keysetOrder.getAlias().equals(rootAlias)) {
+                throw new IllegalStateException("Keyset pagination supports only fields of the root entity, but found "
+                        + keysetOrder.getAlias() + "." + keysetOrder.getField());
+            }
+            try {
+                values[i] = ReflectionHelper.getValueByFieldPath(lastEntity, keysetOrder.getField());
+            } catch (AttributeNotFoundException | InvocationTargetException | IllegalAccessException e) {
+                throw new IllegalStateException("Cannot get value of the sort field " + keysetOrder.getField(), e);
+            }
+            if (values[i] == null) {
+                throw new IllegalStateException("Keyset pagination does not support null value of the sort field "
+                        + keysetOrder.getField());
+            }
+        }
+        return ContinuationToken.encode(values);
+    }
+
+    /**
+     * @return <code>true</code> if the query must continue from the continuation token
+     */
+    private boolean isKeysetSeek() {
+        return keysetPagination && keysetValues != null && !countQuery;
+    }
+
+    /**
+     * The order of the query with the id of the root entity as the last tie-breaker, if the order does not contain it.
+     *
+     * @return orders by which pages are seeked
+     */
+    private List<Order> getKeysetOrders() {
+        String idFieldName = ReflectionHelper.getIdFieldName(rootClass);
+        List<Order> keysetOrders = new ArrayList<>();
+        boolean containsId = false;
+        for (Order tmpOrder = order; tmpOrder != null; tmpOrder = tmpOrder.getAdditionalOrder()) {
+            keysetOrders.add(tmpOrder);
+            containsId |= idFieldName.equals(tmpOrder.getField())
+                    && (tmpOrder.getAlias() == null || tmpOrder.getAlias().equals(rootAlias));
+        }
+        if (!containsId) {
+            keysetOrders.add(new Order(idFieldName, rootAlias));
+        }
+        return keysetOrders;
+    }
+
+    /**
+     * Constructs the seek predicate of the keyset pagination, for orders <code>a, b</code> and id:
+     * <code>(a &gt; :k0 OR (a = :k0 AND b &gt; :k1) OR (a = :k0 AND b = :k1 AND id &gt; :k2))</code>.
+     * For the reverse order the comparison is <code>&lt;</code>.
+     *
+     * @param query builder of the query string
+     */
+    private void appendKeysetWhere(StringBuilder query) {
+        List<Order> keysetOrders = getKeysetOrders();
+        query.append("(");
+        for (int i = 0; i < keysetOrders.size(); i++) {
+            if (i > 0) {
+                query.append(" OR (");
+            }
+            for (int j = 0; j < i; j++) {
+                appendKeysetField(query, keysetOrders.get(j));
+                query.append(" = :").append(KEYSET_PARAMETER_PREFIX).append(j).append(" AND ");
+            }
+            Order keysetOrder = keysetOrders.get(i);
+            appendKeysetField(query, keysetOrder);
+            query.append(keysetOrder.isReverse() ? " < :" : " > :").append(KEYSET_PARAMETER_PREFIX).append(i);
+            if (i > 0) {
+                query.append(")");
+            }
         }
+        query.append(")");
+    }
+
+    private void appendKeysetField(StringBuilder query, Order keysetOrder) {
+        query.append(keysetOrder.getAlias() != null ? keysetOrder.getAlias() : rootAlias)
+                .append(".").append(keysetOrder.getField());
     }
 
     /**
@@ -115,92 +850,133 @@ public class QueryBuilder implements EntityQuery {
     /**
      * Constructs hql expression for the block <code>select</code>.
      *
-     * @return select string
+     * @param query builder of the query string
      */
-    private String buildSelect() {
-        String selectAlias = rootAlias;
-
+    private void appendSelect(StringBuilder query) {
+        query.append("select ");
+        if (countQuery) {
+            query.append("count(");
+        }
         if (isUseDistinctResult()) {
-            selectAlias = "distinct " + rootAlias;
+            query.append("distinct ");
         }
-
+        query.append(rootAlias);
         if (countQuery) {
-            return "select count(" + selectAlias + ")";
+            query.append(")");
         }
-        return "select " + selectAlias;
     }
 
     /**
      * Constructs hql expression for the block <code>from</code>.
      *
-     * @return line for specifying the table from which to sample
+     * @param query builder of the query string
      */
-    private String buildFrom() {
-        return " from " + rootClass.getSimpleName() + " " + rootAlias;
+    private void appendFrom(StringBuilder query) {
+        query.append(" from ").append(rootClass.getSimpleName()).append(" ").append(rootAlias);
+    }
+
+    private void appendCountExpression(StringBuilder query, String alias) {
+        if (countLimit != null) {
+            query.append(alias).append(".").append(ReflectionHelper.getIdFieldName(rootClass));
+        } else {
+            query.append("count(").append(alias).append(")");
+        }
     }
 
     /**
      * Creates an HQL expression for attaching tables to the main table.
      *
-     * @return row for joining tables
+     * @param query builder of the query string
+     * @param joins joins in the order of {@link #getSortedQueryJoins()}
      */
-    private String buildJoin() {
-        StringBuilder buf = new StringBuilder();
-        if (queryJoins != null) {
-            for (QueryJoin alias : queryJoins) {
-                buf.append(alias.getHQLExpression());
-            }
+    private void appendJoin(StringBuilder query, List<QueryJoin> joins) {
+        for (QueryJoin alias : joins) {
+            query.append(alias.getHQLExpression());
         }
-        log.debug("join expression built: {}", buf);
-        return buf.toString();
     }
 
     /**
      * Constructs hql expression for the block <code>where</code>.
      *
-     * @return string with conditions
-     */
-    private String buildWhere() {
-        StringBuilder buf = new StringBuilder();
-        if (queryJoins != null) {
-            for (QueryJoin alias : queryJoins) {
-                if (alias.getJoinType() == JoinType.INNER) {
-                    if (!buf.toString().isEmpty()) {
-                        buf.append(" AND ");
-                    }
-                    buf.append(alias.getHQLWhereExpression());
+     * @param query builder of the query string
+     * @param joins joins in the order of {@link #getSortedQueryJoins()}
+     * @return <code>true</code> if the block was appended
+     */
+    private boolean appendWhere(StringBuilder query, List<QueryJoin> joins) {
+        int start = query.length();
+        query.append(" where ");
+        int whereStart = query.length();
+        for (QueryJoin alias : joins) {
+            if (alias.getJoinType() == JoinType.INNER) {
+                if (query.length() > whereStart) {
+                    query.append(" AND ");
                 }
+                query.append(alias.getHQLWhereExpression());
             }
         }
         if (queryFilter != null) {
-            if (StringUtils.isBlank(queryFilter.getAlias())) {
-                queryFilter.setAlias(rootAlias);
+            int filterStart = query.length();
+            if (filterStart > whereStart) {
+                query.append(" AND ");
             }
-            String whereExpression = queryFilter.getHQLExpression();
-            if (StringUtils.isNotBlank(whereExpression)) {
-                if (!buf.toString().isEmpty()) {
-                    buf.append(" AND ");
-                }
-                buf.append(whereExpression);
+            int expressionStart = query.length();
+            queryFilter.appendHQLExpression(query);
+            if (query.length() == expressionStart) {
+                query.setLength(filterStart);
+            }
+        }
+        if (isKeysetSeek()) {
+            if (query.length() > whereStart) {
+                query.append(" AND ");
             }
-            log.debug("where expression built: {}", buf);
+            appendKeysetWhere(query);
+        }
+        if (query.length() == whereStart) {
+            query.setLength(start);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return joins in a canonical order, that does not depend on the order in which they were added
+     */
+    private List<QueryJoin> getSortedQueryJoins() {
+        if (queryJoins == null) {
+            return new ArrayList<>();
         }
-        if (StringUtils.isNotBlank(buf)) {
-            return " where " + buf;
+        return HQLBuilderHelper.sortJoins(queryJoins, rootAlias);
+    }
+
+    /**
+     * Sets the root alias to the filter, if the filter does not have its own.
+     */
+    private void prepareQueryFilter() {
+        if (queryFilter != null && StringUtils.isBlank(queryFilter.getAlias())) {
+            queryFilter.setAlias(rootAlias);
         }
-        return "";
     }
 
     /**
      * Constructs hql expression for the block <code>order by</code>.
      *
-     * @return line with order expressions
+     * @param query builder of the query string
      */
-    private String buildOrder() {
-        if (order != null) {
-            return " order by " + order.getExpression(rootAlias);
+    private void appendOrder(StringBuilder query) {
+        if (keysetPagination) {
+            query.append(" order by ");
+            List<Order> keysetOrders = getKeysetOrders();
+            for (int i = 0; i < keysetOrders.size(); i++) {
+                if (i > 0) {
+                    query.append(", ");
+                }
+                appendKeysetField(query, keysetOrders.get(i));
+                query.append(" ").append(keysetOrders.get(i).isReverse() ? Order.ORDER_REVERSE : Order.ORDER_DIRECT);
+            }
+        } else if (order != null) {
+            query.append(" order by ");
+            order.appendExpression(query, rootAlias);
         }
-        return "";
     }
 
     /**
@@ -217,6 +993,8 @@ public class QueryBuilder implements EntityQuery {
                 queryJoin.setAdjoiningAlias(prefix + queryJoin.getAdjoiningAlias());
                 queryJoin.setRootAlias(prefix + queryJoin.getRootAlias());
             }
+            // hash codes of the joins have changed
+            queryJoins = new LinkedHashSet<>(queryJoins);
             if (queryFilter != null) {
                 queryFilter.addAliasPrefix(prefix);
             }
@@ -230,8 +1008,15 @@ public class QueryBuilder implements EntityQuery {
         return rootAlias;
     }
 
+    /**
+     * The filter, which has the previous root alias, gets the new one.
+     */
     public void setRootAlias(String rootAlias) {
+        if (queryFilter != null && Objects.equals(queryFilter.getAlias(), this.rootAlias)) {
+            queryFilter.setAlias(rootAlias);
+        }
         this.rootAlias = rootAlias;
+        prepareQueryFilter();
     }
 
     public Set<QueryJoin> getQueryJoins() {
@@ -246,8 +1031,21 @@ public class QueryBuilder implements EntityQuery {
         return queryFilter;
     }
 
+    /**
+     * The filter gets the root alias, if it does not have its own.
+     */
     public void setQueryFilter(QueryFilter queryFilter) {
         this.queryFilter = queryFilter;
+        prepareQueryFilter();
+    }
+
+    /**
+     * Replaces the filter by the normalized filter tree, see {@link QueryFilterOptimizer}.
+     * The source tree is not changed, so filters added to it later do not affect the query.
+     */
+    public void optimizeQueryFilter() {
+        queryFilter = QueryFilterOptimizer.optimize(queryFilter);
+        prepareQueryFilter();
     }
 
     public Order getOrder() {
@@ -258,20 +1056,46 @@ public class QueryBuilder implements EntityQuery {
         this.order = order;
     }
 
+    /**
+     * @return the beginning position, or <code>null</code> for the count query or if keyset pagination is used
+     */
     @Override
     public Integer getFirst() {
-        return first;
+        return keysetPagination || countQuery ? null : first;
     }
 
     public void setFirst(Integer first) {
         this.first = first;
     }
 
+    /**
+     * The count query counts all rows, so it is not paged, except the count limit.
+     *
+     * @return number of objects to select, for the count query with the count limit it is the limit plus one
+     */
     @Override
     public Integer getPageSize() {
+        if (countQuery) {
+            return countLimit != null ? Integer.valueOf(countLimit + 1) : null;
+        }
         return pageSize;
     }
 
+    @Override
+    public Integer getCountLimit() {
+        return countLimit;
+    }
+
+    /**
+     * The count query selects ids of no more than {#countLimit} + 1 rows instead of counting all rows.
+     * If more than {#countLimit} rows are found, the count is reported as a lower bound.
+     *
+     * @param countLimit maximum number of counted rows, or <code>null</code> to count all rows
+     */
+    public void setCountLimit(Integer countLimit) {
+        this.countLimit = countLimit;
+    }
+
     public void setPageSize(Integer pageSize) {
         this.pageSize = pageSize;
     }
@@ -304,6 +1128,30 @@ public class QueryBuilder implements EntityQuery {
         this.useCriteriaQuery = useCriteriaQuery;
     }
 
+    @Override
+    public boolean isUseJpaCriteriaQuery() {
+        return useJpaCriteriaQuery;
+    }
+
+    public void setUseJpaCriteriaQuery(boolean useJpaCriteriaQuery) {
+        this.useJpaCriteriaQuery = useJpaCriteriaQuery;
+    }
+
+    @Override
+    public boolean isUseSQLQuery() {
+        return useSQLQuery;
+    }
+
+    /**
+     * The query is executed as native SQL, rendered by the column mappings of the session factory.
+     * If the query cannot be rendered as native SQL, it is executed as the HQL query.
+     *
+     * @param useSQLQuery <code>true</code> to use native SQL
+     */
+    public void setUseSQLQuery(boolean useSQLQuery) {
+        this.useSQLQuery = useSQLQuery;
+    }
+
     @Override
     public boolean isUseDistinctResult() {
         return useDistinctResult;
@@ -312,4 +1160,27 @@ public class QueryBuilder implements EntityQuery {
     public void setUseDistinctResult(boolean useDistinctResult) {
         this.useDistinctResult = useDistinctResult;
     }
+
+    public boolean isKeysetPagination() {
+        return keysetPagination;
+    }
+
+    /**
+     * Pages are selected by the seek predicate on the order and the id of the root entity instead of the offset.
+     * The id is added to the order as the last tie-breaker.
+     * Use {@link #createContinuationToken(Object)} and {@link #setContinuationToken(String)} to go to the next page.
+     *
+     * @param keysetPagination <code>true</code> to use keyset pagination
+     */
+    public void setKeysetPagination(boolean keysetPagination) {
+        this.keysetPagination = keysetPagination;
+    }
+
+    /**
+     * @param continuationToken token created by {@link #createContinuationToken(Object)} for the last entity
+     *                          of the previous page, or <code>null</code> for the first page
+     */
+    public void setContinuationToken(String continuationToken) {
+        this.keysetValues = continuationToken == null ? null : ContinuationToken.decode(continuationToken);
+    }
 }
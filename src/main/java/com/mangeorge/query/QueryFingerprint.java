@@ -0,0 +1,308 @@
+package com.mangeorge.query;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.Temporal;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+ * 128-bit fingerprint of a query, the identity of "the same query" for caches, metrics and logs.
+ * The shape fingerprint describes the query structure without parameter values, the same as the shape key,
+ * and the full fingerprint describes the structure together with parameter values and the page.
+ * <p>
+ * Fingerprints are computed by {@link Hasher} from names and values, not from identity hash codes,
+ * so they are the same in every JVM, except for parameter values of classes not known to {@link Hasher#putValue}.
+ * Fingerprints of leaf filters are computed once and reused until the filter is changed,
+ * so the fingerprint of a query built from the same filters does not traverse them again.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class QueryFingerprint {
+
+    /**
+     * Fingerprint of nothing, the identity of {@link #plus(QueryFingerprint)}
+     */
+    public static final QueryFingerprint EMPTY = new QueryFingerprint(0, 0);
+
+
+    private final long high;
+    private final long low;
+
+
+    public QueryFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+
+    /**
+     * @return new hasher
+     */
+    public static Hasher hasher() {
+        return new Hasher();
+    }
+
+    /**
+     * @param string string to hash
+     * @return fingerprint of the string
+     */
+    public static QueryFingerprint of(CharSequence string) {
+        return hasher().putString(string).build();
+    }
+
+    /**
+     * Combines fingerprints independently of their order, for example of joins, which are rendered in the
+     * canonical order whatever order they were added in.
+     *
+     * @param other other fingerprint
+     * @return sum of the fingerprints
+     */
+    public QueryFingerprint plus(QueryFingerprint other) {
+        return new QueryFingerprint(high + other.high, low + other.low);
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryFingerprint)) {
+            return false;
+        }
+        QueryFingerprint that = (QueryFingerprint) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    /**
+     * @return 32 hexadecimal digits
+     */
+    @Override
+    public String toString() {
+        StringBuilder hex = new StringBuilder(32);
+        appendHex(hex, high);
+        appendHex(hex, low);
+        return hex.toString();
+    }
+
+    private static void appendHex(StringBuilder hex, long value) {
+        String digits = Long.toHexString(value);
+        for (int i = digits.length(); i < 16; i++) {
+            hex.append('0');
+        }
+        hex.append(digits);
+    }
+
+
+    /**
+     * Streaming hash of 64-bit words with two lanes mixed the same way as MurmurHash3 x64 128.
+     * Every value is prefixed with its kind, so different sequences of values do not produce the same words.
+     */
+    public static final class Hasher {
+
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private static final int NULL = 1;
+        private static final int STRING = 2;
+        private static final int LONG = 3;
+        private static final int DOUBLE = 4;
+        private static final int BOOLEAN = 5;
+        private static final int FINGERPRINT = 6;
+        private static final int ARRAY = 7;
+        private static final int OBJECT = 8;
+
+        private long h1;
+        private long h2;
+        private long length;
+
+
+        private Hasher() {
+        }
+
+
+        public Hasher putString(CharSequence string) {
+            if (string == null) {
+                return putNull();
+            }
+            int length = string.length();
+            mix(STRING, length);
+            int i = 0;
+            for (; i + 4 <= length; i += 4) {
+                mix(string.charAt(i) | (long) string.charAt(i + 1) << 16
+                        | (long) string.charAt(i + 2) << 32 | (long) string.charAt(i + 3) << 48);
+            }
+            long tail = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                tail |= (long) string.charAt(i) << shift;
+            }
+            if (tail != 0) {
+                mix(tail);
+            }
+            return this;
+        }
+
+        public Hasher putLong(long value) {
+            mix(LONG, value);
+            return this;
+        }
+
+        public Hasher putInt(int value) {
+            return putLong(value);
+        }
+
+        public Hasher putBoolean(boolean value) {
+            mix(BOOLEAN, value ? 1 : 0);
+            return this;
+        }
+
+        /**
+         * @param value integer or <code>null</code>
+         */
+        public Hasher putInteger(Integer value) {
+            return value == null ? putNull() : putLong(value);
+        }
+
+        public Hasher putFingerprint(QueryFingerprint fingerprint) {
+            if (fingerprint == null) {
+                return putNull();
+            }
+            mix(FINGERPRINT, fingerprint.high);
+            mix(fingerprint.low);
+            return this;
+        }
+
+        public Hasher putNull() {
+            mix(NULL);
+            return this;
+        }
+
+        /**
+         * Hashes the parameter value. Numbers of the same class are hashed by value, strings, enums, dates,
+         * arrays, collections and maps by their contents. Other objects are hashed by their class name and
+         * {@link Object#hashCode()}, so their fingerprint is stable only if their hash code is.
+         *
+         * @param value parameter value
+         */
+        public Hasher putValue(Object value) {
+            if (value == null) {
+                return putNull();
+            }
+            if (value instanceof CharSequence) {
+                return putString((CharSequence) value);
+            }
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                mix(LONG, ((Number) value).longValue());
+                return putString(value.getClass().getSimpleName());
+            }
+            if (value instanceof Double || value instanceof Float) {
+                mix(DOUBLE, Double.doubleToLongBits(((Number) value).doubleValue()));
+                return putString(value.getClass().getSimpleName());
+            }
+            if (value instanceof Boolean) {
+                return putBoolean((Boolean) value);
+            }
+            if (value instanceof Character) {
+                mix(OBJECT, (Character) value);
+                return this;
+            }
+            if (value instanceof Enum) {
+                return putString(((Enum<?>) value).getDeclaringClass().getName()).putString(((Enum<?>) value).name());
+            }
+            if (value instanceof Date) {
+                return putString(value.getClass().getName()).putLong(((Date) value).getTime());
+            }
+            if (value instanceof BigDecimal || value instanceof BigInteger || value instanceof Temporal
+                    || value instanceof UUID) {
+                return putString(value.getClass().getName()).putString(value.toString());
+            }
+            if (value instanceof Object[]) {
+                Object[] array = (Object[]) value;
+                mix(ARRAY, array.length);
+                for (Object element : array) {
+                    putValue(element);
+                }
+                return this;
+            }
+            if (value instanceof Iterable) {
+                mix(ARRAY);
+                for (Object element : (Iterable<?>) value) {
+                    putValue(element);
+                }
+                return putNull();
+            }
+            if (value instanceof Map) {
+                mix(ARRAY);
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    putValue(entry.getKey());
+                    putValue(entry.getValue());
+                }
+                return putNull();
+            }
+            if (value instanceof QueryFingerprint) {
+                return putFingerprint((QueryFingerprint) value);
+            }
+            mix(OBJECT, value.hashCode());
+            return putString(value.getClass().getName());
+        }
+
+        public QueryFingerprint build() {
+            long a = h1 ^ length;
+            long b = h2 ^ length;
+            a += b;
+            b += a;
+            a = fmix(a);
+            b = fmix(b);
+            a += b;
+            b += a;
+            return new QueryFingerprint(a, b);
+        }
+
+        private void mix(long kind, long value) {
+            mix(kind);
+            mix(value);
+        }
+
+        private void mix(long word) {
+            long k1 = word * C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            long k2 = word * C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+            length++;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
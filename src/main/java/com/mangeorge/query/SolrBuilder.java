@@ -1,5 +1,6 @@
 package com.mangeorge.query;
 
+import com.mangeorge.query.filter.QueryFilterOptimizer;
 import com.mangeorge.query.helper.IndexHelper;
 import com.mangeorge.query.helper.ReflectionHelper;
 import com.mangeorge.query.filter.QueryFilter;
@@ -24,6 +25,7 @@ import java.util.stream.Collectors;
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class SolrBuilder<T> implements IndexQuery<T> {
 
+    public static final String DEFAULT_UNIQUE_KEY = "id";
 
     private final Class<T> rootClass;
 
@@ -56,6 +58,12 @@ public class SolrBuilder<T> implements IndexQuery<T> {
      */
     private List<List<String>> pivotFacets;
 
+    /**
+     * Limits of the fields of the pivot facets, in the order of {#pivotFacets}, the pivot facet without limits
+     * has the <code>null</code> element
+     */
+    private List<List<Integer>> pivotFacetLimits;
+
     /**
      * Order that need to be added to the query
      */
@@ -94,15 +102,130 @@ public class SolrBuilder<T> implements IndexQuery<T> {
     private Integer first;
     private Integer pageSize;
     private Integer facetLimit;
+    private String facetSort;
+    private boolean useJsonFacet;
     private boolean useHighlight;
     private boolean useSpellcheck;
 
+    /**
+     * Sort by {#uniqueKey} is added as the last sort clause, it is required to iterate by the cursor mark,
+     * see {@link IndexQueryExecutor#iterate(IndexQuery)}
+     */
+    private boolean useCursor;
+
+    /**
+     * Sort by {#uniqueKey} is added, if the order is empty, because the export requires sorts,
+     * see {@link IndexQueryExecutor#iterateExport(IndexQuery)}
+     */
+    private boolean useExport;
+
+    /**
+     * Name of the unique key field of the index
+     */
+    private String uniqueKey = DEFAULT_UNIQUE_KEY;
+
 
     public SolrBuilder(Class<T> rootClass) {
         this.rootClass = rootClass;
     }
 
 
+    /**
+     * Renders all expressions of the query.
+     * Rendering changes parameter names of the filters, so the builder and its filters must not be
+     * rendered from another thread at the same time. The result is immutable and can be shared across threads.
+     *
+     * @return compiled query
+     */
+    public synchronized CompiledIndexQuery<T> compile() {
+        return new CompiledIndexQuery<>(this, getShapeFingerprint());
+    }
+
+    /**
+     * Fingerprint of the query structure: the entity class, filter shapes and tags, facets, fields, grouping,
+     * orders and flags. Facets, fields and grouping are combined independently of the order they were added in.
+     *
+     * @return fingerprint of the query shape
+     */
+    public QueryFingerprint getShapeFingerprint() {
+        QueryFingerprint.Hasher hasher = QueryFingerprint.hasher()
+                .putString(rootClass.getName())
+                .putBoolean(StringUtils.isNotBlank(query));
+        if (queryFilter != null) {
+            hasher.putString(queryFilter.getParameterName()).putFingerprint(queryFilter.getShapeFingerprint());
+        } else {
+            hasher.putNull();
+        }
+        QueryFingerprint facets = QueryFingerprint.EMPTY;
+        if (facetsWithExclude != null) {
+            for (Map.Entry<Field, QueryFilter> facet : facetsWithExclude.entrySet()) {
+                facets = facets.plus(QueryFingerprint.hasher().putString(facet.getKey().getDeclaringClass().getName())
+                        .putString(facet.getKey().getName()).putBoolean(facet.getValue() != null).build());
+            }
+        }
+        QueryFingerprint facetQueries = QueryFingerprint.EMPTY;
+        if (facetQueriesWithExclude != null) {
+            for (Map.Entry<String, QueryFilter> facetQuery : facetQueriesWithExclude.entrySet()) {
+                facetQueries = facetQueries.plus(QueryFingerprint.hasher().putString(facetQuery.getKey())
+                        .putBoolean(facetQuery.getValue() != null).build());
+            }
+        }
+        QueryFingerprint viewFields = QueryFingerprint.EMPTY;
+        for (Field field : fields) {
+            viewFields = viewFields.plus(QueryFingerprint.hasher().putString(field.getDeclaringClass().getName())
+                    .putString(field.getName()).build());
+        }
+        hasher.putBoolean(facetsWithExclude != null).putFingerprint(facets)
+                .putBoolean(facetQueriesWithExclude != null).putFingerprint(facetQueries)
+                .putValue(pivotFacets)
+                .putValue(pivotFacetLimits)
+                .putFingerprint(viewFields)
+                .putFingerprint(getUnorderedFingerprint(functionFields))
+                .putFingerprint(getUnorderedFingerprint(groupFields))
+                .putFingerprint(getUnorderedFingerprint(groupQueries))
+                .putInteger(groupLimit)
+                .putInteger(facetLimit)
+                .putString(facetSort)
+                .putBoolean(useJsonFacet)
+                .putBoolean(useHighlight)
+                .putBoolean(useSpellcheck)
+                .putString(useCursor ? uniqueKey : null)
+                .putBoolean(useExport);
+        appendOrderFingerprint(hasher, order);
+        appendOrderFingerprint(hasher, groupOrder);
+        return hasher.build();
+    }
+
+    /**
+     * @return fingerprint of the query shape, the full text query, parameter values and the page
+     */
+    public QueryFingerprint getFingerprint() {
+        return QueryFingerprint.hasher()
+                .putFingerprint(getShapeFingerprint())
+                .putString(query)
+                .putFingerprint(queryFilter != null ? queryFilter.getFingerprint() : null)
+                .putInteger(first)
+                .putInteger(pageSize)
+                .build();
+    }
+
+    private static QueryFingerprint getUnorderedFingerprint(Collection<String> values) {
+        QueryFingerprint fingerprint = QueryFingerprint.EMPTY;
+        if (values != null) {
+            for (String value : values) {
+                fingerprint = fingerprint.plus(QueryFingerprint.of(value));
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void appendOrderFingerprint(QueryFingerprint.Hasher hasher, Order order) {
+        for (Order tmpOrder = order; tmpOrder != null; tmpOrder = tmpOrder.getAdditionalOrder()) {
+            hasher.putString(tmpOrder.getField()).putBoolean(tmpOrder.isReverse());
+        }
+        hasher.putNull();
+    }
+
     private List<QueryFilter> getAllQueryFilters() {
         if (QueryGroupFilter.class.isAssignableFrom(queryFilter.getClass())) {
            return getFilters((QueryGroupFilter) queryFilter);
@@ -163,17 +286,36 @@ public class SolrBuilder<T> implements IndexQuery<T> {
     public List<String> getFilterQueries() {
         if (queryFilter != null) {
             List<String> filtersForIndex = new ArrayList<>();
+            StringBuilder expression = new StringBuilder();
             for (QueryFilter qf : getAllQueryFilters()) {
-                filtersForIndex.add(qf.getSolrExpression(facetsWithExclude != null));
+                expression.setLength(0);
+                qf.appendSolrExpression(expression, facetsWithExclude != null);
+                filtersForIndex.add(expression.toString());
             }
             return filtersForIndex;
         }
         return null;
     }
 
+    /**
+     * In the cursor mode the sort by the unique key is added, unless the order already contains it.
+     * In the export mode the sort by the unique key is added, if the order is empty.
+     */
     @Override
     public List<SolrQuery.SortClause> getSorts() {
-        return getSolrSorts(order);
+        List<SolrQuery.SortClause> sorts = getSolrSorts(order);
+        if (useCursor) {
+            if (sorts == null) {
+                sorts = new ArrayList<>(1);
+            }
+            if (sorts.stream().noneMatch(sortClause -> uniqueKey.equals(sortClause.getItem()))) {
+                sorts.add(SolrQuery.SortClause.asc(uniqueKey));
+            }
+        } else if (useExport && (sorts == null || sorts.isEmpty())) {
+            sorts = new ArrayList<>(1);
+            sorts.add(SolrQuery.SortClause.asc(uniqueKey));
+        }
+        return sorts;
     }
 
     @Override
@@ -259,6 +401,21 @@ public class SolrBuilder<T> implements IndexQuery<T> {
         return facetLimit;
     }
 
+    @Override
+    public boolean isUseJsonFacet() {
+        return useJsonFacet;
+    }
+
+    @Override
+    public String getFacetSort() {
+        return facetSort;
+    }
+
+    @Override
+    public List<List<Integer>> getPivotFacetLimits() {
+        return pivotFacetLimits;
+    }
+
     @Override
     public boolean isUseHighlight() {
         return useHighlight;
@@ -293,6 +450,24 @@ public class SolrBuilder<T> implements IndexQuery<T> {
         return addPivotFacet(Arrays.asList(fields));
     }
 
+    /**
+     * Limits are used by the JSON facets, see {@link #setUseJsonFacet(boolean)}
+     *
+     * @param fields      fields of the pivot facet
+     * @param fieldLimits limits of the values of the fields, in the order of the fields
+     */
+    public SolrBuilder<T> addPivotFacet(List<Field> fields, List<Integer> fieldLimits) {
+        addPivotFacet(fields);
+        if (pivotFacetLimits == null) {
+            pivotFacetLimits = new ArrayList<>();
+        }
+        while (pivotFacetLimits.size() < pivotFacets.size() - 1) {
+            pivotFacetLimits.add(null);
+        }
+        pivotFacetLimits.add(new ArrayList<>(fieldLimits));
+        return this;
+    }
+
     public SolrBuilder<T> addPivotFacetNative(List<String> nativeFields) {
         if (pivotFacets == null) {
             pivotFacets = new ArrayList<>();
@@ -368,11 +543,59 @@ public class SolrBuilder<T> implements IndexQuery<T> {
         return this;
     }
 
+    public SolrBuilder<T> setFacetSort(String facetSort) {
+        this.facetSort = facetSort;
+        return this;
+    }
+
+    /**
+     * @param useJsonFacet <code>true</code> to request facets, facet queries and pivot facets by one JSON facet
+     *                     request, the nested terms facets of the pivots can be limited per field
+     */
+    public SolrBuilder<T> setUseJsonFacet(boolean useJsonFacet) {
+        this.useJsonFacet = useJsonFacet;
+        return this;
+    }
+
     public SolrBuilder<T> setUseHighlight(boolean useHighlight) {
         this.useHighlight = useHighlight;
         return this;
     }
 
+    public boolean isUseCursor() {
+        return useCursor;
+    }
+
+    /**
+     * @param useCursor <code>true</code> to add the sort by the unique key, which is required to iterate by the cursor mark
+     */
+    public SolrBuilder<T> setUseCursor(boolean useCursor) {
+        this.useCursor = useCursor;
+        return this;
+    }
+
+    public boolean isUseExport() {
+        return useExport;
+    }
+
+    /**
+     * @param useExport <code>true</code> to add the sort by the unique key to the empty order, which is required
+     *                  to export by the <code>/export</code> handler
+     */
+    public SolrBuilder<T> setUseExport(boolean useExport) {
+        this.useExport = useExport;
+        return this;
+    }
+
+    public String getUniqueKey() {
+        return uniqueKey;
+    }
+
+    public SolrBuilder<T> setUniqueKey(String uniqueKey) {
+        this.uniqueKey = uniqueKey;
+        return this;
+    }
+
     public SolrBuilder<T>  setUseSpellcheck(boolean useSpellcheck) {
         this.useSpellcheck = useSpellcheck;
         return this;
@@ -387,6 +610,16 @@ public class SolrBuilder<T> implements IndexQuery<T> {
         return this;
     }
 
+    /**
+     * Replaces the filter by the normalized filter tree, see {@link QueryFilterOptimizer}.
+     * Nested filters of {@link #addQueryFilter(QueryFilter)} are flattened, so every filter is a separate
+     * filter query, which is cached by Solr independently of the other filters.
+     */
+    public SolrBuilder<T> optimizeQueryFilter() {
+        this.queryFilter = QueryFilterOptimizer.optimize(queryFilter);
+        return this;
+    }
+
     public Order getOrder() {
         return order;
     }
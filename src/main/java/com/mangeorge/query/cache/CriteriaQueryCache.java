@@ -0,0 +1,137 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaQuery;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * Cache of built JPA criteria queries.
+ * Criteria queries belong to the entity manager factory, so they are cached separately for every factory.
+ * The key is the fingerprint of the query shape without parameter values, so a repeated shape is built only once.
+ * When the cache of the factory is full, the least recently used shape is evicted.
+ * <p>
+ * Cached queries reference their factory, so factories are not weak keys. Queries of closed factories are removed
+ * when a query is built, or by {@link #remove(EntityManagerFactory)}.
+ */
+@SuppressWarnings("unused")
+public class CriteriaQueryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+
+    /**
+     * Queries by the identity of the factory, guarded by the map
+     */
+    private final Map<EntityManagerFactory, LruMap<QueryFingerprint, CriteriaQuery<?>>> queries = new IdentityHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Maximum number of stored queries of one factory. If <code>0</code>, then the cache is disabled.
+     */
+    private volatile int maxSize;
+
+
+    public CriteriaQueryCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize maximum number of stored queries of one factory
+     */
+    public CriteriaQueryCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * @param factory factory, whose criteria builder builds the query
+     * @param key     fingerprint of the query shape
+     * @param builder builds the query, if it is not in the cache
+     * @return built query
+     */
+    public CriteriaQuery<?> get(EntityManagerFactory factory, QueryFingerprint key, Supplier<CriteriaQuery<?>> builder) {
+        LruMap<QueryFingerprint, CriteriaQuery<?>> factoryQueries;
+        synchronized (queries) {
+            factoryQueries = queries.get(factory);
+        }
+        CriteriaQuery<?> query = factoryQueries != null ? factoryQueries.get(key) : null;
+        if (query != null) {
+            hitCount.increment();
+            return query;
+        }
+        missCount.increment();
+        query = builder.get();
+        synchronized (queries) {
+            queries.keySet().removeIf(f -> !f.isOpen());
+            if (!factory.isOpen()) {
+                return query;
+            }
+            factoryQueries = queries.computeIfAbsent(factory, f -> new LruMap<>(maxSize));
+        }
+        return factoryQueries.putIfAbsent(key, query);
+    }
+
+    /**
+     * Removes queries of the factory, for example before the factory is closed
+     *
+     * @param factory entity manager factory
+     */
+    public void remove(EntityManagerFactory factory) {
+        synchronized (queries) {
+            queries.remove(factory);
+        }
+    }
+
+    public void clear() {
+        synchronized (queries) {
+            queries.clear();
+        }
+    }
+
+    /**
+     * @return number of stored queries of all factories
+     */
+    public int size() {
+        synchronized (queries) {
+            return queries.values().stream().mapToInt(LruMap::size).sum();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of queries evicted because the cache of the factory was full
+     */
+    public long getEvictionCount() {
+        synchronized (queries) {
+            return queries.values().stream().mapToLong(LruMap::getEvictionCount).sum();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        synchronized (queries) {
+            for (LruMap<QueryFingerprint, CriteriaQuery<?>> factoryQueries : queries.values()) {
+                factoryQueries.setMaxSize(maxSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.mangeorge.query.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Map with the maximum number of entries, which evicts the least recently used entry when a new entry is stored.
+ * All operations are synchronized on the map.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class LruMap<K, V> {
+
+    /**
+     * Entries in the access order, guarded by the map
+     */
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private int maxSize;
+    private long evictionCount;
+
+
+    /**
+     * @param maxSize maximum number of entries, if <code>0</code>, then values are not stored
+     */
+    LruMap(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Stores the value, if there is no value of the key, and evicts the least recently used entries
+     * over the maximum size
+     *
+     * @return stored value of the key, or the given value
+     */
+    synchronized V putIfAbsent(K key, V value) {
+        V stored = entries.get(key);
+        if (stored != null) {
+            return stored;
+        }
+        if (maxSize > 0) {
+            entries.put(key, value);
+            evict();
+        }
+        return value;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+}
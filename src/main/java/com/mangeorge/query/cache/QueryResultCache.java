@@ -0,0 +1,406 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+
+import javax.persistence.Entity;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Cache of query results by the query shape and parameter values.
+ * Entries are evicted in the LRU order when there are more than {#maxSize} entries or the total weight of entries
+ * is more than {#maxWeight}, and expire {#timeToLiveMillis} after they were stored.
+ * <p>
+ * Entries are invalidated by entity names, which the query reads. Every change of an entity gets the next value of
+ * the generation counter, and the entry is stale if one of its entities was changed after the generation,
+ * at which the query was started. So a result read before a change, but stored after it, is never returned.
+ * While a transaction changing an entity is not completed, results of queries reading the entity are neither
+ * returned nor stored, because the changing session must see its own changes.
+ * Changes are registered by {@link QueryResultCacheListener} from Hibernate events.
+ * Bulk HQL updates and native SQL changes are not registered, call {@link #invalidate(String)} after them.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class QueryResultCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    public static final long DEFAULT_MAX_WEIGHT = 100_000;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Names of the entity classes, which are used in queries: class name, simple name and entity name,
+     * of the class and its superclasses
+     */
+    private static final ClassValue<String[]> ENTITY_NAMES = new ClassValue<String[]>() {
+        @Override
+        protected String[] computeValue(Class<?> type) {
+            Set<String> names = new LinkedHashSet<>();
+            for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                names.add(clazz.getName());
+                names.add(clazz.getSimpleName());
+                Entity entity = clazz.getAnnotation(Entity.class);
+                if (entity != null && !entity.name().isEmpty()) {
+                    names.add(entity.name());
+                }
+            }
+            return names.toArray(new String[0]);
+        }
+    };
+
+
+    /**
+     * Entries in the access order, guarded by the cache
+     */
+    private final LinkedHashMap<Key, CachedResult> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    /**
+     * The last generation by entity name, at which the entity was changed
+     */
+    private final Map<String, Long> changeGenerations = new ConcurrentHashMap<>();
+
+    /**
+     * Number of not completed transactions by entity name, which changed the entity
+     */
+    private final Map<String, AtomicInteger> pendingChanges = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    /**
+     * Maximum number of entries. If <code>0</code>, then the cache is disabled.
+     */
+    private volatile int maxSize;
+
+    /**
+     * Maximum total weight of entries, the weight of the list is the number of its elements
+     */
+    private volatile long maxWeight;
+
+    private volatile long timeToLiveMillis;
+
+
+    public QueryResultCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_WEIGHT, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    /**
+     * @param maxSize          maximum number of entries
+     * @param maxWeight        maximum total weight of entries
+     * @param timeToLiveMillis time after which the entry expires
+     */
+    public QueryResultCache(int maxSize, long maxWeight, long timeToLiveMillis) {
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+
+    /**
+     * @return current generation, it must be taken before the query is executed and passed to
+     * {@link #put(Key, Object, long)}
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param key key of the query
+     * @return result of the query or <code>null</code> if it is not cached, is stale or is expired
+     */
+    public Object get(Key key) {
+        if (isChanging(key)) {
+            missCount.increment();
+            return null;
+        }
+        CachedResult result;
+        synchronized (this) {
+            result = entries.get(key);
+            if (result != null && (isChanged(key, result.generation) || isExpired(result))) {
+                remove(key);
+                invalidationCount.increment();
+                result = null;
+            }
+        }
+        if (result == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return result.value;
+    }
+
+    /**
+     * Stores the result, if entities of the query were not changed since the generation.
+     *
+     * @param key        key of the query
+     * @param value      result of the query, a list or a number
+     * @param generation generation taken by {@link #getGeneration()} before the query was executed
+     */
+    public void put(Key key, Object value, long generation) {
+        if (maxSize <= 0 || isChanging(key) || isChanged(key, generation)) {
+            return;
+        }
+        long resultWeight = value instanceof Collection ? ((Collection<?>) value).size() + 1 : 1;
+        if (resultWeight > maxWeight) {
+            return;
+        }
+        synchronized (this) {
+            CachedResult previous = entries.put(key, new CachedResult(value, resultWeight, generation,
+                    System.currentTimeMillis() + timeToLiveMillis));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += resultWeight;
+            Iterator<Map.Entry<Key, CachedResult>> iterator = entries.entrySet().iterator();
+            while ((entries.size() > maxSize || weight > maxWeight) && iterator.hasNext()) {
+                weight -= iterator.next().getValue().weight;
+                iterator.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Registers the change of the entity, cached results of queries reading the entity become stale
+     *
+     * @param entityName name of the entity, as it is used in queries
+     */
+    public void invalidate(String entityName) {
+        changeGenerations.put(entityName, generation.incrementAndGet());
+    }
+
+    /**
+     * Registers the change of the entity class and its superclasses by all their names
+     *
+     * @param entityClass changed entity class
+     */
+    public void invalidate(Class<?> entityClass) {
+        for (String name : ENTITY_NAMES.get(entityClass)) {
+            invalidate(name);
+        }
+    }
+
+    /**
+     * Registers the change of the entity in a transaction, which is not completed.
+     * Until {@link #completeChange(Class)} is called, results of queries reading the entity are not cached.
+     *
+     * @param entityClass changed entity class
+     */
+    public void beginChange(Class<?> entityClass) {
+        for (String name : ENTITY_NAMES.get(entityClass)) {
+            pendingChanges.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet();
+            invalidate(name);
+        }
+    }
+
+    /**
+     * Registers the completion of the transaction, which changed the entity, whether it is committed or not
+     *
+     * @param entityClass changed entity class
+     */
+    public void completeChange(Class<?> entityClass) {
+        for (String name : ENTITY_NAMES.get(entityClass)) {
+            invalidate(name);
+            AtomicInteger count = pendingChanges.get(name);
+            if (count != null) {
+                count.getAndUpdate(value -> Math.max(value - 1, 0));
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    private boolean isChanging(Key key) {
+        if (pendingChanges.isEmpty()) {
+            return false;
+        }
+        for (String entityName : key.entityNames) {
+            AtomicInteger count = pendingChanges.get(entityName);
+            if (count != null && count.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isChanged(Key key, long generation) {
+        for (String entityName : key.entityNames) {
+            Long changeGeneration = changeGenerations.get(entityName);
+            if (changeGeneration != null && changeGeneration > generation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExpired(CachedResult result) {
+        return result.expireTime < System.currentTimeMillis();
+    }
+
+    private void remove(Key key) {
+        CachedResult removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of entries evicted because of the size or the weight limit
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return number of entries removed because they were stale or expired
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        if (size() > maxSize) {
+            clear();
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        if (getWeight() > maxWeight) {
+            clear();
+        }
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+
+    /**
+     * Key of the query result: the query shape, parameter values and the page.
+     * Entity names of the query are not compared, they are used for invalidation.
+     */
+    public static final class Key {
+
+        private final QueryFingerprint shape;
+        private final Object[] parameterValues;
+        private final Integer first;
+        private final Integer pageSize;
+        private final String[] entityNames;
+        private final int hashCode;
+
+
+        /**
+         * @param shape           fingerprint of the query shape, including the count mode
+         * @param parameterValues values of the query parameters in the order they are set
+         * @param first           the first row of the page
+         * @param pageSize        number of rows of the page
+         * @param entityNames     names of the entities read by the query
+         */
+        public Key(QueryFingerprint shape, Object[] parameterValues, Integer first, Integer pageSize,
+                   Collection<String> entityNames) {
+            this.shape = shape;
+            this.parameterValues = parameterValues;
+            this.first = first;
+            this.pageSize = pageSize;
+            this.entityNames = entityNames.toArray(new String[0]);
+            this.hashCode = 31 * (31 * (31 * shape.hashCode() + Arrays.deepHashCode(parameterValues))
+                    + Objects.hashCode(first)) + Objects.hashCode(pageSize);
+        }
+
+
+        public String[] getEntityNames() {
+            return entityNames.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && shape.equals(key.shape)
+                    && Objects.equals(first, key.first)
+                    && Objects.equals(pageSize, key.pageSize)
+                    && Arrays.deepEquals(parameterValues, key.parameterValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return shape + " " + Arrays.deepToString(parameterValues) + " [" + first + ", " + pageSize + "]";
+        }
+    }
+
+
+    private static final class CachedResult {
+
+        private final Object value;
+        private final long weight;
+        private final long generation;
+        private final long expireTime;
+
+        private CachedResult(Object value, long weight, long generation, long expireTime) {
+            this.value = value;
+            this.weight = weight;
+            this.generation = generation;
+            this.expireTime = expireTime;
+        }
+    }
+}
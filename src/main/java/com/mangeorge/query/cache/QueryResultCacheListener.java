@@ -0,0 +1,181 @@
+package com.mangeorge.query.cache;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+
+/**
+ * Registers changes of entities in the {@link QueryResultCache} from Hibernate events.
+ * A change is begun, when the entity is inserted, updated or deleted in the database during the flush,
+ * and is completed, when the transaction is committed or rolled back.
+ * Changes of collections are changes of the owner entity, they are completed by the after transaction process
+ * registered in the session.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class QueryResultCacheListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final QueryResultCache cache;
+    private final CommitListener commitListener;
+
+
+    /**
+     * @param cache cache, whose entries are invalidated
+     */
+    public QueryResultCacheListener(QueryResultCache cache) {
+        this.cache = cache;
+        this.commitListener = new CommitListener(cache);
+    }
+
+
+    /**
+     * Appends the listeners of the cache to the event listeners of the session factory
+     *
+     * @param sessionFactory factory, whose changes invalidate the cache
+     * @param cache          cache, whose entries are invalidated
+     * @return registered listener
+     */
+    public static QueryResultCacheListener register(SessionFactory sessionFactory, QueryResultCache cache) {
+        QueryResultCacheListener listener = new QueryResultCacheListener(cache);
+        EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener.commitListener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener.commitListener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener.commitListener);
+        return listener;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        cache.beginChange(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        cache.beginChange(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        cache.beginChange(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        changeOwner(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        changeOwner(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        changeOwner(event);
+    }
+
+    private void changeOwner(AbstractCollectionEvent event) {
+        Class<?> ownerClass = getOwnerPersister(event).getMappedClass();
+        cache.beginChange(ownerClass);
+        event.getSession().getActionQueue().registerProcess(
+                (AfterTransactionCompletionProcess) (success, session) -> cache.completeChange(ownerClass));
+    }
+
+    private static EntityPersister getOwnerPersister(AbstractCollectionEvent event) {
+        Object owner = event.getAffectedOwnerOrNull();
+        if (owner != null) {
+            return event.getSession().getEntityPersister(event.getAffectedOwnerEntityName(), owner);
+        }
+        return event.getSession().getFactory().getMetamodel().entityPersister(event.getAffectedOwnerEntityName());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    public QueryResultCache getCache() {
+        return cache;
+    }
+
+
+    /**
+     * Completes changes of entities after the transaction
+     */
+    private static final class CommitListener implements PostCommitInsertEventListener,
+            PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final QueryResultCache cache;
+
+        private CommitListener(QueryResultCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            cache.completeChange(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+            cache.completeChange(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            cache.completeChange(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+            cache.completeChange(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            cache.completeChange(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+            cache.completeChange(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return true;
+        }
+    }
+}
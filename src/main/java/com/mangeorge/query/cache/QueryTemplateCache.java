@@ -0,0 +1,87 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * Cache of rendered query strings.
+ * The key is the fingerprint of the query shape without parameter values, so a repeated shape is rendered only once.
+ * When the cache is full, the least recently used shape is evicted.
+ */
+@SuppressWarnings("unused")
+public class QueryTemplateCache {
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+
+    private final LruMap<QueryFingerprint, String> templates;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Maximum number of stored templates. If <code>0</code>, then the cache is disabled.
+     */
+    private volatile int maxSize;
+
+
+    public QueryTemplateCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize maximum number of stored templates
+     */
+    public QueryTemplateCache(int maxSize) {
+        this.maxSize = maxSize;
+        templates = new LruMap<>(maxSize);
+    }
+
+
+    /**
+     * @param key      fingerprint of the query shape
+     * @param renderer renders the query, if it is not in the cache
+     * @return rendered query
+     */
+    public String get(QueryFingerprint key, Supplier<String> renderer) {
+        String template = templates.get(key);
+        if (template != null) {
+            hitCount.increment();
+            return template;
+        }
+        missCount.increment();
+        return templates.putIfAbsent(key, renderer.get());
+    }
+
+    public void clear() {
+        templates.clear();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return templates.getEvictionCount();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        templates.setMaxSize(maxSize);
+    }
+}
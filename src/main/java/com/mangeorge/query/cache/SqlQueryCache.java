@@ -0,0 +1,154 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+import org.hibernate.SessionFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * Cache of rendered native SQL queries.
+ * Column mappings belong to the session factory, so queries are cached separately for every factory.
+ * The key is the fingerprint of the query shape without parameter values, so a repeated shape is rendered only once.
+ * Shapes that cannot be rendered as native SQL are cached too, so they are not rendered again.
+ * When the cache of the factory is full, the least recently used shape is evicted.
+ * <p>
+ * Queries of closed factories are removed when a query is rendered, or by {@link #remove(SessionFactory)}.
+ */
+@SuppressWarnings("unused")
+public class SqlQueryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * Stored instead of the query, if the shape cannot be rendered as native SQL
+     */
+    private static final String UNSUPPORTED = "";
+
+
+    /**
+     * Queries by the identity of the factory, guarded by the map
+     */
+    private final Map<SessionFactory, LruMap<QueryFingerprint, String>> queries = new IdentityHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder unsupportedCount = new LongAdder();
+
+    /**
+     * Maximum number of stored queries of one factory. If <code>0</code>, then the cache is disabled.
+     */
+    private volatile int maxSize;
+
+
+    public SqlQueryCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize maximum number of stored queries of one factory
+     */
+    public SqlQueryCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * @param factory  factory, whose mappings are used to render the query
+     * @param key      fingerprint of the query shape
+     * @param renderer renders the query, if it is not in the cache, or returns <code>null</code> if the shape
+     *                 cannot be rendered as native SQL
+     * @return rendered query or <code>null</code> if the shape cannot be rendered as native SQL
+     */
+    public String get(SessionFactory factory, QueryFingerprint key, Supplier<String> renderer) {
+        LruMap<QueryFingerprint, String> factoryQueries;
+        synchronized (queries) {
+            factoryQueries = queries.get(factory);
+        }
+        String query = factoryQueries != null ? factoryQueries.get(key) : null;
+        if (query != null) {
+            hitCount.increment();
+            return UNSUPPORTED.equals(query) ? null : query;
+        }
+        missCount.increment();
+        query = renderer.get();
+        if (query == null) {
+            unsupportedCount.increment();
+        }
+        synchronized (queries) {
+            queries.keySet().removeIf(f -> !f.isOpen());
+            if (!factory.isOpen()) {
+                return query;
+            }
+            factoryQueries = queries.computeIfAbsent(factory, f -> new LruMap<>(maxSize));
+        }
+        query = factoryQueries.putIfAbsent(key, query == null ? UNSUPPORTED : query);
+        return UNSUPPORTED.equals(query) ? null : query;
+    }
+
+    /**
+     * Removes queries of the factory, for example before the factory is closed
+     *
+     * @param factory session factory
+     */
+    public void remove(SessionFactory factory) {
+        synchronized (queries) {
+            queries.remove(factory);
+        }
+    }
+
+    public void clear() {
+        synchronized (queries) {
+            queries.clear();
+        }
+    }
+
+    /**
+     * @return number of stored queries of all factories
+     */
+    public int size() {
+        synchronized (queries) {
+            return queries.values().stream().mapToInt(LruMap::size).sum();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of rendered shapes, that cannot be rendered as native SQL and are executed as HQL
+     */
+    public long getUnsupportedCount() {
+        return unsupportedCount.sum();
+    }
+
+    /**
+     * @return number of queries evicted because the cache of the factory was full
+     */
+    public long getEvictionCount() {
+        synchronized (queries) {
+            return queries.values().stream().mapToLong(LruMap::getEvictionCount).sum();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        synchronized (queries) {
+            for (LruMap<QueryFingerprint, String> factoryQueries : queries.values()) {
+                factoryQueries.setMaxSize(maxSize);
+            }
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package com.mangeorge.query.filter;
 
-import org.apache.commons.lang3.StringUtils;
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.query.Query;
+
+import javax.persistence.criteria.Predicate;
+import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -16,19 +24,46 @@ public class NotFilter extends QueryFilterImpl {
 
     protected final QueryFilter filter;
 
+    /**
+     * Shape fingerprint of the filter and the shape fingerprint of the negated filter, from which it was computed
+     */
+    private QueryFingerprint shapeFingerprint;
+    private QueryFingerprint filterShapeFingerprint;
+
 
     public NotFilter(QueryFilter filter) {
         this.filter = filter;
     }
 
     @Override
-    public String getHQLExpression() {
-        return "not (" + filter.getHQLExpression() + ")";
+    public void appendHQLExpression(StringBuilder expression) {
+        int start = expression.length();
+        expression.append("not (");
+        int filterStart = expression.length();
+        filter.appendHQLExpression(expression);
+        if (expression.length() == filterStart) {
+            expression.setLength(start);
+            return;
+        }
+        expression.append(')');
     }
 
     @Override
-    public void setHQLParams(Query<?> query) {
-        filter.setHQLParams(query);
+    public void appendSQLExpression(StringBuilder expression, SqlQueryContext context) {
+        int start = expression.length();
+        expression.append("not (");
+        int filterStart = expression.length();
+        filter.appendSQLExpression(expression, context);
+        if (expression.length() == filterStart) {
+            expression.setLength(start);
+            return;
+        }
+        expression.append(')');
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+        filter.collectHQLParameters(parameters);
     }
 
     @Override
@@ -36,34 +71,98 @@ public class NotFilter extends QueryFilterImpl {
         filter.setParameterName(parameterName);
     }
 
+    public QueryFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public String getParameterName() {
+        return filter.getParameterName();
+    }
+
     @Override
     public Criterion getCriteriaExpression() {
         return Restrictions.not(filter.getCriteriaExpression());
     }
 
+    @Override
+    public Predicate toJpaPredicate(JpaQueryContext context) {
+        Predicate predicate = filter.toJpaPredicate(context);
+        return predicate == null ? null : context.getCriteriaBuilder().not(predicate);
+    }
+
+    /**
+     * The alias belongs to the child filter, so a group does not replace the own alias of the child.
+     */
+    @Override
+    public String getAlias() {
+        return filter.getAlias();
+    }
+
+    @Override
+    public Condition toCondition(MemoryQueryContext context) {
+        Condition condition = filter.toCondition(context);
+        return condition == null ? null : condition.negate();
+    }
+
     @Override
     public void setAlias(String alias) {
         filter.setAlias(alias);
     }
 
+    /**
+     * The child expression is rendered once and then inverted in place.
+     * A negative child expression <code>-(...)</code> is unwrapped instead of being inverted twice.
+     */
     @Override
-    public String getSolrExpression(boolean withTag) {
-        if (StringUtils.isEmpty(filter.getSolrExpression(false))) {
-            return "";
-        }
-        StringBuilder expressionBuilder = new StringBuilder();
+    public void appendSolrExpression(StringBuilder expression, boolean withTag) {
+        int start = expression.length();
         if (withTag) {
-            expressionBuilder.append("{!tag=").append(getSolrQueryTag()).append("}");
+            expression.append("{!tag=").append(getSolrQueryTag()).append("}");
         }
 
-        String solrExpression = filter.getSolrExpression(false);
-        if (!solrExpression.startsWith("-")){
-            expressionBuilder.append("-(").append(solrExpression).append(")");
+        int filterStart = expression.length();
+        filter.appendSolrExpression(expression, false);
+        if (expression.length() == filterStart) {
+            expression.setLength(start);
+            return;
+        }
+        if (expression.charAt(filterStart) != '-') {
+            expression.insert(filterStart, "-(").append(")");
         } else {
-            expressionBuilder.append(solrExpression, 2, solrExpression.length()-1);
+            expression.setLength(expression.length() - 1);
+            expression.delete(filterStart, filterStart + 2);
         }
+    }
+
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        key.append("not(");
+        filter.appendShapeKey(key);
+        key.append(')');
+    }
 
-        return expressionBuilder.toString();
+    /**
+     * The fingerprint is computed again only if the fingerprint of the negated filter was changed.
+     */
+    @Override
+    public QueryFingerprint getShapeFingerprint() {
+        QueryFingerprint filterShape = filter.getShapeFingerprint();
+        if (shapeFingerprint == null || filterShape != filterShapeFingerprint) {
+            shapeFingerprint = QueryFingerprint.hasher().putString("not").putFingerprint(filterShape).build();
+            filterShapeFingerprint = filterShape;
+        }
+        return shapeFingerprint;
+    }
+
+    @Override
+    public QueryFingerprint getFingerprint() {
+        return QueryFingerprint.hasher().putString("not").putFingerprint(filter.getFingerprint()).build();
+    }
+
+    @Override
+    public void collectEntityNames(Set<String> entityNames) {
+        filter.collectEntityNames(entityNames);
     }
 
 }
\ No newline at end of file
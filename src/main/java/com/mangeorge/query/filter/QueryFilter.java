@@ -1,8 +1,18 @@
 package com.mangeorge.query.filter;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.query.Query;
 
+import javax.persistence.criteria.Predicate;
+import java.util.List;
+import java.util.Set;
+
 
 /**
  * Used to build queries to the database.
@@ -13,15 +23,51 @@ import org.hibernate.query.Query;
 public interface QueryFilter {
 
     /**
+     * Group filters also assign names to their sub-filters. Names are assigned when the filter is added to the group,
+     * rendering of the expression does not change them.
+     *
      * @param parameterName The name of the parameter used in the query instead of a specific value
      */
     void setParameterName(String parameterName);
 
+    /**
+     * @return the name of the parameter used in the query instead of a specific value
+     */
+    String getParameterName();
+
     /**
      * @return expression for whereas the HQL string.
      */
     String getHQLExpression();
 
+    /**
+     * Appends expression for where to the HQL string.
+     * Nothing is appended, if the filter does not have an expression.
+     *
+     * @param expression builder of the HQL string
+     */
+    void appendHQLExpression(StringBuilder expression);
+
+    /**
+     * Appends expression for where to the native SQL string.
+     * Nothing is appended, if the filter does not have an expression.
+     * Parameters have the same names as in the HQL expression, so they are set by {@link #setHQLParams(Query)}.
+     *
+     * @param expression builder of the SQL string
+     * @param context    context of the query, which contains tables by alias
+     * @throws com.mangeorge.query.sql.UnsupportedSqlException if the filter cannot be rendered as native SQL
+     */
+    void appendSQLExpression(StringBuilder expression, SqlQueryContext context);
+
+    /**
+     * Compiles the filter to the condition of objects in memory, with the same result as the HQL expression.
+     *
+     * @param context context of the compiling, which contains accessors of the fields
+     * @return condition or <code>null</code> if the filter does not have an expression
+     * @throws RuntimeException if the filter is not supported in memory
+     */
+    Condition toCondition(MemoryQueryContext context);
+
     /**
      * Set HQL parameters to query
      *
@@ -29,11 +75,28 @@ public interface QueryFilter {
      */
     void setHQLParams(Query<?> query);
 
+    /**
+     * Adds slots of the parameters of the expression in the order they are set by {@link #setHQLParams(Query)}.
+     * Values are read from the filter when the parameters are bound.
+     *
+     * @param parameters list of the parameter slots
+     */
+    void collectHQLParameters(List<HQLParameter> parameters);
+
     /**
      * @return filter expression based on criteria
      */
     Criterion getCriteriaExpression();
 
+    /**
+     * Creates the predicate of the JPA criteria query.
+     * Parameters have the same names as in the HQL expression, so they are set by {@link #setHQLParams(Query)}.
+     *
+     * @param context context of the query, which contains roots and joins by alias
+     * @return predicate or <code>null</code> if the filter does not have an expression
+     */
+    Predicate toJpaPredicate(JpaQueryContext context);
+
     /**
      * @return based alias
      */
@@ -56,9 +119,44 @@ public interface QueryFilter {
      */
     String getSolrExpression(boolean withTag);
 
+    /**
+     * Appends expression to execute a request in Solr.
+     * Nothing is appended, if the filter does not have an expression.
+     *
+     * @param expression builder of the Solr expression
+     * @param withTag    indicator of the need to add a tag to the beginning of the expression
+     */
+    void appendSolrExpression(StringBuilder expression, boolean withTag);
+
     /**
      * @return tag for Solr expression
      */
     String getSolrQueryTag();
 
+    /**
+     * Appends to the key a description of the filter structure: filter types, aliases and fields.
+     * Parameter values are not included, so filters that differ only in values produce the same key
+     * and the same HQL expression.
+     *
+     * @param key builder of the query shape key
+     */
+    void appendShapeKey(StringBuilder key);
+
+    /**
+     * @return fingerprint of the filter structure, the same for filters with the same shape key
+     */
+    QueryFingerprint getShapeFingerprint();
+
+    /**
+     * @return fingerprint of the filter structure and parameter values
+     */
+    QueryFingerprint getFingerprint();
+
+    /**
+     * Adds names of the entities read by the filter besides the entities of the query, for example by subqueries.
+     *
+     * @param entityNames names of the entities read by the query
+     */
+    void collectEntityNames(Set<String> entityNames);
+
 }
\ No newline at end of file
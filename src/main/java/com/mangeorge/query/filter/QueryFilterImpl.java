@@ -1,7 +1,20 @@
 package com.mangeorge.query.filter;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
+import com.mangeorge.query.sql.UnsupportedSqlException;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.query.Query;
+
+import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -31,11 +44,64 @@ public abstract class QueryFilterImpl implements QueryFilter {
         this.parameterName = parameterName;
     }
 
+    @Override
+    public String getParameterName() {
+        return parameterName;
+    }
+
+    /**
+     * @return expression appended by {@link #appendHQLExpression(StringBuilder)}
+     *         or <code>null</code> if the filter does not have an expression
+     */
+    @Override
+    public String getHQLExpression() {
+        StringBuilder expression = new StringBuilder();
+        appendHQLExpression(expression);
+        return expression.length() == 0 ? null : expression.toString();
+    }
+
+    /**
+     * @return expression appended by {@link #appendSolrExpression(StringBuilder, boolean)}
+     */
+    @Override
+    public String getSolrExpression(boolean withTag) {
+        StringBuilder expression = new StringBuilder();
+        appendSolrExpression(expression, withTag);
+        return expression.toString();
+    }
+
+    /**
+     * Binds the slots of {@link #collectHQLParameters(List)}.
+     */
+    @Override
+    public void setHQLParams(Query<?> query) {
+        List<HQLParameter> parameters = new ArrayList<>();
+        collectHQLParameters(parameters);
+        for (HQLParameter parameter : parameters) {
+            parameter.bind(query);
+        }
+    }
+
     @Override
     public Criterion getCriteriaExpression() {
         throw new RuntimeException("Criteria expression are not supported");
     }
 
+    @Override
+    public void appendSQLExpression(StringBuilder expression, SqlQueryContext context) {
+        throw new UnsupportedSqlException("Native SQL not support " + getClass().getSimpleName());
+    }
+
+    @Override
+    public Condition toCondition(MemoryQueryContext context) {
+        throw new RuntimeException("In-memory predicate not support " + getClass().getSimpleName());
+    }
+
+    @Override
+    public Predicate toJpaPredicate(JpaQueryContext context) {
+        throw new RuntimeException("JPA criteria expression are not supported");
+    }
+
     @Override
     public String toString() {
         return getHQLExpression();
@@ -53,4 +119,41 @@ public abstract class QueryFilterImpl implements QueryFilter {
         return parameterName;
     }
 
+    /**
+     * The rendered HQL expression is used as the key, so that filters unknown to the builder are never confused.
+     * Known filters override this method with a cheaper description of their structure.
+     */
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        key.append(getClass().getName()).append('{').append(getHQLExpression()).append('}');
+    }
+
+    /**
+     * The shape key is hashed, so that filters unknown to the builder are never confused.
+     */
+    @Override
+    public QueryFingerprint getShapeFingerprint() {
+        StringBuilder key = new StringBuilder();
+        appendShapeKey(key);
+        return QueryFingerprint.of(key);
+    }
+
+    /**
+     * Parameter values are read from the slots of {@link #collectHQLParameters(List)}.
+     */
+    @Override
+    public QueryFingerprint getFingerprint() {
+        QueryFingerprint.Hasher hasher = QueryFingerprint.hasher().putFingerprint(getShapeFingerprint());
+        List<HQLParameter> parameters = new ArrayList<>();
+        collectHQLParameters(parameters);
+        for (HQLParameter parameter : parameters) {
+            hasher.putValue(parameter.getValue());
+        }
+        return hasher.build();
+    }
+
+    @Override
+    public void collectEntityNames(Set<String> entityNames) {
+    }
+
 }
\ No newline at end of file
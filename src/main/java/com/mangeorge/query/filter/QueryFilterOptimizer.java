@@ -0,0 +1,347 @@
+package com.mangeorge.query.filter;
+
+import com.mangeorge.query.filter.group.AndFilter;
+import com.mangeorge.query.filter.group.LogicGroupFilterImpl;
+import com.mangeorge.query.filter.group.OrFilter;
+import com.mangeorge.query.filter.single.BetweenFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.EqualsFilterWithoutParam;
+import com.mangeorge.query.filter.single.IdFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.filter.single.LikeFilterWithoutParam;
+import com.mangeorge.query.filter.single.NullFilter;
+import com.mangeorge.query.filter.single.SingleFieldFilterImpl;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * Normalizes filter trees before rendering, so the query has fewer conditions and parameters
+ * and equal filter trees have equal shapes:
+ * <ul>
+ * <li>{@link AndFilter} in {@link AndFilter} and {@link OrFilter} in {@link OrFilter} are flattened;</li>
+ * <li>groups without filters are removed, and a group of one filter is replaced by the filter;</li>
+ * <li>equal filters of a group are removed;</li>
+ * <li>{@link EqualsFilter} and {@link InFilter} of one field under {@link OrFilter} are merged into one {@link InFilter};</li>
+ * <li>{@link BetweenFilter} of one field are intersected under {@link AndFilter} and overlapping ranges are united
+ * under {@link OrFilter}, a united range without bounds is replaced by <code>not (field is null)</code>;</li>
+ * <li>{@link NotFilter} is pushed down through {@link OrFilter} (De Morgan) and double negation is removed.</li>
+ * </ul>
+ * <code>not (a AND b)</code> is not turned into <code>(not a OR not b)</code>: in Solr it would be a disjunction of
+ * pure negative clauses, which matches nothing, and it is not a smaller predicate in the database.
+ * <p>
+ * Rewrites keep the result of the SQL three-valued logic. Filters of unknown classes are kept as is.
+ * Leaf filters are reused and get the parameter names of their place in the new tree,
+ * groups are created anew, so the structure of the source tree is not changed.
+ */
+public class QueryFilterOptimizer {
+
+    /**
+     * Filters, that are equal if they have the same field and value
+     */
+    private static final Set<Class<?>> VALUE_FILTERS = new HashSet<>(Arrays.asList(EqualsFilter.class, IdFilter.class,
+            EqualsFilterWithoutParam.class, InFilter.class, NullFilter.class, LikeFilterWithoutParam.class));
+
+
+    /**
+     * @param filter filter tree
+     * @return optimized filter tree or <code>null</code> if the tree does not have conditions
+     */
+    public static QueryFilter optimize(QueryFilter filter) {
+        if (filter == null) {
+            return null;
+        }
+        if (filter.getClass() == NotFilter.class) {
+            return optimizeNot((NotFilter) filter);
+        }
+        if (isLogicGroup(filter)) {
+            return optimizeGroup((LogicGroupFilterImpl) filter);
+        }
+        return filter;
+    }
+
+    private static QueryFilter optimizeNot(NotFilter notFilter) {
+        QueryFilter filter = optimize(notFilter.getFilter());
+        if (filter == null) {
+            return null;
+        }
+        if (filter.getClass() == NotFilter.class) {
+            return ((NotFilter) filter).getFilter();
+        }
+        if (filter.getClass() == OrFilter.class) {
+            List<QueryFilter> filters = new ArrayList<>();
+            for (QueryFilter orFilter : ((OrFilter) filter).getFilters()) {
+                filters.add(new NotFilter(orFilter));
+            }
+            AndFilter andFilter = new AndFilter(filters);
+            setGroupAlias(andFilter, filter.getAlias());
+            return optimizeGroup(andFilter);
+        }
+        return filter == notFilter.getFilter() ? notFilter : new NotFilter(filter);
+    }
+
+    private static QueryFilter optimizeGroup(LogicGroupFilterImpl group) {
+        boolean and = group instanceof AndFilter;
+        List<QueryFilter> filters = new ArrayList<>();
+        for (QueryFilter filter : group.getFilters()) {
+            QueryFilter optimized = optimize(filter);
+            if (optimized == null) {
+                continue;
+            }
+            if (optimized.getClass() == group.getClass()) {
+                filters.addAll(((LogicGroupFilterImpl) optimized).getFilters());
+            } else {
+                filters.add(optimized);
+            }
+        }
+        filters = removeDuplicates(filters);
+        if (!and) {
+            filters = mergeValues(filters);
+        }
+        filters = mergeRanges(filters, and);
+        if (filters.isEmpty()) {
+            return null;
+        }
+        if (filters.size() == 1) {
+            return filters.get(0);
+        }
+        LogicGroupFilterImpl optimized = and ? new AndFilter(filters) : new OrFilter(filters);
+        setGroupAlias(optimized, group.getAlias());
+        return optimized;
+    }
+
+    private static List<QueryFilter> removeDuplicates(List<QueryFilter> filters) {
+        List<QueryFilter> unique = new ArrayList<>(filters.size());
+        for (QueryFilter filter : filters) {
+            if (unique.stream().noneMatch(uniqueFilter -> isSame(uniqueFilter, filter))) {
+                unique.add(filter);
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Merges {@link EqualsFilter} and {@link InFilter} of one field into one {@link InFilter},
+     * which is put at the place of the first of them. Values of different classes and <code>null</code> values
+     * are not merged.
+     */
+    private static List<QueryFilter> mergeValues(List<QueryFilter> filters) {
+        Map<String, List<SingleFieldFilterImpl<?>>> filtersByField = new LinkedHashMap<>();
+        for (QueryFilter filter : filters) {
+            if (filter.getClass() == EqualsFilter.class || filter.getClass() == IdFilter.class
+                    || filter.getClass() == InFilter.class) {
+                SingleFieldFilterImpl<?> fieldFilter = (SingleFieldFilterImpl<?>) filter;
+                filtersByField.computeIfAbsent(fieldFilter.getField(), field -> new ArrayList<>()).add(fieldFilter);
+            }
+        }
+        List<QueryFilter> merged = new ArrayList<>(filters.size());
+        for (QueryFilter filter : filters) {
+            List<SingleFieldFilterImpl<?>> fieldFilters = filter instanceof SingleFieldFilterImpl
+                    ? filtersByField.get(((SingleFieldFilterImpl<?>) filter).getField()) : null;
+            if (fieldFilters == null || fieldFilters.size() < 2 || !fieldFilters.contains(filter)) {
+                merged.add(filter);
+            } else if (fieldFilters.get(0) == filter) {
+                merged.addAll(mergeFieldValues(fieldFilters));
+            }
+        }
+        return merged;
+    }
+
+    private static List<QueryFilter> mergeFieldValues(List<SingleFieldFilterImpl<?>> filters) {
+        Set<Object> values = new LinkedHashSet<>();
+        InFilter<?> inFilter = null;
+        for (SingleFieldFilterImpl<?> filter : filters) {
+            if (filter instanceof InFilter) {
+                values.addAll(Arrays.asList(((InFilter<?>) filter).getValue()));
+                if (inFilter == null) {
+                    inFilter = (InFilter<?>) filter;
+                }
+            } else {
+                values.add(filter.getValue());
+            }
+        }
+        if (values.contains(null) || values.stream().map(Object::getClass).distinct().count() > 1) {
+            return new ArrayList<>(filters);
+        }
+        SingleFieldFilterImpl<?> first = filters.get(0);
+        InFilter<Object> merged = new InFilter<>(first.getAlias(), first.getFieldName(), values.toArray());
+        if (inFilter != null) {
+            merged.setChunkSize(inFilter.getChunkSize());
+            merged.setPadding(inFilter.isPadding());
+        }
+        return new ArrayList<>(Arrays.asList(merged));
+    }
+
+    /**
+     * Merges {@link BetweenFilter} of one field, whose bounds are comparable values of one class.
+     * The merged filter is put at the place of the first of them.
+     */
+    private static List<QueryFilter> mergeRanges(List<QueryFilter> filters, boolean and) {
+        Map<String, List<BetweenFilter<?>>> rangesByField = new LinkedHashMap<>();
+        for (QueryFilter filter : filters) {
+            if (filter.getClass() == BetweenFilter.class) {
+                BetweenFilter<?> range = (BetweenFilter<?>) filter;
+                rangesByField.computeIfAbsent(range.getField(), field -> new ArrayList<>()).add(range);
+            }
+        }
+        rangesByField.values().removeIf(ranges -> ranges.size() < 2 || !isComparable(ranges));
+        if (rangesByField.isEmpty()) {
+            return filters;
+        }
+        List<QueryFilter> merged = new ArrayList<>(filters.size());
+        for (QueryFilter filter : filters) {
+            List<BetweenFilter<?>> ranges = filter.getClass() == BetweenFilter.class
+                    ? rangesByField.get(((BetweenFilter<?>) filter).getField()) : null;
+            if (ranges == null) {
+                merged.add(filter);
+            } else if (ranges.get(0) == filter) {
+                merged.addAll(and ? intersectRanges(ranges) : uniteRanges(ranges));
+            }
+        }
+        return merged;
+    }
+
+    private static List<BetweenFilter<?>> intersectRanges(List<BetweenFilter<?>> ranges) {
+        Object from = null;
+        Object to = null;
+        for (BetweenFilter<?> range : ranges) {
+            if (range.getValueFrom() != null && (from == null || compare(range.getValueFrom(), from) > 0)) {
+                from = range.getValueFrom();
+            }
+            if (range.getValueTo() != null && (to == null || compare(range.getValueTo(), to) < 0)) {
+                to = range.getValueTo();
+            }
+        }
+        BetweenFilter<?> first = ranges.get(0);
+        return Arrays.asList(new BetweenFilter<>(first.getAlias(), first.getFieldName(), from, to));
+    }
+
+    private static List<QueryFilter> uniteRanges(List<BetweenFilter<?>> ranges) {
+        List<BetweenFilter<?>> united = new ArrayList<>(ranges);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < united.size() && !changed; i++) {
+                for (int j = i + 1; j < united.size() && !changed; j++) {
+                    BetweenFilter<?> range = united.get(i);
+                    BetweenFilter<?> other = united.get(j);
+                    if (isOverlapping(range, other)) {
+                        Object from = range.getValueFrom() == null || other.getValueFrom() == null ? null
+                                : compare(range.getValueFrom(), other.getValueFrom()) <= 0
+                                ? range.getValueFrom() : other.getValueFrom();
+                        Object to = range.getValueTo() == null || other.getValueTo() == null ? null
+                                : compare(range.getValueTo(), other.getValueTo()) >= 0
+                                ? range.getValueTo() : other.getValueTo();
+                        united.set(i, new BetweenFilter<>(range.getAlias(), range.getFieldName(), from, to));
+                        united.remove(j);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        List<QueryFilter> filters = new ArrayList<>(united.size());
+        for (BetweenFilter<?> range : united) {
+            if (range.getValueFrom() == null && range.getValueTo() == null) {
+                filters.add(new NotFilter(new NullFilter(range.getAlias(), range.getFieldName())));
+            } else {
+                filters.add(range);
+            }
+        }
+        return filters;
+    }
+
+    private static boolean isOverlapping(BetweenFilter<?> range, BetweenFilter<?> other) {
+        return (range.getValueTo() == null || other.getValueFrom() == null
+                || compare(other.getValueFrom(), range.getValueTo()) <= 0)
+                && (other.getValueTo() == null || range.getValueFrom() == null
+                || compare(range.getValueFrom(), other.getValueTo()) <= 0);
+    }
+
+    /**
+     * @return <code>true</code> if all bounds are comparable values of one class and every range has a bound
+     */
+    private static boolean isComparable(List<BetweenFilter<?>> ranges) {
+        Class<?> boundClass = null;
+        for (BetweenFilter<?> range : ranges) {
+            if (range.getValueFrom() == null && range.getValueTo() == null) {
+                return false;
+            }
+            for (Object bound : Arrays.asList(range.getValueFrom(), range.getValueTo())) {
+                if (bound == null) {
+                    continue;
+                }
+                if (!(bound instanceof Comparable) || (boundClass != null && boundClass != bound.getClass())) {
+                    return false;
+                }
+                boundClass = bound.getClass();
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value, Object other) {
+        return ((Comparable<Object>) value).compareTo(other);
+    }
+
+    /**
+     * @return <code>true</code> if the filters are known to have the same condition
+     */
+    private static boolean isSame(QueryFilter filter, QueryFilter other) {
+        if (filter == other) {
+            return true;
+        }
+        if (filter.getClass() != other.getClass()) {
+            return false;
+        }
+        if (filter.getClass() == NotFilter.class) {
+            return isSame(((NotFilter) filter).getFilter(), ((NotFilter) other).getFilter());
+        }
+        if (isLogicGroup(filter)) {
+            List<QueryFilter> filters = ((LogicGroupFilterImpl) filter).getFilters();
+            List<QueryFilter> otherFilters = ((LogicGroupFilterImpl) other).getFilters();
+            if (filters.size() != otherFilters.size()) {
+                return false;
+            }
+            for (int i = 0; i < filters.size(); i++) {
+                if (!isSame(filters.get(i), otherFilters.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (filter.getClass() == BetweenFilter.class) {
+            BetweenFilter<?> range = (BetweenFilter<?>) filter;
+            BetweenFilter<?> otherRange = (BetweenFilter<?>) other;
+            return range.getField().equals(otherRange.getField())
+                    && Objects.equals(range.getValueFrom(), otherRange.getValueFrom())
+                    && Objects.equals(range.getValueTo(), otherRange.getValueTo());
+        }
+        if (VALUE_FILTERS.contains(filter.getClass())) {
+            SingleFieldFilterImpl<?> fieldFilter = (SingleFieldFilterImpl<?>) filter;
+            SingleFieldFilterImpl<?> otherFieldFilter = (SingleFieldFilterImpl<?>) other;
+            return fieldFilter.getField().equals(otherFieldFilter.getField())
+                    && Objects.deepEquals(fieldFilter.getValue(), otherFieldFilter.getValue());
+        }
+        return false;
+    }
+
+    private static boolean isLogicGroup(QueryFilter filter) {
+        return filter.getClass() == AndFilter.class || filter.getClass() == OrFilter.class;
+    }
+
+    private static void setGroupAlias(LogicGroupFilterImpl group, String alias) {
+        if (StringUtils.isNotBlank(alias)) {
+            group.setAlias(alias);
+        }
+    }
+}
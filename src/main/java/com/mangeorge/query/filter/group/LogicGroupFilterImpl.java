@@ -1,12 +1,20 @@
 package com.mangeorge.query.filter.group;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
 import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Junction;
-import org.hibernate.query.Query;
 
+import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 
 /**
@@ -18,6 +26,12 @@ import java.util.function.Function;
  */
 public abstract class LogicGroupFilterImpl extends QueryGroupFilterImpl implements LogicGroupFilter {
 
+    /**
+     * Shape fingerprint of the group and the shape fingerprints of the sub-filters, from which it was computed
+     */
+    private QueryFingerprint shapeFingerprint;
+    private QueryFingerprint[] filterShapeFingerprints;
+
 
     LogicGroupFilterImpl() {
         super();
@@ -25,54 +39,167 @@ public abstract class LogicGroupFilterImpl extends QueryGroupFilterImpl implemen
 
     LogicGroupFilterImpl(List<QueryFilter> filters) {
         super(filters);
+        setParameterName(parameterName);
     }
 
     LogicGroupFilterImpl(QueryFilter... filters) {
         super(filters);
+        setParameterName(parameterName);
     }
 
 
+    /**
+     * Also assigns parameter names to the sub-filters: the name of the group with the index of the sub-filter.
+     */
+    @Override
+    public void setParameterName(String parameterName) {
+        super.setParameterName(parameterName);
+        for (int i = 0; i < filters.size(); i++) {
+            filters.get(i).setParameterName(parameterName + i);
+        }
+    }
+
+    @Override
+    public void add(QueryFilter filter) {
+        super.add(filter);
+        resetFingerprint();
+        if (filter != null) {
+            filter.setParameterName(parameterName + (filters.size() - 1));
+        }
+    }
+
+    @Override
+    public void addAll(List<QueryFilter> filters) {
+        super.addAll(filters);
+        resetFingerprint();
+        setParameterName(parameterName);
+    }
+
+    @Override
+    public void appendHQLExpression(StringBuilder expression) {
+        appendExpression(expression, QueryFilter::appendHQLExpression);
+    }
+
+    @Override
+    public void appendSQLExpression(StringBuilder expression, SqlQueryContext context) {
+        appendExpression(expression, (filter, filterExpression) -> filter.appendSQLExpression(filterExpression, context));
+    }
+
     @Override
-    public String getHQLExpression() {
-        return getExpression(QueryFilter::getHQLExpression);
+    public void appendSolrExpression(StringBuilder expression, boolean withTag) {
+        appendExpression(expression, (filter, filterExpression) -> filter.appendSolrExpression(filterExpression, false));
     }
 
+    /**
+     * @return expression of the sub-filters or <code>null</code> if the sub-filters do not have expressions
+     */
     @Override
     public String getSolrExpression(boolean withTag) {
-        return getExpression(f -> f.getSolrExpression(false));
+        String expression = super.getSolrExpression(withTag);
+        return expression.isEmpty() ? null : expression;
     }
 
-    private String getExpression(Function<QueryFilter, String> filterExpression) {
-        StringBuilder buf = null;
-        int i = 0;
+    private void appendExpression(StringBuilder expression, BiConsumer<QueryFilter, StringBuilder> filterExpression) {
+        boolean empty = true;
         for (QueryFilter filter : filters) {
-            String pName = parameterName + i++;
-            filter.setParameterName(pName);
-            String hql = filterExpression.apply(filter);
-            if (hql != null && !hql.isEmpty()) {
-                if (buf == null) {
-                    buf = new StringBuilder((this instanceof AndFilter) ? "" : "(");
-                } else {
-                    buf.append(" ").append(logicString()).append(" ");
+            int start = expression.length();
+            if (empty) {
+                if (!(this instanceof AndFilter)) {
+                    expression.append("(");
                 }
-                if (filter instanceof AndFilter && this instanceof OrFilter) {
-                    buf.append("(").append(hql).append(")");
-                } else {
-                    buf.append(hql);
+            } else {
+                expression.append(" ").append(logicString()).append(" ");
+            }
+            boolean brackets = filter instanceof AndFilter && this instanceof OrFilter;
+            if (brackets) {
+                expression.append("(");
+            }
+            int filterStart = expression.length();
+            filterExpression.accept(filter, expression);
+            if (expression.length() == filterStart) {
+                expression.setLength(start);
+            } else {
+                if (brackets) {
+                    expression.append(")");
                 }
+                empty = false;
             }
         }
-        if (buf == null || buf.length() == 0)
-            return null;
-        if (!(this instanceof AndFilter))
-            buf.append(")");
-        return buf.toString();
+        if (!empty && !(this instanceof AndFilter))
+            expression.append(")");
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+        for (QueryFilter filter : filters) {
+            filter.collectHQLParameters(parameters);
+        }
+    }
+
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        key.append(logicString()).append('(');
+        for (QueryFilter filter : filters) {
+            filter.appendShapeKey(key);
+            key.append(',');
+        }
+        key.append(')');
+    }
+
+    /**
+     * Fingerprints of the child filters are combined in their order, the same as in the shape key.
+     * The fingerprint is computed again only if the sub-filters were added or their fingerprints were changed,
+     * as the fingerprints of the sub-filters are memoized too, the check does not hash the tree.
+     */
+    @Override
+    public QueryFingerprint getShapeFingerprint() {
+        if (shapeFingerprint != null && !isFilterShapeChanged()) {
+            return shapeFingerprint;
+        }
+        QueryFingerprint[] filterShapes = new QueryFingerprint[filters.size()];
+        QueryFingerprint.Hasher hasher = QueryFingerprint.hasher().putString(logicString()).putInt(filters.size());
+        for (int i = 0; i < filterShapes.length; i++) {
+            filterShapes[i] = filters.get(i).getShapeFingerprint();
+            hasher.putFingerprint(filterShapes[i]);
+        }
+        filterShapeFingerprints = filterShapes;
+        shapeFingerprint = hasher.build();
+        return shapeFingerprint;
+    }
+
+    private boolean isFilterShapeChanged() {
+        if (filterShapeFingerprints.length != filters.size()) {
+            return true;
+        }
+        for (int i = 0; i < filterShapeFingerprints.length; i++) {
+            if (filters.get(i).getShapeFingerprint() != filterShapeFingerprints[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Must be called when the sub-filters are changed
+     */
+    protected void resetFingerprint() {
+        shapeFingerprint = null;
+        filterShapeFingerprints = null;
+    }
+
+    @Override
+    public QueryFingerprint getFingerprint() {
+        QueryFingerprint.Hasher hasher = QueryFingerprint.hasher().putString(logicString()).putInt(filters.size());
+        for (QueryFilter filter : filters) {
+            hasher.putFingerprint(filter.getFingerprint());
+        }
+        return hasher.build();
     }
 
     @Override
-    public void setHQLParams(Query<?> query) {
+    public void collectEntityNames(Set<String> entityNames) {
         for (QueryFilter filter : filters) {
-            filter.setHQLParams(query);
+            filter.collectEntityNames(entityNames);
         }
     }
 
@@ -84,6 +211,38 @@ public abstract class LogicGroupFilterImpl extends QueryGroupFilterImpl implemen
         return junction;
     }
 
+    @Override
+    public Predicate toJpaPredicate(JpaQueryContext context) {
+        List<Predicate> predicates = new ArrayList<>(filters.size());
+        for (QueryFilter filter : filters) {
+            Predicate predicate = filter.toJpaPredicate(context);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        if (predicates.isEmpty()) {
+            return null;
+        }
+        Predicate[] array = predicates.toArray(new Predicate[0]);
+        return this instanceof AndFilter ? context.getCriteriaBuilder().and(array) : context.getCriteriaBuilder().or(array);
+    }
+
+    @Override
+    public Condition toCondition(MemoryQueryContext context) {
+        List<Condition> conditions = new ArrayList<>(filters.size());
+        for (QueryFilter filter : filters) {
+            Condition condition = filter.toCondition(context);
+            if (condition != null) {
+                conditions.add(condition);
+            }
+        }
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        Condition[] array = conditions.toArray(new Condition[0]);
+        return this instanceof AndFilter ? Condition.and(array) : Condition.or(array);
+    }
+
     @Override
     public String toString() {
         StringBuilder buf = null;
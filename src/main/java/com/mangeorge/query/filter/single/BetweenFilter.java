@@ -1,11 +1,21 @@
 package com.mangeorge.query.filter.single;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.query.Query;
 
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.function.Function;
 
 
 /**
@@ -43,13 +53,14 @@ public class BetweenFilter<T> extends SingleFieldFilterImpl<T> {
     }
 
     @Override
-    public String getHQLExpression() {
+    public void appendHQLExpression(StringBuilder expression) {
+        appendField(expression);
         if (valueTo == null) {
-            return getField() + " >= :" + parameterName + "b1 ";
+            expression.append(" >= :").append(parameterName).append("b1 ");
         } else if (valueFrom == null) {
-            return getField() + " <= :" + parameterName + "b2 ";
+            expression.append(" <= :").append(parameterName).append("b2 ");
         } else {
-            return getField() + " between :" + parameterName + "b1 AND :" + parameterName + "b2";
+            expression.append(" between :").append(parameterName).append("b1 AND :").append(parameterName).append("b2");
         }
     }
 
@@ -59,17 +70,95 @@ public class BetweenFilter<T> extends SingleFieldFilterImpl<T> {
     }
 
     @Override
-    public void setHQLParams(Query<?> query) {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        CriteriaBuilder criteriaBuilder = context.getCriteriaBuilder();
+        Expression<Comparable> comparable = (Expression<Comparable>) field;
+        if (valueTo == null) {
+            return criteriaBuilder.greaterThanOrEqualTo(comparable,
+                    (Expression<Comparable>) context.parameter(valueFrom.getClass(), parameterName + "b1"));
+        } else if (valueFrom == null) {
+            return criteriaBuilder.lessThanOrEqualTo(comparable,
+                    (Expression<Comparable>) context.parameter(valueTo.getClass(), parameterName + "b2"));
+        }
+        return criteriaBuilder.between(comparable,
+                (Expression<Comparable>) context.parameter(valueFrom.getClass(), parameterName + "b1"),
+                (Expression<Comparable>) context.parameter(valueTo.getClass(), parameterName + "b2"));
+    }
+
+    @Override
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        expression.append(column);
+        if (valueTo == null) {
+            expression.append(" >= :").append(parameterName).append("b1");
+        } else if (valueFrom == null) {
+            expression.append(" <= :").append(parameterName).append("b2");
+        } else {
+            expression.append(" between :").append(parameterName).append("b1 AND :").append(parameterName).append("b2");
+        }
+    }
+
+    @Override
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        return object -> {
+            Object fieldValue = field.apply(object);
+            if (fieldValue == null) {
+                return null;
+            }
+            return (valueFrom == null || MemoryQueryContext.compare(fieldValue, valueFrom) >= 0)
+                    && (valueTo == null || MemoryQueryContext.compare(fieldValue, valueTo) <= 0);
+        };
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
         if (valueFrom != null) {
-            query.setParameter(parameterName + "b1", valueFrom);
+            parameters.add(new HQLParameter(parameterName + "b1", () -> valueFrom));
         }
         if (valueTo != null) {
-            query.setParameter(parameterName + "b2", valueTo);
+            parameters.add(new HQLParameter(parameterName + "b2", () -> valueTo));
         }
     }
 
+    public T getValueFrom() {
+        return valueFrom;
+    }
+
+    public T getValueTo() {
+        return valueTo;
+    }
+
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        super.appendShapeKey(key);
+        key.append(valueFrom == null ? '-' : 'f').append(valueTo == null ? '-' : 't');
+    }
+
+    @Override
+    protected void appendShapeFingerprint(QueryFingerprint.Hasher hasher) {
+        super.appendShapeFingerprint(hasher);
+        hasher.putBoolean(valueFrom != null).putBoolean(valueTo != null);
+    }
+
     @Override
-    protected String getSolrExpression() {
-        return getFieldName() + ":[" + (valueFrom == null ? '*' : valueFrom) + " TO " + (valueTo == null ? '*' : valueTo) + "]";
+    protected void appendValueFingerprint(QueryFingerprint.Hasher hasher) {
+        hasher.putValue(valueFrom).putValue(valueTo);
+    }
+
+    @Override
+    protected void appendSolrExpression(StringBuilder expression) {
+        expression.append(getFieldName()).append(":[");
+        if (valueFrom == null) {
+            expression.append('*');
+        } else {
+            expression.append(valueFrom);
+        }
+        expression.append(" TO ");
+        if (valueTo == null) {
+            expression.append('*');
+        } else {
+            expression.append(valueTo);
+        }
+        expression.append("]");
     }
 }
\ No newline at end of file
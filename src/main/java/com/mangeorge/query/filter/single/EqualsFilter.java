@@ -1,11 +1,19 @@
 package com.mangeorge.query.filter.single;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.query.Query;
 
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.function.Function;
 
 
 /**
@@ -40,8 +48,9 @@ public class EqualsFilter<T> extends SingleFieldFilterImpl<T> {
     }
 
     @Override
-    public String getHQLExpression() {
-        return getField() + " = :" + parameterName;
+    public void appendHQLExpression(StringBuilder expression) {
+        appendField(expression);
+        expression.append(" = :").append(parameterName);
     }
 
     @Override
@@ -50,11 +59,36 @@ public class EqualsFilter<T> extends SingleFieldFilterImpl<T> {
     }
 
     @Override
-    public void setHQLParams(Query<?> query) {
-        query.setParameter(parameterName, value);
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        return context.getCriteriaBuilder().equal(field, context.parameter(value.getClass(), parameterName));
     }
 
+    @Override
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        expression.append(column).append(" = :").append(parameterName);
+    }
+
+    @Override
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        return object -> MemoryQueryContext.equal(field.apply(object), value);
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+        parameters.add(new HQLParameter(parameterName, () -> value));
+    }
+
+    /**
+     * @deprecated use {@link #appendSolrExpression(StringBuilder, boolean)}
+     */
+    @Override
+    @Deprecated
     public String getSolrExpression() {
-        return getFieldName() + ":\"" + value + "\"";
+        return super.getSolrExpression();
+    }
+
+    @Override
+    protected void appendSolrExpression(StringBuilder expression) {
+        expression.append(getFieldName()).append(":\"").append(value).append("\"");
     }
 }
\ No newline at end of file
@@ -1,11 +1,20 @@
 package com.mangeorge.query.filter.single;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.query.Query;
 
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.function.Function;
 
 
 /**
@@ -41,8 +50,9 @@ public class EqualsFilterWithoutParam extends EqualsFilter<String> {
     }
 
     @Override
-    public String getHQLExpression() {
-        return getField() + " = " + value;
+    public void appendHQLExpression(StringBuilder expression) {
+        appendField(expression);
+        expression.append(" = ").append(value);
     }
 
     @Override
@@ -50,8 +60,43 @@ public class EqualsFilterWithoutParam extends EqualsFilter<String> {
         return Restrictions.eq(getField(), value);
     }
 
+    /**
+     * The value must be a path with a known alias, a number or a string in single quotes.
+     */
+    @Override
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        return context.getCriteriaBuilder().equal(field, context.getExpression(value));
+    }
+
+    @Override
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        expression.append(column).append(" = ");
+        context.appendExpression(expression, value);
+    }
+
+    @Override
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        Function<Object, Object> expression = context.getExpression(value);
+        return object -> MemoryQueryContext.equal(field.apply(object), expression.apply(object));
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+    }
+
+    /**
+     * The value is a part of the HQL expression, so it is a part of the key.
+     */
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        super.appendShapeKey(key);
+        key.append('=').append(value);
+    }
+
     @Override
-    public void setHQLParams(Query<?> query) {
+    protected void appendShapeFingerprint(QueryFingerprint.Hasher hasher) {
+        super.appendShapeFingerprint(hasher);
+        hasher.putString(value);
     }
 
 }
\ No newline at end of file
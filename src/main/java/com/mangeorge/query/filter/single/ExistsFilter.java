@@ -1,8 +1,15 @@
 package com.mangeorge.query.filter.single;
 
 
+import com.mangeorge.query.HQLParameter;
 import com.mangeorge.query.QueryBuilder;
-import org.hibernate.query.Query;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
+
+import javax.persistence.criteria.Predicate;
+import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -13,6 +20,12 @@ public class ExistsFilter extends SingleFieldFilterImpl<Object> {
 
     private final QueryBuilder queryBuilder;
 
+    /**
+     * Shape fingerprint of the filter and the shape fingerprint of the subquery, from which it was computed
+     */
+    private QueryFingerprint shapeFingerprint;
+    private QueryFingerprint queryShapeFingerprint;
+
 
     public ExistsFilter(QueryBuilder queryBuilder) {
         super(null);
@@ -31,17 +44,67 @@ public class ExistsFilter extends SingleFieldFilterImpl<Object> {
     }
 
     @Override
-    public String getHQLExpression() {
-        return "exists (" + queryBuilder.getHQLQueryWithoutOrderBy() + ")";
+    public void appendHQLExpression(StringBuilder expression) {
+        expression.append("exists (");
+        queryBuilder.appendHQLQueryWithoutOrderBy(expression);
+        expression.append(")");
+    }
+
+    @Override
+    public Predicate toJpaPredicate(JpaQueryContext context) {
+        return context.getCriteriaBuilder().exists(queryBuilder.toJpaSubquery(context));
+    }
+
+    @Override
+    public String getParameterName() {
+        return queryBuilder.getQueryFilter().getParameterName();
+    }
+
+    @Override
+    public void appendSQLExpression(StringBuilder expression, SqlQueryContext context) {
+        expression.append("exists (");
+        queryBuilder.appendSQLSubquery(expression, context);
+        expression.append(")");
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+        queryBuilder.getQueryFilter().collectHQLParameters(parameters);
+    }
+
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        key.append("exists(");
+        queryBuilder.appendShapeKey(key);
+        key.append(')');
+    }
+
+    /**
+     * The fingerprint is computed again only if the shape of the subquery was changed,
+     * so groups containing the filter are not rehashed while the subquery stays the same.
+     */
+    @Override
+    public QueryFingerprint getShapeFingerprint() {
+        QueryFingerprint queryShape = queryBuilder.getShapeFingerprint();
+        if (shapeFingerprint == null || !queryShape.equals(queryShapeFingerprint)) {
+            shapeFingerprint = QueryFingerprint.hasher().putString("exists").putFingerprint(queryShape).build();
+            queryShapeFingerprint = queryShape;
+        }
+        return shapeFingerprint;
+    }
+
+    @Override
+    public QueryFingerprint getFingerprint() {
+        return QueryFingerprint.hasher().putString("exists").putFingerprint(queryBuilder.getFingerprint()).build();
     }
 
     @Override
-    public void setHQLParams(Query<?> query) {
-        queryBuilder.getQueryFilter().setHQLParams(query);
+    public void collectEntityNames(Set<String> entityNames) {
+        queryBuilder.collectEntityNames(entityNames);
     }
 
     @Override
-    protected String getSolrExpression() {
+    protected void appendSolrExpression(StringBuilder expression) {
         throw new RuntimeException("Solr not support exists filter");
     }
 }
@@ -1,22 +1,56 @@
 package com.mangeorge.query.filter.single;
 
-import com.mangeorge.query.helper.HQLBuilderHelper;
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
 
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
 
 
 /**
  * A filter that compares the field value with the specified values.
+ * <p>
+ * To keep the number of distinct SQL statements small, the list of values is padded to a power-of-two size
+ * by repeating the last value. Lists longer than {#chunkSize} are split into several OR'ed <code>in</code> conditions,
+ * so the limit of the number of values in one <code>in</code> list, for example 1000 in Oracle, is not exceeded.
+ * <p>
+ * All chunks are bound as parameters of the same statement, so chunking does not help against the limit
+ * of bind parameters per statement, for example 2100 in SQL Server or 32767 in PostgreSQL.
+ * Longer lists must be split into several queries by the caller, see {@link com.mangeorge.query.IdBatchLoader}.
  *
  * @author George Beliy on 10-01-2020
  */
 @SuppressWarnings({"WeakerAccess","unused"})
 public class InFilter<T> extends SingleFieldFilterImpl<T[]> {
 
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static volatile int defaultChunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Maximum number of values in one <code>in</code> condition
+     */
+    private int chunkSize = defaultChunkSize;
+
+    /**
+     * Pad lists of values to a power-of-two size
+     */
+    private boolean padding = true;
+
     /**
      * @param values set of possible fieldPath values
      */
@@ -48,22 +82,227 @@ public class InFilter<T> extends SingleFieldFilterImpl<T[]> {
 
 
     @Override
-    public String getHQLExpression() {
-        return getField() + " in :" + parameterName;
+    public void appendHQLExpression(StringBuilder expression) {
+        int chunks = getChunkCount();
+        if (chunks == 1) {
+            appendField(expression);
+            expression.append(" in :").append(parameterName);
+            return;
+        }
+        expression.append("(");
+        for (int i = 0; i < chunks; i++) {
+            if (i > 0) {
+                expression.append(" OR ");
+            }
+            appendField(expression);
+            expression.append(" in :").append(parameterName).append("c").append(i);
+        }
+        expression.append(")");
     }
 
     @Override
     public Criterion getCriteriaExpression() {
-        return Restrictions.in(getField(), (Object[]) value);
+        int chunks = getChunkCount();
+        if (chunks == 1) {
+            return Restrictions.in(getField(), (Object[]) value);
+        }
+        Disjunction disjunction = Restrictions.disjunction();
+        for (int i = 0; i < chunks; i++) {
+            disjunction.add(Restrictions.in(getField(), (Object[]) getChunk(i, chunkSize, false)));
+        }
+        return disjunction;
+    }
+
+    @Override
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        int chunks = getChunkCount();
+        if (chunks == 1) {
+            return field.in(context.parameter(Collection.class, parameterName));
+        }
+        Predicate[] predicates = new Predicate[chunks];
+        for (int i = 0; i < chunks; i++) {
+            predicates[i] = field.in(context.parameter(Collection.class, parameterName + "c" + i));
+        }
+        return context.getCriteriaBuilder().or(predicates);
+    }
+
+    /**
+     * Lists are bound as collections, so parameters are rendered in brackets to be expanded by Hibernate.
+     */
+    @Override
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        int chunks = getChunkCount();
+        if (chunks == 1) {
+            expression.append(column).append(" in (:").append(parameterName).append(")");
+            return;
+        }
+        expression.append("(");
+        for (int i = 0; i < chunks; i++) {
+            if (i > 0) {
+                expression.append(" OR ");
+            }
+            expression.append(column).append(" in (:").append(parameterName).append("c").append(i).append(")");
+        }
+        expression.append(")");
+    }
+
+    @Override
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        T[] values = value;
+        return object -> {
+            Object fieldValue = field.apply(object);
+            if (fieldValue == null) {
+                return null;
+            }
+            boolean unknown = false;
+            for (T inValue : values) {
+                if (inValue == null) {
+                    unknown = true;
+                } else if (Boolean.TRUE.equals(MemoryQueryContext.equal(fieldValue, inValue))) {
+                    return true;
+                }
+            }
+            return unknown ? null : false;
+        };
     }
 
+    /**
+     * Values are bound as a collection by {@link Query#setParameter(String, Object)}, the type is taken from the field.
+     * Queries created from JPA criteria do not support {@link Query#setParameterList(String, Object[])}.
+     * The chunk layout is taken when the slots are collected, so the slots match the rendered query
+     * after the chunk size or the padding is changed.
+     */
     @Override
-    public void setHQLParams(Query<?> query) {
-        query.setParameterList(parameterName, value, HQLBuilderHelper.getHibernateType(value[0].getClass()));
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+        int size = chunkSize;
+        boolean pad = padding;
+        int chunks = getChunkCount(size);
+        if (chunks == 1) {
+            // values added after rendering are bound in the one list, so no value is lost
+            parameters.add(new HQLParameter(parameterName,
+                    () -> Arrays.asList(getChunk(0, getChunkCount(size) == 1 ? size : 0, pad))));
+            return;
+        }
+        for (int i = 0; i < chunks; i++) {
+            int chunk = i;
+            parameters.add(new HQLParameter(parameterName + "c" + i, () -> {
+                if (getChunkCount(size) != chunks) {
+                    throw new IllegalStateException("Values of " + getField() + " do not fit the " + chunks
+                            + " chunks of the rendered query");
+                }
+                return Arrays.asList(getChunk(chunk, size, pad));
+            }));
+        }
+    }
+
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        super.appendShapeKey(key);
+        key.append(getChunkCount());
+    }
+
+    @Override
+    protected void appendShapeFingerprint(QueryFingerprint.Hasher hasher) {
+        super.appendShapeFingerprint(hasher);
+        hasher.putInt(getChunkCount());
+    }
+
+    /**
+     * @return number of <code>in</code> conditions
+     */
+    public int getChunkCount() {
+        return getChunkCount(chunkSize);
+    }
+
+    private int getChunkCount(int chunkSize) {
+        if (chunkSize <= 0 || value.length <= chunkSize) {
+            return 1;
+        }
+        return (value.length + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * @param index     index of the chunk
+     * @param chunkSize maximum number of values in one chunk, <code>0</code> for one chunk of all values
+     * @param padding   <code>true</code> to pad the chunk to a power-of-two size
+     * @return values of the chunk
+     */
+    private T[] getChunk(int index, int chunkSize, boolean padding) {
+        int from = chunkSize <= 0 ? 0 : index * chunkSize;
+        int to = chunkSize <= 0 ? value.length : Math.min(value.length, from + chunkSize);
+        int length = padding ? getPaddedLength(to - from, chunkSize) : to - from;
+        if (from == 0 && length == value.length) {
+            return value;
+        }
+        T[] chunk = Arrays.copyOfRange(value, from, from + length);
+        if (from + length > to) {
+            Arrays.fill(chunk, to - from, length, value[to - 1]);
+        }
+        return chunk;
+    }
+
+    private int getPaddedLength(int length, int chunkSize) {
+        int padded = Integer.highestOneBit(length);
+        if (padded < length) {
+            padded <<= 1;
+        }
+        if (chunkSize > 0 && padded > chunkSize) {
+            return Math.max(length, chunkSize);
+        }
+        return padded;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * The limit of bind parameters per statement is not affected by the chunk size.
+     *
+     * @param chunkSize maximum number of values in one <code>in</code> condition, <code>0</code> to never split the list
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        resetFingerprint();
     }
 
+    public boolean isPadding() {
+        return padding;
+    }
+
+    public void setPadding(boolean padding) {
+        this.padding = padding;
+    }
+
+    public static int getDefaultChunkSize() {
+        return defaultChunkSize;
+    }
+
+    /**
+     * @param chunkSize chunk size of the filters created after this call, for example 1000 for Oracle
+     */
+    public static void setDefaultChunkSize(int chunkSize) {
+        defaultChunkSize = chunkSize;
+    }
+
+    /**
+     * @deprecated use {@link #appendSolrExpression(StringBuilder, boolean)}
+     */
     @Override
+    @Deprecated
     public String getSolrExpression() {
-        return getFieldName() +":(\"" + StringUtils.join(value, "\" OR \"") + "\")";
+        return super.getSolrExpression();
+    }
+
+    @Override
+    protected void appendSolrExpression(StringBuilder expression) {
+        expression.append(getFieldName()).append(":(");
+        for (int i = 0; i < value.length; i++) {
+            if (i > 0) {
+                expression.append(" OR ");
+            }
+            expression.append("\"").append(value[i]).append("\"");
+        }
+        expression.append(")");
     }
 }
\ No newline at end of file
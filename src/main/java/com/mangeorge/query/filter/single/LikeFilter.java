@@ -1,12 +1,24 @@
 package com.mangeorge.query.filter.single;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.query.Query;
 
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 
 /**
@@ -54,8 +66,10 @@ public class LikeFilter extends SingleFieldFilterImpl<String> {
     }
 
     @Override
-    public String getHQLExpression() {
-        return "(lower(" + getField() + ") like :" + parameterName + " escape '" + ESCAPE_CHAR + "')";
+    public void appendHQLExpression(StringBuilder expression) {
+        expression.append("(lower(");
+        appendField(expression);
+        expression.append(") like :").append(parameterName).append(" escape '").append(ESCAPE_CHAR).append("')");
     }
 
     @Override
@@ -64,13 +78,51 @@ public class LikeFilter extends SingleFieldFilterImpl<String> {
     }
 
     @Override
-    public void setHQLParams(Query<?> query) {
-        query.setParameter(parameterName, toLikeValue(value, true));
+    @SuppressWarnings("unchecked")
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        CriteriaBuilder criteriaBuilder = context.getCriteriaBuilder();
+        return criteriaBuilder.like(criteriaBuilder.lower((Expression<String>) field),
+                context.parameter(String.class, parameterName), ESCAPE_CHAR);
     }
 
     @Override
-    protected String getSolrExpression() {
-        return getFieldName() + ":" + toLikeValue(value, true).replace(ANY_SYMBOLS, SOLR_ANY_SYMBOLS);
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        expression.append("(lower(").append(column).append(") like :").append(parameterName)
+                .append(" escape '").append(ESCAPE_CHAR).append("')");
+    }
+
+    /**
+     * The field value is lower-cased and matched with the same pattern as the HQL parameter.
+     */
+    @Override
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        Pattern pattern = MemoryQueryContext.likePattern(toLikeValue(value, true), ESCAPE_CHAR);
+        return object -> {
+            Object fieldValue = field.apply(object);
+            return fieldValue == null ? null : pattern.matcher(fieldValue.toString().toLowerCase(Locale.ROOT)).matches();
+        };
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+        parameters.add(new HQLParameter(parameterName, () -> toLikeValue(value, true)));
+    }
+
+    @Override
+    protected void appendSolrExpression(StringBuilder expression) {
+        expression.append(getFieldName()).append(":");
+        int valueStart = expression.length();
+        expression.append(toLikeValue(value, true));
+        for (int i = valueStart; i < expression.length(); i++) {
+            if (expression.charAt(i) == ANY_SYMBOLS) {
+                expression.setCharAt(i, SOLR_ANY_SYMBOLS);
+            }
+        }
+    }
+
+    @Override
+    protected void appendValueFingerprint(QueryFingerprint.Hasher hasher) {
+        hasher.putValue(value).putValue(matchMode);
     }
 
     /**
@@ -82,7 +134,7 @@ public class LikeFilter extends SingleFieldFilterImpl<String> {
      */
     private String toLikeValue(String value, boolean addAnySymbol) {
         String val = value.replaceAll(String.valueOf(ANY_SYMBOLS), ESCAPE_CHAR + "" + ANY_SYMBOLS);
-        return (addAnySymbol ? matchMode.toMatchString(val) : val).toLowerCase();
+        return (addAnySymbol ? matchMode.toMatchString(val) : val).toLowerCase(Locale.ROOT);
     }
 
 }
\ No newline at end of file
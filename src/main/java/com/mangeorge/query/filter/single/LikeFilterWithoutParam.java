@@ -1,11 +1,23 @@
 package com.mangeorge.query.filter.single;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.query.Query;
 
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 
 /**
@@ -43,8 +55,10 @@ public class LikeFilterWithoutParam extends LikeFilter {
     }
 
     @Override
-    public String getHQLExpression() {
-        return "(lower(" + getField() + ") like lower(" + value + ") escape '" + ESCAPE_CHAR + "')";
+    public void appendHQLExpression(StringBuilder expression) {
+        expression.append("(lower(");
+        appendField(expression);
+        expression.append(") like lower(").append(value).append(") escape '").append(ESCAPE_CHAR).append("')");
     }
 
     @Override
@@ -52,8 +66,67 @@ public class LikeFilterWithoutParam extends LikeFilter {
         return Restrictions.like(getField(), value).ignoreCase();
     }
 
+    /**
+     * The value must be a path with a known alias or a string in single quotes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        CriteriaBuilder criteriaBuilder = context.getCriteriaBuilder();
+        return criteriaBuilder.like(criteriaBuilder.lower((Expression<String>) field),
+                criteriaBuilder.lower((Expression<String>) context.getExpression(value)), ESCAPE_CHAR);
+    }
+
+    @Override
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        expression.append("(lower(").append(column).append(") like lower(");
+        context.appendExpression(expression, value);
+        expression.append(") escape '").append(ESCAPE_CHAR).append("')");
+    }
+
+    /**
+     * If the value is a constant, its pattern is compiled once.
+     */
+    @Override
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        Function<Object, Object> expression = context.getExpression(value);
+        if (context.isConstant(value)) {
+            Pattern pattern = MemoryQueryContext.likePattern(
+                    expression.apply(null).toString().toLowerCase(Locale.ROOT), ESCAPE_CHAR);
+            return object -> {
+                Object fieldValue = field.apply(object);
+                return fieldValue == null ? null
+                        : pattern.matcher(fieldValue.toString().toLowerCase(Locale.ROOT)).matches();
+            };
+        }
+        return object -> {
+            Object fieldValue = field.apply(object);
+            Object likeValue = expression.apply(object);
+            if (fieldValue == null || likeValue == null) {
+                return null;
+            }
+            return MemoryQueryContext.likePattern(likeValue.toString().toLowerCase(Locale.ROOT), ESCAPE_CHAR)
+                    .matcher(fieldValue.toString().toLowerCase(Locale.ROOT)).matches();
+        };
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+    }
+
+    /**
+     * The value is a part of the HQL expression, so it is a part of the key.
+     */
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        super.appendShapeKey(key);
+        key.append('~').append(value);
+    }
+
     @Override
-    public void setHQLParams(Query<?> query) {
+    protected void appendShapeFingerprint(QueryFingerprint.Hasher hasher) {
+        super.appendShapeFingerprint(hasher);
+        hasher.putString(value);
     }
 
 }
\ No newline at end of file
@@ -1,11 +1,23 @@
 package com.mangeorge.query.filter.single;
 
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.hibernate.criterion.Criterion;
-import org.hibernate.query.Query;
+
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 
 /**
- * Inverts the child filter.
+ * Replaces <code>null</code> values of the field of the child filter by the given value.
  *
  * @author George Beliy on 10-01-2020
  */
@@ -14,23 +26,61 @@ public class NVLFilter<T> extends SingleFieldFilterImpl<T> {
 
     protected final SingleFieldFilter filter;
 
+    /**
+     * Shape fingerprint of the filter and the shape fingerprint of the child filter, from which it was computed
+     */
+    private QueryFingerprint shapeFingerprint;
+    private QueryFingerprint filterShapeFingerprint;
+
 
     public NVLFilter(SingleFieldFilterImpl<T> filter, T ifNUllValue) {
         super(null, ifNUllValue);
         this.filter = filter;
+        filter.setParameterName(parameterName + "0");
     }
 
+    /**
+     * The expression of the child filter is appended and its field is replaced in place.
+     */
     @Override
-    public String getHQLExpression() {
-        filter.setParameterName(parameterName + "0");
-        return filter.getHQLExpression().replace(filter.getField() + " ",
-                "ISNULL(" + filter.getField() + ", :" + parameterName +  ") ");
+    public void appendHQLExpression(StringBuilder expression) {
+        int start = expression.length();
+        filter.appendHQLExpression(expression);
+        String field = filter.getField() + " ";
+        String nvlField = "ISNULL(" + filter.getField() + ", :" + parameterName + ") ";
+        for (int i = expression.indexOf(field, start); i >= 0; i = expression.indexOf(field, i + nvlField.length())) {
+            expression.replace(i, i + field.length(), nvlField);
+        }
+    }
+
+    public QueryFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public void appendSQLExpression(StringBuilder expression, SqlQueryContext context) {
+        SingleFieldFilterImpl<?> fieldFilter = (SingleFieldFilterImpl<?>) filter;
+        fieldFilter.appendSQLExpression(expression, context, "coalesce("
+                + context.getColumn(fieldFilter.getAlias(), fieldFilter.getFieldName()) + ", :" + parameterName + ")");
     }
 
+    /**
+     * The field of the child filter is replaced by <code>coalesce(field, value)</code>.
+     */
     @Override
-    public void setHQLParams(Query<?> query) {
-        query.setParameter(parameterName, value);
-        filter.setHQLParams(query);
+    public Condition toCondition(MemoryQueryContext context) {
+        SingleFieldFilterImpl<?> fieldFilter = (SingleFieldFilterImpl<?>) filter;
+        Function<Object, Object> field = context.getField(fieldFilter.getAlias(), fieldFilter.getFieldName());
+        return fieldFilter.toCondition(context, object -> {
+            Object fieldValue = field.apply(object);
+            return fieldValue == null ? value : fieldValue;
+        });
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
+        parameters.add(new HQLParameter(parameterName, () -> value));
+        filter.collectHQLParameters(parameters);
     }
 
     @Override
@@ -39,18 +89,60 @@ public class NVLFilter<T> extends SingleFieldFilterImpl<T> {
         filter.setParameterName(parameterName + "0");
     }
 
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        key.append("nvl(");
+        filter.appendShapeKey(key);
+        key.append(')');
+    }
+
+    /**
+     * The fingerprint is computed again only if the fingerprint of the child filter was changed.
+     */
+    @Override
+    public QueryFingerprint getShapeFingerprint() {
+        QueryFingerprint filterShape = filter.getShapeFingerprint();
+        if (shapeFingerprint == null || filterShape != filterShapeFingerprint) {
+            shapeFingerprint = QueryFingerprint.hasher().putString("nvl").putFingerprint(filterShape).build();
+            filterShapeFingerprint = filterShape;
+        }
+        return shapeFingerprint;
+    }
+
+    @Override
+    public QueryFingerprint getFingerprint() {
+        return QueryFingerprint.hasher().putString("nvl").putFingerprint(filter.getFingerprint()).putValue(value).build();
+    }
+
+    @Override
+    public void collectEntityNames(Set<String> entityNames) {
+        filter.collectEntityNames(entityNames);
+    }
+
     @Override
     public Criterion getCriteriaExpression() {
         throw new RuntimeException("Criteria not support");
     }
 
+    /**
+     * The field of the child filter is replaced by <code>coalesce(field, :p)</code>.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Predicate toJpaPredicate(JpaQueryContext context) {
+        SingleFieldFilterImpl<?> fieldFilter = (SingleFieldFilterImpl<?>) filter;
+        Expression<Object> field = (Expression<Object>) context.getPath(fieldFilter.getAlias(), fieldFilter.getFieldName());
+        return fieldFilter.toJpaPredicate(context, context.getCriteriaBuilder().coalesce(field,
+                (Expression<Object>) context.parameter(value.getClass(), parameterName)));
+    }
+
     @Override
     public void setAlias(String alias) {
         filter.setAlias(alias);
     }
 
     @Override
-    protected String getSolrExpression() {
+    protected void appendSolrExpression(StringBuilder expression) {
         throw new RuntimeException("Solr not support nvl filter");
     }
 }
\ No newline at end of file
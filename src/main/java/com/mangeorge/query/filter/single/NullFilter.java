@@ -1,13 +1,19 @@
 package com.mangeorge.query.filter.single;
 
-import com.mangeorge.query.filter.NotFilter;
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Criterion;
-import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.query.Query;
 
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.function.Function;
 
 
 /**
@@ -40,12 +46,23 @@ public class NullFilter extends SingleFieldFilterImpl<Object> {
     }
 
     @Override
-    public String getHQLExpression() {
-        return getField() + " is null";
+    public void appendHQLExpression(StringBuilder expression) {
+        appendField(expression);
+        expression.append(" is null");
     }
 
     @Override
-    public void setHQLParams(Query<?> query) {
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        expression.append(column).append(" is null");
+    }
+
+    @Override
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        return object -> field.apply(object) == null;
+    }
+
+    @Override
+    public void collectHQLParameters(List<HQLParameter> parameters) {
     }
 
     @Override
@@ -54,13 +71,26 @@ public class NullFilter extends SingleFieldFilterImpl<Object> {
     }
 
     @Override
-    public String getSolrExpression(boolean withTag) {
-        return new NotFilter(new LikeFilter(getFieldName(), "", MatchMode.START)).getSolrExpression(withTag);
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        return context.getCriteriaBuilder().isNull(field);
+    }
+
+    /**
+     * The field does not match any value: <code>-((field:*))</code>
+     */
+    @Override
+    public void appendSolrExpression(StringBuilder expression, boolean withTag) {
+        if (withTag) {
+            expression.append("{!tag=").append(getSolrQueryTag()).append("}");
+        }
+        expression.append("-((");
+        appendSolrExpression(expression);
+        expression.append("))");
     }
 
     @Override
-    protected String getSolrExpression() {
-        return null;
+    protected void appendSolrExpression(StringBuilder expression) {
+        expression.append(getFieldName()).append(":").append(LikeFilter.SOLR_ANY_SYMBOLS);
     }
 
 }
\ No newline at end of file
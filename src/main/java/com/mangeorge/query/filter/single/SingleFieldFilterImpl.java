@@ -1,8 +1,18 @@
 package com.mangeorge.query.filter.single;
 
+import com.mangeorge.query.QueryFingerprint;
 import com.mangeorge.query.filter.QueryFilterImpl;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.memory.Condition;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
+import com.mangeorge.query.sql.UnsupportedSqlException;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import java.util.function.Function;
+
 
 /**
  * Basic implementation of the single filter.
@@ -14,6 +24,12 @@ public abstract class SingleFieldFilterImpl<T> extends QueryFilterImpl implement
     T value;
     private final String field;
 
+    /**
+     * Fingerprints computed once, they are reset when the alias or the structure of the filter is changed
+     */
+    private QueryFingerprint shapeFingerprint;
+    private QueryFingerprint fingerprint;
+
 
     SingleFieldFilterImpl(String field) {
         this.field = field;
@@ -28,21 +44,86 @@ public abstract class SingleFieldFilterImpl<T> extends QueryFilterImpl implement
     }
 
     @Override
-    public String getSolrExpression(boolean withTag) {
-        String solrExpression = getSolrExpression();
-        if (StringUtils.isBlank(solrExpression)) {
-            return "";
-        }
-        StringBuilder expressionBuilder = new StringBuilder();
+    public void appendSolrExpression(StringBuilder expression, boolean withTag) {
+        int start = expression.length();
         if (withTag) {
-            expressionBuilder.append("{!tag=").append(getSolrQueryTag()).append("}");
+            expression.append("{!tag=").append(getSolrQueryTag()).append("}");
         }
-        expressionBuilder.append("(").append(solrExpression).append(")");
+        expression.append("(");
+        int filterStart = expression.length();
+        appendSolrExpression(expression);
+        if (expression.length() == filterStart) {
+            expression.setLength(start);
+            return;
+        }
+        expression.append(")");
+    }
+
+    @Override
+    public void appendSQLExpression(StringBuilder expression, SqlQueryContext context) {
+        appendSQLExpression(expression, context, context.getColumn(getAlias(), field));
+    }
+
+    /**
+     * Appends the field condition to the native SQL string.
+     *
+     * @param expression builder of the SQL string
+     * @param context    context of the query
+     * @param column     qualified column of the field, it is replaced by {@link NVLFilter}
+     */
+    protected void appendSQLExpression(StringBuilder expression, SqlQueryContext context, String column) {
+        throw new UnsupportedSqlException("Native SQL not support " + getClass().getSimpleName());
+    }
 
-        return expressionBuilder.toString();
+    @Override
+    public Predicate toJpaPredicate(JpaQueryContext context) {
+        return toJpaPredicate(context, context.getPath(getAlias(), field));
     }
 
-    protected abstract String getSolrExpression();
+    /**
+     * Creates the predicate of the field condition for the JPA criteria query.
+     *
+     * @param context context of the query
+     * @param field   expression of the field, it is replaced by {@link NVLFilter}
+     * @return predicate of the condition
+     */
+    protected Predicate toJpaPredicate(JpaQueryContext context, Expression<?> field) {
+        throw new RuntimeException("JPA criteria expression are not supported");
+    }
+
+    @Override
+    public Condition toCondition(MemoryQueryContext context) {
+        return toCondition(context, context.getField(getAlias(), field));
+    }
+
+    /**
+     * Compiles the field condition for objects in memory.
+     *
+     * @param context context of the compiling
+     * @param field   accessor of the field value, it is replaced by {@link NVLFilter}
+     * @return condition
+     */
+    protected Condition toCondition(MemoryQueryContext context, Function<Object, Object> field) {
+        throw new RuntimeException("In-memory predicate not support " + getClass().getSimpleName());
+    }
+
+    /**
+     * Appends expression of the field condition to execute a request in Solr, without a tag and brackets.
+     *
+     * @param expression builder of the Solr expression
+     */
+    protected abstract void appendSolrExpression(StringBuilder expression);
+
+    /**
+     * @return expression appended by {@link #appendSolrExpression(StringBuilder)}
+     * @deprecated use {@link #appendSolrExpression(StringBuilder)}
+     */
+    @Deprecated
+    protected String getSolrExpression() {
+        StringBuilder expression = new StringBuilder();
+        appendSolrExpression(expression);
+        return expression.toString();
+    }
 
     @Override
     public String getField() {
@@ -51,8 +132,79 @@ public abstract class SingleFieldFilterImpl<T> extends QueryFilterImpl implement
         return getAlias() + "." + field;
     }
 
+    /**
+     * Appends the field to the HQL string. If a root alias exists, it is added before the field.
+     *
+     * @param expression builder of the HQL string
+     */
+    protected void appendField(StringBuilder expression) {
+        if (StringUtils.isNotBlank(getAlias())) {
+            expression.append(getAlias()).append(".");
+        }
+        expression.append(field);
+    }
+
     public String getFieldName() {
         return field;
     }
 
+    public T getValue() {
+        return value;
+    }
+
+    @Override
+    public void appendShapeKey(StringBuilder key) {
+        key.append(getClass().getName()).append('[').append(getAlias()).append('.').append(field).append(']');
+    }
+
+    @Override
+    public void setAlias(String alias) {
+        super.setAlias(alias);
+        resetFingerprint();
+    }
+
+    @Override
+    public QueryFingerprint getShapeFingerprint() {
+        if (shapeFingerprint == null) {
+            QueryFingerprint.Hasher hasher = QueryFingerprint.hasher();
+            appendShapeFingerprint(hasher);
+            shapeFingerprint = hasher.build();
+        }
+        return shapeFingerprint;
+    }
+
+    @Override
+    public QueryFingerprint getFingerprint() {
+        if (fingerprint == null) {
+            QueryFingerprint.Hasher hasher = QueryFingerprint.hasher().putFingerprint(getShapeFingerprint());
+            appendValueFingerprint(hasher);
+            fingerprint = hasher.build();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Hashes the same description of the filter structure as {@link #appendShapeKey(StringBuilder)}
+     *
+     * @param hasher hasher of the shape fingerprint
+     */
+    protected void appendShapeFingerprint(QueryFingerprint.Hasher hasher) {
+        hasher.putString(getClass().getName()).putString(getAlias()).putString(field);
+    }
+
+    /**
+     * @param hasher hasher of the fingerprint with parameter values
+     */
+    protected void appendValueFingerprint(QueryFingerprint.Hasher hasher) {
+        hasher.putValue(value);
+    }
+
+    /**
+     * Must be called when the filter is changed after its fingerprint could be computed
+     */
+    protected void resetFingerprint() {
+        shapeFingerprint = null;
+        fingerprint = null;
+    }
+
 }
\ No newline at end of file
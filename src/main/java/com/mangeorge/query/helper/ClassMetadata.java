@@ -0,0 +1,268 @@
+package com.mangeorge.query.helper;
+
+import com.mangeorge.query.memory.FieldAccessor;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.AnnotationException;
+
+import javax.persistence.Id;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Reflection metadata of a class, which is collected once per class and is stored with the class by {@link ClassValue}.
+ * Contains fields by name, fields with annotations, the id field, Solr field names, public methods and getters,
+ * and accessors of field paths. Metadata of a class is released together with the class.
+ * <p>
+ * Metadata is built on the first use. Call {@link #warmUp(Collection)} at startup to build it for the entity classes
+ * before the first query.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ClassMetadata {
+
+    private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+
+    /**
+     * Default value of {@link org.apache.solr.client.solrj.beans.Field}, which means the name of the field
+     */
+    private static final String SOLR_DEFAULT_NAME = "#default";
+
+
+    private final Class<?> clazz;
+
+    /**
+     * Fields of the class and its superclasses by name, a field of the class hides a field of a superclass
+     */
+    private final Map<String, Field> fields;
+
+    /**
+     * Values of {@link org.apache.solr.client.solrj.beans.Field} of the fields of the class by field name
+     */
+    private final Map<String, String> solrFieldNames;
+
+    private final Map<Class<? extends Annotation>, List<Field>> fieldsWithAnnotation = new ConcurrentHashMap<>();
+    private final Map<String, Method> getters = new ConcurrentHashMap<>();
+    private final Map<String, FieldAccessor> accessors = new ConcurrentHashMap<>();
+
+    /**
+     * Public methods for combinations of superclass and interface methods
+     */
+    private final AtomicReferenceArray<Set<Method>> publicMethods = new AtomicReferenceArray<>(4);
+
+    private volatile String idFieldName;
+
+
+    private ClassMetadata(Class<?> clazz) {
+        this.clazz = clazz;
+        Map<String, Field> classFields = new LinkedHashMap<>();
+        for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                classFields.putIfAbsent(field.getName(), field);
+            }
+        }
+        fields = Collections.unmodifiableMap(classFields);
+        Map<String, String> names = new HashMap<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            org.apache.solr.client.solrj.beans.Field solrField =
+                    field.getAnnotation(org.apache.solr.client.solrj.beans.Field.class);
+            if (solrField != null) {
+                names.put(field.getName(), getSolrFieldName(field, solrField));
+            }
+        }
+        solrFieldNames = names;
+    }
+
+
+    /**
+     * @param clazz class
+     * @return metadata of the class
+     */
+    public static ClassMetadata of(Class<?> clazz) {
+        return METADATA.get(clazz);
+    }
+
+    /**
+     * Builds metadata of the classes: fields, id field, Solr field names and public methods.
+     *
+     * @param classes classes, usually entity classes
+     */
+    public static void warmUp(Collection<Class<?>> classes) {
+        for (Class<?> clazz : classes) {
+            ClassMetadata metadata = of(clazz);
+            if (!metadata.getFieldsWithAnnotation(Id.class).isEmpty()) {
+                metadata.getIdFieldName();
+            }
+            metadata.getPublicMethods(true, false);
+            for (Field field : metadata.fields.values()) {
+                of(field.getDeclaringClass());
+            }
+        }
+    }
+
+    public static void warmUp(Class<?>... classes) {
+        warmUp(Arrays.asList(classes));
+    }
+
+    /**
+     * @param fieldName name of the field
+     * @return field of the class or its superclasses or <code>null</code> if the field is not found
+     */
+    public Field getField(String fieldName) {
+        return fields.get(fieldName);
+    }
+
+    /**
+     * @return fields of the class and its superclasses by name
+     */
+    public Map<String, Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param annotationClass class of the annotation
+     * @return unmodifiable list of fields of the class and its superclasses with the annotation
+     */
+    public List<Field> getFieldsWithAnnotation(Class<? extends Annotation> annotationClass) {
+        return fieldsWithAnnotation.computeIfAbsent(annotationClass, annotation -> {
+            List<Field> result = new ArrayList<>();
+            for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(annotation)) {
+                        result.add(field);
+                    }
+                }
+            }
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    /**
+     * @return field name of entity is marked with an annotation {@link Id}
+     * @throws AnnotationException if the class does not have the id field
+     */
+    public String getIdFieldName() {
+        String name = idFieldName;
+        if (name == null) {
+            List<Field> idFields = getFieldsWithAnnotation(Id.class);
+            if (idFields.isEmpty()) {
+                throw new AnnotationException("Id annotation not present in class " + clazz.getSimpleName());
+            }
+            name = idFields.get(0).getName();
+            idFieldName = name;
+        }
+        return name;
+    }
+
+    /**
+     * @param field field of this class
+     * @return value of the annotation {@link org.apache.solr.client.solrj.beans.Field} of the field,
+     * or the name of the field if the annotation does not have the value
+     */
+    public String getSolrFieldName(Field field) {
+        String name = field.getDeclaringClass() == clazz ? solrFieldNames.get(field.getName()) : null;
+        if (name == null) {
+            return getSolrFieldName(field, field.getAnnotation(org.apache.solr.client.solrj.beans.Field.class));
+        }
+        return name;
+    }
+
+    private static String getSolrFieldName(Field field, org.apache.solr.client.solrj.beans.Field solrField) {
+        return SOLR_DEFAULT_NAME.equals(solrField.value()) ? field.getName() : solrField.value();
+    }
+
+    /**
+     * @param superclassMethods add superclass methods
+     * @param interfaceMethods  add interfaces methods
+     * @return unmodifiable set of public methods of the class
+     */
+    public Set<Method> getPublicMethods(boolean superclassMethods, boolean interfaceMethods) {
+        int index = (superclassMethods ? 1 : 0) + (interfaceMethods ? 2 : 0);
+        Set<Method> methods = publicMethods.get(index);
+        if (methods == null) {
+            methods = Collections.unmodifiableSet(collectPublicMethods(clazz, superclassMethods, interfaceMethods));
+            publicMethods.set(index, methods);
+        }
+        return methods;
+    }
+
+    private static Set<Method> collectPublicMethods(Class<?> clazz, boolean superclassMethods, boolean interfaceMethods) {
+        Set<Method> methods = new HashSet<>();
+        while (clazz != null) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (Modifier.isPublic(method.getModifiers())) {
+                    methods.add(method);
+                }
+            }
+            if (interfaceMethods) {
+                for (Class<?> classInterface : clazz.getInterfaces()) {
+                    methods.addAll(of(classInterface).getPublicMethods(false, true));
+                }
+            }
+            clazz = superclassMethods ? clazz.getSuperclass() : null;
+        }
+        return methods;
+    }
+
+    /**
+     * Finds the public method without parameters of the class or its superclasses
+     * named <code>getField</code>, <code>isField</code> or <code>field</code>, in that order.
+     *
+     * @param fieldName name of the field
+     * @return getter or <code>null</code> if the class does not have it
+     */
+    public Method getGetter(String fieldName) {
+        Method getter = getters.get(fieldName);
+        if (getter == null) {
+            getter = findGetter(fieldName);
+            if (getter == null) {
+                return null;
+            }
+            getters.putIfAbsent(fieldName, getter);
+        }
+        return getter;
+    }
+
+    private Method findGetter(String fieldName) {
+        String capitalized = StringUtils.capitalize(fieldName);
+        for (String name : new String[]{"get" + capitalized, "is" + capitalized, fieldName}) {
+            for (Method method : getPublicMethods(true, false)) {
+                if (method.getName().equals(name) && method.getParameterCount() == 0) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param fieldPath path to the field, separated by dots
+     * @return accessor of the field path, compiled once per class and path
+     */
+    public FieldAccessor getAccessor(String fieldPath) {
+        return accessors.computeIfAbsent(fieldPath, path -> FieldAccessor.compile(clazz, path));
+    }
+
+    public Class<?> getType() {
+        return clazz;
+    }
+}
@@ -1,10 +1,29 @@
 package com.mangeorge.query.helper;
 
+import com.mangeorge.query.filter.NotFilter;
+import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.filter.group.QueryGroupFilter;
+import com.mangeorge.query.filter.single.EqualsFilterWithoutParam;
+import com.mangeorge.query.filter.single.LikeFilterWithoutParam;
+import com.mangeorge.query.filter.single.NVLFilter;
+import com.mangeorge.query.filter.single.SingleFieldFilterImpl;
+import com.mangeorge.query.join.JoinType;
+import com.mangeorge.query.join.QueryJoin;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.type.AbstractStandardBasicType;
 import org.hibernate.type.StandardBasicTypes;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 /**
@@ -14,6 +33,17 @@ import java.util.Date;
  */
 public class HQLBuilderHelper {
 
+    /**
+     * Canonical order of joins that do not depend on each other
+     */
+    private static final Comparator<QueryJoin> JOIN_COMPARATOR = Comparator
+            .comparing(QueryJoin::getJoinType)
+            .thenComparing(QueryJoin::getRootAlias, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(QueryJoin::getRootJoinField, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(QueryJoin::getAdjoiningClassName, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(QueryJoin::getAdjoiningAlias, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(QueryJoin::getAdjoiningJoinField, Comparator.nullsFirst(Comparator.naturalOrder()));
+
     /**
      * @param clazz class for which you want to generate an alias
      * @return generated alias
@@ -57,4 +87,167 @@ public class HQLBuilderHelper {
         return StandardBasicTypes.STRING;
     }
 
+    /**
+     * Orders joins so that logically equal queries render to the same HQL, whatever order the joins were added in.
+     * Outer joins follow the join of the alias they start from, inner joins follow the outer joins of the root alias.
+     * Joins that do not depend on each other are ordered by {@link #JOIN_COMPARATOR}.
+     *
+     * @param joins     joins of the query
+     * @param rootAlias alias of the root entity
+     * @return joins in the order in which they must be added to the query
+     */
+    public static List<QueryJoin> sortJoins(Collection<QueryJoin> joins, String rootAlias) {
+        List<QueryJoin> pending = new ArrayList<>(joins);
+        pending.sort(JOIN_COMPARATOR);
+        List<QueryJoin> sorted = new ArrayList<>(pending.size());
+        addOuterJoins(rootAlias, pending, sorted);
+        while (!pending.isEmpty()) {
+            QueryJoin next = pending.stream()
+                    .filter(join -> join.getJoinType() != JoinType.LEFT_OUTER)
+                    .findFirst()
+                    .orElse(pending.get(0));
+            pending.remove(next);
+            sorted.add(next);
+            addOuterJoins(next.getAdjoiningAlias(), pending, sorted);
+        }
+        return sorted;
+    }
+
+    /**
+     * Moves outer joins starting from the alias and all joins depending on them from {#pending} to {#sorted}.
+     */
+    private static void addOuterJoins(String alias, List<QueryJoin> pending, List<QueryJoin> sorted) {
+        List<QueryJoin> outerJoins = new ArrayList<>();
+        for (QueryJoin join : pending) {
+            if (join.getJoinType() == JoinType.LEFT_OUTER && StringUtils.equals(alias, join.getRootAlias())) {
+                outerJoins.add(join);
+            }
+        }
+        pending.removeAll(outerJoins);
+        for (QueryJoin join : outerJoins) {
+            sorted.add(join);
+            addOuterJoins(join.getAdjoiningAlias(), pending, sorted);
+        }
+    }
+
+
+    /**
+     * Selects joins needed by the query to get the number of rows.
+     * An outer join is not needed, if its alias is not used by the filter or by other needed joins
+     * and it does not change the number of rows: it is a to-one join, or distinct results are counted.
+     * If the aliases used by the filter cannot be determined, all joins are needed.
+     *
+     * @param joins     joins of the query in the order of {@link #sortJoins(Collection, String)}
+     * @param filter    filter of the query
+     * @param rootClass class of the root entity
+     * @param rootAlias alias of the root entity
+     * @param distinct  <code>true</code> if distinct results are counted
+     * @return needed joins in the same order
+     */
+    public static List<QueryJoin> getCountQueryJoins(List<QueryJoin> joins, QueryFilter filter,
+                                                     Class<?> rootClass, String rootAlias, boolean distinct) {
+        Set<String> usedAliases = new HashSet<>();
+        usedAliases.add(rootAlias);
+        if (filter != null && !collectAliases(filter, usedAliases)) {
+            return joins;
+        }
+        Map<String, Class<?>> toOneAliasClasses = getToOneAliasClasses(joins, rootClass, rootAlias);
+        Set<QueryJoin> neededJoins = new HashSet<>();
+        for (QueryJoin join : joins) {
+            if (join.getJoinType() != JoinType.LEFT_OUTER
+                    || !distinct && !toOneAliasClasses.containsKey(join.getAdjoiningAlias())) {
+                neededJoins.add(join);
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (QueryJoin join : neededJoins) {
+                usedAliases.add(join.getRootAlias());
+                usedAliases.add(join.getAdjoiningAlias());
+            }
+            for (QueryJoin join : joins) {
+                if (!neededJoins.contains(join) && usedAliases.contains(join.getAdjoiningAlias())) {
+                    neededJoins.add(join);
+                    changed = true;
+                }
+            }
+        }
+        return joins.stream().filter(neededJoins::contains).collect(Collectors.toList());
+    }
+
+    /**
+     * @param joins     joins of the query in the order of {@link #sortJoins(Collection, String)}
+     * @param rootClass class of the root entity
+     * @param rootAlias alias of the root entity
+     * @return <code>true</code> if some join can return several rows for one root entity.
+     *         Only outer joins by a to-one field of the root entity or of other to-one joins do not multiply rows.
+     */
+    public static boolean canMultiplyRows(List<QueryJoin> joins, Class<?> rootClass, String rootAlias) {
+        Map<String, Class<?>> toOneAliasClasses = getToOneAliasClasses(joins, rootClass, rootAlias);
+        for (QueryJoin join : joins) {
+            if (join.getJoinType() != JoinType.LEFT_OUTER || !toOneAliasClasses.containsKey(join.getAdjoiningAlias())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return classes of the root alias and of aliases joined by to-one fields, by alias
+     */
+    private static Map<String, Class<?>> getToOneAliasClasses(List<QueryJoin> joins, Class<?> rootClass, String rootAlias) {
+        Map<String, Class<?>> aliasClasses = new HashMap<>();
+        aliasClasses.put(rootAlias, rootClass);
+        for (QueryJoin join : joins) {
+            Class<?> joinRootClass = aliasClasses.get(join.getRootAlias());
+            if (join.getJoinType() == JoinType.LEFT_OUTER && joinRootClass != null) {
+                Field field = ReflectionHelper.getFieldByFieldName(join.getRootJoinField(), joinRootClass);
+                if (field != null && !field.getType().isArray() && !Collection.class.isAssignableFrom(field.getType())
+                        && !Map.class.isAssignableFrom(field.getType())) {
+                    aliasClasses.put(join.getAdjoiningAlias(), field.getType());
+                }
+            }
+        }
+        return aliasClasses;
+    }
+
+    /**
+     * Collects aliases used by the filter. For fields without an alias, the first element of the field path
+     * is considered an alias.
+     *
+     * @param filter  filter of the query
+     * @param aliases set to which aliases are added
+     * @return <code>false</code> if the filter can use aliases that cannot be determined,
+     *         for example in the value of {@link EqualsFilterWithoutParam} or in a sub-query
+     */
+    public static boolean collectAliases(QueryFilter filter, Set<String> aliases) {
+        if (filter instanceof QueryGroupFilter) {
+            for (QueryFilter subFilter : ((QueryGroupFilter) filter).getFilters()) {
+                if (!collectAliases(subFilter, aliases)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (filter instanceof NotFilter) {
+            return collectAliases(((NotFilter) filter).getFilter(), aliases);
+        }
+        if (filter instanceof NVLFilter) {
+            return collectAliases(((NVLFilter<?>) filter).getFilter(), aliases);
+        }
+        if (filter instanceof EqualsFilterWithoutParam || filter instanceof LikeFilterWithoutParam
+                || !(filter instanceof SingleFieldFilterImpl)) {
+            return false;
+        }
+        SingleFieldFilterImpl<?> singleFilter = (SingleFieldFilterImpl<?>) filter;
+        if (singleFilter.getFieldName() == null) {
+            return false;
+        }
+        if (StringUtils.isNotBlank(singleFilter.getAlias())) {
+            aliases.add(singleFilter.getAlias());
+        }
+        aliases.add(StringUtils.substringBefore(singleFilter.getFieldName(), "."));
+        return true;
+    }
 }
\ No newline at end of file
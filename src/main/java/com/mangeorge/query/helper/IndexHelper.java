@@ -9,8 +9,12 @@ import java.lang.reflect.Field;
  */
 public class IndexHelper {
 
+    /**
+     * @param field field with the annotation {@link org.apache.solr.client.solrj.beans.Field}
+     * @return name of the field in Solr, cached in {@link ClassMetadata}
+     */
     public static String getSolrFieldName(Field field) {
-        return field.getAnnotation(org.apache.solr.client.solrj.beans.Field.class).value();
+        return ClassMetadata.of(field.getDeclaringClass()).getSolrFieldName(field);
     }
 
 }
@@ -1,15 +1,12 @@
 package com.mangeorge.query.helper;
 
 import org.apache.commons.lang3.StringUtils;
-import org.hibernate.AnnotationException;
 
 import javax.management.AttributeNotFoundException;
-import javax.persistence.Id;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -30,27 +27,18 @@ public class ReflectionHelper {
      * @return list of fields with annotation {#annotationClass}
      */
     public static List<Field> getFieldsWithAnnotation(Class<?> clazz, Class<? extends Annotation> annotationClass) {
-        List<Field> result = new ArrayList<>();
-        while (clazz != null) {
-            for (Field f : clazz.getDeclaredFields()) {
-                if (f.isAnnotationPresent(annotationClass)) {
-                    result.add(f);
-                }
-            }
-            clazz = clazz.getSuperclass();
+        if (clazz == null) {
+            return new ArrayList<>();
         }
-        return result;
+        return new ArrayList<>(ClassMetadata.of(clazz).getFieldsWithAnnotation(annotationClass));
     }
 
     /**
      * @param clazz class whose id field is to be found
-     * @return field name of entity is marked with an annotation {@link Id}
+     * @return field name of entity is marked with an annotation {@link javax.persistence.Id}
      */
     public static <T> String getIdFieldName(Class<T> clazz) {
-        List<Field> fields = ReflectionHelper.getFieldsWithAnnotation(clazz, Id.class);
-        if (!fields.isEmpty())
-            return fields.get(0).getName();
-        throw new AnnotationException("Id annotation not present in class " + clazz.getSimpleName());
+        return ClassMetadata.of(clazz).getIdFieldName();
     }
 
 
@@ -67,15 +55,7 @@ public class ReflectionHelper {
      * @return {@link Field} object or <code>null</code> if field not be found
      */
     public static Field getFieldByFieldName(String fieldName, Class<?> clazz) {
-        while (clazz != null) {
-            for (Field field : clazz.getDeclaredFields()) {
-                if (field.getName().equals(fieldName)) {
-                    return field;
-                }
-            }
-            clazz = clazz.getSuperclass();
-        }
-        return null;
+        return clazz == null ? null : ClassMetadata.of(clazz).getField(fieldName);
     }
 
     /**
@@ -90,22 +70,16 @@ public class ReflectionHelper {
      */
     public static Object getValueByFieldPath(Object obj, String fieldPath)
             throws AttributeNotFoundException, InvocationTargetException, IllegalAccessException {
-        FIELD: for (String dynamicField : fieldPath.split("\\.")) {
-            Set<Method> declaredMethods = getAllDeclaredMethods(obj.getClass(), true, false);
-            for (Method declaredMethod : declaredMethods) {
-                if (declaredMethod.getName().equals(dynamicField)
-                        || declaredMethod.getName().equals("get" + StringUtils.capitalize(dynamicField))
-                        || declaredMethod.getName().equals("is" + StringUtils.capitalize(dynamicField))) {
-                    obj = declaredMethod.invoke(obj);
-                    if (obj == null) {
-                        return null;
-                    } else {
-                        continue FIELD;
-                    }
-                }
+        for (String dynamicField : fieldPath.split("\\.")) {
+            Method getter = ClassMetadata.of(obj.getClass()).getGetter(dynamicField);
+            if (getter == null) {
+                throw new AttributeNotFoundException("Class " + obj.getClass().getName()
+                        + " not have public method with name " + dynamicField + " or get" + StringUtils.capitalize(dynamicField));
+            }
+            obj = getter.invoke(obj);
+            if (obj == null) {
+                return null;
             }
-            throw new AttributeNotFoundException("Class " + obj.getClass().getName()
-                    + " not have public method with name " + dynamicField + " or get" + StringUtils.capitalize(dynamicField));
         }
         return obj;
     }
@@ -117,21 +91,10 @@ public class ReflectionHelper {
      * @return set of all public methods in class {#clazz} and his parent classes
      */
     public static Set<Method> getAllDeclaredMethods(Class<?> clazz, boolean getSuperclassMethods, boolean getInterfacesMethods) {
-        Set<Method> methods = new HashSet<>();
-        while (clazz != null) {
-            for (Method method : clazz.getDeclaredMethods()) {
-                if (Modifier.isPublic(method.getModifiers())) {
-                    methods.add(method);
-                }
-            }
-            if (getInterfacesMethods) {
-                for (Class<?> classInterface : clazz.getInterfaces()) {
-                    methods.addAll(getAllDeclaredMethods(classInterface, false, true));
-                }
-            }
-            clazz = getSuperclassMethods ? clazz.getSuperclass() : null;
+        if (clazz == null) {
+            return new HashSet<>();
         }
-        return methods;
+        return new HashSet<>(ClassMetadata.of(clazz).getPublicMethods(getSuperclassMethods, getInterfacesMethods));
     }
 
 }
@@ -1,8 +1,13 @@
 package com.mangeorge.query.join;
 
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.DetachedCriteria;
 
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Predicate;
 import java.lang.reflect.Field;
 import java.util.Objects;
 
@@ -45,6 +50,11 @@ public class QueryJoin {
      */
     private String adjoiningJoinField;
 
+    /**
+     * Fingerprint computed once, it is reset when an alias is changed
+     */
+    private QueryFingerprint fingerprint;
+
 
     /**
      * Create join for classes. For binding, used join type {#joinType}.
@@ -322,6 +332,44 @@ public class QueryJoin {
         return criteria;
     }
 
+    /**
+     * Adds the join to the JPA criteria query. The outer join is added as the join of the root alias,
+     * the inner join is added as one more root of the query with the join condition.
+     *
+     * @param context context of the query
+     * @return join condition or <code>null</code> if the join does not have a condition
+     */
+    public Predicate addToJpaQuery(JpaQueryContext context) {
+        if (JoinType.INNER.equals(joinType)) {
+            context.addFrom(adjoiningAlias, context.getQuery().from(context.getEntityClass(adjoiningClassName)));
+            return context.getCriteriaBuilder().equal(context.getPath(rootAlias, rootJoinField),
+                    context.getPath(adjoiningAlias, adjoiningJoinField));
+        } else if (JoinType.LEFT_OUTER.equals(joinType)) {
+            From<?, ?> root = context.getFrom(rootAlias);
+            context.addFrom(adjoiningAlias, root.join(rootJoinField, javax.persistence.criteria.JoinType.LEFT));
+        }
+        return null;
+    }
+
+    /**
+     * Appends the join to the native SQL query. The outer join is joined by the mapping of the association,
+     * the inner join is added as <code>cross join</code> with the join condition for the block <code>where</code>.
+     *
+     * @param sql     builder of the SQL string
+     * @param context context of the query
+     * @return join condition or <code>null</code> if the join does not have a condition
+     */
+    public String appendSQLJoin(StringBuilder sql, SqlQueryContext context) {
+        if (JoinType.INNER.equals(joinType)) {
+            String tableAlias = context.addEntity(adjoiningAlias, adjoiningClassName);
+            sql.append(" cross join ").append(context.getTableName(adjoiningAlias)).append(' ').append(tableAlias);
+            return context.getColumn(rootAlias, rootJoinField) + " = " + context.getColumn(adjoiningAlias, adjoiningJoinField);
+        } else if (JoinType.LEFT_OUTER.equals(joinType)) {
+            context.appendJoin(sql, "left outer join", rootAlias, rootJoinField, adjoiningAlias);
+        }
+        return null;
+    }
+
     public JoinType getJoinType() {
         return joinType;
     }
@@ -332,6 +380,7 @@ public class QueryJoin {
 
     public void setRootAlias(String rootAlias) {
         this.rootAlias = rootAlias;
+        fingerprint = null;
     }
 
     public String getRootJoinField() {
@@ -348,12 +397,30 @@ public class QueryJoin {
 
     public void setAdjoiningAlias(String adjoiningAlias) {
         this.adjoiningAlias = adjoiningAlias;
+        fingerprint = null;
     }
 
     public String getAdjoiningJoinField() {
         return adjoiningJoinField;
     }
 
+    /**
+     * @return fingerprint of the join, computed from the same fields as {@link #equals(Object)}
+     */
+    public QueryFingerprint getFingerprint() {
+        if (fingerprint == null) {
+            fingerprint = QueryFingerprint.hasher()
+                    .putString(joinType.name())
+                    .putString(rootAlias)
+                    .putString(rootJoinField)
+                    .putString(adjoiningClassName)
+                    .putString(adjoiningAlias)
+                    .putString(adjoiningJoinField)
+                    .build();
+        }
+        return fingerprint;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
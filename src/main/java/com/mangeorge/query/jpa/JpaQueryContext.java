@@ -0,0 +1,182 @@
+package com.mangeorge.query.jpa;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Context of building a JPA criteria query: the query or subquery being built and its roots and joins by alias.
+ * Aliases of the outer query are visible in subqueries.
+ * Parameters are created with the same names as in the HQL query, so the parameters are set by
+ * {@link com.mangeorge.query.filter.QueryFilter#setHQLParams(org.hibernate.query.Query)}.
+ */
+@SuppressWarnings("unused")
+public class JpaQueryContext {
+
+    private final CriteriaBuilder criteriaBuilder;
+    private final Metamodel metamodel;
+    private final AbstractQuery<?> query;
+    private final JpaQueryContext parent;
+    private final Map<String, From<?, ?>> froms = new HashMap<>();
+    private String rootAlias;
+
+
+    /**
+     * @param criteriaBuilder builder of the criteria query
+     * @param metamodel       metamodel to find entity classes by name
+     * @param query           query that is being built
+     */
+    public JpaQueryContext(CriteriaBuilder criteriaBuilder, Metamodel metamodel, AbstractQuery<?> query) {
+        this(criteriaBuilder, metamodel, query, null);
+    }
+
+    private JpaQueryContext(CriteriaBuilder criteriaBuilder, Metamodel metamodel, AbstractQuery<?> query,
+                            JpaQueryContext parent) {
+        this.criteriaBuilder = criteriaBuilder;
+        this.metamodel = metamodel;
+        this.query = query;
+        this.parent = parent;
+    }
+
+
+    /**
+     * @param subquery subquery of this query
+     * @return context of the subquery
+     */
+    public JpaQueryContext createSubqueryContext(Subquery<?> subquery) {
+        return new JpaQueryContext(criteriaBuilder, metamodel, subquery, this);
+    }
+
+    /**
+     * Adds the root or join to the context. The alias is also set to the root or join,
+     * so aliases of the rendered query do not depend on the rendering.
+     *
+     * @param alias alias of the root or join
+     * @param from  root or join
+     */
+    public void addFrom(String alias, From<?, ?> from) {
+        from.alias(alias);
+        froms.put(alias, from);
+        if (rootAlias == null) {
+            rootAlias = alias;
+        }
+    }
+
+    /**
+     * @param alias alias of the root or join
+     * @return root or join of this query or the outer queries
+     * @throws IllegalArgumentException if the alias is unknown
+     */
+    public From<?, ?> getFrom(String alias) {
+        for (JpaQueryContext context = this; context != null; context = context.parent) {
+            From<?, ?> from = context.froms.get(alias);
+            if (from != null) {
+                return from;
+            }
+        }
+        throw new IllegalArgumentException("Unknown alias " + alias);
+    }
+
+    /**
+     * @param alias     alias of the root or join, the root of the query if it is blank
+     * @param fieldPath path to the field, separated by dots
+     * @return path to the field
+     */
+    public Path<?> getPath(String alias, String fieldPath) {
+        Path<?> path = getFrom(StringUtils.isBlank(alias) ? rootAlias : alias);
+        for (String field : fieldPath.split("\\.")) {
+            path = path.get(field);
+        }
+        return path;
+    }
+
+    /**
+     * @param type parameter type
+     * @param name parameter name
+     * @param <T>  parameter type
+     * @return parameter of the query
+     */
+    public <T> ParameterExpression<T> parameter(Class<T> type, String name) {
+        return criteriaBuilder.parameter(type, name);
+    }
+
+    /**
+     * Converts a value of the filters without parameters to an expression.
+     * The value can be a path with a known alias, a number or a string in single quotes.
+     *
+     * @param value part of the HQL expression
+     * @return expression of the value
+     * @throws RuntimeException if the value is not supported
+     */
+    public Expression<?> getExpression(String value) {
+        String trimmed = value.trim();
+        int dot = trimmed.indexOf('.');
+        if (dot > 0 && hasAlias(trimmed.substring(0, dot))) {
+            return getPath(trimmed.substring(0, dot), trimmed.substring(dot + 1));
+        }
+        if (NumberUtils.isCreatable(trimmed)) {
+            return criteriaBuilder.literal(NumberUtils.createNumber(trimmed));
+        }
+        if (trimmed.length() > 1 && trimmed.startsWith("'") && trimmed.endsWith("'")) {
+            return criteriaBuilder.literal(trimmed.substring(1, trimmed.length() - 1).replace("''", "'"));
+        }
+        throw new RuntimeException("JPA criteria not support expression " + value);
+    }
+
+    private boolean hasAlias(String alias) {
+        for (JpaQueryContext context = this; context != null; context = context.parent) {
+            if (context.froms.containsKey(alias)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param entityName name of the entity
+     * @return class of the entity
+     * @throws IllegalArgumentException if the entity is unknown
+     */
+    public Class<?> getEntityClass(String entityName) {
+        for (EntityType<?> entity : metamodel.getEntities()) {
+            if (entity.getName().equals(entityName)) {
+                return entity.getJavaType();
+            }
+        }
+        throw new IllegalArgumentException("Unknown entity " + entityName);
+    }
+
+    public CriteriaBuilder getCriteriaBuilder() {
+        return criteriaBuilder;
+    }
+
+    public Metamodel getMetamodel() {
+        return metamodel;
+    }
+
+    /**
+     * @return query or subquery that is being built
+     */
+    public AbstractQuery<?> getQuery() {
+        return query;
+    }
+
+    /**
+     * @return alias of the first root of the query
+     */
+    public String getRootAlias() {
+        return rootAlias;
+    }
+}
@@ -0,0 +1,65 @@
+package com.mangeorge.query.memory;
+
+
+/**
+ * Condition of a filter, compiled for objects in memory.
+ * The condition has the three-valued logic of SQL: a comparison with <code>null</code> is unknown,
+ * the negation of unknown is unknown, and only objects with the true condition match the query.
+ */
+@FunctionalInterface
+public interface Condition {
+
+    /**
+     * @param object object of the root entity
+     * @return {@link Boolean#TRUE}, {@link Boolean#FALSE} or <code>null</code> if the result is unknown
+     */
+    Boolean test(Object object);
+
+    /**
+     * @return condition, which is true when this condition is false, and unknown when this condition is unknown
+     */
+    default Condition negate() {
+        return object -> {
+            Boolean result = test(object);
+            return result == null ? null : !result;
+        };
+    }
+
+    /**
+     * @param conditions conditions, which are joined by 'AND'
+     * @return condition, which is false if one of the conditions is false, otherwise unknown if one is unknown
+     */
+    static Condition and(Condition... conditions) {
+        return object -> {
+            boolean unknown = false;
+            for (Condition condition : conditions) {
+                Boolean result = condition.test(object);
+                if (result == null) {
+                    unknown = true;
+                } else if (!result) {
+                    return false;
+                }
+            }
+            return unknown ? null : true;
+        };
+    }
+
+    /**
+     * @param conditions conditions, which are joined by 'OR'
+     * @return condition, which is true if one of the conditions is true, otherwise unknown if one is unknown
+     */
+    static Condition or(Condition... conditions) {
+        return object -> {
+            boolean unknown = false;
+            for (Condition condition : conditions) {
+                Boolean result = condition.test(object);
+                if (result == null) {
+                    unknown = true;
+                } else if (result) {
+                    return true;
+                }
+            }
+            return unknown ? null : false;
+        };
+    }
+}
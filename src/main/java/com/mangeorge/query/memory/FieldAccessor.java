@@ -0,0 +1,162 @@
+package com.mangeorge.query.memory;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+
+
+/**
+ * Accessor of the value by the path to the field, which is resolved once by the declared types of the path.
+ * Every getter is called through a function generated by {@link LambdaMetafactory}, so reading the value
+ * costs as much as direct calls of the getters. If the function cannot be generated, the getter is called
+ * through its {@link MethodHandle}. Public fields without getters are read through their {@link MethodHandle}.
+ * <p>
+ * If a value in the middle of the path is <code>null</code>, then the value of the path is <code>null</code>.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class FieldAccessor implements Function<Object, Object> {
+
+    private final String fieldPath;
+    private final Class<?> valueType;
+    private final Function<Object, Object>[] getters;
+
+
+    @SuppressWarnings("unchecked")
+    private FieldAccessor(Class<?> clazz, String fieldPath) {
+        this.fieldPath = fieldPath;
+        String[] fields = fieldPath.split("\\.");
+        getters = (Function<Object, Object>[]) new Function<?, ?>[fields.length];
+        Class<?> type = clazz;
+        for (int i = 0; i < fields.length; i++) {
+            Method getter = findGetter(type, fields[i]);
+            if (getter != null) {
+                getters[i] = createGetter(getter);
+                type = getter.getReturnType();
+            } else {
+                Field field = findField(type, fields[i]);
+                getters[i] = createGetter(field);
+                type = field.getType();
+            }
+        }
+        valueType = type;
+    }
+
+
+    /**
+     * @param clazz     class of objects, whose value is read
+     * @param fieldPath path to the field, separated by dots
+     * @return accessor of the value
+     * @throws IllegalArgumentException if a field of the path does not have a public getter or is not public
+     */
+    public static FieldAccessor compile(Class<?> clazz, String fieldPath) {
+        return new FieldAccessor(clazz, fieldPath);
+    }
+
+    /**
+     * @param object object, whose value is read
+     * @return value of the path or <code>null</code> if a value of the path is <code>null</code>
+     */
+    @Override
+    public Object apply(Object object) {
+        Object value = object;
+        for (Function<Object, Object> getter : getters) {
+            if (value == null) {
+                return null;
+            }
+            value = getter.apply(value);
+        }
+        return value;
+    }
+
+    public String getFieldPath() {
+        return fieldPath;
+    }
+
+    /**
+     * @return declared type of the last field of the path, primitive types are not boxed
+     */
+    public Class<?> getValueType() {
+        return valueType;
+    }
+
+    private static Method findGetter(Class<?> clazz, String field) {
+        String capitalized = StringUtils.capitalize(field);
+        for (String name : new String[]{"get" + capitalized, "is" + capitalized, field}) {
+            try {
+                Method method = clazz.getMethod(name);
+                if (method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) {
+                // the next name is checked
+            }
+        }
+        return null;
+    }
+
+    private static Field findField(Class<?> clazz, String field) {
+        try {
+            return clazz.getField(field);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " not have public method with name "
+                    + field + " or get" + StringUtils.capitalize(field) + " or public field " + field, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> createGetter(Method getter) {
+        MethodHandle handle;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(getter.getDeclaringClass(), MethodHandles.lookup());
+            handle = lookup.unreflect(getter);
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class), handle, handle.type().wrap());
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable e) {
+                // the getter is called through the method handle
+            }
+        } catch (IllegalAccessException e) {
+            try {
+                handle = MethodHandles.publicLookup().unreflect(getter);
+            } catch (IllegalAccessException publicAccessException) {
+                throw new IllegalArgumentException("Method " + getter + " is not accessible", publicAccessException);
+            }
+        }
+        return invoker(handle.asType(MethodType.methodType(Object.class, Object.class)));
+    }
+
+    private static Function<Object, Object> createGetter(Field field) {
+        try {
+            return invoker(MethodHandles.publicLookup().unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class)));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Field " + field + " is not accessible", e);
+        }
+    }
+
+    private static Function<Object, Object> invoker(MethodHandle handle) {
+        return object -> {
+            try {
+                return handle.invokeExact(object);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot get value of " + handle, e);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return fieldPath;
+    }
+}
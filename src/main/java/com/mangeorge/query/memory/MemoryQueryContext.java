@@ -0,0 +1,188 @@
+package com.mangeorge.query.memory;
+
+import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.helper.ClassMetadata;
+import com.mangeorge.query.helper.HQLBuilderHelper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.math.BigDecimal;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+
+/**
+ * Context of compiling a filter to a predicate of objects in memory.
+ * Only fields of the root entity can be used, joined aliases are not supported.
+ * Accessors of the fields are resolved once per class and field path and are shared by compiled predicates
+ * through {@link ClassMetadata}, so the compiled predicate does not use reflection.
+ * <p>
+ * Values are compared the same way as in the database: numbers of different classes are compared by value,
+ * and a comparison with <code>null</code> is unknown, see {@link Condition}.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class MemoryQueryContext {
+
+    private final Class<?> rootClass;
+    private final String rootAlias;
+
+
+    /**
+     * @param rootClass class of the root entity
+     */
+    public MemoryQueryContext(Class<?> rootClass) {
+        this(rootClass, HQLBuilderHelper.generateAliasForClass(rootClass));
+    }
+
+    /**
+     * @param rootClass class of the root entity
+     * @param rootAlias alias of the root entity in the filters
+     */
+    public MemoryQueryContext(Class<?> rootClass, String rootAlias) {
+        this.rootClass = rootClass;
+        this.rootAlias = rootAlias;
+    }
+
+
+    /**
+     * Compiles the filter to the predicate, which is true for objects matched by the query with the filter.
+     * The predicate can be shared across threads.
+     *
+     * @param filter    filter tree or <code>null</code> to match all objects
+     * @param rootClass class of the root entity, its alias is generated by {@link HQLBuilderHelper#generateAliasForClass}
+     * @param <T>       type of the root entity
+     * @return predicate of objects
+     * @throws RuntimeException if the filter is not supported in memory
+     */
+    public static <T> Predicate<T> compile(QueryFilter filter, Class<T> rootClass) {
+        if (filter == null) {
+            return object -> true;
+        }
+        Condition condition = filter.toCondition(new MemoryQueryContext(rootClass));
+        return condition == null ? object -> true : object -> Boolean.TRUE.equals(condition.test(object));
+    }
+
+    /**
+     * @param alias     alias of the entity, the root of the query if it is blank
+     * @param fieldPath path to the field, separated by dots
+     * @return accessor of the field value
+     * @throws RuntimeException if the alias is not the root alias
+     */
+    public FieldAccessor getField(String alias, String fieldPath) {
+        if (StringUtils.isNotBlank(alias) && !alias.equals(rootAlias)) {
+            throw new RuntimeException("In-memory predicate not support alias " + alias);
+        }
+        return ClassMetadata.of(rootClass).getAccessor(fieldPath);
+    }
+
+    /**
+     * Converts a value of the filters without parameters to a function of the object.
+     * The value can be a path with the root alias, a number or a string in single quotes.
+     *
+     * @param value part of the HQL expression
+     * @return function of the object
+     * @throws RuntimeException if the value is not supported
+     */
+    public Function<Object, Object> getExpression(String value) {
+        String trimmed = value.trim();
+        int dot = trimmed.indexOf('.');
+        if (dot > 0 && trimmed.substring(0, dot).equals(rootAlias)) {
+            return getField(rootAlias, trimmed.substring(dot + 1));
+        }
+        if (NumberUtils.isCreatable(trimmed)) {
+            Number number = NumberUtils.createNumber(trimmed);
+            return object -> number;
+        }
+        if (trimmed.length() > 1 && trimmed.startsWith("'") && trimmed.endsWith("'")) {
+            String string = trimmed.substring(1, trimmed.length() - 1).replace("''", "'");
+            return object -> string;
+        }
+        throw new RuntimeException("In-memory predicate not support expression " + value);
+    }
+
+    /**
+     * @param value part of the HQL expression
+     * @return <code>true</code> if the value does not depend on the object, see {@link #getExpression(String)}
+     */
+    public boolean isConstant(String value) {
+        String trimmed = value.trim();
+        int dot = trimmed.indexOf('.');
+        return dot <= 0 || !trimmed.substring(0, dot).equals(rootAlias);
+    }
+
+    /**
+     * @return <code>null</code> if one of the values is <code>null</code>, otherwise whether the values are equal
+     */
+    public static Boolean equal(Object value, Object other) {
+        if (value == null || other == null) {
+            return null;
+        }
+        if (isComparable(value, other)) {
+            return compare(value, other) == 0;
+        }
+        return value.equals(other);
+    }
+
+    /**
+     * @return <code>null</code> if one of the values is <code>null</code>, otherwise the result of the comparison
+     * @throws ClassCastException if the values are not comparable
+     */
+    @SuppressWarnings("unchecked")
+    public static Integer compare(Object value, Object other) {
+        if (value == null || other == null) {
+            return null;
+        }
+        if (value instanceof Number && other instanceof Number && value.getClass() != other.getClass()) {
+            return new BigDecimal(value.toString()).compareTo(new BigDecimal(other.toString()));
+        }
+        return ((Comparable<Object>) value).compareTo(other);
+    }
+
+    private static boolean isComparable(Object value, Object other) {
+        if (value instanceof Number && other instanceof Number) {
+            return true;
+        }
+        return value instanceof Comparable
+                && (value.getClass().isInstance(other) || other.getClass().isInstance(value));
+    }
+
+    /**
+     * Converts the pattern of the LIKE operator to the regular expression:
+     * '%' matches any symbols, '_' matches any symbol, and the escape character makes the next symbol literal.
+     *
+     * @param likeValue  pattern of the LIKE operator
+     * @param escapeChar escape character
+     * @return regular expression
+     */
+    public static Pattern likePattern(String likeValue, char escapeChar) {
+        StringBuilder regex = new StringBuilder(likeValue.length() + 16);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < likeValue.length(); i++) {
+            char c = likeValue.charAt(i);
+            if (c == escapeChar && i + 1 < likeValue.length()) {
+                literal.append(likeValue.charAt(++i));
+            } else if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    public Class<?> getRootClass() {
+        return rootClass;
+    }
+
+    public String getRootAlias() {
+        return rootAlias;
+    }
+}
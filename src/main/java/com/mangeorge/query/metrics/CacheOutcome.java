@@ -0,0 +1,23 @@
+package com.mangeorge.query.metrics;
+
+
+/**
+ * Outcome of the lookup of the query result in the result cache
+ */
+public enum CacheOutcome {
+
+    /**
+     * The result was taken from the cache
+     */
+    HIT,
+
+    /**
+     * The result was not in the cache and the query was executed
+     */
+    MISS,
+
+    /**
+     * The cache was not used for the query
+     */
+    NOT_USED
+}
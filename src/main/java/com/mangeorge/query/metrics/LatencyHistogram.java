@@ -0,0 +1,128 @@
+package com.mangeorge.query.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Lock-free histogram of durations in nanoseconds with log-linear buckets, the same layout as HdrHistogram:
+ * values below {#SUB_BUCKET_COUNT} have their own buckets, and every next power of two is split into
+ * {#SUB_BUCKET_COUNT} / 2 buckets of equal width. So a percentile is no more than 1/16 (6.25%) above the exact value,
+ * whatever the magnitude, and the histogram takes a fixed amount of memory.
+ * <p>
+ * Values are recorded by atomic increments without locks. Reading is not atomic with recording,
+ * so a percentile read during recording may miss the values being recorded.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    /**
+     * Maximum tracked value, about 73 minutes. Greater values are recorded as this value.
+     */
+    public static final long MAX_VALUE = (1L << 42) - 1;
+
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+
+    /**
+     * @param value duration in nanoseconds, negative values are recorded as <code>0</code>
+     */
+    public void record(long value) {
+        long recorded = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(recorded));
+        totalCount.increment();
+        totalValue.add(recorded);
+        long max = maxValue.get();
+        while (recorded > max && !maxValue.compareAndSet(max, recorded)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * @param percentile percentile from <code>0</code> to <code>100</code>
+     * @return the highest value of the bucket containing the percentile, or <code>0</code> if nothing is recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long max = maxValue.get();
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getTotal() {
+        return totalValue.sum();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * @return mean of the recorded values, or <code>0</code> if nothing is recorded
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalValue.sum() / count;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalValue.reset();
+        maxValue.set(0);
+    }
+
+    /**
+     * The bucket is chosen by the highest bit of the value and the next {#SUB_BUCKET_BITS} - 1 bits
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT
+                + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = index - SUB_BUCKET_COUNT;
+        int shift = bucket / SUB_BUCKET_HALF_COUNT + 1;
+        long lowestValue = (long) (SUB_BUCKET_HALF_COUNT + bucket % SUB_BUCKET_HALF_COUNT) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,33 @@
+package com.mangeorge.query.metrics;
+
+
+/**
+ * Engine, which executes the query
+ */
+public enum QueryEngine {
+
+    /**
+     * HQL query, see {@link com.mangeorge.query.EntityQuery#getHQLQuery()}
+     */
+    HQL,
+
+    /**
+     * Hibernate criteria, see {@link com.mangeorge.query.EntityQuery#getDetachedCriteria()}
+     */
+    CRITERIA,
+
+    /**
+     * JPA criteria query, see {@link com.mangeorge.query.EntityQuery#isUseJpaCriteriaQuery()}
+     */
+    JPA_CRITERIA,
+
+    /**
+     * Native SQL query, see {@link com.mangeorge.query.EntityQuery#isUseSQLQuery()}
+     */
+    SQL,
+
+    /**
+     * Query to the index application, see {@link com.mangeorge.query.SolrBuilder}
+     */
+    SOLR
+}
@@ -0,0 +1,202 @@
+package com.mangeorge.query.metrics;
+
+import com.mangeorge.query.QueryFingerprint;
+
+
+/**
+ * Immutable event of the executed query. The query is identified by the fingerprint of its shape and the engine,
+ * so executions of the same query with different parameter values are aggregated together.
+ * <p>
+ * The build time is spent on rendering the query by the builder, usually it is taken from the template cache.
+ * The render time is spent on creating the executable query in the session and setting its parameters.
+ * The execution time is spent in the database or the index application, and on loading the results.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class QueryEvent {
+
+    private final QueryFingerprint fingerprint;
+    private final QueryEngine engine;
+    private final boolean countQuery;
+    private final String query;
+    private final long buildNanos;
+    private final long renderNanos;
+    private final long executeNanos;
+    private final long rowCount;
+    private final CacheOutcome cacheOutcome;
+    private final boolean failed;
+
+
+    private QueryEvent(Builder builder) {
+        fingerprint = builder.fingerprint;
+        engine = builder.engine;
+        countQuery = builder.countQuery;
+        query = builder.query;
+        buildNanos = builder.buildNanos;
+        renderNanos = builder.renderNanos;
+        executeNanos = builder.executeNanos;
+        rowCount = builder.rowCount;
+        cacheOutcome = builder.cacheOutcome;
+        failed = builder.failed;
+    }
+
+
+    public static Builder builder(QueryEngine engine) {
+        return new Builder(engine);
+    }
+
+    /**
+     * @return fingerprint of the query shape
+     */
+    public QueryFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    public QueryEngine getEngine() {
+        return engine;
+    }
+
+    public boolean isCountQuery() {
+        return countQuery;
+    }
+
+    /**
+     * @return rendered query without parameter values, or <code>null</code> if the engine has no query string
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    public long getRenderNanos() {
+        return renderNanos;
+    }
+
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * @return sum of the build, render and execution times
+     */
+    public long getTotalNanos() {
+        return buildNanos + renderNanos + executeNanos;
+    }
+
+    /**
+     * @return number of returned objects, the counted number for the count query, or <code>-1</code> if unknown
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public CacheOutcome getCacheOutcome() {
+        return cacheOutcome;
+    }
+
+    /**
+     * @return <code>true</code> if the query threw an exception
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return engine + " " + fingerprint + " build=" + buildNanos + "ns render=" + renderNanos
+                + "ns execute=" + executeNanos + "ns rows=" + rowCount + " cache=" + cacheOutcome
+                + (failed ? " failed" : "");
+    }
+
+
+    /**
+     * Collects timings of the query while it is executed. Times of the same phase are added up,
+     * for example the time of fetching every row of the streamed query.
+     */
+    public static final class Builder {
+
+        private QueryFingerprint fingerprint;
+        private QueryEngine engine;
+        private boolean countQuery;
+        private String query;
+        private long buildNanos;
+        private long renderNanos;
+        private long executeNanos;
+        private long rowCount = -1;
+        private CacheOutcome cacheOutcome = CacheOutcome.NOT_USED;
+        private boolean failed;
+
+
+        private Builder(QueryEngine engine) {
+            this.engine = engine;
+        }
+
+
+        public Builder setFingerprint(QueryFingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+            return this;
+        }
+
+        public Builder setEngine(QueryEngine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        public Builder setCountQuery(boolean countQuery) {
+            this.countQuery = countQuery;
+            return this;
+        }
+
+        public Builder setQuery(String query) {
+            this.query = query;
+            return this;
+        }
+
+        public Builder addBuildNanos(long nanos) {
+            buildNanos += nanos;
+            return this;
+        }
+
+        public Builder addRenderNanos(long nanos) {
+            renderNanos += nanos;
+            return this;
+        }
+
+        public Builder addExecuteNanos(long nanos) {
+            executeNanos += nanos;
+            return this;
+        }
+
+        public Builder setRowCount(long rowCount) {
+            this.rowCount = rowCount;
+            return this;
+        }
+
+        public Builder setCacheOutcome(CacheOutcome cacheOutcome) {
+            this.cacheOutcome = cacheOutcome;
+            return this;
+        }
+
+        public Builder setFailed(boolean failed) {
+            this.failed = failed;
+            return this;
+        }
+
+        public QueryFingerprint getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * @return immutable event
+         * @throws IllegalStateException if the fingerprint is not set
+         */
+        public QueryEvent build() {
+            if (fingerprint == null) {
+                throw new IllegalStateException("Fingerprint of the query event is not set");
+            }
+            return new QueryEvent(this);
+        }
+    }
+}
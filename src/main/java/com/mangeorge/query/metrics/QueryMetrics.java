@@ -0,0 +1,54 @@
+package com.mangeorge.query.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Registry of {@link QueryMetricsListener}s, to which executors publish {@link QueryEvent}s.
+ * While no listener is registered, executors do not compute fingerprints and do not publish events.
+ * A failure of a listener is logged and does not fail the query.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class QueryMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryMetrics.class);
+
+    private static final List<QueryMetricsListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+
+    private QueryMetrics() {
+    }
+
+
+    public static void addListener(QueryMetricsListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(QueryMetricsListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * @return <code>true</code> if at least one listener is registered
+     */
+    public static boolean isEnabled() {
+        return !LISTENERS.isEmpty();
+    }
+
+    /**
+     * @param event event of the executed query
+     */
+    public static void publish(QueryEvent event) {
+        for (QueryMetricsListener listener : LISTENERS) {
+            try {
+                listener.onQuery(event);
+            } catch (RuntimeException e) {
+                log.warn("query metrics listener {} failed", listener, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.mangeorge.query.metrics;
+
+import com.mangeorge.query.QueryFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+
+/**
+ * Listener, which aggregates events into {@link QueryStatistics} by the query shape and engine.
+ * No more than {#maxShapes} shapes are aggregated, events of further shapes are counted as dropped,
+ * so the memory does not grow with the number of distinct queries.
+ * <p>
+ * When registered in the MBean server, the aggregator is exported as
+ * <code>com.mangeorge.query:type=QueryMetrics,name={#name}</code>, and every shape as
+ * <code>com.mangeorge.query:type=QueryStatistics,name={#name},engine=...,fingerprint=...</code>.
+ * Usage:
+ * <pre>
+ * QueryMetricsAggregator aggregator = new QueryMetricsAggregator("default");
+ * aggregator.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+ * QueryMetrics.addListener(aggregator);
+ * </pre>
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class QueryMetricsAggregator implements QueryMetricsListener, QueryMetricsAggregatorMXBean {
+
+    public static final String DOMAIN = "com.mangeorge.query";
+    public static final int DEFAULT_MAX_SHAPES = 512;
+
+    private static final Logger log = LoggerFactory.getLogger(QueryMetricsAggregator.class);
+
+
+    private final String name;
+    private final Map<Key, QueryStatistics> statistics = new ConcurrentHashMap<>();
+    private final LongAdder droppedEventCount = new LongAdder();
+
+    private volatile int maxShapes = DEFAULT_MAX_SHAPES;
+
+    /**
+     * Server, in which MBeans of new shapes are registered, or <code>null</code> if they are not registered
+     */
+    private volatile MBeanServer mBeanServer;
+
+
+    public QueryMetricsAggregator() {
+        this("default");
+    }
+
+    /**
+     * @param name value of the <code>name</code> key of the object names in JMX
+     */
+    public QueryMetricsAggregator(String name) {
+        this.name = name;
+    }
+
+
+    @Override
+    public void onQuery(QueryEvent event) {
+        Key key = new Key(event.getFingerprint(), event.getEngine());
+        QueryStatistics queryStatistics = statistics.get(key);
+        if (queryStatistics == null) {
+            if (statistics.size() >= maxShapes) {
+                droppedEventCount.increment();
+                return;
+            }
+            QueryStatistics created = new QueryStatistics(key.fingerprint, key.engine, event.isCountQuery());
+            queryStatistics = statistics.putIfAbsent(key, created);
+            if (queryStatistics == null) {
+                queryStatistics = created;
+                registerMBean(created);
+            }
+        }
+        queryStatistics.record(event);
+    }
+
+    /**
+     * @param fingerprint fingerprint of the query shape
+     * @param engine      engine of the query
+     * @return statistics of the shape or <code>null</code> if the shape is not aggregated
+     */
+    public QueryStatistics getStatistics(QueryFingerprint fingerprint, QueryEngine engine) {
+        return statistics.get(new Key(fingerprint, engine));
+    }
+
+    public Collection<QueryStatistics> getStatistics() {
+        return Collections.unmodifiableCollection(statistics.values());
+    }
+
+    /**
+     * Registers the aggregator and all its shapes in the server, shapes added later are registered too
+     *
+     * @param server MBean server, usually {@link ManagementFactory#getPlatformMBeanServer()}
+     * @throws RuntimeException if the aggregator cannot be registered
+     */
+    public synchronized void registerMBeans(MBeanServer server) {
+        try {
+            server.registerMBean(this, getObjectName());
+        } catch (JMException e) {
+            throw new RuntimeException("Can not register query metrics " + name, e);
+        }
+        mBeanServer = server;
+        statistics.values().forEach(this::registerMBean);
+    }
+
+    /**
+     * Unregisters the aggregator and all its shapes
+     */
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = mBeanServer;
+        if (server == null) {
+            return;
+        }
+        statistics.values().forEach(this::unregisterMBean);
+        try {
+            server.unregisterMBean(getObjectName());
+        } catch (JMException e) {
+            log.warn("can not unregister query metrics {}", name, e);
+        }
+        mBeanServer = null;
+    }
+
+    public ObjectName getObjectName() throws JMException {
+        return new ObjectName(DOMAIN + ":type=QueryMetrics,name=" + name);
+    }
+
+    public ObjectName getObjectName(QueryStatistics queryStatistics) throws JMException {
+        return new ObjectName(DOMAIN + ":type=QueryStatistics,name=" + name
+                + ",engine=" + queryStatistics.getEngine() + ",fingerprint=" + queryStatistics.getFingerprint());
+    }
+
+    private void registerMBean(QueryStatistics queryStatistics) {
+        MBeanServer server = mBeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = getObjectName(queryStatistics);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(queryStatistics, objectName);
+            }
+        } catch (JMException e) {
+            log.warn("can not register query statistics {}", queryStatistics.getFingerprint(), e);
+        }
+    }
+
+    private void unregisterMBean(QueryStatistics queryStatistics) {
+        MBeanServer server = mBeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = getObjectName(queryStatistics);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.warn("can not unregister query statistics {}", queryStatistics.getFingerprint(), e);
+        }
+    }
+
+    @Override
+    public int getShapeCount() {
+        return statistics.size();
+    }
+
+    @Override
+    public int getMaxShapes() {
+        return maxShapes;
+    }
+
+    @Override
+    public void setMaxShapes(int maxShapes) {
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public long getDroppedEventCount() {
+        return droppedEventCount.sum();
+    }
+
+    @Override
+    public List<String> findSlowestShapes(int limit) {
+        return findTop(QueryStatistics::getExecuteP99Millis, limit);
+    }
+
+    @Override
+    public List<String> findMostExpensiveShapes(int limit) {
+        return findTop(QueryStatistics::getExecuteTotalMillis, limit);
+    }
+
+    /**
+     * Values of the metric are taken once before sorting, because they change while queries are executed
+     */
+    private List<String> findTop(ToDoubleFunction<QueryStatistics> metric, int limit) {
+        Map<QueryStatistics, Double> values = new HashMap<>();
+        for (QueryStatistics queryStatistics : statistics.values()) {
+            values.put(queryStatistics, metric.applyAsDouble(queryStatistics));
+        }
+        return values.entrySet().stream()
+                .sorted(Map.Entry.<QueryStatistics, Double>comparingByValue().reversed())
+                .limit(limit)
+                .map(entry -> entry.getKey().toString())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void reset() {
+        statistics.values().forEach(this::unregisterMBean);
+        statistics.clear();
+        droppedEventCount.reset();
+    }
+
+
+    private static final class Key {
+
+        private final QueryFingerprint fingerprint;
+        private final QueryEngine engine;
+
+        private Key(QueryFingerprint fingerprint, QueryEngine engine) {
+            this.fingerprint = fingerprint;
+            this.engine = engine;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return engine == key.engine && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fingerprint, engine);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.mangeorge.query.metrics;
+
+import java.util.List;
+
+
+/**
+ * Management interface of {@link QueryMetricsAggregator}
+ */
+@SuppressWarnings("unused")
+public interface QueryMetricsAggregatorMXBean {
+
+    /**
+     * @return number of aggregated query shapes
+     */
+    int getShapeCount();
+
+    int getMaxShapes();
+
+    void setMaxShapes(int maxShapes);
+
+    /**
+     * @return number of events not aggregated, because there were already {@link #getMaxShapes()} shapes
+     */
+    long getDroppedEventCount();
+
+    /**
+     * @param limit maximum number of shapes
+     * @return descriptions of the shapes with the highest 99th percentile of the execution time
+     */
+    List<String> findSlowestShapes(int limit);
+
+    /**
+     * @param limit maximum number of shapes
+     * @return descriptions of the shapes with the highest total execution time
+     */
+    List<String> findMostExpensiveShapes(int limit);
+
+    /**
+     * Removes all aggregated shapes and unregisters their MBeans
+     */
+    void reset();
+}
@@ -0,0 +1,16 @@
+package com.mangeorge.query.metrics;
+
+
+/**
+ * Listener of executed queries, registered by {@link QueryMetrics#addListener(QueryMetricsListener)}.
+ * It is called in the thread that executed the query, after the query is completed,
+ * so it must be fast and must not block.
+ */
+@FunctionalInterface
+public interface QueryMetricsListener {
+
+    /**
+     * @param event timings, row count and cache outcome of the executed query
+     */
+    void onQuery(QueryEvent event);
+}
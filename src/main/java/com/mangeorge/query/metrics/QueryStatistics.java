@@ -0,0 +1,208 @@
+package com.mangeorge.query.metrics;
+
+import com.mangeorge.query.QueryFingerprint;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Aggregated events of one query shape and engine. Recording is lock-free,
+ * so statistics can be updated by all threads executing the query.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class QueryStatistics implements QueryStatisticsMXBean {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+
+    private final QueryFingerprint fingerprint;
+    private final QueryEngine engine;
+    private final boolean countQuery;
+
+    /**
+     * The first rendered query of the shape, the queries of the same shape are equal
+     */
+    private volatile String query;
+
+    private final LatencyHistogram buildHistogram = new LatencyHistogram();
+    private final LatencyHistogram renderHistogram = new LatencyHistogram();
+    private final LatencyHistogram executeHistogram = new LatencyHistogram();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder rowCount = new LongAdder();
+    private final LongAdder cacheHitCount = new LongAdder();
+    private final LongAdder cacheMissCount = new LongAdder();
+
+
+    /**
+     * @param fingerprint fingerprint of the query shape
+     * @param engine      engine of the query
+     * @param countQuery  <code>true</code> if the shape is the count query
+     */
+    public QueryStatistics(QueryFingerprint fingerprint, QueryEngine engine, boolean countQuery) {
+        this.fingerprint = fingerprint;
+        this.engine = engine;
+        this.countQuery = countQuery;
+    }
+
+
+    /**
+     * @param event event of the query with the same fingerprint and engine
+     */
+    public void record(QueryEvent event) {
+        if (query == null && event.getQuery() != null) {
+            query = event.getQuery();
+        }
+        buildHistogram.record(event.getBuildNanos());
+        renderHistogram.record(event.getRenderNanos());
+        executeHistogram.record(event.getExecuteNanos());
+        if (event.isFailed()) {
+            failureCount.increment();
+        }
+        if (event.getRowCount() > 0) {
+            rowCount.add(event.getRowCount());
+        }
+        if (event.getCacheOutcome() == CacheOutcome.HIT) {
+            cacheHitCount.increment();
+        } else if (event.getCacheOutcome() == CacheOutcome.MISS) {
+            cacheMissCount.increment();
+        }
+    }
+
+    public QueryFingerprint getQueryFingerprint() {
+        return fingerprint;
+    }
+
+    public QueryEngine getQueryEngine() {
+        return engine;
+    }
+
+    public LatencyHistogram getBuildHistogram() {
+        return buildHistogram;
+    }
+
+    public LatencyHistogram getRenderHistogram() {
+        return renderHistogram;
+    }
+
+    public LatencyHistogram getExecuteHistogram() {
+        return executeHistogram;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return fingerprint.toString();
+    }
+
+    @Override
+    public String getEngine() {
+        return engine.name();
+    }
+
+    @Override
+    public boolean isCountQuery() {
+        return countQuery;
+    }
+
+    @Override
+    public String getQuery() {
+        return query;
+    }
+
+    @Override
+    public long getExecutionCount() {
+        return executeHistogram.getCount();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount.sum();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHitCount.sum();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMissCount.sum();
+    }
+
+    @Override
+    public double getBuildMeanMillis() {
+        return buildHistogram.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getBuildP99Millis() {
+        return toMillis(buildHistogram.getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getRenderMeanMillis() {
+        return renderHistogram.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getRenderP99Millis() {
+        return toMillis(renderHistogram.getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getExecuteMeanMillis() {
+        return executeHistogram.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getExecuteP50Millis() {
+        return toMillis(executeHistogram.getValueAtPercentile(50));
+    }
+
+    @Override
+    public double getExecuteP95Millis() {
+        return toMillis(executeHistogram.getValueAtPercentile(95));
+    }
+
+    @Override
+    public double getExecuteP99Millis() {
+        return toMillis(executeHistogram.getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getExecuteMaxMillis() {
+        return toMillis(executeHistogram.getMax());
+    }
+
+    @Override
+    public double getExecuteTotalMillis() {
+        return toMillis(executeHistogram.getTotal());
+    }
+
+    @Override
+    public void reset() {
+        buildHistogram.reset();
+        renderHistogram.reset();
+        executeHistogram.reset();
+        failureCount.reset();
+        rowCount.reset();
+        cacheHitCount.reset();
+        cacheMissCount.reset();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        return engine + " " + fingerprint + String.format(" count=%d p50=%.3fms p99=%.3fms max=%.3fms total=%.3fms",
+                getExecutionCount(), getExecuteP50Millis(), getExecuteP99Millis(), getExecuteMaxMillis(),
+                getExecuteTotalMillis()) + (query != null ? " " + query : "");
+    }
+}
@@ -0,0 +1,59 @@
+package com.mangeorge.query.metrics;
+
+
+/**
+ * Statistics of one query shape and engine, exported to JMX by {@link QueryMetricsAggregator}.
+ * Durations are in milliseconds, percentiles are computed from {@link LatencyHistogram}s.
+ */
+@SuppressWarnings("unused")
+public interface QueryStatisticsMXBean {
+
+    /**
+     * @return fingerprint of the query shape as 32 hexadecimal digits
+     */
+    String getFingerprint();
+
+    String getEngine();
+
+    boolean isCountQuery();
+
+    /**
+     * @return rendered query without parameter values, or <code>null</code> if the engine has no query string
+     */
+    String getQuery();
+
+    long getExecutionCount();
+
+    long getFailureCount();
+
+    long getRowCount();
+
+    long getCacheHitCount();
+
+    long getCacheMissCount();
+
+    double getBuildMeanMillis();
+
+    double getBuildP99Millis();
+
+    double getRenderMeanMillis();
+
+    double getRenderP99Millis();
+
+    double getExecuteMeanMillis();
+
+    double getExecuteP50Millis();
+
+    double getExecuteP95Millis();
+
+    double getExecuteP99Millis();
+
+    double getExecuteMaxMillis();
+
+    /**
+     * @return total time of all executions
+     */
+    double getExecuteTotalMillis();
+
+    void reset();
+}
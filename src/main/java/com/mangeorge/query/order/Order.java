@@ -1,9 +1,13 @@
 package com.mangeorge.query.order;
 
+import com.mangeorge.query.jpa.JpaQueryContext;
+import com.mangeorge.query.sql.SqlQueryContext;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.DetachedCriteria;
 
+import javax.persistence.criteria.Path;
 import java.lang.reflect.Field;
+import java.util.List;
 
 
 /**
@@ -103,16 +107,43 @@ public class Order {
      */
     public String getExpression(String alias) {
         StringBuilder expression = new StringBuilder();
+        appendExpression(expression, alias);
+        return expression.toString();
+    }
+
+    /**
+     * Appends expression for 'order by' of this and all additional orders to the HQL string.
+     *
+     * @param expression builder of the HQL string
+     * @param alias      alias for fields that do not have their own
+     */
+    public void appendExpression(StringBuilder expression, String alias) {
         if (this.alias != null) {
             expression.append(this.alias).append(".");
         } else if (alias != null)
             expression.append(alias).append(".");
 
         expression.append(field).append(" ").append(reverse ? ORDER_REVERSE : ORDER_DIRECT);
-        if (additionalOrder != null)
-            expression.append(", ").append(additionalOrder.getExpression(alias));
+        if (additionalOrder != null) {
+            expression.append(", ");
+            additionalOrder.appendExpression(expression, alias);
+        }
+    }
 
-        return expression.toString();
+    /**
+     * Appends expression for 'order by' of this and all additional orders to the native SQL string.
+     *
+     * @param sql     builder of the SQL string
+     * @param context context of the query
+     * @param alias   alias for fields that do not have their own
+     */
+    public void appendSQLExpression(StringBuilder sql, SqlQueryContext context, String alias) {
+        context.appendColumn(sql, this.alias != null ? this.alias : alias, field);
+        sql.append(" ").append(reverse ? ORDER_REVERSE : ORDER_DIRECT);
+        if (additionalOrder != null) {
+            sql.append(", ");
+            additionalOrder.appendSQLExpression(sql, context, alias);
+        }
     }
 
     /**
@@ -130,6 +161,21 @@ public class Order {
         }
     }
 
+    /**
+     * Adds orders of this and all additional orders to the JPA criteria orders
+     *
+     * @param context context of the query
+     * @param alias   alias for fields that do not have their own
+     * @param orders  orders of the JPA criteria query
+     */
+    public void addToJpaOrders(JpaQueryContext context, String alias, List<javax.persistence.criteria.Order> orders) {
+        Path<?> path = context.getPath(this.alias != null ? this.alias : alias, field);
+        orders.add(reverse ? context.getCriteriaBuilder().desc(path) : context.getCriteriaBuilder().asc(path));
+        if (additionalOrder != null) {
+            additionalOrder.addToJpaOrders(context, alias, orders);
+        }
+    }
+
     /**
      * Adds an additional sort order
      *
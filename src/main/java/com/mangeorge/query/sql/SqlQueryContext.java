@@ -0,0 +1,316 @@
+package com.mangeorge.query.sql;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hibernate.MappingException;
+import org.hibernate.QueryException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.QueryableCollection;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.ManyToOneType;
+import org.hibernate.type.Type;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Context of rendering a native SQL query: tables of the query by alias and their column mappings.
+ * Aliases of the query builder are replaced by generated table aliases <code>t0, t1, ...</code>,
+ * so they never collide with reserved words of the database. Aliases of the outer query are visible in subqueries.
+ * Parameters are rendered with the same names as in the HQL query, so the parameters are set by
+ * {@link com.mangeorge.query.filter.QueryFilter#setHQLParams(org.hibernate.query.Query)}.
+ * Neither the <code>where</code> clause of entities nor filters of the session are rendered.
+ */
+@SuppressWarnings("unused")
+public class SqlQueryContext {
+
+    /**
+     * Table alias of the root entity of the query
+     */
+    public static final String ROOT_TABLE_ALIAS = "t0";
+
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final SqlQueryContext parent;
+    private final AtomicInteger aliasCounter;
+    private final Map<String, Table> tables = new HashMap<>();
+    private String rootAlias;
+
+
+    /**
+     * @param sessionFactory factory, whose mappings are used to render the query
+     */
+    public SqlQueryContext(SessionFactoryImplementor sessionFactory) {
+        this(sessionFactory, null, new AtomicInteger());
+    }
+
+    private SqlQueryContext(SessionFactoryImplementor sessionFactory, SqlQueryContext parent, AtomicInteger aliasCounter) {
+        this.sessionFactory = sessionFactory;
+        this.parent = parent;
+        this.aliasCounter = aliasCounter;
+    }
+
+
+    /**
+     * @return context of a subquery of this query
+     */
+    public SqlQueryContext createSubqueryContext() {
+        return new SqlQueryContext(sessionFactory, this, aliasCounter);
+    }
+
+    /**
+     * Adds the table of the entity to the context.
+     *
+     * @param alias       alias of the entity in the query builder
+     * @param entityClass entity class
+     * @return table alias
+     * @throws UnsupportedSqlException if the entity is mapped to several tables
+     */
+    public String addEntity(String alias, Class<?> entityClass) {
+        return addTable(alias, getPersister(sessionFactory.getMetamodel().entityPersister(entityClass)));
+    }
+
+    /**
+     * Adds the table of the entity to the context.
+     *
+     * @param alias      alias of the entity in the query builder
+     * @param entityName name of the entity
+     * @return table alias
+     * @throws UnsupportedSqlException if the entity is mapped to several tables
+     */
+    public String addEntity(String alias, String entityName) {
+        EntityPersister persister;
+        try {
+            persister = sessionFactory.getMetamodel().entityPersister(
+                    sessionFactory.getMetamodel().getImportedClassName(entityName));
+        } catch (MappingException e) {
+            throw new UnsupportedSqlException("Unknown entity " + entityName, e);
+        }
+        return addTable(alias, getPersister(persister));
+    }
+
+    /**
+     * Appends the join of the association of the joined entity to the SQL string.
+     * To-one associations and collections of entities are supported.
+     *
+     * @param sql        builder of the SQL string
+     * @param joinType   SQL join, for example <code>left outer join</code>
+     * @param ownerAlias alias of the entity, which has the association
+     * @param field      name of the association
+     * @param alias      alias of the joined entity
+     * @throws UnsupportedSqlException if the association is not supported
+     */
+    public void appendJoin(StringBuilder sql, String joinType, String ownerAlias, String field, String alias) {
+        Table owner = getTable(ownerAlias);
+        Type type = owner.persister.getPropertyType(field);
+        if (type instanceof ManyToOneType && ((ManyToOneType) type).isReferenceToPrimaryKey()) {
+            Table table = new Table(nextAlias(), getPersister(sessionFactory.getMetamodel()
+                    .entityPersister(((ManyToOneType) type).getAssociatedEntityName())));
+            appendTableJoin(sql, joinType, table, owner.persister.toColumns(owner.alias, field),
+                    qualify(table.alias, table.persister.getIdentifierColumnNames()));
+            addTable(alias, table);
+        } else if (type instanceof CollectionType) {
+            QueryableCollection collection = (QueryableCollection) sessionFactory.getMetamodel()
+                    .collectionPersister(((CollectionType) type).getRole());
+            if (!collection.getElementType().isEntityType() || collection.hasWhere()) {
+                throw new UnsupportedSqlException("Native SQL not support collection " + collection.getRole());
+            }
+            AbstractEntityPersister elementPersister = getPersister(collection.getElementPersister());
+            String[] ownerIdColumns = qualify(owner.alias, owner.persister.getIdentifierColumnNames());
+            Table table;
+            if (collection.isOneToMany()) {
+                table = new Table(nextAlias(), elementPersister);
+                appendTableJoin(sql, joinType, table, ownerIdColumns, qualify(table.alias, collection.getKeyColumnNames()));
+            } else {
+                String joinTableAlias = nextAlias();
+                sql.append(' ').append(joinType).append(' ').append(collection.getTableName()).append(' ')
+                        .append(joinTableAlias).append(" on ");
+                appendEquals(sql, ownerIdColumns, qualify(joinTableAlias, collection.getKeyColumnNames()));
+                table = new Table(nextAlias(), elementPersister);
+                appendTableJoin(sql, joinType, table, qualify(joinTableAlias, collection.getElementColumnNames()),
+                        qualify(table.alias, table.persister.getIdentifierColumnNames()));
+            }
+            addTable(alias, table);
+        } else {
+            throw new UnsupportedSqlException("Native SQL not support join of " + ownerAlias + "." + field);
+        }
+    }
+
+    private void appendTableJoin(StringBuilder sql, String joinType, Table table, String[] columns, String[] joinColumns) {
+        sql.append(' ').append(joinType).append(' ').append(table.persister.getTableName()).append(' ')
+                .append(table.alias).append(" on ");
+        appendEquals(sql, columns, joinColumns);
+    }
+
+    private static void appendEquals(StringBuilder sql, String[] columns, String[] otherColumns) {
+        if (columns.length != otherColumns.length) {
+            throw new UnsupportedSqlException("Columns do not match: " + String.join(", ", columns)
+                    + " and " + String.join(", ", otherColumns));
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(" AND ");
+            }
+            sql.append(columns[i]).append(" = ").append(otherColumns[i]);
+        }
+    }
+
+    /**
+     * Appends the column of the field to the SQL string.
+     *
+     * @param sql       builder of the SQL string
+     * @param alias     alias of the entity, the root of the query if it is blank
+     * @param fieldPath path to the field, separated by dots
+     * @throws UnsupportedSqlException if the field is not mapped to one column
+     */
+    public void appendColumn(StringBuilder sql, String alias, String fieldPath) {
+        sql.append(getColumn(alias, fieldPath));
+    }
+
+    /**
+     * @param alias     alias of the entity, the root of the query if it is blank
+     * @param fieldPath path to the field, separated by dots
+     * @return qualified column of the field
+     * @throws UnsupportedSqlException if the field is not mapped to one column
+     */
+    public String getColumn(String alias, String fieldPath) {
+        Table table = getTable(StringUtils.isBlank(alias) ? rootAlias : alias);
+        String[] columns;
+        try {
+            columns = table.persister.toColumns(table.alias, fieldPath);
+        } catch (QueryException e) {
+            throw new UnsupportedSqlException("Native SQL not support field " + alias + "." + fieldPath, e);
+        }
+        if (columns.length != 1) {
+            throw new UnsupportedSqlException("Field " + alias + "." + fieldPath + " is not mapped to one column");
+        }
+        return columns[0];
+    }
+
+    /**
+     * @param alias alias of the entity
+     * @return qualified columns of the id of the entity
+     */
+    public String[] getIdColumns(String alias) {
+        Table table = getTable(alias);
+        return qualify(table.alias, table.persister.getIdentifierColumnNames());
+    }
+
+    /**
+     * Appends a value of the filters without parameters to the SQL string.
+     * The value can be a path with a known alias, a number or a string in single quotes.
+     *
+     * @param sql   builder of the SQL string
+     * @param value part of the HQL expression
+     * @throws UnsupportedSqlException if the value is not supported
+     */
+    public void appendExpression(StringBuilder sql, String value) {
+        String trimmed = value.trim();
+        int dot = trimmed.indexOf('.');
+        if (dot > 0 && findTable(trimmed.substring(0, dot)) != null) {
+            appendColumn(sql, trimmed.substring(0, dot), trimmed.substring(dot + 1));
+        } else if (NumberUtils.isCreatable(trimmed)
+                || (trimmed.length() > 1 && trimmed.startsWith("'") && trimmed.endsWith("'"))) {
+            sql.append(trimmed);
+        } else {
+            throw new UnsupportedSqlException("Native SQL not support expression " + value);
+        }
+    }
+
+    /**
+     * @param alias alias of the entity in the query builder
+     * @return table alias
+     */
+    public String getTableAlias(String alias) {
+        return getTable(alias).alias;
+    }
+
+    /**
+     * @param alias alias of the entity in the query builder
+     * @return name of the table
+     */
+    public String getTableName(String alias) {
+        return getTable(alias).persister.getTableName();
+    }
+
+    public SessionFactoryImplementor getSessionFactory() {
+        return sessionFactory;
+    }
+
+    private String addTable(String alias, AbstractEntityPersister persister) {
+        Table table = new Table(nextAlias(), persister);
+        addTable(alias, table);
+        return table.alias;
+    }
+
+    private void addTable(String alias, Table table) {
+        tables.put(alias, table);
+        if (rootAlias == null) {
+            rootAlias = alias;
+        }
+    }
+
+    private Table getTable(String alias) {
+        Table table = findTable(alias);
+        if (table == null) {
+            throw new UnsupportedSqlException("Unknown alias " + alias);
+        }
+        return table;
+    }
+
+    private Table findTable(String alias) {
+        for (SqlQueryContext context = this; context != null; context = context.parent) {
+            Table table = context.tables.get(alias);
+            if (table != null) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    private String nextAlias() {
+        return "t" + aliasCounter.getAndIncrement();
+    }
+
+    private static String[] qualify(String alias, String[] columns) {
+        String[] qualified = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            qualified[i] = alias + "." + columns[i];
+        }
+        return qualified;
+    }
+
+    /**
+     * Only entities mapped to one table without subclasses are supported,
+     * so every field is a column of the table and rows do not need a discriminator.
+     * The <code>where</code> clause of the entity is not rendered, so entities with it are not supported.
+     */
+    private static AbstractEntityPersister getPersister(EntityPersister persister) {
+        if (!(persister instanceof AbstractEntityPersister) || ((AbstractEntityPersister) persister).isMultiTable()
+                || persister.isInherited() || persister.getEntityMetamodel().hasSubclasses()) {
+            throw new UnsupportedSqlException("Native SQL not support entity " + persister.getEntityName());
+        }
+        AbstractEntityPersister entityPersister = (AbstractEntityPersister) persister;
+        if (!entityPersister.filterFragment(ROOT_TABLE_ALIAS, Collections.emptyMap()).isEmpty()) {
+            throw new UnsupportedSqlException("Native SQL not support where clause of entity " + persister.getEntityName());
+        }
+        return entityPersister;
+    }
+
+
+    private static class Table {
+
+        private final String alias;
+        private final AbstractEntityPersister persister;
+
+        private Table(String alias, AbstractEntityPersister persister) {
+            this.alias = alias;
+            this.persister = persister;
+        }
+    }
+}
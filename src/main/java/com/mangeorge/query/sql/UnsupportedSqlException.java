@@ -0,0 +1,18 @@
+package com.mangeorge.query.sql;
+
+
+/**
+ * The query cannot be rendered as native SQL, so it must be executed as an HQL query.
+ */
+public class UnsupportedSqlException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedSqlException(String message) {
+        super(message);
+    }
+
+    public UnsupportedSqlException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,108 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.filter.group.AndFilter;
+import com.mangeorge.query.filter.group.OrFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Id;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class CompiledEntityQueryTest {
+
+    static class Item {
+        @Id
+        Long id;
+        String name;
+        String status;
+    }
+
+    @Test
+    void parameterNamesAreAssignedWhenFiltersAreAdded() {
+        EqualsFilter<String> name = new EqualsFilter<>("name", "a");
+        InFilter<Long> ids = new InFilter<>("id", 1L, 2L);
+        OrFilter or = new OrFilter();
+        AndFilter and = new AndFilter(name, or);
+        or.add(ids);
+
+        assertEquals("p0", name.getParameterName());
+        assertEquals("p1", or.getParameterName());
+        assertEquals("p10", ids.getParameterName());
+    }
+
+    @Test
+    void compileDoesNotChangeFilters() {
+        EqualsFilter<String> name = new EqualsFilter<>("name", "a");
+        EqualsFilter<String> status = new EqualsFilter<>("status", "ACTIVE");
+        QueryBuilder queryBuilder = new QueryBuilder(Item.class);
+        queryBuilder.setQueryFilter(new AndFilter(name, status));
+        String alias = name.getAlias();
+
+        CompiledEntityQuery first = queryBuilder.compile();
+        CompiledEntityQuery second = queryBuilder.compile();
+
+        assertEquals("p0", name.getParameterName());
+        assertEquals("p1", status.getParameterName());
+        assertEquals(alias, name.getAlias());
+        assertEquals(first.getHQLQuery(), second.getHQLQuery());
+    }
+
+    @Test
+    void parametersAreSlotsOfTheFilters() {
+        QueryBuilder queryBuilder = new QueryBuilder(Item.class);
+        queryBuilder.setQueryFilter(new AndFilter(new EqualsFilter<>("name", "a"), new InFilter<>("id", 1L, 2L, 3L)));
+
+        HQLParameters parameters = queryBuilder.compile().getParameters();
+
+        assertEquals(2, parameters.size());
+        assertEquals("p0", parameters.getName(0));
+        assertEquals("p1", parameters.getName(1));
+        assertArrayEquals(new Object[]{"a", Arrays.asList(1L, 2L, 3L, 3L)}, parameters.getValues());
+        assertThrows(IllegalArgumentException.class, () -> parameters.apply(null, "b"));
+    }
+
+    @Test
+    void compiledQueryIsNotChangedByBuilder() {
+        Long[] ids = new Long[600];
+        Arrays.fill(ids, 1L);
+        InFilter<Long> idFilter = new InFilter<>("id", ids);
+        idFilter.setPadding(false);
+        QueryBuilder queryBuilder = new QueryBuilder(Item.class);
+        queryBuilder.setQueryFilter(idFilter);
+        queryBuilder.setKeysetPagination(true);
+        queryBuilder.setContinuationToken(ContinuationToken.encode(new Object[]{5L}));
+
+        CompiledEntityQuery compiled = queryBuilder.compile();
+        idFilter.setChunkSize(500);
+        queryBuilder.setContinuationToken(null);
+
+        assertFalse(queryBuilder.isCountQuery());
+        assertEquals(600, ((List<?>) compiled.getParameters().getValue(0)).size());
+        assertEquals(5L, compiled.getParameters().getValue(1));
+        assertEquals(1, compiled.getCountParameters().size());
+        assertTrue(compiled.getCountHQLQuery().startsWith("select count("));
+    }
+
+    @Test
+    void slotsKeepChunkLayoutOfRenderedQuery() {
+        InFilter<Integer> filter = new InFilter<>("id", 1, 2, 3);
+        filter.setChunkSize(2);
+        List<HQLParameter> parameters = new ArrayList<>();
+        filter.collectHQLParameters(parameters);
+        filter.setChunkSize(0);
+
+        assertEquals(2, parameters.size());
+        assertEquals(Arrays.asList(1, 2), parameters.get(0).getValue());
+        assertEquals(Arrays.asList(3), parameters.get(1).getValue());
+    }
+}
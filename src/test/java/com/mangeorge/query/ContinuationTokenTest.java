@@ -0,0 +1,41 @@
+package com.mangeorge.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+class ContinuationTokenTest {
+
+    @Test
+    void valuesAreDecodedWithTheirTypes() {
+        Object[] values = {"a", 1L, 2, (short) 3, 4.5, 5.5f, true, new Date(1000), new BigDecimal("1.50"),
+                UUID.randomUUID()};
+
+        assertArrayEquals(values, ContinuationToken.decode(ContinuationToken.encode(values)));
+    }
+
+    @Test
+    void timestampKeepsNanos() {
+        Timestamp timestamp = Timestamp.valueOf("2020-01-10 12:30:15.123456789");
+
+        Object decoded = ContinuationToken.decode(ContinuationToken.encode(new Object[]{timestamp}))[0];
+
+        assertEquals(Timestamp.class, decoded.getClass());
+        assertEquals(timestamp, decoded);
+        assertEquals(123456789, ((Timestamp) decoded).getNanos());
+    }
+
+    @Test
+    void malformedTokenIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ContinuationToken.decode("xyz"));
+        assertThrows(IllegalArgumentException.class, () -> ContinuationToken.encode(new Object[]{new Object()}));
+    }
+}
@@ -0,0 +1,118 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.cache.QueryResultCache;
+import com.mangeorge.query.filter.single.InFilter;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class EntityQueryExecutorCountTest {
+
+    private static final int ROW_COUNT = 2000;
+
+    private static SessionFactory sessionFactory;
+
+
+    @Entity(name = "CountItem")
+    public static class CountItem {
+
+        @Id
+        private Long itemId;
+
+        private String status;
+
+        public CountItem() {
+        }
+
+        CountItem(Long itemId, String status) {
+            this.itemId = itemId;
+            this.status = status;
+        }
+    }
+
+
+    @BeforeAll
+    static void createItems() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(CountItem.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:count;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .buildSessionFactory();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (long i = 0; i < ROW_COUNT; i++) {
+                session.persist(new CountItem(i, i % 2 == 0 ? "A" : "B"));
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    private static int count(int first, Integer countLimit, Consumer<QueryBuilder> engine) {
+        QueryBuilder queryBuilder = new QueryBuilder(CountItem.class);
+        queryBuilder.setQueryFilter(new InFilter<>("status", new String[]{"A", "B"}));
+        queryBuilder.setFirst(first);
+        queryBuilder.setPageSize(10);
+        queryBuilder.setCountLimit(countLimit);
+        engine.accept(queryBuilder);
+        try (Session session = sessionFactory.openSession()) {
+            return new EntityQueryExecutor(session).count(queryBuilder);
+        }
+    }
+
+    @Test
+    void countIsNotPaged() {
+        assertEquals(ROW_COUNT, count(0, null, queryBuilder -> { }));
+        assertEquals(ROW_COUNT, count(10, null, queryBuilder -> { }));
+    }
+
+    @Test
+    void countIsNotPagedInEveryEngine() {
+        assertEquals(ROW_COUNT, count(10, null, queryBuilder -> queryBuilder.setUseCriteriaQuery(true)));
+        assertEquals(ROW_COUNT, count(10, null, queryBuilder -> queryBuilder.setUseJpaCriteriaQuery(true)));
+        assertEquals(ROW_COUNT, count(10, null, queryBuilder -> queryBuilder.setUseSQLQuery(true)));
+    }
+
+    @Test
+    void limitedCountSelectsIdsOfTheRootEntity() {
+        assertEquals(101, count(10, 100, queryBuilder -> { }));
+        assertEquals(101, count(10, 100, queryBuilder -> queryBuilder.setUseCriteriaQuery(true)));
+        assertEquals(101, count(10, 100, queryBuilder -> queryBuilder.setUseJpaCriteriaQuery(true)));
+        assertEquals(101, count(10, 100, queryBuilder -> queryBuilder.setUseSQLQuery(true)));
+    }
+
+    @Test
+    void queuedInsertBypassesResultCache() {
+        QueryResultCache resultCache = new QueryResultCache();
+        QueryBuilder queryBuilder = new QueryBuilder(CountItem.class);
+        queryBuilder.setQueryFilter(new InFilter<>("status", new String[]{"A", "B"}));
+        try (Session session = sessionFactory.openSession()) {
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            EntityQueryExecutor executor = new EntityQueryExecutor(session).setResultCache(resultCache);
+            assertEquals(ROW_COUNT, executor.count(queryBuilder));
+            assertEquals(ROW_COUNT, executor.count(queryBuilder));
+            assertEquals(1, resultCache.getHitCount());
+
+            session.persist(new CountItem((long) ROW_COUNT, "A"));
+            assertEquals(ROW_COUNT, executor.count(queryBuilder));
+            assertEquals(1, resultCache.getHitCount());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.filter.single.EqualsFilter;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.annotations.Filter;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.ParamDef;
+import org.hibernate.annotations.Where;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+class EntityQueryExecutorSqlTest {
+
+    private static SessionFactory sessionFactory;
+
+
+    @Entity(name = "ActiveItem")
+    @Where(clause = "active = true")
+    public static class ActiveItem {
+
+        @Id
+        private Long id;
+
+        private boolean active;
+
+        private String color;
+
+        public ActiveItem() {
+        }
+
+        ActiveItem(Long id, boolean active, String color) {
+            this.id = id;
+            this.active = active;
+            this.color = color;
+        }
+    }
+
+    @Entity(name = "FilteredItem")
+    @FilterDef(name = "color", parameters = @ParamDef(name = "color", type = "string"))
+    @Filter(name = "color", condition = "color = :color")
+    public static class FilteredItem {
+
+        @Id
+        private Long id;
+
+        private String color;
+
+        private String size;
+
+        public FilteredItem() {
+        }
+
+        FilteredItem(Long id, String color, String size) {
+            this.id = id;
+            this.color = color;
+            this.size = size;
+        }
+    }
+
+
+    @BeforeAll
+    static void createItems() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(ActiveItem.class)
+                .addAnnotatedClass(FilteredItem.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:sql;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .buildSessionFactory();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (long i = 0; i < 10; i++) {
+                session.persist(new ActiveItem(i, i % 2 == 0, "red"));
+                session.persist(new FilteredItem(i, i < 3 ? "red" : "blue", "S"));
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void entityWithWhereClauseIsNotRenderedAsSql() {
+        QueryBuilder queryBuilder = new QueryBuilder(ActiveItem.class);
+        queryBuilder.setQueryFilter(new EqualsFilter<>("color", "red"));
+        queryBuilder.setUseSQLQuery(true);
+        assertNull(queryBuilder.getSQLQuery(sessionFactory));
+        try (Session session = sessionFactory.openSession()) {
+            assertEquals(5, new EntityQueryExecutor(session).count(queryBuilder));
+        }
+    }
+
+    @Test
+    void enabledFiltersAreApplied() {
+        QueryBuilder queryBuilder = new QueryBuilder(FilteredItem.class);
+        queryBuilder.setQueryFilter(new EqualsFilter<>("size", "S"));
+        queryBuilder.setUseSQLQuery(true);
+        assertNotNull(queryBuilder.getSQLQuery(sessionFactory));
+        try (Session session = sessionFactory.openSession()) {
+            session.enableFilter("color").setParameter("color", "red");
+            assertEquals(3, new EntityQueryExecutor(session).count(queryBuilder));
+            assertEquals(3, new EntityQueryExecutor(session).list(queryBuilder).size());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.filter.single.BetweenFilter;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class EntityQueryIteratorTest {
+
+    private static final int ROW_COUNT = 5;
+
+    private static SessionFactory sessionFactory;
+
+
+    @Entity(name = "StreamItem")
+    public static class StreamItem {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        public StreamItem() {
+        }
+
+        StreamItem(Long id) {
+            this.id = id;
+        }
+    }
+
+
+    @BeforeAll
+    static void createItems() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(StreamItem.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:stream;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .buildSessionFactory();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (long i = 0; i <= ROW_COUNT; i++) {
+                session.persist(new StreamItem(i));
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    /**
+     * Streams all items except the item <code>0</code>
+     */
+    private static List<StreamItem> stream(Session session) {
+        QueryBuilder queryBuilder = new QueryBuilder(StreamItem.class);
+        queryBuilder.setQueryFilter(new BetweenFilter<>("id", 1L, null));
+        List<StreamItem> items = new ArrayList<>();
+        try (EntityQueryIterator<StreamItem> iterator = new EntityQueryExecutor(session).setClearInterval(2)
+                .iterate(queryBuilder)) {
+            iterator.forEachRemaining(items::add);
+        }
+        assertEquals(ROW_COUNT, items.size());
+        return items;
+    }
+
+    @Test
+    void onlyReturnedEntitiesAreEvicted() {
+        try (Session session = sessionFactory.openSession()) {
+            StreamItem kept = session.get(StreamItem.class, 0L);
+            List<StreamItem> items = stream(session);
+
+            assertTrue(session.contains(kept));
+            for (StreamItem item : items.subList(0, 4)) {
+                assertFalse(session.contains(item));
+            }
+            assertTrue(session.contains(items.get(4)));
+        }
+    }
+
+    @Test
+    void unflushedChangesAreNotDiscarded() {
+        try (Session session = sessionFactory.openSession()) {
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            StreamItem changed = session.get(StreamItem.class, 0L);
+            changed.name = "changed";
+            List<StreamItem> items = stream(session);
+
+            assertTrue(session.contains(changed));
+            for (StreamItem item : items) {
+                assertTrue(session.contains(item));
+            }
+            assertTrue(session.isDirty());
+        }
+    }
+}
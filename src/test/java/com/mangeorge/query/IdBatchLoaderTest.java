@@ -0,0 +1,133 @@
+package com.mangeorge.query;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class IdBatchLoaderTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static ScheduledExecutorService scheduler;
+
+
+    @Entity(name = "BatchItem")
+    public static class BatchItem {
+
+        @Id
+        private Long id;
+
+        public BatchItem() {
+        }
+
+        BatchItem(Long id) {
+            this.id = id;
+        }
+    }
+
+
+    @BeforeAll
+    static void createItems() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(BatchItem.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:batch;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .buildSessionFactory();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (long i = 1; i <= 5; i++) {
+                session.persist(new BatchItem(i));
+            }
+            session.getTransaction().commit();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterAll
+    static void close() {
+        scheduler.shutdown();
+        sessionFactory.close();
+    }
+
+    /**
+     * Loader, whose batches are loaded in the calling thread and are not started by the window
+     */
+    private static IdBatchLoader<BatchItem> loader() {
+        IdBatchLoader<BatchItem> loader = new IdBatchLoader<>(sessionFactory, BatchItem.class, scheduler, Runnable::run);
+        loader.setWindowMillis(TimeUnit.MINUTES.toMillis(1));
+        return loader;
+    }
+
+    @Test
+    void repeatedIdsAreCoalesced() {
+        IdBatchLoader<BatchItem> loader = loader();
+        CompletableFuture<BatchItem> first = loader.load(1L);
+        CompletableFuture<BatchItem> second = loader.load(1L);
+        CompletableFuture<BatchItem> missing = loader.load(9L);
+
+        assertNotSame(first, second);
+        second.cancel(false);
+        loader.flush();
+
+        assertEquals(1L, first.join().id);
+        assertTrue(second.isCancelled());
+        assertNull(missing.join());
+        assertEquals(3, loader.getRequestCount());
+        assertEquals(1, loader.getCoalescedCount());
+        assertEquals(1, loader.getBatchCount());
+        assertEquals(2, loader.getMaxBatchSize());
+        loader.close();
+    }
+
+    @Test
+    void fullBatchIsLoadedBeforeWindow() {
+        IdBatchLoader<BatchItem> loader = loader();
+        loader.setBatchSize(2);
+        CompletableFuture<BatchItem> first = loader.load(1L);
+
+        assertFalse(first.isDone());
+
+        CompletableFuture<BatchItem> second = loader.load(2L);
+        CompletableFuture<BatchItem> third = loader.load(3L);
+
+        assertTrue(first.isDone());
+        assertEquals(2L, second.join().id);
+        assertFalse(third.isDone());
+        assertEquals(1, loader.getBatchCount());
+        loader.close();
+        assertEquals(3L, third.join().id);
+        assertEquals(2, loader.getBatchCount());
+    }
+
+    @Test
+    void batchIsLoadedAfterWindow() throws Exception {
+        IdBatchLoader<BatchItem> loader = new IdBatchLoader<>(sessionFactory, BatchItem.class, scheduler);
+        loader.setWindowMillis(10);
+        CompletableFuture<BatchItem> first = loader.load(4L);
+        CompletableFuture<BatchItem> second = loader.load(5L);
+
+        assertEquals(4L, first.get(10, TimeUnit.SECONDS).id);
+        assertEquals(5L, second.get(10, TimeUnit.SECONDS).id);
+        assertEquals(1, loader.getBatchCount());
+        loader.close();
+    }
+}
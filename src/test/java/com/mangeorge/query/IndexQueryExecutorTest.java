@@ -0,0 +1,257 @@
+package com.mangeorge.query;
+
+import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.helper.ReflectionHelper;
+import com.mangeorge.query.order.Order;
+import com.mangeorge.query.solr.PivotFacetResult;
+import com.mangeorge.query.solr.PivotFacetValue;
+import org.apache.solr.client.solrj.beans.Field;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class IndexQueryExecutorTest {
+
+    private static final int ITEM_COUNT = 10;
+
+    private static final String[] SOLR_RESOURCES = {"solr.xml", "items/core.properties",
+            "items/conf/solrconfig.xml", "items/conf/schema.xml"};
+
+    private static final String[] COLORS = {"red", "green", "blue"};
+
+    @TempDir
+    static Path solrHome;
+
+    private static EmbeddedSolrServer server;
+
+
+    public static class IndexItem {
+
+        @Field
+        private String id;
+
+        @Field
+        private String status;
+
+        @Field("name_t")
+        private String name;
+
+        @Field("color_s")
+        private String color;
+
+        @Field("price_i")
+        private Integer price;
+
+        @Field
+        private String note;
+    }
+
+
+    /**
+     * Items <code>01</code>..<code>10</code>: the status is A for odd and B for even numbers,
+     * the colors are repeated and the price is ten times the number
+     */
+    @BeforeAll
+    static void createIndex() throws Exception {
+        for (String resource : SOLR_RESOURCES) {
+            Path target = solrHome.resolve(resource);
+            Files.createDirectories(target.getParent());
+            try (InputStream input = IndexQueryExecutorTest.class.getResourceAsStream("/solr/" + resource)) {
+                Files.copy(input, target);
+            }
+        }
+        server = new EmbeddedSolrServer(solrHome, "items");
+        List<SolrInputDocument> documents = new ArrayList<>();
+        for (int i = 1; i <= ITEM_COUNT; i++) {
+            SolrInputDocument document = new SolrInputDocument();
+            document.addField("id", String.format("%02d", i));
+            document.addField("status", i % 2 == 1 ? "A" : "B");
+            document.addField("name_t", "item " + i);
+            document.addField("color_s", COLORS[i % COLORS.length]);
+            document.addField("price_i", i * 10);
+            document.addField("note", "note " + i);
+            documents.add(document);
+        }
+        server.add(documents);
+        server.commit();
+    }
+
+    @AfterAll
+    static void close() throws Exception {
+        server.close();
+    }
+
+    private static java.lang.reflect.Field field(String name) {
+        return ReflectionHelper.getFieldByFieldName(name, IndexItem.class);
+    }
+
+    private static List<String> ids(List<IndexItem> items) {
+        return items.stream().map(item -> item.id).collect(Collectors.toList());
+    }
+
+    /**
+     * Items of status A with the facets by the color and the status, the status facet excludes the status filter
+     */
+    private static SolrBuilder<IndexItem> facetedQuery() {
+        QueryFilter statusFilter = new EqualsFilter<>("status", "A");
+        return new SolrBuilder<>(IndexItem.class)
+                .setQueryFilter(statusFilter)
+                .addFacet(field("color"), null)
+                .addFacet(field("status"), statusFilter)
+                .addFacetQuery("price_i:[0 TO 50]", null)
+                .addFacetQuery("price_i:[60 TO *]", statusFilter)
+                .addPivotFacet(field("status"), field("color"))
+                .setPageSize(0);
+    }
+
+    /**
+     * Pivot values by their field values, the order of values with the same count is not compared
+     */
+    private static Map<String, Integer> pivotCounts(PivotFacetResult pivot) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (PivotFacetValue value : pivot.getValues()) {
+            counts.put(value.getValues().toString(), value.getCount());
+        }
+        return counts;
+    }
+
+    @Test
+    void facetsAndPivotsAreRead() {
+        IndexQueryResult<IndexItem> result = new IndexQueryExecutor(server).execute(facetedQuery());
+
+        assertEquals(5, result.getCount());
+        assertEquals(Map.of("red", 2L, "green", 2L, "blue", 1L), result.getFacets().get("color_s"));
+        assertEquals(Map.of("A", 5L, "B", 5L), result.getFacets().get("status"));
+        assertEquals(Map.of("price_i:[0 TO 50]", 3L, "price_i:[60 TO *]", 5L), result.getFacetQueries());
+        assertEquals(1, result.getPivotFacets().size());
+        PivotFacetResult pivot = result.getPivotFacets().get(0);
+        assertEquals("status,color_s", pivot.getName());
+        Map<String, Integer> counts = new TreeMap<>();
+        counts.put("{status=A}", 5);
+        counts.put("{status=A, color_s=red}", 2);
+        counts.put("{status=A, color_s=green}", 2);
+        counts.put("{status=A, color_s=blue}", 1);
+        assertEquals(counts, pivotCounts(pivot));
+    }
+
+    @Test
+    void jsonFacetsAreReadAsFacets() {
+        IndexQueryExecutor executor = new IndexQueryExecutor(server);
+        IndexQueryResult<IndexItem> legacy = executor.execute(facetedQuery());
+        IndexQueryResult<IndexItem> json = executor.execute(facetedQuery().setUseJsonFacet(true));
+
+        assertEquals(legacy.getCount(), json.getCount());
+        assertEquals(legacy.getFacets(), json.getFacets());
+        assertEquals(legacy.getFacetQueries(), json.getFacetQueries());
+        assertEquals(legacy.getPivotFacets().size(), json.getPivotFacets().size());
+        PivotFacetResult pivot = json.getPivotFacets().get(0);
+        assertEquals(legacy.getPivotFacets().get(0).getName(), pivot.getName());
+        assertEquals(pivotCounts(legacy.getPivotFacets().get(0)), pivotCounts(pivot));
+        assertEquals(Arrays.asList("status", "color_s"), new ArrayList<>(pivot.getValues().get(1).getValues().keySet()));
+    }
+
+    @Test
+    void groupsAreRead() {
+        SolrBuilder<IndexItem> query = new SolrBuilder<>(IndexItem.class)
+                .addGroupField(field("color"))
+                .addGroupQueries("status:B")
+                .setGroupLimit(2);
+        query.setGroupOrder(new Order(field("price"), true));
+        IndexQueryResult<IndexItem> result = new IndexQueryExecutor(server).execute(query);
+
+        assertEquals(ITEM_COUNT, result.getCount());
+        Map<String, List<IndexItem>> colors = result.getGroups().get("color_s");
+        assertEquals(3, colors.size());
+        assertEquals(Arrays.asList("09", "06"), ids(colors.get("red")));
+        assertEquals(Arrays.asList("10", "07"), ids(colors.get("green")));
+        assertEquals(Arrays.asList("08", "05"), ids(colors.get("blue")));
+        assertEquals(Arrays.asList("10", "08"), ids(result.getGroups().get(IndexQueryExecutor.GROUP_QUERIES).get("status:B")));
+    }
+
+    @Test
+    void cursorReturnsAllPages() {
+        IndexQueryExecutor executor = new IndexQueryExecutor(server).setFetchSize(3);
+        SolrBuilder<IndexItem> query = new SolrBuilder<>(IndexItem.class)
+                .addOrder(new Order(field("price"), true))
+                .setUseCursor(true);
+
+        List<String> ids;
+        try (Stream<IndexItem> stream = executor.stream(query)) {
+            ids = stream.map(item -> item.id).collect(Collectors.toList());
+        }
+        assertEquals(Arrays.asList("10", "09", "08", "07", "06", "05", "04", "03", "02", "01"), ids);
+
+        executor.setPrefetchExecutor(Runnable::run);
+        try (Stream<IndexItem> stream = executor.stream(query)) {
+            assertEquals(ids, stream.map(item -> item.id).collect(Collectors.toList()));
+        }
+
+        try (IndexQueryIterator<IndexItem> iterator = executor.iterate(query.setPageSize(4))) {
+            iterator.forEachRemaining(item -> { });
+            assertEquals(4, iterator.getRowCount());
+        }
+        assertThrows(IllegalArgumentException.class, () -> executor.iterate(query.setFirst(3)));
+    }
+
+    @Test
+    void exportReturnsDocValues() {
+        IndexQueryExecutor executor = new IndexQueryExecutor(server);
+        SolrBuilder<IndexItem> query = new SolrBuilder<>(IndexItem.class)
+                .setQueryFilter(new EqualsFilter<>("status", "A"))
+                .addField(field("id"))
+                .addField(field("color"))
+                .addField(field("price"))
+                .setUseExport(true);
+
+        List<IndexItem> items = new ArrayList<>();
+        assertEquals(5, executor.export(query, items::add));
+        assertEquals(Arrays.asList("01", "03", "05", "07", "09"), ids(items));
+        assertEquals("green", items.get(0).color);
+        assertEquals(90, items.get(4).price);
+
+        query.addOrder(new Order(field("price"), true)).setPageSize(2);
+        try (Stream<IndexItem> stream = executor.streamExport(query)) {
+            assertEquals(Arrays.asList("09", "07"), stream.map(item -> item.id).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void exportRequiresDocValues() {
+        IndexQueryExecutor executor = new IndexQueryExecutor(server);
+        SolrBuilder<IndexItem> withNote = new SolrBuilder<>(IndexItem.class)
+                .addField(field("id"))
+                .addField(field("note"))
+                .setUseExport(true);
+        SolrBuilder<IndexItem> byName = new SolrBuilder<>(IndexItem.class)
+                .addField(field("id"))
+                .addOrder(new Order(field("name")))
+                .setUseExport(true);
+
+        IllegalArgumentException noteError = assertThrows(IllegalArgumentException.class,
+                () -> executor.export(withNote, item -> { }));
+        assertTrue(noteError.getMessage().contains("note"));
+        IllegalArgumentException nameError = assertThrows(IllegalArgumentException.class,
+                () -> executor.export(byName, item -> { }));
+        assertTrue(nameError.getMessage().contains("name_t"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaQuery;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+class CriteriaQueryCacheTest {
+
+    private static QueryFingerprint key(String shape) {
+        return QueryFingerprint.hasher().putString(shape).build();
+    }
+
+    private static CriteriaQuery<?> query() {
+        return (CriteriaQuery<?>) Proxy.newProxyInstance(CriteriaQuery.class.getClassLoader(),
+                new Class<?>[]{CriteriaQuery.class}, (proxy, method, args) -> null);
+    }
+
+    private static EntityManagerFactory factory(AtomicBoolean open) {
+        return (EntityManagerFactory) Proxy.newProxyInstance(EntityManagerFactory.class.getClassLoader(),
+                new Class<?>[]{EntityManagerFactory.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return open.get();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedShape() {
+        CriteriaQueryCache cache = new CriteriaQueryCache(2);
+        EntityManagerFactory factory = factory(new AtomicBoolean(true));
+        CriteriaQuery<?> a = cache.get(factory, key("a"), CriteriaQueryCacheTest::query);
+        cache.get(factory, key("b"), CriteriaQueryCacheTest::query);
+        cache.get(factory, key("a"), CriteriaQueryCacheTest::query);
+        cache.get(factory, key("c"), CriteriaQueryCacheTest::query);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(a, cache.get(factory, key("a"), CriteriaQueryCacheTest::query));
+    }
+
+    @Test
+    void releasesClosedFactory() {
+        CriteriaQueryCache cache = new CriteriaQueryCache();
+        AtomicBoolean open = new AtomicBoolean(true);
+        EntityManagerFactory closed = factory(open);
+        EntityManagerFactory other = factory(new AtomicBoolean(true));
+        CriteriaQuery<?> query = cache.get(closed, key("a"), CriteriaQueryCacheTest::query);
+        open.set(false);
+        cache.get(other, key("a"), CriteriaQueryCacheTest::query);
+
+        assertEquals(1, cache.size());
+        assertNotSame(query, cache.get(closed, key("a"), CriteriaQueryCacheTest::query));
+        assertEquals(1, cache.size());
+    }
+}
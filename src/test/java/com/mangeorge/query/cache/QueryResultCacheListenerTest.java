@@ -0,0 +1,112 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+class QueryResultCacheListenerTest {
+
+    private static final QueryResultCache.Key KEY = new QueryResultCache.Key(
+            QueryFingerprint.hasher().putString("from TaggedItem").build(), new Object[0], null, null,
+            Collections.singletonList("TaggedItem"));
+
+    private static SessionFactory sessionFactory;
+
+    private static QueryResultCache cache;
+
+
+    @Entity(name = "TaggedItem")
+    public static class TaggedItem {
+
+        @Id
+        private Long id;
+
+        @ElementCollection
+        private List<String> tags = new ArrayList<>();
+
+        public TaggedItem() {
+        }
+
+        TaggedItem(Long id) {
+            this.id = id;
+        }
+    }
+
+
+    @BeforeAll
+    static void createItem() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(TaggedItem.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:listener;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .buildSessionFactory();
+        cache = new QueryResultCache();
+        QueryResultCacheListener.register(sessionFactory, cache);
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.persist(new TaggedItem(1L));
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    private static void putResult(Object value) {
+        cache.put(KEY, value, cache.getGeneration());
+    }
+
+    private static void changeTags(boolean commit) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.get(TaggedItem.class, 1L).tags.add("tag");
+            session.flush();
+
+            putResult("changing");
+            assertNull(cache.get(KEY));
+
+            if (commit) {
+                session.getTransaction().commit();
+            } else {
+                session.getTransaction().rollback();
+            }
+        }
+    }
+
+    @Test
+    void collectionChangeIsCompletedAfterCommit() {
+        putResult("before");
+        changeTags(true);
+
+        assertNull(cache.get(KEY));
+        putResult("after");
+        assertEquals("after", cache.get(KEY));
+    }
+
+    @Test
+    void collectionChangeIsCompletedAfterRollback() {
+        changeTags(false);
+
+        putResult("after");
+        assertEquals("after", cache.get(KEY));
+    }
+}
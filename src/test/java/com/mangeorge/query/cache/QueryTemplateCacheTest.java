@@ -0,0 +1,51 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class QueryTemplateCacheTest {
+
+    private static QueryFingerprint key(String shape) {
+        return QueryFingerprint.hasher().putString(shape).build();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedShape() {
+        QueryTemplateCache cache = new QueryTemplateCache(2);
+        cache.get(key("a"), () -> "a");
+        cache.get(key("b"), () -> "b");
+        cache.get(key("a"), () -> "a");
+        cache.get(key("c"), () -> "c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("a", cache.get(key("a"), () -> "rendered"));
+        assertEquals("rendered", cache.get(key("b"), () -> "rendered"));
+    }
+
+    @Test
+    void storesHotShapeAfterBurstOfShapes() {
+        QueryTemplateCache cache = new QueryTemplateCache(10);
+        for (int i = 0; i < 100; i++) {
+            String shape = "burst" + i;
+            cache.get(key(shape), () -> shape);
+        }
+        cache.get(key("hot"), () -> "hot");
+        long missCount = cache.getMissCount();
+
+        assertEquals("hot", cache.get(key("hot"), () -> "rendered"));
+        assertEquals(missCount, cache.getMissCount());
+    }
+
+    @Test
+    void disabledCacheDoesNotStore() {
+        QueryTemplateCache cache = new QueryTemplateCache(0);
+        cache.get(key("a"), () -> "a");
+
+        assertEquals(0, cache.size());
+        assertEquals("rendered", cache.get(key("a"), () -> "rendered"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.mangeorge.query.cache;
+
+import com.mangeorge.query.QueryFingerprint;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+class SqlQueryCacheTest {
+
+    private static QueryFingerprint key(String shape) {
+        return QueryFingerprint.hasher().putString(shape).build();
+    }
+
+    private static SessionFactory factory(AtomicBoolean open) {
+        return (SessionFactory) Proxy.newProxyInstance(SessionFactory.class.getClassLoader(),
+                new Class<?>[]{SessionFactory.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isOpen":
+                            return open.get();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedShape() {
+        SqlQueryCache cache = new SqlQueryCache(2);
+        SessionFactory factory = factory(new AtomicBoolean(true));
+        cache.get(factory, key("a"), () -> "select a");
+        assertNull(cache.get(factory, key("b"), () -> null));
+        assertNull(cache.get(factory, key("b"), () -> "select b"));
+        cache.get(factory, key("a"), () -> "select a2");
+        cache.get(factory, key("c"), () -> "select c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("select a", cache.get(factory, key("a"), () -> "select a2"));
+        assertEquals(1, cache.getUnsupportedCount());
+
+        cache.setMaxSize(1);
+
+        assertEquals(1, cache.size());
+        assertEquals("select a", cache.get(factory, key("a"), () -> "select a2"));
+    }
+
+    @Test
+    void releasesClosedFactory() {
+        SqlQueryCache cache = new SqlQueryCache();
+        AtomicBoolean open = new AtomicBoolean(true);
+        SessionFactory closed = factory(open);
+        SessionFactory other = factory(new AtomicBoolean(true));
+        cache.get(closed, key("a"), () -> "select a");
+        open.set(false);
+        cache.get(other, key("a"), () -> "select a");
+
+        assertEquals(1, cache.size());
+        assertEquals("select b", cache.get(closed, key("a"), () -> "select b"));
+        assertEquals(1, cache.size());
+    }
+}
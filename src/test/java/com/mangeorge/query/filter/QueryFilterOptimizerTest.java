@@ -0,0 +1,183 @@
+package com.mangeorge.query.filter;
+
+import com.mangeorge.query.HQLParameter;
+import com.mangeorge.query.filter.group.AndFilter;
+import com.mangeorge.query.filter.group.LogicGroupFilterImpl;
+import com.mangeorge.query.filter.group.OrFilter;
+import com.mangeorge.query.filter.single.BetweenFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.filter.single.NullFilter;
+import com.mangeorge.query.memory.MemoryQueryContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class QueryFilterOptimizerTest {
+
+    public static class Item {
+        public Integer x;
+        public String s;
+
+        Item(Integer x, String s) {
+            this.x = x;
+            this.s = s;
+        }
+    }
+
+    /**
+     * Items with every value of <code>x</code> used by the tests and <code>null</code>
+     */
+    private static List<Item> items() {
+        List<Item> items = new ArrayList<>();
+        for (int x = 0; x <= 10; x++) {
+            items.add(new Item(x, x % 2 == 0 ? "a" : null));
+        }
+        items.add(new Item(null, "a"));
+        items.add(new Item(null, null));
+        return items;
+    }
+
+    /**
+     * Checks, that the optimized filter matches the same objects in the three-valued logic as the source filter
+     */
+    private static QueryFilter optimize(QueryFilter filter) {
+        Predicate<Item> source = MemoryQueryContext.compile(filter, Item.class);
+        QueryFilter optimized = QueryFilterOptimizer.optimize(filter);
+        Predicate<Item> result = MemoryQueryContext.compile(optimized, Item.class);
+        for (Item item : items()) {
+            assertEquals(source.test(item), result.test(item), "x = " + item.x + ", s = " + item.s);
+        }
+        return optimized;
+    }
+
+    @Test
+    void notOfOrIsPushedDown() {
+        QueryFilter optimized = optimize(new NotFilter(new OrFilter(new EqualsFilter<>("x", 1), new EqualsFilter<>("s", "a"))));
+
+        assertEquals(AndFilter.class, optimized.getClass());
+        List<QueryFilter> filters = ((LogicGroupFilterImpl) optimized).getFilters();
+        assertEquals(2, filters.size());
+        assertEquals(NotFilter.class, filters.get(0).getClass());
+        assertEquals(NotFilter.class, filters.get(1).getClass());
+        assertEquals("not (x = :p0) AND not (s = :p1)", optimized.getHQLExpression());
+    }
+
+    @Test
+    void notOfAndIsKept() {
+        QueryFilter optimized = optimize(new NotFilter(new AndFilter(new EqualsFilter<>("x", 1), new EqualsFilter<>("s", "a"))));
+
+        assertEquals(NotFilter.class, optimized.getClass());
+        assertEquals("not (x = :p0 AND s = :p1)", optimized.getHQLExpression());
+    }
+
+    @Test
+    void doubleNegationIsRemoved() {
+        EqualsFilter<Integer> equals = new EqualsFilter<>("x", 1);
+
+        assertSame(equals, optimize(new NotFilter(new NotFilter(equals))));
+    }
+
+    @Test
+    void nestedGroupsAreFlattenedAndDuplicatesRemoved() {
+        QueryFilter optimized = optimize(new AndFilter(new EqualsFilter<>("s", "a"),
+                new AndFilter(new EqualsFilter<>("s", "a"), new NullFilter("x")), new AndFilter()));
+
+        assertEquals(AndFilter.class, optimized.getClass());
+        assertEquals(2, ((LogicGroupFilterImpl) optimized).getFilters().size());
+    }
+
+    @Test
+    void rangesAreIntersectedUnderAnd() {
+        QueryFilter optimized = optimize(new AndFilter(new BetweenFilter<>("x", 1, 5), new BetweenFilter<>("x", 3, 8),
+                new BetweenFilter<>("x", 2, null)));
+
+        assertEquals(BetweenFilter.class, optimized.getClass());
+        assertEquals(3, ((BetweenFilter<?>) optimized).getValueFrom());
+        assertEquals(5, ((BetweenFilter<?>) optimized).getValueTo());
+    }
+
+    @Test
+    void disjointRangesAreIntersectedToEmptyRange() {
+        QueryFilter optimized = optimize(new AndFilter(new BetweenFilter<>("x", 1, 3), new BetweenFilter<>("x", 5, 8)));
+
+        assertEquals(BetweenFilter.class, optimized.getClass());
+    }
+
+    @Test
+    void overlappingRangesAreUnitedUnderOr() {
+        QueryFilter optimized = optimize(new OrFilter(new BetweenFilter<>("x", 1, 3), new BetweenFilter<>("x", 3, 5),
+                new BetweenFilter<>("x", 8, 9)));
+
+        assertEquals(OrFilter.class, optimized.getClass());
+        List<QueryFilter> filters = ((LogicGroupFilterImpl) optimized).getFilters();
+        assertEquals(2, filters.size());
+        assertEquals(1, ((BetweenFilter<?>) filters.get(0)).getValueFrom());
+        assertEquals(5, ((BetweenFilter<?>) filters.get(0)).getValueTo());
+        assertEquals(8, ((BetweenFilter<?>) filters.get(1)).getValueFrom());
+    }
+
+    @Test
+    void unitedRangeWithoutBoundsIsNotNull() {
+        QueryFilter optimized = optimize(new OrFilter(new BetweenFilter<>("x", 1, null), new BetweenFilter<>("x", null, 5)));
+
+        assertEquals(NotFilter.class, optimized.getClass());
+        assertEquals("not (x is null)", optimized.getHQLExpression().trim());
+        List<HQLParameter> parameters = new ArrayList<>();
+        optimized.collectHQLParameters(parameters);
+        assertTrue(parameters.isEmpty());
+    }
+
+    @Test
+    void rangesOfDifferentClassesAreNotMerged() {
+        QueryFilter optimized = optimize(new OrFilter(new BetweenFilter<>("x", 1, 3), new BetweenFilter<>("x", 2L, 5L)));
+
+        assertEquals(2, ((LogicGroupFilterImpl) optimized).getFilters().size());
+    }
+
+    @Test
+    void equalsAreMergedIntoInUnderOr() {
+        QueryFilter optimized = optimize(new OrFilter(new EqualsFilter<>("x", 1), new NullFilter("s"),
+                new InFilter<>("x", 2, 3), new EqualsFilter<>("x", 2)));
+
+        assertEquals(OrFilter.class, optimized.getClass());
+        List<QueryFilter> filters = ((LogicGroupFilterImpl) optimized).getFilters();
+        assertEquals(2, filters.size());
+        assertEquals(InFilter.class, filters.get(0).getClass());
+        assertArrayEquals(new Object[]{1, 2, 3}, ((InFilter<?>) filters.get(0)).getValue());
+    }
+
+    @Test
+    void equalsAreNotMergedUnderAnd() {
+        QueryFilter optimized = optimize(new AndFilter(new EqualsFilter<>("x", 1), new EqualsFilter<>("x", 2)));
+
+        assertEquals(2, ((LogicGroupFilterImpl) optimized).getFilters().size());
+    }
+
+    @Test
+    void valuesOfDifferentClassesAreNotMerged() {
+        QueryFilter optimized = optimize(new OrFilter(new EqualsFilter<>("x", 1), new EqualsFilter<>("x", 2L)));
+
+        assertEquals(2, ((LogicGroupFilterImpl) optimized).getFilters().size());
+    }
+
+    @Test
+    void nullValuesAreNotMerged() {
+        QueryFilter optimized = optimize(new OrFilter(new EqualsFilter<>("x", 1), new InFilter<>("x", new Integer[]{null, 2})));
+
+        assertEquals(2, ((LogicGroupFilterImpl) optimized).getFilters().size());
+    }
+
+    @Test
+    void negatedNullValuesKeepUnknownResult() {
+        optimize(new NotFilter(new OrFilter(new EqualsFilter<>("x", 1), new InFilter<>("x", new Integer[]{null, 2}))));
+    }
+}
@@ -0,0 +1,95 @@
+package com.mangeorge.query.filter;
+
+import com.mangeorge.query.QueryBuilder;
+import com.mangeorge.query.QueryFingerprint;
+import com.mangeorge.query.filter.group.AndFilter;
+import com.mangeorge.query.filter.group.OrFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.ExistsFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.filter.single.NVLFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+class ShapeFingerprintTest {
+
+    @Test
+    void groupFingerprintIsMemoized() {
+        AndFilter and = new AndFilter(new EqualsFilter<>("name", "a"), new NotFilter(new EqualsFilter<>("id", 1L)));
+
+        assertSame(and.getShapeFingerprint(), and.getShapeFingerprint());
+        assertEquals(new AndFilter(new EqualsFilter<>("name", "b"), new NotFilter(new EqualsFilter<>("id", 2L)))
+                .getShapeFingerprint(), and.getShapeFingerprint());
+    }
+
+    @Test
+    void addInvalidatesGroupFingerprint() {
+        AndFilter and = new AndFilter(new EqualsFilter<>("name", "a"));
+        QueryFingerprint one = and.getShapeFingerprint();
+        and.add(new EqualsFilter<>("status", "A"));
+        QueryFingerprint two = and.getShapeFingerprint();
+        and.addAll(Arrays.asList(new EqualsFilter<>("id", 1L)));
+
+        assertNotEquals(one, two);
+        assertNotEquals(two, and.getShapeFingerprint());
+        assertEquals(new AndFilter(new EqualsFilter<>("name", "b"), new EqualsFilter<>("status", "B"),
+                new EqualsFilter<>("id", 2L)).getShapeFingerprint(), and.getShapeFingerprint());
+    }
+
+    @Test
+    void changeOfNestedFilterChangesFingerprint() {
+        OrFilter or = new OrFilter(new EqualsFilter<>("name", "a"));
+        EqualsFilter<String> status = new EqualsFilter<>("status", "A");
+        NotFilter not = new NotFilter(or);
+        AndFilter and = new AndFilter(status, not);
+        QueryFingerprint andShape = and.getShapeFingerprint();
+        QueryFingerprint notShape = not.getShapeFingerprint();
+
+        or.add(new InFilter<>("id", 1L, 2L));
+
+        assertNotEquals(notShape, not.getShapeFingerprint());
+        assertNotEquals(andShape, and.getShapeFingerprint());
+
+        andShape = and.getShapeFingerprint();
+        status.setAlias("item");
+
+        assertNotEquals(andShape, and.getShapeFingerprint());
+    }
+
+    @Test
+    void changeOfSubqueryChangesExistsFingerprint() {
+        QueryBuilder subquery = new QueryBuilder(Object.class);
+        subquery.setQueryFilter(new EqualsFilter<>("name", "a"));
+        ExistsFilter exists = new ExistsFilter(subquery);
+        AndFilter and = new AndFilter(exists);
+        QueryFingerprint existsShape = exists.getShapeFingerprint();
+        QueryFingerprint andShape = and.getShapeFingerprint();
+
+        assertSame(existsShape, exists.getShapeFingerprint());
+        assertSame(andShape, and.getShapeFingerprint());
+
+        subquery.setQueryFilter(new InFilter<>("id", 1L, 2L));
+
+        assertNotEquals(existsShape, exists.getShapeFingerprint());
+        assertNotEquals(andShape, and.getShapeFingerprint());
+    }
+
+    @Test
+    void nvlFingerprintIsMemoized() {
+        EqualsFilter<Integer> equals = new EqualsFilter<>("number", 1);
+        NVLFilter<Integer> nvl = new NVLFilter<>(equals, 0);
+        QueryFingerprint shape = nvl.getShapeFingerprint();
+
+        assertSame(shape, nvl.getShapeFingerprint());
+
+        nvl.setAlias("item");
+
+        assertNotEquals(shape, nvl.getShapeFingerprint());
+    }
+}
@@ -0,0 +1,83 @@
+package com.mangeorge.query.filter.single;
+
+import com.mangeorge.query.HQLParameter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+
+class InFilterTest {
+
+    private static Long[] values(int count) {
+        return LongStream.rangeClosed(1, count).boxed().toArray(Long[]::new);
+    }
+
+    private static List<HQLParameter> parameters(InFilter<?> filter) {
+        List<HQLParameter> parameters = new ArrayList<>();
+        filter.collectHQLParameters(parameters);
+        return parameters;
+    }
+
+    @Test
+    void valuesArePaddedToPowerOfTwo() {
+        InFilter<Long> filter = new InFilter<>("id", values(3));
+        String name = filter.getParameterName();
+
+        assertEquals("id in :" + name, filter.getHQLExpression().trim());
+        List<HQLParameter> parameters = parameters(filter);
+        assertEquals(1, parameters.size());
+        assertEquals(name, parameters.get(0).getName());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 3L), parameters.get(0).getValue());
+        assertEquals(new InFilter<>("id", values(4)).getShapeFingerprint(), filter.getShapeFingerprint());
+
+        filter.setPadding(false);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), parameters(filter).get(0).getValue());
+    }
+
+    @Test
+    void longListIsSplitIntoChunks() {
+        InFilter<Long> filter = new InFilter<>("id", values(11));
+        filter.setChunkSize(4);
+        String name = filter.getParameterName();
+
+        assertEquals(3, filter.getChunkCount());
+        assertEquals("(id in :" + name + "c0 OR id in :" + name + "c1 OR id in :" + name + "c2)",
+                filter.getHQLExpression().trim());
+        List<HQLParameter> parameters = parameters(filter);
+        assertEquals(3, parameters.size());
+        assertEquals(name + "c2", parameters.get(2).getName());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), parameters.get(0).getValue());
+        assertEquals(Arrays.asList(5L, 6L, 7L, 8L), parameters.get(1).getValue());
+        assertEquals(Arrays.asList(9L, 10L, 11L, 11L), parameters.get(2).getValue());
+    }
+
+    @Test
+    void chunkCountChangesShape() {
+        InFilter<Long> filter = new InFilter<>("id", values(11));
+        InFilter<Long> other = new InFilter<>("id", values(11));
+        other.setChunkSize(4);
+
+        assertEquals(1, filter.getChunkCount());
+        assertNotEquals(other.getShapeFingerprint(), filter.getShapeFingerprint());
+
+        filter.setChunkSize(4);
+
+        assertEquals(other.getShapeFingerprint(), filter.getShapeFingerprint());
+    }
+
+    @Test
+    void listIsNotSplitWithoutChunkSize() {
+        InFilter<Long> filter = new InFilter<>("id", values(1500));
+        filter.setChunkSize(0);
+
+        assertEquals(1, filter.getChunkCount());
+        assertEquals(2048, ((List<?>) parameters(filter).get(0).getValue()).size());
+    }
+}
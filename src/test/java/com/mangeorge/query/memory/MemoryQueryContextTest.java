@@ -0,0 +1,174 @@
+package com.mangeorge.query.memory;
+
+import com.mangeorge.query.EntityQueryExecutor;
+import com.mangeorge.query.QueryBuilder;
+import com.mangeorge.query.filter.NotFilter;
+import com.mangeorge.query.filter.QueryFilter;
+import com.mangeorge.query.filter.group.AndFilter;
+import com.mangeorge.query.filter.group.OrFilter;
+import com.mangeorge.query.filter.single.BetweenFilter;
+import com.mangeorge.query.filter.single.EqualsFilter;
+import com.mangeorge.query.filter.single.InFilter;
+import com.mangeorge.query.filter.single.LikeFilter;
+import com.mangeorge.query.filter.single.LikeFilterWithoutParam;
+import com.mangeorge.query.filter.single.NullFilter;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.MatchMode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+class MemoryQueryContextTest {
+
+    private static final String[] NAMES = {null, "Ab", "abc", "x_y", "X%", "b"};
+
+    private static SessionFactory sessionFactory;
+
+    private static List<MemoryItem> items;
+
+
+    @Entity(name = "MemoryItem")
+    public static class MemoryItem {
+
+        @Id
+        private Long id;
+
+        private Integer number;
+
+        private String name;
+
+        public MemoryItem() {
+        }
+
+        MemoryItem(Long id, Integer number, String name) {
+            this.id = id;
+            this.number = number;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Integer getNumber() {
+            return number;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+
+    @BeforeAll
+    static void createItems() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(MemoryItem.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:memory;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .buildSessionFactory();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            long id = 0;
+            for (int number = -1; number <= 5; number++) {
+                for (String name : NAMES) {
+                    session.persist(new MemoryItem(id++, number < 0 ? null : number, name));
+                }
+            }
+            session.getTransaction().commit();
+        }
+        try (Session session = sessionFactory.openSession()) {
+            items = session.createQuery("from MemoryItem", MemoryItem.class).list();
+        }
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    /**
+     * Checks, that the filter and its negation match the same rows in the database and in memory.
+     * A negated unknown condition is unknown, so rows with <code>null</code> values are matched by neither of them.
+     */
+    private static void assertSameAsHQL(Supplier<QueryFilter> filter) {
+        assertSameRows(filter.get());
+        assertSameRows(new NotFilter(filter.get()));
+    }
+
+    private static void assertSameRows(QueryFilter filter) {
+        QueryBuilder queryBuilder = new QueryBuilder(MemoryItem.class);
+        queryBuilder.setQueryFilter(filter);
+        Set<Long> databaseIds;
+        try (Session session = sessionFactory.openSession()) {
+            databaseIds = new EntityQueryExecutor(session).<MemoryItem>list(queryBuilder).stream()
+                    .map(MemoryItem::getId).collect(Collectors.toCollection(TreeSet::new));
+        }
+        Predicate<MemoryItem> predicate = MemoryQueryContext.compile(filter, MemoryItem.class);
+        Set<Long> memoryIds = items.stream().filter(predicate)
+                .map(MemoryItem::getId).collect(Collectors.toCollection(TreeSet::new));
+
+        assertEquals(databaseIds, memoryIds, queryBuilder.getHQLQuery());
+    }
+
+    @Test
+    void equalsIsUnknownForNull() {
+        assertSameAsHQL(() -> new EqualsFilter<>("number", 2));
+        assertSameAsHQL(() -> new EqualsFilter<>("name", "b"));
+    }
+
+    @Test
+    void inIsUnknownForNullValues() {
+        assertSameAsHQL(() -> new InFilter<>("number", 1, 3));
+        assertSameAsHQL(() -> new InFilter<>("number", new Integer[]{null, 3}));
+    }
+
+    @Test
+    void betweenIsUnknownForNull() {
+        assertSameAsHQL(() -> new BetweenFilter<>("number", 1, 3));
+        assertSameAsHQL(() -> new BetweenFilter<>("number", 2, null));
+        assertSameAsHQL(() -> new BetweenFilter<>("number", null, 2));
+    }
+
+    @Test
+    void nullIsKnown() {
+        assertSameAsHQL(() -> new NullFilter("number"));
+    }
+
+    @Test
+    void likeIgnoresCase() {
+        assertSameAsHQL(() -> new LikeFilter("name", "AB", MatchMode.ANYWHERE));
+        assertSameAsHQL(() -> new LikeFilter("name", "x_", MatchMode.START));
+        assertSameAsHQL(() -> new LikeFilter("name", "%", MatchMode.END));
+    }
+
+    @Test
+    void likeWithoutParamMatchesConstantAndPath() {
+        assertSameAsHQL(() -> new LikeFilterWithoutParam("name", "'%B'"));
+        assertSameAsHQL(() -> new LikeFilterWithoutParam("name", "memoryItem.name"));
+    }
+
+    @Test
+    void groupsKeepUnknown() {
+        assertSameAsHQL(() -> new OrFilter(new EqualsFilter<>("number", 1), new EqualsFilter<>("name", "b")));
+        assertSameAsHQL(() -> new AndFilter(new BetweenFilter<>("number", 1, 4),
+                new InFilter<>("name", new String[]{"b", "abc"})));
+        assertSameAsHQL(() -> new OrFilter(new NullFilter("name"), new NotFilter(new EqualsFilter<>("number", 0))));
+    }
+}
@@ -0,0 +1,69 @@
+package com.mangeorge.query.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramHasZeroValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(5, histogram.getValueAtPercentile(50));
+        assertEquals(10, histogram.getValueAtPercentile(100));
+        assertEquals(10, histogram.getCount());
+        assertEquals(55, histogram.getTotal());
+        assertEquals(5.5, histogram.getMean());
+        assertEquals(10, histogram.getMax());
+    }
+
+    @Test
+    void percentileIsWithinBucketWidth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1000; millis >= 1; millis--) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        for (int percentile : new int[]{1, 50, 90, 95, 99}) {
+            long exact = percentile * 10L * 1_000_000;
+            long value = histogram.getValueAtPercentile(percentile);
+            assertTrue(value >= exact && value <= exact + exact / 16, percentile + ": " + value);
+        }
+        assertEquals(1000_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1000_000_000, histogram.getMax());
+    }
+
+    @Test
+    void valuesAreClampedAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,119 @@
+package com.mangeorge.query.metrics;
+
+import com.mangeorge.query.QueryFingerprint;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class QueryMetricsAggregatorTest {
+
+    private static final QueryFingerprint SHAPE = shape("a");
+
+    private static QueryFingerprint shape(String name) {
+        return QueryFingerprint.hasher().putString(name).build();
+    }
+
+    private static QueryEvent event(QueryFingerprint shape, QueryEngine engine, long executeMillis) {
+        return QueryEvent.builder(engine)
+                .setFingerprint(shape)
+                .setQuery("from " + shape)
+                .addExecuteNanos(TimeUnit.MILLISECONDS.toNanos(executeMillis))
+                .build();
+    }
+
+    @Test
+    void eventsAreAggregatedByShapeAndEngine() {
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator();
+        aggregator.onQuery(event(SHAPE, QueryEngine.HQL, 1));
+        aggregator.onQuery(QueryEvent.builder(QueryEngine.HQL).setFingerprint(SHAPE).setRowCount(7)
+                .setCacheOutcome(CacheOutcome.HIT).addExecuteNanos(TimeUnit.MILLISECONDS.toNanos(3)).build());
+        aggregator.onQuery(QueryEvent.builder(QueryEngine.HQL).setFingerprint(SHAPE).setFailed(true)
+                .setCacheOutcome(CacheOutcome.MISS).build());
+        aggregator.onQuery(event(SHAPE, QueryEngine.SQL, 2));
+
+        assertEquals(2, aggregator.getShapeCount());
+        QueryStatistics statistics = aggregator.getStatistics(SHAPE, QueryEngine.HQL);
+        assertEquals(3, statistics.getExecutionCount());
+        assertEquals(1, statistics.getFailureCount());
+        assertEquals(7, statistics.getRowCount());
+        assertEquals(1, statistics.getCacheHitCount());
+        assertEquals(1, statistics.getCacheMissCount());
+        assertEquals("from " + SHAPE, statistics.getQuery());
+        assertEquals(4, statistics.getExecuteTotalMillis(), 0.001);
+        assertEquals(3, statistics.getExecuteMaxMillis(), 0.001);
+        assertEquals(1, aggregator.getStatistics(SHAPE, QueryEngine.SQL).getExecutionCount());
+        assertNull(aggregator.getStatistics(shape("b"), QueryEngine.HQL));
+
+        statistics.reset();
+
+        assertEquals(0, statistics.getExecutionCount());
+        assertEquals(0, statistics.getExecuteP99Millis());
+    }
+
+    @Test
+    void eventsOfShapesOverLimitAreDropped() {
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator();
+        aggregator.setMaxShapes(2);
+        aggregator.onQuery(event(shape("a"), QueryEngine.HQL, 1));
+        aggregator.onQuery(event(shape("b"), QueryEngine.HQL, 1));
+        aggregator.onQuery(event(shape("c"), QueryEngine.HQL, 1));
+        aggregator.onQuery(event(shape("c"), QueryEngine.HQL, 1));
+        aggregator.onQuery(event(shape("a"), QueryEngine.HQL, 1));
+
+        assertEquals(2, aggregator.getShapeCount());
+        assertEquals(2, aggregator.getDroppedEventCount());
+        assertEquals(2, aggregator.getStatistics(shape("a"), QueryEngine.HQL).getExecutionCount());
+        assertNull(aggregator.getStatistics(shape("c"), QueryEngine.HQL));
+
+        aggregator.reset();
+
+        assertEquals(0, aggregator.getShapeCount());
+        assertEquals(0, aggregator.getDroppedEventCount());
+    }
+
+    @Test
+    void slowestAndMostExpensiveShapesAreFound() {
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator();
+        aggregator.onQuery(event(shape("fast"), QueryEngine.HQL, 5));
+        for (int i = 0; i < 20; i++) {
+            aggregator.onQuery(event(shape("frequent"), QueryEngine.HQL, 10));
+        }
+        aggregator.onQuery(event(shape("slow"), QueryEngine.HQL, 50));
+
+        String frequent = aggregator.getStatistics(shape("frequent"), QueryEngine.HQL).toString();
+        String slow = aggregator.getStatistics(shape("slow"), QueryEngine.HQL).toString();
+        assertEquals(Arrays.asList(slow, frequent), aggregator.findSlowestShapes(2));
+        assertEquals(Arrays.asList(frequent, slow), aggregator.findMostExpensiveShapes(2));
+    }
+
+    @Test
+    void shapesAreRegisteredAsMBeans() throws JMException {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator("test");
+        aggregator.onQuery(event(shape("a"), QueryEngine.HQL, 1));
+        aggregator.registerMBeans(server);
+        aggregator.onQuery(event(shape("b"), QueryEngine.HQL, 1));
+
+        assertTrue(server.isRegistered(aggregator.getObjectName()));
+        for (QueryStatistics statistics : aggregator.getStatistics()) {
+            assertTrue(server.isRegistered(aggregator.getObjectName(statistics)));
+        }
+        assertEquals(2, server.getAttribute(aggregator.getObjectName(), "ShapeCount"));
+
+        aggregator.unregisterMBeans();
+
+        assertFalse(server.isRegistered(aggregator.getObjectName()));
+        assertEquals(0, server.queryNames(null, null).stream()
+                .filter(name -> QueryMetricsAggregator.DOMAIN.equals(name.getDomain())).count());
+    }
+}